@@ -0,0 +1,117 @@
+package ru.mentee.power.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.hybrid.impl.HybridProductRepository;
+import ru.mentee.power.performance.dataset.DatasetGenerator;
+import ru.mentee.power.performance.dataset.DatasetSpec;
+
+/**
+ * In-memory H2 база для бенчмарков, заполненная клиентами, заказами и товарами.
+ * Каждый экземпляр получает собственную базу, поэтому состояния разных бенчмарков
+ * не пересекаются.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private static final int POOL_SIZE = 4;
+
+    private final SessionFactory sessionFactory;
+    private final HikariDataSource dataSource;
+    private final HybridProductRepository productRepository;
+
+    private BenchmarkDatabase(boolean cacheEnabled, boolean monitoring) {
+        String jdbcUrl = "jdbc:h2:mem:bench_" + System.nanoTime();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(jdbcUrl);
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setUsername("sa");
+        dbConfig.setPassword("");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        dbConfig.setStatementCaptureEnabled(monitoring);
+        dbConfig.setJfrEventsEnabled(monitoring);
+        dbConfig.setSecondLevelCacheOnH2(cacheEnabled);
+        sessionFactory =
+                cacheEnabled
+                        ? new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory()
+                        : new HibernateConfig(dbConfig).buildSessionFactory();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(jdbcUrl);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(POOL_SIZE);
+        dataSource = new HikariDataSource(hikariConfig);
+        productRepository = new HybridProductRepository(sessionFactory, dataSource);
+    }
+
+    /**
+     * Пустая схема без данных.
+     *
+     * @param cacheEnabled конфигурация с кэшем второго уровня
+     * @param monitoring перехват выражений и JFR-события
+     */
+    static BenchmarkDatabase empty(boolean cacheEnabled, boolean monitoring) {
+        return new BenchmarkDatabase(cacheEnabled, monitoring);
+    }
+
+    /**
+     * Схема с {@code products} товарами и {@code customers} клиентами, заполненная
+     * {@link DatasetGenerator}: популярность товаров по Ципфу, заказы на клиента по Парето.
+     */
+    static BenchmarkDatabase seeded(
+            boolean cacheEnabled, boolean monitoring, int customers, int products) {
+        BenchmarkDatabase database = new BenchmarkDatabase(cacheEnabled, monitoring);
+        DatasetSpec spec =
+                DatasetSpec.builder()
+                        .products(products)
+                        .customers(customers)
+                        .users(0)
+                        .students(0)
+                        .courses(0)
+                        .warehouses(0)
+                        .threads(POOL_SIZE)
+                        .build();
+        new DatasetGenerator(database.dataSource, spec).generate();
+        return database;
+    }
+
+    /**
+     * Товары с уникальными SKU; префикс отличает вставки разных итераций.
+     */
+    static List<Product> newProducts(String prefix, int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(
+                    Product.builder()
+                            .sku(prefix + "-" + i)
+                            .name("Product " + i)
+                            .description("Benchmark product " + i)
+                            .price(BigDecimal.valueOf(1000 + i * 7L % 90_000, 2))
+                            .stockQuantity(i % 500)
+                            .build());
+        }
+        return products;
+    }
+
+    SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    HybridProductRepository getProductRepository() {
+        return productRepository;
+    }
+
+    @Override
+    public void close() {
+        sessionFactory.close();
+        dataSource.close();
+    }
+}
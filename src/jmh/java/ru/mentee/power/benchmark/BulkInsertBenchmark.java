@@ -0,0 +1,82 @@
+package ru.mentee.power.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Массовая вставка товаров: JDBC-батч {@code HybridProductRepository.bulkInsert} против
+ * persist в сессии Hibernate с JDBC batching. Product использует IDENTITY, поэтому
+ * Hibernate выполняет вставки по одной независимо от размера батча - бенчмарк
+ * показывает цену этого.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BulkInsertBenchmark {
+
+    @Param("1000")
+    private int rows;
+
+    @Param("25")
+    private int hibernateBatchSize;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.empty(false, monitoring);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearProducts() {
+        database.getProductRepository().bulkUpdate("DELETE FROM products");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void jdbcBulkInsert() {
+        database.getProductRepository().bulkInsert(nextProducts());
+    }
+
+    @Benchmark
+    public void hibernateBatchedPersist() {
+        List<Product> products = nextProducts();
+        try (Session session = database.getSessionFactory().openSession()) {
+            session.setJdbcBatchSize(hibernateBatchSize);
+            Transaction tx = session.beginTransaction();
+            for (int i = 0; i < products.size(); i++) {
+                session.persist(products.get(i));
+                if ((i + 1) % hibernateBatchSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            tx.commit();
+        }
+    }
+
+    private List<Product> nextProducts() {
+        return BenchmarkDatabase.newProducts("BULK" + invocation++, rows);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.mentee.power.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.mentee.power.cache.CacheManager;
+import ru.mentee.power.cache.CacheManagerImpl;
+import ru.mentee.power.entity.relationship.Order;
+
+/**
+ * Чтение заказов по ключу при доле записей {@code writeRatio}: точечная инвалидация
+ * ключа против очистки всего региона. Запись моделируется только инвалидацией, как после
+ * изменения заказа другим узлом. Доля попаданий - {@code hits / (hits + misses)} в
+ * дополнительных счетчиках отчета JMH.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CacheInvalidationBenchmark {
+
+    @Param("500")
+    private int customers;
+
+    @Param("0.05")
+    private double writeRatio;
+
+    @Param({"entity", "region"})
+    private String invalidation;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private CacheManager cacheManager;
+    private long orders;
+
+    /**
+     * Попадания и промахи региона заказов за итерацию.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HitCounters {
+
+        public long hits;
+        public long misses;
+    }
+
+    /**
+     * Генератор ключей и решений о записи; свой у каждого потока.
+     */
+    @State(Scope.Thread)
+    public static class Workload {
+
+        private final SplittableRandom random = new SplittableRandom(42);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(true, monitoring, customers, 1000);
+        cacheManager = new CacheManagerImpl(database.getSessionFactory());
+        try (Session session = database.getSessionFactory().openSession()) {
+            orders =
+                    session.createQuery("SELECT max(o.id) FROM RelationshipOrder o", Long.class)
+                            .getSingleResult();
+        }
+        // Прогрев: все заказы попадают в регион до первой итерации
+        for (long id = 1; id <= orders; id++) {
+            loadOrder(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Order readWriteMix(Workload workload, HitCounters counters) {
+        long id = 1 + workload.random.nextLong(orders);
+        if (workload.random.nextDouble() < writeRatio) {
+            if ("entity".equals(invalidation)) {
+                cacheManager.invalidateEntity(Order.class, id);
+            } else {
+                cacheManager.invalidateEntityType(Order.class);
+            }
+            return null;
+        }
+        Cache cache = database.getSessionFactory().getCache();
+        if (cache.containsEntity(Order.class, id)) {
+            counters.hits++;
+        } else {
+            counters.misses++;
+        }
+        return loadOrder(id);
+    }
+
+    private Order loadOrder(long id) {
+        try (Session session = database.getSessionFactory().openSession()) {
+            return session.get(Order.class, id);
+        }
+    }
+}
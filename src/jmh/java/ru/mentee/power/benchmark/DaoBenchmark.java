@@ -0,0 +1,67 @@
+package ru.mentee.power.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.mentee.power.dao.HibernateGenericDAO;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * {@link HibernateGenericDAO}: чтение по ключу и сохранение, каждое в своей сессии.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+
+    @Param("10000")
+    private int products;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private HibernateGenericDAO<Product, Long> dao;
+    private long cursor;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(false, monitoring, 0, products);
+        dao = new HibernateGenericDAO<>(database.getSessionFactory(), Product.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<Product> findById() {
+        // Шаг-простое число обходит все ключи, не повторяя соседние строки подряд
+        cursor = (cursor + 7919) % products;
+        return dao.findById(cursor + 1);
+    }
+
+    @Benchmark
+    public Product save() {
+        long id = sequence++;
+        return dao.save(
+                Product.builder()
+                        .sku("DAO-" + id)
+                        .name("Saved " + id)
+                        .price(BigDecimal.ONE)
+                        .stockQuantity(1)
+                        .build());
+    }
+}
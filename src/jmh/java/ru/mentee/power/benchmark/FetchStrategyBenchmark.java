@@ -0,0 +1,130 @@
+package ru.mentee.power.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mentee.power.dto.Page;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderItem;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.performance.solutions.BatchFetchingSolution;
+import ru.mentee.power.performance.solutions.EntityGraphSolution;
+import ru.mentee.power.performance.solutions.JoinFetchSolution;
+import ru.mentee.power.performance.solutions.PaginationOptimization;
+
+/**
+ * Решения проблемы N+1 и пагинации против наивной загрузки заказов с клиентами и
+ * позициями.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class FetchStrategyBenchmark {
+
+    @Param("500")
+    private int customers;
+
+    @Param({"0", "100"})
+    private int pageNumber;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private JoinFetchSolution joinFetch;
+    private EntityGraphSolution entityGraph;
+    private BatchFetchingSolution batchFetching;
+    private PaginationOptimization pagination;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(false, monitoring, customers, 1000);
+        joinFetch = new JoinFetchSolution(database.getSessionFactory());
+        entityGraph = new EntityGraphSolution(database.getSessionFactory());
+        batchFetching = new BatchFetchingSolution(database.getSessionFactory());
+        pagination = new PaginationOptimization(database.getSessionFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    /**
+     * Базовая линия: заказы одним запросом, клиенты и позиции - по обращению.
+     */
+    @Benchmark
+    public void naiveLazyLoading(Blackhole blackhole) {
+        try (Session session = database.getSessionFactory().openSession()) {
+            List<Order> orders =
+                    session.createQuery(
+                                    "FROM RelationshipOrder o WHERE o.status = :status",
+                                    Order.class)
+                            .setParameter("status", OrderStatus.PENDING)
+                            .list();
+            for (Order order : orders) {
+                blackhole.consume(order.getCustomer().getEmail());
+                for (OrderItem item : order.getOrderItems()) {
+                    blackhole.consume(item.getProduct().getSku());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Order> joinFetchCustomers() {
+        return joinFetch.loadOrdersWithCustomers();
+    }
+
+    @Benchmark
+    public List<Order> joinFetchAllAssociations() {
+        return joinFetch.loadOrdersWithAllAssociations();
+    }
+
+    @Benchmark
+    public List<Order> entityGraph() {
+        return entityGraph.loadWithEntityGraph();
+    }
+
+    @Benchmark
+    public void batchFetching() {
+        batchFetching.dynamicBatchSize();
+    }
+
+    /**
+     * Базовая линия пагинации: OFFSET по заказам с JOIN FETCH клиента и отдельный COUNT.
+     */
+    @Benchmark
+    public Page<Order> offsetPagination() {
+        try (Session session = database.getSessionFactory().openSession()) {
+            List<Order> orders =
+                    session.createQuery(
+                                    "FROM RelationshipOrder o LEFT JOIN FETCH o.customer"
+                                            + " ORDER BY o.orderDate DESC",
+                                    Order.class)
+                            .setFirstResult(pageNumber * 20)
+                            .setMaxResults(20)
+                            .list();
+            Long total =
+                    session.createQuery("SELECT COUNT(o) FROM RelationshipOrder o", Long.class)
+                            .uniqueResult();
+            return new Page<>(orders, pageNumber, 20, total);
+        }
+    }
+
+    @Benchmark
+    public Page<Order> optimizedPagination() {
+        return pagination.optimizedPagination(pageNumber, 20);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.mentee.power.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.mentee.power.dto.Page;
+import ru.mentee.power.dto.Pageable;
+import ru.mentee.power.dto.SearchCriteria;
+import ru.mentee.power.dto.Sort;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.search.ProductSearchService;
+
+/**
+ * {@link ProductSearchService#search}: фильтр по цене и полнотекстовый LIKE с сортировкой.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param("10000")
+    private int products;
+
+    @Param("20")
+    private int pageSize;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private ProductSearchService searchService;
+    private SearchCriteria priceRange;
+    private SearchCriteria text;
+    private Pageable page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(false, monitoring, 0, products);
+        searchService = new ProductSearchService(database.getSessionFactory());
+        priceRange =
+                new SearchCriteria()
+                        .addFilter("minPrice", new BigDecimal("100.00"))
+                        .addFilter("maxPrice", new BigDecimal("200.00"));
+        text = SearchCriteria.builder().searchText("product 12").build();
+        page = Pageable.of(0, pageSize, Sort.by("price", Sort.Direction.DESC));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Page<Product> searchByPriceRange() {
+        return searchService.search(priceRange, page);
+    }
+
+    @Benchmark
+    public Page<Product> searchByText() {
+        return searchService.search(text, page);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.mentee.power.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Чтение товара по ключу из кэша второго уровня против чтения из базы в той же
+ * конфигурации ({@link CacheMode#IGNORE}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SecondLevelCacheBenchmark {
+
+    @Param("1000")
+    private int products;
+
+    @Param("false")
+    private boolean monitoring;
+
+    private BenchmarkDatabase database;
+    private long cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.seeded(true, monitoring, 0, products);
+        // Прогрев: все товары попадают в регион до первой итерации
+        for (long id = 1; id <= products; id++) {
+            loadProduct(id, CacheMode.NORMAL);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Product cacheHit() {
+        return loadProduct(nextId(), CacheMode.NORMAL);
+    }
+
+    @Benchmark
+    public Product databaseRead() {
+        return loadProduct(nextId(), CacheMode.IGNORE);
+    }
+
+    private Product loadProduct(long id, CacheMode cacheMode) {
+        try (Session session = database.getSessionFactory().openSession()) {
+            session.setCacheMode(cacheMode);
+            return session.get(Product.class, id);
+        }
+    }
+
+    private long nextId() {
+        cursor = (cursor + 7919) % products;
+        return cursor + 1;
+    }
+}
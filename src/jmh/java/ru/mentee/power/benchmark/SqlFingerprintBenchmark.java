@@ -0,0 +1,63 @@
+package ru.mentee.power.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.mentee.power.performance.monitoring.SqlFingerprint;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+
+/**
+ * Нормализация SQL: прежние регулярные выражения против токенизатора
+ * {@link SqlFingerprinter} при промахе и при попадании в кэш отпечатков.
+ * Промах моделируется копией строки: кэш ищет по идентичности экземпляра.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SqlFingerprintBenchmark {
+
+    private static final String CUSTOMER_SQL =
+            "/* <criteria> */ select c1_0.id,c1_0.email,(SELECT COUNT(*) FROM orders o"
+                    + " WHERE o.customer_id = c1_0.id AND o.status = 'COMPLETED') from"
+                    + " customers c1_0 where c1_0.id=?";
+
+    private final String[] sqls = new String[64];
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < sqls.length; i++) {
+            sqls[i] = CUSTOMER_SQL + " and c1_0.version=" + i;
+        }
+    }
+
+    @Benchmark
+    public int regex() {
+        String sql = nextSql();
+        // Прежний путь: MonitoringContext.normalizeQuery + extractEntityName
+        String normalized = sql.replaceAll("\\d+", "?").replaceAll("'[^']*'", "'?'").trim();
+        String[] parts = sql.toUpperCase().split("FROM");
+        return normalized.length() + parts[1].trim().split("\\s")[0].length();
+    }
+
+    @Benchmark
+    public SqlFingerprint tokenizerMiss() {
+        return SqlFingerprinter.fingerprint(new String(nextSql()));
+    }
+
+    @Benchmark
+    public SqlFingerprint tokenizerCached() {
+        return SqlFingerprinter.fingerprint(nextSql());
+    }
+
+    private String nextSql() {
+        cursor = (cursor + 1) & (sqls.length - 1);
+        return sqls[cursor];
+    }
+}
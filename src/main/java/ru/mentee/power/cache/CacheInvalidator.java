@@ -0,0 +1,150 @@
+package ru.mentee.power.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.access.NaturalIdDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.MappingMetamodel;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+
+/**
+ * Точечная инвалидация кэша второго уровня по ключам сущностей.
+ * Для каждого ключа удаляются запись сущности и кэшированные коллекции, которыми она
+ * владеет. Кэшированные коллекции других сущностей, содержащие этот тип, вычищаются
+ * целиком: владелец такой коллекции по ключу элемента неизвестен. Перекрестные ссылки
+ * natural id удаляются по старым значениям, если их передал вызывающий код (например,
+ * вернул сам оператор DML). Иначе очищается регион natural id (но не сущностей): строки
+ * ради старых значений повторно не читаются.
+ *
+ * <p>Набор регионов для типа сущности вычисляется один раз по метамодели.
+ * Кэшированные запросы инвалидируются по таблицам через метки времени.
+ */
+@Slf4j
+final class CacheInvalidator {
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final Map<Class<?>, Plan> plans = new ConcurrentHashMap<>();
+
+    CacheInvalidator(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * @param naturalIds значения natural id до изменения или {@code null}, если они неизвестны
+     */
+    void invalidate(Class<?> entityClass, Collection<?> ids, Collection<?> naturalIds) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Plan plan = plans.computeIfAbsent(entityClass, this::plan);
+        Cache cache = sessionFactory.getCache();
+        if (plan.persister.hasNaturalIdCache()) {
+            if (naturalIds == null) {
+                cache.evictNaturalIdData(entityClass);
+            } else {
+                evictNaturalIds(plan.persister, naturalIds);
+            }
+        }
+        for (Object id : ids) {
+            if (plan.persister.canWriteToCache()) {
+                cache.evictEntityData(entityClass, id);
+            }
+            for (String role : plan.ownedRoles) {
+                cache.evictCollectionData(role, id);
+            }
+        }
+        for (String role : plan.containingRoles) {
+            cache.evictCollectionData(role);
+        }
+    }
+
+    /**
+     * Пометить таблицы измененными: кэшированные запросы по ним перестанут считаться
+     * актуальными, остальные результаты запросов остаются.
+     */
+    void invalidateQuerySpaces(String... tables) {
+        if (!sessionFactory.getSessionFactoryOptions().isQueryCacheEnabled()) {
+            return;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            sessionFactory
+                    .getCache()
+                    .getTimestampsCache()
+                    .invalidate(tables, session.unwrap(SharedSessionContractImplementor.class));
+        }
+    }
+
+    private void evictNaturalIds(EntityPersister persister, Collection<?> naturalIds) {
+        NaturalIdDataAccess access = persister.getNaturalIdCacheAccessStrategy();
+        // Сессия нужна только для построения ключей, запросов к базе нет
+        try (Session session = sessionFactory.openSession()) {
+            SharedSessionContractImplementor implementor =
+                    session.unwrap(SharedSessionContractImplementor.class);
+            for (Object values : naturalIds) {
+                access.evict(access.generateCacheKey(values, persister, implementor));
+            }
+        }
+    }
+
+    private Plan plan(Class<?> entityClass) {
+        MappingMetamodel metamodel =
+                sessionFactory.getRuntimeMetamodels().getMappingMetamodel();
+        EntityPersister persister = metamodel.getEntityDescriptor(entityClass);
+        List<String> ownedRoles = new ArrayList<>();
+        List<String> containingRoles = new ArrayList<>();
+        metamodel.forEachCollectionDescriptor(
+                collection -> {
+                    if (!collection.hasCache()) {
+                        return;
+                    }
+                    if (collection
+                            .getOwnerEntityPersister()
+                            .getRootEntityName()
+                            .equals(persister.getRootEntityName())) {
+                        ownedRoles.add(collection.getRole());
+                    }
+                    if (contains(metamodel, collection, persister)) {
+                        containingRoles.add(collection.getRole());
+                    }
+                });
+        log.debug(
+                "Invalidation plan for {}: owned collections {}, containing collections {}",
+                persister.getEntityName(),
+                ownedRoles,
+                containingRoles);
+        return new Plan(persister, List.copyOf(ownedRoles), List.copyOf(containingRoles));
+    }
+
+    private static boolean contains(
+            MappingMetamodel metamodel, CollectionPersister collection, EntityPersister element) {
+        if (!(collection.getElementType() instanceof EntityType elementType)) {
+            return false;
+        }
+        return metamodel
+                .getEntityDescriptor(elementType.getAssociatedEntityName())
+                .isSubclassEntityName(element.getEntityName());
+    }
+
+    private static final class Plan {
+
+        private final EntityPersister persister;
+        private final List<String> ownedRoles;
+        private final List<String> containingRoles;
+
+        Plan(EntityPersister persister, List<String> ownedRoles, List<String> containingRoles) {
+            this.persister = persister;
+            this.ownedRoles = ownedRoles;
+            this.containingRoles = containingRoles;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ru.mentee.power.cache;
 
+import java.util.Collection;
+
 /**
  * Менеджер кэширования.
  */
@@ -11,12 +13,45 @@ public interface CacheManager {
     void warmUpCache();
 
     /**
-     * Инвалидация кэша для сущности.
+     * Инвалидация кэша для сущности. Если тип кэширует natural id, его регион очищается
+     * целиком: старое значение natural id неизвестно.
      * @param entityClass класс сущности
      * @param id идентификатор
      */
     void invalidateEntity(Class<?> entityClass, Object id);
 
+    /**
+     * Инвалидация кэша для набора сущностей одного типа после массового изменения.
+     * Регион natural id, если он есть, очищается целиком.
+     * @param entityClass класс сущности
+     * @param ids идентификаторы
+     */
+    void invalidateEntities(Class<?> entityClass, Collection<?> ids);
+
+    /**
+     * Инвалидация кэша для набора сущностей, natural id которых известны до изменения.
+     * @param entityClass класс сущности
+     * @param ids идентификаторы
+     * @param naturalIds значения natural id затронутых строк до изменения или {@code null},
+     *     если они неизвестны: тогда регион natural id очищается целиком
+     */
+    void invalidateEntities(Class<?> entityClass, Collection<?> ids, Collection<?> naturalIds);
+
+    /**
+     * Инвалидация кэшированных запросов, читающих таблицы, измененные в обход Hibernate.
+     * @param tables имена таблиц
+     */
+    void invalidateQuerySpaces(String... tables);
+
+    /**
+     * Записать уже сохраненные сущности в кэш второго уровня (и natural id, если он
+     * кэшируется) без чтения из базы.
+     * @param entityClass класс сущности
+     * @param entities сущности с заполненными идентификаторами
+     * @return число записанных в регион сущностей
+     */
+    int primeEntities(Class<?> entityClass, Collection<?> entities);
+
     /**
      * Инвалидация кэша для типа сущности.
      * @param entityClass класс сущности
@@ -1,27 +1,37 @@
 package ru.mentee.power.cache;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Cache;
 import org.hibernate.SessionFactory;
 import org.hibernate.stat.Statistics;
+import ru.mentee.power.metrics.PrometheusWriter;
 
 /**
  * Реализация менеджера кэширования.
  */
 @Slf4j
-@RequiredArgsConstructor
 public class CacheManagerImpl implements CacheManager {
 
     private final SessionFactory sessionFactory;
     private final List<CacheWarmingStrategy> warmingStrategies;
+    private final CacheInvalidator invalidator;
+    private final CachePrimer primer;
+    private final PrometheusWriter metricsWriter = new PrometheusWriter(1024);
 
     public CacheManagerImpl(SessionFactory sessionFactory) {
+        this(sessionFactory, new ArrayList<>());
+    }
+
+    public CacheManagerImpl(
+            SessionFactory sessionFactory, List<CacheWarmingStrategy> warmingStrategies) {
         this.sessionFactory = sessionFactory;
-        this.warmingStrategies = new ArrayList<>();
+        this.warmingStrategies = warmingStrategies;
+        this.invalidator = new CacheInvalidator(sessionFactory);
+        this.primer = new CachePrimer(sessionFactory);
     }
 
     @Override
@@ -46,13 +56,34 @@ public class CacheManagerImpl implements CacheManager {
 
     @Override
     public void invalidateEntity(Class<?> entityClass, Object id) {
-        Cache cache = sessionFactory.getCache();
-        // Используем имя класса как регион
-        String regionName = entityClass.getName();
-        cache.evictRegion(regionName);
+        // Только запись с этим ключом и ее коллекции, остальной регион остается
+        invalidator.invalidate(entityClass, List.of(id), null);
         log.debug("Invalidated entity: {}#{}", entityClass.getSimpleName(), id);
     }
 
+    @Override
+    public void invalidateEntities(Class<?> entityClass, Collection<?> ids) {
+        invalidateEntities(entityClass, ids, null);
+    }
+
+    @Override
+    public void invalidateEntities(
+            Class<?> entityClass, Collection<?> ids, Collection<?> naturalIds) {
+        invalidator.invalidate(entityClass, ids, naturalIds);
+        log.debug("Invalidated {} entities: {}", ids.size(), entityClass.getSimpleName());
+    }
+
+    @Override
+    public void invalidateQuerySpaces(String... tables) {
+        invalidator.invalidateQuerySpaces(tables);
+        log.debug("Invalidated query spaces: {}", (Object) tables);
+    }
+
+    @Override
+    public int primeEntities(Class<?> entityClass, Collection<?> entities) {
+        return primer.prime(entityClass, entities);
+    }
+
     @Override
     public void invalidateEntityType(Class<?> entityClass) {
         Cache cache = sessionFactory.getCache();
@@ -151,38 +182,23 @@ public class CacheManagerImpl implements CacheManager {
     @Override
     public String exportMetrics() {
         CacheStatistics stats = getStatistics();
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("# Hibernate Cache Metrics\n");
-        sb.append(String.format("hibernate_cache_l2_hits_total %d\n", stats.getL2CacheHitCount()));
-        sb.append(
-                String.format("hibernate_cache_l2_misses_total %d\n", stats.getL2CacheMissCount()));
-        sb.append(String.format("hibernate_cache_l2_puts_total %d\n", stats.getL2CachePutCount()));
-        sb.append(String.format("hibernate_cache_l2_hit_ratio %.4f\n", stats.getL2CacheHitRatio()));
-        sb.append(
-                String.format(
-                        "hibernate_cache_query_hits_total %d\n", stats.getQueryCacheHitCount()));
-        sb.append(
-                String.format(
-                        "hibernate_cache_query_misses_total %d\n", stats.getQueryCacheMissCount()));
-        sb.append(
-                String.format(
-                        "hibernate_cache_query_puts_total %d\n", stats.getQueryCachePutCount()));
-        sb.append(
-                String.format(
-                        "hibernate_cache_query_hit_ratio %.4f\n", stats.getQueryCacheHitRatio()));
-        sb.append(
-                String.format("hibernate_sessions_opened_total %d\n", stats.getSessionOpenCount()));
-        sb.append(
-                String.format(
-                        "hibernate_sessions_closed_total %d\n", stats.getSessionCloseCount()));
-        sb.append(String.format("hibernate_transactions_total %d\n", stats.getTransactionCount()));
-        sb.append(
-                String.format("hibernate_entities_loaded_total %d\n", stats.getEntityLoadCount()));
-        sb.append(
-                String.format(
-                        "hibernate_entities_fetched_total %d\n", stats.getEntityFetchCount()));
-
-        return sb.toString();
+        // Буфер переиспользуется между вызовами, форматирование идет без String.format
+        synchronized (metricsWriter) {
+            PrometheusWriter out = metricsWriter.reset();
+            out.sample("hibernate_cache_l2_hits_total").value(stats.getL2CacheHitCount());
+            out.sample("hibernate_cache_l2_misses_total").value(stats.getL2CacheMissCount());
+            out.sample("hibernate_cache_l2_puts_total").value(stats.getL2CachePutCount());
+            out.sample("hibernate_cache_l2_hit_ratio").value(stats.getL2CacheHitRatio());
+            out.sample("hibernate_cache_query_hits_total").value(stats.getQueryCacheHitCount());
+            out.sample("hibernate_cache_query_misses_total").value(stats.getQueryCacheMissCount());
+            out.sample("hibernate_cache_query_puts_total").value(stats.getQueryCachePutCount());
+            out.sample("hibernate_cache_query_hit_ratio").value(stats.getQueryCacheHitRatio());
+            out.sample("hibernate_sessions_opened_total").value(stats.getSessionOpenCount());
+            out.sample("hibernate_sessions_closed_total").value(stats.getSessionCloseCount());
+            out.sample("hibernate_transactions_total").value(stats.getTransactionCount());
+            out.sample("hibernate_entities_loaded_total").value(stats.getEntityLoadCount());
+            out.sample("hibernate_entities_fetched_total").value(stats.getEntityFetchCount());
+            return out.toString();
+        }
     }
 }
@@ -0,0 +1,78 @@
+package ru.mentee.power.cache;
+
+import java.util.Collection;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.NaturalIdDataAccess;
+import org.hibernate.cache.spi.entry.CacheEntry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Запись уже сохраненных сущностей прямо в кэш второго уровня (write-through).
+ * Состояние берется из самих объектов через метамодель, без загрузки строк и без
+ * гидратации в сессии: сессия нужна только как контекст операций кэша, одна на пакет.
+ * Объекты должны совпадать с закоммиченными строками, включая сгенерированные ключи.
+ */
+@Slf4j
+final class CachePrimer {
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    CachePrimer(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * @return число записанных сущностей (0, если тип не кэшируется)
+     */
+    int prime(Class<?> entityClass, Collection<?> entities) {
+        EntityPersister persister =
+                sessionFactory
+                        .getRuntimeMetamodels()
+                        .getMappingMetamodel()
+                        .getEntityDescriptor(entityClass);
+        if (!persister.canWriteToCache() || entities.isEmpty()) {
+            return 0;
+        }
+        EntityDataAccess access = persister.getCacheAccessStrategy();
+        NaturalIdDataAccess naturalIdAccess =
+                persister.hasNaturalIdCache() ? persister.getNaturalIdCacheAccessStrategy() : null;
+        int primed = 0;
+        try (Session session = sessionFactory.openSession()) {
+            SharedSessionContractImplementor implementor =
+                    session.unwrap(SharedSessionContractImplementor.class);
+            for (Object entity : entities) {
+                Object id = persister.getIdentifier(entity, implementor);
+                Object version = persister.getVersion(entity);
+                CacheEntry entry =
+                        persister.buildCacheEntry(
+                                entity, persister.getValues(entity), version, implementor);
+                Object key =
+                        access.generateCacheKey(
+                                id, persister, sessionFactory, implementor.getTenantIdentifier());
+                if (access.putFromLoad(
+                        implementor,
+                        key,
+                        persister.getCacheEntryStructure().structure(entry),
+                        version)) {
+                    primed++;
+                }
+                if (naturalIdAccess != null) {
+                    Object naturalId =
+                            persister.getNaturalIdMapping().extractNaturalIdFromEntity(entity);
+                    naturalIdAccess.putFromLoad(
+                            implementor,
+                            naturalIdAccess.generateCacheKey(naturalId, persister, implementor),
+                            id,
+                            null);
+                }
+            }
+        }
+        log.debug("Primed {} of {} {} entries", primed, entities.size(), persister.getEntityName());
+        return primed;
+    }
+}
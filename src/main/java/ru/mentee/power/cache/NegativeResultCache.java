@@ -0,0 +1,284 @@
+package ru.mentee.power.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.metamodel.mapping.NaturalIdMapping;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Кэш отсутствующих строк: ключи (сущность, id) и (сущность, natural id), по которым
+ * поиск недавно ничего не нашел. Повторные запросы по таким ключам не доходят до базы
+ * в течение короткого TTL.
+ *
+ * <p>Записи стоят в очереди в порядке добавления; при общем TTL это и порядок истечения.
+ * Каждый запомненный промах снимает с головы очереди просроченные записи и самые старые
+ * сверх лимита, поэтому размер ограничен, а вытеснение стоит амортизированно O(1).
+ *
+ * <p>Вставка через Hibernate снимает записи после коммита (слушатель
+ * {@link EventType#POST_COMMIT_INSERT}), поэтому новая строка видна сразу. Вставки в обход
+ * Hibernate должны вызывать {@link #invalidate(Class)}: он не обходит записи, а сдвигает
+ * эпоху типа, и записи прежней эпохи при поиске не учитываются. Промах, загруженный
+ * одновременно со вставкой того же типа, не запоминается: это отслеживается поколением типа.
+ */
+@Slf4j
+public final class NegativeResultCache implements PostCommitInsertEventListener, MeterBinder {
+
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<MissingKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<Class<?>, TypeState> types = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private NegativeResultCache(Duration ttl, int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+    }
+
+    public static NegativeResultCache install(SessionFactory sessionFactory) {
+        return install(sessionFactory, DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Создать кэш и зарегистрировать слушатель вставок в SessionFactory.
+     */
+    public static NegativeResultCache install(
+            SessionFactory sessionFactory, Duration ttl, int maxEntries) {
+        NegativeResultCache cache = new NegativeResultCache(ttl, maxEntries);
+        sessionFactory
+                .unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_COMMIT_INSERT, cache);
+        log.debug("Negative result cache installed: ttl {}, max {} entries", ttl, maxEntries);
+        return cache;
+    }
+
+    /**
+     * Поиск по первичному ключу через кэш отсутствующих строк.
+     */
+    public <T> Optional<T> findById(
+            Class<T> entityClass, Object id, Supplier<Optional<T>> loader) {
+        return find(new MissingKey(entityClass, id, false), loader);
+    }
+
+    /**
+     * Поиск по простому natural id через кэш отсутствующих строк.
+     */
+    public <T> Optional<T> findByNaturalId(
+            Class<T> entityClass, Object naturalId, Supplier<Optional<T>> loader) {
+        return find(new MissingKey(entityClass, naturalId, true), loader);
+    }
+
+    /**
+     * Снять все записи типа, например после JDBC-вставки.
+     */
+    public void invalidate(Class<?> entityClass) {
+        TypeState state = state(entityClass);
+        state.epoch.incrementAndGet();
+        state.generation.incrementAndGet();
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Поисков, дошедших до загрузки (в том числе нашедших строку).
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Записей, еще не вытесненных из кэша, включая сброшенные {@link #invalidate(Class)}.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("hibernate.cache.negative.requests", hits, LongAdder::sum)
+                .description("Lookups answered by the negative result cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("hibernate.cache.negative.requests", misses, LongAdder::sum)
+                .description("Lookups that went to the loader")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder(
+                        "hibernate.cache.negative.invalidations", invalidations, LongAdder::sum)
+                .description("Negative result cache invalidations")
+                .register(registry);
+        Gauge.builder("hibernate.cache.negative.size", entries, Map::size)
+                .description("Remembered missing keys")
+                .register(registry);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        EntityPersister persister = event.getPersister();
+        Object naturalId = null;
+        NaturalIdMapping naturalIdMapping = persister.getNaturalIdMapping();
+        if (naturalIdMapping != null) {
+            naturalId = naturalIdMapping.extractNaturalIdFromEntity(event.getEntity());
+        }
+        // Строка нового типа видна и при поиске по его суперклассам
+        for (Class<?> type = persister.getMappedClass();
+                type != null && type != Object.class;
+                type = type.getSuperclass()) {
+            state(type).generation.incrementAndGet();
+            if (entries.remove(new MissingKey(type, event.getId(), false)) != null) {
+                invalidations.increment();
+            }
+            if (naturalId != null
+                    && entries.remove(new MissingKey(type, naturalId, true)) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        // Строка не появилась, записи остаются верными
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return true;
+    }
+
+    private <T> Optional<T> find(MissingKey key, Supplier<Optional<T>> loader) {
+        TypeState state = state(key.entityClass);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt - System.nanoTime() > 0 && entry.epoch == state.epoch.get()) {
+                hits.increment();
+                return Optional.empty();
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        long generation = state.generation.get();
+        long epoch = state.epoch.get();
+        Optional<T> result = loader.get();
+        if (result.isEmpty()) {
+            remember(key, state, generation, epoch);
+        }
+        return result;
+    }
+
+    private void remember(MissingKey key, TypeState state, long generation, long epoch) {
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, now + ttlNanos, epoch);
+        expiryQueue.add(entry);
+        queued.incrementAndGet();
+        entries.put(key, entry);
+        // Вставка во время загрузки: промах мог устареть до того, как его запомнили
+        if (state.generation.get() != generation) {
+            entries.remove(key, entry);
+        }
+        evict(now);
+    }
+
+    /**
+     * Снять с головы очереди просроченные записи и самые старые сверх лимита. Каждая запись
+     * попадает в очередь и уходит из нее один раз.
+     */
+    private void evict(long now) {
+        Entry head;
+        while ((head = expiryQueue.peek()) != null
+                && (head.expiresAt - now <= 0 || queued.get() > maxEntries)) {
+            // При гонке снимется следующая запись, возможно раньше срока: для промахов
+            // это безопасно, лишний раз сходим в базу
+            head = expiryQueue.poll();
+            if (head == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            entries.remove(head.key, head);
+        }
+    }
+
+    private TypeState state(Class<?> entityClass) {
+        return types.computeIfAbsent(entityClass, k -> new TypeState());
+    }
+
+    private static final class MissingKey {
+
+        private final Class<?> entityClass;
+        private final Object value;
+        private final boolean naturalId;
+
+        MissingKey(Class<?> entityClass, Object value, boolean naturalId) {
+            this.entityClass = entityClass;
+            this.value = value;
+            this.naturalId = naturalId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MissingKey other
+                    && entityClass == other.entityClass
+                    && naturalId == other.naturalId
+                    && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * entityClass.hashCode() + value.hashCode())
+                    + Boolean.hashCode(naturalId);
+        }
+    }
+
+    private static final class Entry {
+
+        private final MissingKey key;
+        private final long expiresAt;
+        private final long epoch;
+
+        Entry(MissingKey key, long expiresAt, long epoch) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class TypeState {
+
+        // Любое изменение типа: вставка или инвалидация
+        private final AtomicLong generation = new AtomicLong();
+        // Только инвалидация: записи прежней эпохи недействительны
+        private final AtomicLong epoch = new AtomicLong();
+    }
+}
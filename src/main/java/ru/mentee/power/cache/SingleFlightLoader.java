@@ -0,0 +1,306 @@
+package ru.mentee.power.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+/**
+ * Загрузка сущностей по ключу с защитой от лавины промахов кэша второго уровня.
+ *
+ * <p>Одновременные промахи по одному ключу (сущность, id) объединяются: в базу идет только
+ * первый запрос, остальные ждут его {@link CompletableFuture} и получают его результат.
+ * Если строки нет, ожидавшие сразу возвращают пустой результат без своего запроса;
+ * найденную запись каждый читает из кэша в своей сессии, поэтому получает свой экземпляр
+ * сущности, общие объекты между потоками не передаются. Если загрузка лидера упала,
+ * ожидавшие повторяют поиск один раз, а затем читают из базы сами.
+ *
+ * <p>Для типов, зарегистрированных через {@link #earlyRefresh}, запись обновляется в фоне
+ * до истечения TTL региона по схеме XFetch: при каждом попадании обновление запускается с
+ * вероятностью, растущей к концу TTL пропорционально времени загрузки. Учитываются только
+ * записи, загруженные через этот загрузчик.
+ *
+ * <p>Загрузчик закрывают вместе с фабрикой сессий: {@link #close()} останавливает
+ * собственный исполнитель фоновых обновлений.
+ */
+@Slf4j
+public class SingleFlightLoader implements AutoCloseable {
+
+    public static final double DEFAULT_BETA = 1.0;
+    static final int MAX_TRACKED_KEYS = 100_000;
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final Executor refreshExecutor;
+    private final ExecutorService ownedExecutor;
+    private final Map<Class<?>, Boolean> cacheable = new ConcurrentHashMap<>();
+    private final Map<Class<?>, RefreshPolicy> refreshPolicies = new ConcurrentHashMap<>();
+    // Результат загрузки: id найденной строки или пустой, если ее нет в базе
+    private final Map<EntityKey, CompletableFuture<Optional<Object>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final Map<EntityKey, LoadStamp> stamps = new ConcurrentHashMap<>();
+    private final LongAdder databaseLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+    private volatile boolean closed;
+
+    public SingleFlightLoader(SessionFactory sessionFactory) {
+        this(
+                sessionFactory,
+                Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("l2-refresh-", 0).factory()),
+                true);
+    }
+
+    /**
+     * @param refreshExecutor исполнитель фоновых обновлений; загрузчик его не закрывает
+     */
+    public SingleFlightLoader(SessionFactory sessionFactory, Executor refreshExecutor) {
+        this(sessionFactory, refreshExecutor, false);
+    }
+
+    private SingleFlightLoader(
+            SessionFactory sessionFactory, Executor refreshExecutor, boolean ownsExecutor) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        this.refreshExecutor = refreshExecutor;
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) refreshExecutor : null;
+    }
+
+    /**
+     * Включить раннее обновление для типа с коэффициентом {@link #DEFAULT_BETA}.
+     *
+     * @param ttl TTL региона сущности из ehcache.xml
+     */
+    public SingleFlightLoader earlyRefresh(Class<?> entityClass, Duration ttl) {
+        return earlyRefresh(entityClass, ttl, DEFAULT_BETA);
+    }
+
+    /**
+     * @param beta больше 1 - обновлять раньше, меньше 1 - позже
+     */
+    public SingleFlightLoader earlyRefresh(Class<?> entityClass, Duration ttl, double beta) {
+        refreshPolicies.put(entityClass, new RefreshPolicy(ttl.toNanos(), beta));
+        return this;
+    }
+
+    public <T> Optional<T> findById(Class<T> entityClass, Object id) {
+        return findById(entityClass, id, true);
+    }
+
+    /**
+     * @param retry повторить поиск, если загрузка лидера упала
+     */
+    private <T> Optional<T> findById(Class<T> entityClass, Object id, boolean retry) {
+        if (!isCacheable(entityClass)) {
+            return read(entityClass, id, CacheMode.NORMAL);
+        }
+        EntityKey key = new EntityKey(entityClass, id);
+        if (sessionFactory.getCache().containsEntity(entityClass, id)) {
+            maybeRefreshEarly(key);
+            return read(entityClass, id, CacheMode.NORMAL);
+        }
+
+        CompletableFuture<Optional<Object>> flight = new CompletableFuture<>();
+        CompletableFuture<Optional<Object>> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            if (!retry) {
+                return read(entityClass, id, CacheMode.NORMAL);
+            }
+            coalescedLoads.increment();
+            Optional<Object> found;
+            try {
+                found = leader.join();
+            } catch (CompletionException | CancellationException e) {
+                return findById(entityClass, id, false);
+            }
+            // Строки нет в базе: ответ лидера, без своего запроса
+            return found.isEmpty() ? Optional.empty() : read(entityClass, id, CacheMode.NORMAL);
+        }
+        Optional<T> entity;
+        try {
+            entity = load(key, CacheMode.NORMAL);
+        } catch (RuntimeException | Error e) {
+            land(key, flight, null, e);
+            throw e;
+        }
+        land(key, flight, entity, null);
+        return entity;
+    }
+
+    /**
+     * Загрузок лидером промаха и фоновых обновлений - запросов, которые могли дойти до базы.
+     */
+    public long getDatabaseLoads() {
+        return databaseLoads.sum();
+    }
+
+    /**
+     * Промахов, дождавшихся чужой загрузки вместо своего запроса.
+     */
+    public long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    public long getEarlyRefreshes() {
+        return earlyRefreshes.sum();
+    }
+
+    /**
+     * Остановить собственный исполнитель фоновых обновлений, дождавшись начатых.
+     * Поиск после закрытия работает, но раннее обновление больше не запускается.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownedExecutor != null) {
+            ownedExecutor.close();
+        }
+    }
+
+    private <T> Optional<T> load(EntityKey key, CacheMode cacheMode) {
+        @SuppressWarnings("unchecked")
+        Class<T> entityClass = (Class<T>) key.entityClass;
+        long start = System.nanoTime();
+        Optional<T> entity = read(entityClass, key.id, cacheMode);
+        long elapsed = System.nanoTime() - start;
+        databaseLoads.increment();
+        if (entity.isPresent() && refreshPolicies.containsKey(entityClass)) {
+            // Запись легла в регион не раньше начала загрузки: срок считаем от него
+            if (stamps.size() < MAX_TRACKED_KEYS || stamps.containsKey(key)) {
+                stamps.put(key, new LoadStamp(start, elapsed));
+            }
+        } else {
+            stamps.remove(key);
+        }
+        return entity;
+    }
+
+    /**
+     * Завершить загрузку. Ключ снимается до завершения future, чтобы повторяющие после сбоя
+     * не застали завершенную загрузку.
+     */
+    private void land(
+            EntityKey key,
+            CompletableFuture<Optional<Object>> flight,
+            Optional<?> entity,
+            Throwable failure) {
+        inFlight.remove(key, flight);
+        if (failure != null) {
+            flight.completeExceptionally(failure);
+        } else {
+            flight.complete(entity.isPresent() ? Optional.of(key.id) : Optional.empty());
+        }
+    }
+
+    private void maybeRefreshEarly(EntityKey key) {
+        RefreshPolicy policy = refreshPolicies.get(key.entityClass);
+        LoadStamp stamp = policy != null && !closed ? stamps.get(key) : null;
+        if (stamp == null) {
+            return;
+        }
+        // XFetch: now - delta * beta * ln(rand) >= expiry
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double gap = -stamp.loadNanos * policy.beta * Math.log(random);
+        if (System.nanoTime() + gap < stamp.loadedAt + policy.ttlNanos) {
+            return;
+        }
+        CompletableFuture<Optional<Object>> flight = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, flight) != null) {
+            return;
+        }
+        earlyRefreshes.increment();
+        try {
+            refreshExecutor.execute(
+                    () -> {
+                        try {
+                            // REFRESH: читать из базы и перезаписать запись, сбросив TTL
+                            land(key, flight, load(key, CacheMode.REFRESH), null);
+                        } catch (RuntimeException e) {
+                            land(key, flight, null, e);
+                            log.warn("Early refresh failed for {}#{}", key.entityClass, key.id, e);
+                        } catch (Error e) {
+                            land(key, flight, null, e);
+                            throw e;
+                        }
+                    });
+        } catch (RuntimeException e) {
+            land(key, flight, null, e);
+            log.warn("Early refresh rejected for {}#{}", key.entityClass, key.id, e);
+        }
+    }
+
+    private <T> Optional<T> read(Class<T> entityClass, Object id, CacheMode cacheMode) {
+        try (Session session = sessionFactory.openSession()) {
+            session.setCacheMode(cacheMode);
+            return Optional.ofNullable(session.get(entityClass, id));
+        }
+    }
+
+    private boolean isCacheable(Class<?> entityClass) {
+        return cacheable.computeIfAbsent(
+                entityClass,
+                type ->
+                        sessionFactory
+                                .getRuntimeMetamodels()
+                                .getMappingMetamodel()
+                                .getEntityDescriptor(type)
+                                .canReadFromCache());
+    }
+
+    private static final class EntityKey {
+
+        private final Class<?> entityClass;
+        private final Object id;
+
+        EntityKey(Class<?> entityClass, Object id) {
+            this.entityClass = entityClass;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EntityKey other
+                    && entityClass == other.entityClass
+                    && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityClass.hashCode() + id.hashCode();
+        }
+    }
+
+    private static final class LoadStamp {
+
+        private final long loadedAt;
+        private final long loadNanos;
+
+        LoadStamp(long loadedAt, long loadNanos) {
+            this.loadedAt = loadedAt;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    private static final class RefreshPolicy {
+
+        private final long ttlNanos;
+        private final double beta;
+
+        RefreshPolicy(long ttlNanos, double beta) {
+            this.ttlNanos = ttlNanos;
+            this.beta = beta;
+        }
+    }
+}
@@ -15,6 +15,10 @@ import ru.mentee.power.entity.relationship.OrderItem;
 import ru.mentee.power.entity.relationship.Product;
 import ru.mentee.power.entity.relationship.User;
 import ru.mentee.power.entity.relationship.UserProfile;
+import ru.mentee.power.optimization.AdaptiveFetchPlanner;
+import ru.mentee.power.performance.jfr.JfrEvents;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.SessionMonitoring;
 
 /**
  * Конфигурация Hibernate с настройкой кэширования.
@@ -85,8 +89,8 @@ public class CacheEnabledHibernateConfig {
         settings.put(Environment.SHOW_SQL, String.valueOf(dbConfig.isShowSql()));
         settings.put(Environment.FORMAT_SQL, "true");
 
-        // Настройки кэша второго уровня (только для PostgreSQL)
-        if (!jdbcUrl.startsWith("jdbc:h2:")) {
+        // Настройки кэша второго уровня (для H2 - только если включен явно)
+        if (!jdbcUrl.startsWith("jdbc:h2:") || dbConfig.isSecondLevelCacheOnH2()) {
             settings.put(Environment.USE_SECOND_LEVEL_CACHE, "true");
             settings.put(Environment.USE_QUERY_CACHE, "true");
 
@@ -111,16 +115,36 @@ public class CacheEnabledHibernateConfig {
         settings.put(Environment.BATCH_VERSIONED_DATA, "true");
 
         // Настройки пула соединений
+        String connectionProvider;
         if (!jdbcUrl.startsWith("jdbc:h2:")) {
+            connectionProvider = "org.hibernate.hikaricp.internal.HikariCPConnectionProvider";
+            settings.put(
+                    "hibernate.hikari.minimumIdle", String.valueOf(dbConfig.getMinimumIdle()));
             settings.put(
-                    Environment.CONNECTION_PROVIDER,
-                    "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
-            settings.put("hibernate.hikari.minimumIdle", "5");
-            settings.put("hibernate.hikari.maximumPoolSize", "20");
+                    "hibernate.hikari.maximumPoolSize",
+                    String.valueOf(dbConfig.getMaximumPoolSize()));
         } else {
+            connectionProvider =
+                    "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl";
+            settings.put(Environment.POOL_SIZE, String.valueOf(dbConfig.getMaximumPoolSize()));
+        }
+
+        // Перехват реальных SQL-выражений для мониторинга производительности
+        if (dbConfig.isStatementCaptureEnabled()) {
+            settings.put(CapturingConnectionProvider.DELEGATE_PROVIDER, connectionProvider);
+            settings.put(
+                    CapturingConnectionProvider.EXPLAIN_THRESHOLD_MS,
+                    String.valueOf(dbConfig.getSlowStatementExplainThresholdMs()));
             settings.put(
-                    Environment.CONNECTION_PROVIDER,
-                    "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl");
+                    CapturingConnectionProvider.EXPLAIN_ANALYZE,
+                    String.valueOf(dbConfig.isSlowStatementExplainAnalyze()));
+            connectionProvider = CapturingConnectionProvider.class.getName();
+        }
+        settings.put(Environment.CONNECTION_PROVIDER, connectionProvider);
+
+        // JFR-события сессии, сброса и кэша второго уровня
+        if (dbConfig.isJfrEventsEnabled()) {
+            settings.put(Environment.AUTO_SESSION_EVENTS_LISTENER, JfrEvents.SESSION_LISTENER);
         }
 
         StandardServiceRegistry registry =
@@ -145,6 +169,18 @@ public class CacheEnabledHibernateConfig {
             log.info("SessionFactory создана с поддержкой кэширования");
             logCacheConfiguration(sessionFactory);
 
+            // Адаптивные Entity Graph включаются только явно
+            if (dbConfig.isAdaptiveFetchEnabled()) {
+                AdaptiveFetchPlanner.enable(sessionFactory);
+            }
+            if (dbConfig.isJfrEventsEnabled()) {
+                JfrEvents.install(sessionFactory);
+            }
+            // Потоковый учет загрузок для QueryBudget
+            if (dbConfig.isStatementCaptureEnabled()) {
+                SessionMonitoring.install(sessionFactory);
+            }
+
             return sessionFactory;
 
         } catch (Exception e) {
@@ -1,6 +1,7 @@
 package ru.mentee.power.config;
 
 import lombok.Data;
+import ru.mentee.power.performance.monitoring.PlanCapture;
 
 /**
  * Конфигурация параметров подключения к БД.
@@ -13,4 +14,17 @@ public class DatabaseConfig {
     private String driverClassName = "org.postgresql.Driver";
     private String hbm2ddlAuto = "update";
     private boolean showSql = false;
+    // Размер пула (HikariCP, для H2 - встроенный пул Hibernate); подбирается нагрузочным стендом
+    private int maximumPoolSize = 20;
+    private int minimumIdle = 5;
+    private boolean statementCaptureEnabled = true;
+    // На H2 кэш второго уровня по умолчанию выключен; стенды и тесты кэша включают его явно
+    private boolean secondLevelCacheOnH2 = false;
+    // Порог медленного выражения для фонового EXPLAIN; по умолчанию выключен
+    private long slowStatementExplainThresholdMs = PlanCapture.DISABLED;
+    // EXPLAIN ANALYZE повторно выполняет медленный SELECT на соединении из того же пула
+    private boolean slowStatementExplainAnalyze = false;
+    private boolean adaptiveFetchEnabled = false;
+    // JFR-события слоя данных почти бесплатны, пока запись их не включает
+    private boolean jfrEventsEnabled = true;
 }
@@ -11,6 +11,10 @@ import ru.mentee.power.entity.mp_177.User;
 import ru.mentee.power.entity.mp_178.*;
 import ru.mentee.power.entity.relationship.*;
 import ru.mentee.power.entity.relationship.Employee;
+import ru.mentee.power.optimization.AdaptiveFetchPlanner;
+import ru.mentee.power.performance.jfr.JfrEvents;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.SessionMonitoring;
 
 /**
  * Программная конфигурация Hibernate без XML.
@@ -98,20 +102,40 @@ public class HibernateConfig {
             // settings.put("jakarta.persistence.validation.mode", "callback");
 
             // Настройки пула HikariCP (отключаем для H2 in-memory, используем простой провайдер)
+            String connectionProvider;
             if (!jdbcUrl.startsWith("jdbc:h2:")) {
+                connectionProvider = "org.hibernate.hikaricp.internal.HikariCPConnectionProvider";
                 settings.put(
-                        Environment.CONNECTION_PROVIDER,
-                        "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
-                settings.put("hibernate.hikari.minimumIdle", "5");
-                settings.put("hibernate.hikari.maximumPoolSize", "20");
+                        "hibernate.hikari.minimumIdle", String.valueOf(dbConfig.getMinimumIdle()));
+                settings.put(
+                        "hibernate.hikari.maximumPoolSize",
+                        String.valueOf(dbConfig.getMaximumPoolSize()));
                 settings.put("hibernate.hikari.idleTimeout", "30000");
                 settings.put("hibernate.hikari.connectionTimeout", "20000");
             } else {
                 // Для H2 явно используем стандартный провайдер
                 // (DriverManagerConnectionProviderImpl)
+                connectionProvider =
+                        "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl";
+                settings.put(Environment.POOL_SIZE, String.valueOf(dbConfig.getMaximumPoolSize()));
+            }
+
+            // Перехват реальных SQL-выражений для мониторинга производительности
+            if (dbConfig.isStatementCaptureEnabled()) {
+                settings.put(CapturingConnectionProvider.DELEGATE_PROVIDER, connectionProvider);
                 settings.put(
-                        Environment.CONNECTION_PROVIDER,
-                        "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl");
+                        CapturingConnectionProvider.EXPLAIN_THRESHOLD_MS,
+                        String.valueOf(dbConfig.getSlowStatementExplainThresholdMs()));
+                settings.put(
+                        CapturingConnectionProvider.EXPLAIN_ANALYZE,
+                        String.valueOf(dbConfig.isSlowStatementExplainAnalyze()));
+                connectionProvider = CapturingConnectionProvider.class.getName();
+            }
+            settings.put(Environment.CONNECTION_PROVIDER, connectionProvider);
+
+            // JFR-события сессии, сброса и кэша второго уровня
+            if (dbConfig.isJfrEventsEnabled()) {
+                settings.put(Environment.AUTO_SESSION_EVENTS_LISTENER, JfrEvents.SESSION_LISTENER);
             }
 
             // Кэширование (отключаем для H2, включаем для PostgreSQL)
@@ -183,7 +207,20 @@ public class HibernateConfig {
             configuration.addAnnotatedClass(ru.mentee.power.entity.relationship.Enrollment.class);
             configuration.addAnnotatedClass(ru.mentee.power.entity.relationship.EnrollmentId.class);
 
-            return configuration.buildSessionFactory();
+            SessionFactory sessionFactory = configuration.buildSessionFactory();
+
+            // Адаптивные Entity Graph включаются только явно
+            if (dbConfig.isAdaptiveFetchEnabled()) {
+                AdaptiveFetchPlanner.enable(sessionFactory);
+            }
+            if (dbConfig.isJfrEventsEnabled()) {
+                JfrEvents.install(sessionFactory);
+            }
+            // Потоковый учет загрузок для QueryBudget
+            if (dbConfig.isStatementCaptureEnabled()) {
+                SessionMonitoring.install(sessionFactory);
+            }
+            return sessionFactory;
         } catch (Exception e) {
             log.error("Ошибка создания SessionFactory", e);
             throw new RuntimeException("Не удалось создать SessionFactory", e);
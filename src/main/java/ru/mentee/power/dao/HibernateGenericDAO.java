@@ -6,6 +6,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import ru.mentee.power.cache.NegativeResultCache;
+import ru.mentee.power.cache.SingleFlightLoader;
 import ru.mentee.power.exception.DataAccessException;
 
 /**
@@ -15,10 +17,33 @@ import ru.mentee.power.exception.DataAccessException;
 public class HibernateGenericDAO<T, ID> implements GenericDAO<T, ID> {
     private final SessionFactory sessionFactory;
     private final Class<T> entityClass;
+    private final SingleFlightLoader loader;
+    private final NegativeResultCache negativeCache;
 
     public HibernateGenericDAO(SessionFactory sessionFactory, Class<T> entityClass) {
+        this(sessionFactory, entityClass, null, null);
+    }
+
+    public HibernateGenericDAO(
+            SessionFactory sessionFactory, Class<T> entityClass, SingleFlightLoader loader) {
+        this(sessionFactory, entityClass, loader, null);
+    }
+
+    /**
+     * @param loader загрузчик с объединением промахов кэша для {@link #findById}, может быть
+     *     {@code null}; закрывает его владелец, а не DAO
+     * @param negativeCache кэш отсутствующих id для {@link #findById} и {@link #existsById},
+     *     может быть {@code null}
+     */
+    public HibernateGenericDAO(
+            SessionFactory sessionFactory,
+            Class<T> entityClass,
+            SingleFlightLoader loader,
+            NegativeResultCache negativeCache) {
         this.sessionFactory = sessionFactory;
         this.entityClass = entityClass;
+        this.loader = loader;
+        this.negativeCache = negativeCache;
     }
 
     @Override
@@ -41,15 +66,26 @@ public class HibernateGenericDAO<T, ID> implements GenericDAO<T, ID> {
 
     @Override
     public Optional<T> findById(ID id) {
-        try (Session session = sessionFactory.openSession()) {
-            T entity = session.get(entityClass, id);
-            return Optional.ofNullable(entity);
+        try {
+            if (negativeCache != null) {
+                return negativeCache.findById(entityClass, id, () -> load(id));
+            }
+            return load(id);
         } catch (Exception e) {
             log.error("Ошибка поиска сущности по ID: {}", id, e);
             throw new DataAccessException("Не удалось найти сущность", e);
         }
     }
 
+    private Optional<T> load(ID id) {
+        if (loader != null) {
+            return loader.findById(entityClass, id);
+        }
+        try (Session session = sessionFactory.openSession()) {
+            return Optional.ofNullable(session.get(entityClass, id));
+        }
+    }
+
     @Override
     public List<T> findAll() {
         try (Session session = sessionFactory.openSession()) {
@@ -16,6 +16,7 @@ import ru.mentee.power.entity.relationship.Customer;
 import ru.mentee.power.entity.relationship.Order;
 import ru.mentee.power.entity.relationship.OrderItem;
 import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.optimization.AdaptiveFetchPlanner;
 
 /**
  * DAO с оптимизированными запросами для избежания N+1.
@@ -102,8 +103,10 @@ public class OptimizedOrderDAO {
             // Благодаря @BatchSize(size = 25) на Order.orderItems
             // Hibernate загрузит items батчами по 25, а не по одному
             List<Order> orders =
-                    em.createQuery(
-                                    "FROM RelationshipOrder o WHERE o.orderDate > :date",
+                    AdaptiveFetchPlanner.apply(
+                                    em.createQuery(
+                                            "FROM RelationshipOrder o WHERE o.orderDate > :date",
+                                            Order.class),
                                     Order.class)
                             .setParameter("date", java.time.LocalDateTime.now().minusDays(7))
                             .getResultList();
@@ -129,8 +132,11 @@ public class OptimizedOrderDAO {
             // Благодаря @Fetch(FetchMode.SUBSELECT)
             // Hibernate использует подзапрос для загрузки всех заказов
             List<Customer> customers =
-                    em.createQuery(
-                                    "FROM RelationshipCustomer c WHERE c.email LIKE :pattern",
+                    AdaptiveFetchPlanner.apply(
+                                    em.createQuery(
+                                            "FROM RelationshipCustomer c WHERE c.email LIKE"
+                                                    + " :pattern",
+                                            Customer.class),
                                     Customer.class)
                             .setParameter("pattern", "%@example.com")
                             .getResultList();
@@ -11,6 +11,7 @@ import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Immutable;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 /**
  * Продукт с ManyToMany связью к категориям.
@@ -23,6 +24,7 @@ import org.hibernate.annotations.NaturalId;
         usage = CacheConcurrencyStrategy.READ_ONLY,
         region = "ru.mentee.power.entity.relationship.Product",
         include = "non-lazy")
+@NaturalIdCache // sku -> id, регион ru.mentee.power.entity.relationship.Product##NaturalId
 @Immutable
 @Data
 @NoArgsConstructor
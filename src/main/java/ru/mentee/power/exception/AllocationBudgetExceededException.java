@@ -0,0 +1,20 @@
+package ru.mentee.power.exception;
+
+import ru.mentee.power.performance.AllocationUsage;
+
+/**
+ * Блок кода выделил в куче больше байт, чем разрешает бюджет.
+ */
+public class AllocationBudgetExceededException extends RuntimeException {
+
+    private final transient AllocationUsage usage;
+
+    public AllocationBudgetExceededException(AllocationUsage usage) {
+        super(usage.describe());
+        this.usage = usage;
+    }
+
+    public AllocationUsage getUsage() {
+        return usage;
+    }
+}
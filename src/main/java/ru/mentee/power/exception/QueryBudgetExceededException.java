@@ -0,0 +1,20 @@
+package ru.mentee.power.exception;
+
+import ru.mentee.power.performance.QueryBudgetUsage;
+
+/**
+ * Блок кода выполнил больше SQL-выражений или загрузок, чем разрешает бюджет.
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+
+    private final transient QueryBudgetUsage usage;
+
+    public QueryBudgetExceededException(QueryBudgetUsage usage) {
+        super(usage.describe());
+        this.usage = usage;
+    }
+
+    public QueryBudgetUsage getUsage() {
+        return usage;
+    }
+}
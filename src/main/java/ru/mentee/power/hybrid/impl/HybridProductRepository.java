@@ -4,14 +4,22 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.sql.DataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import ru.mentee.power.cache.CacheManager;
+import ru.mentee.power.cache.CacheManagerImpl;
+import ru.mentee.power.cache.NegativeResultCache;
+import ru.mentee.power.cache.SingleFlightLoader;
 import ru.mentee.power.dto.Page;
 import ru.mentee.power.dto.Pageable;
 import ru.mentee.power.dto.SearchCriteria;
@@ -21,16 +29,72 @@ import ru.mentee.power.hybrid.TechnologyChoice;
 
 /**
  * Гибридный репозиторий для продуктов.
+ * JDBC-изменения не проходят через Hibernate, поэтому репозиторий сам поддерживает кэш
+ * второго уровня: из региона удаляются только затронутые ключи, кэшированные запросы
+ * по таблице {@code products} инвалидируются.
  */
 @Slf4j
 public class HybridProductRepository implements HybridRepository<Product, Long> {
 
+    private static final String PRODUCT_REGION = "ru.mentee.power.entity.relationship.Product";
+    private static final String PRODUCTS_TABLE = "products";
+
+    // UPDATE/DELETE по таблице товаров, для которых можно вернуть затронутые ключи
+    private static final Pattern PRODUCT_DML =
+            Pattern.compile(
+                    "^\\s*(?:(UPDATE)|DELETE\\s+FROM)\\s+products\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RETURNING =
+            Pattern.compile("\\bRETURNING\\b", Pattern.CASE_INSENSITIVE);
+    // Упоминание natural id в UPDATE, в том числе в WHERE: лишняя очистка региона
+    // natural id безопаснее устаревшей ссылки SKU -> id
+    private static final Pattern SKU = Pattern.compile("\\bsku\\b", Pattern.CASE_INSENSITIVE);
+
     private final SessionFactory sessionFactory;
     private final DataSource dataSource;
+    private final CacheManager cacheManager;
+    private final boolean primeCacheOnInsert;
+    private final SingleFlightLoader loader;
+    private final NegativeResultCache negativeCache;
 
     public HybridProductRepository(SessionFactory sessionFactory, DataSource dataSource) {
+        this(sessionFactory, dataSource, false, null);
+    }
+
+    public HybridProductRepository(
+            SessionFactory sessionFactory, DataSource dataSource, boolean primeCacheOnInsert) {
+        this(sessionFactory, dataSource, primeCacheOnInsert, null);
+    }
+
+    /**
+     * @param primeCacheOnInsert после {@link #bulkInsert} записывать вставленные товары в
+     *     регион кэша и natural id cache, чтобы каталог был теплым сразу после импорта
+     * @param loader загрузчик с объединением промахов кэша для {@link #findById}, может быть
+     *     {@code null}; закрывает его владелец, а не репозиторий
+     */
+    public HybridProductRepository(
+            SessionFactory sessionFactory,
+            DataSource dataSource,
+            boolean primeCacheOnInsert,
+            SingleFlightLoader loader) {
+        this(sessionFactory, dataSource, primeCacheOnInsert, loader, null);
+    }
+
+    /**
+     * @param negativeCache кэш отсутствующих id и SKU для {@link #findById} и
+     *     {@link #findBySku}, может быть {@code null}; JDBC-методы сбрасывают его сами
+     */
+    public HybridProductRepository(
+            SessionFactory sessionFactory,
+            DataSource dataSource,
+            boolean primeCacheOnInsert,
+            SingleFlightLoader loader,
+            NegativeResultCache negativeCache) {
         this.sessionFactory = sessionFactory;
         this.dataSource = dataSource;
+        this.cacheManager = new CacheManagerImpl(sessionFactory);
+        this.primeCacheOnInsert = primeCacheOnInsert;
+        this.loader = loader;
+        this.negativeCache = negativeCache;
     }
 
     // ========== Hibernate-based методы ==========
@@ -56,11 +120,37 @@ public class HybridProductRepository implements HybridRepository<Product, Long>
 
     @Override
     public Optional<Product> findById(Long id) {
+        if (negativeCache != null) {
+            return negativeCache.findById(Product.class, id, () -> load(id));
+        }
+        return load(id);
+    }
+
+    /**
+     * Поиск товара по natural id (SKU) через natural id cache.
+     */
+    public Optional<Product> findBySku(String sku) {
+        if (negativeCache != null) {
+            return negativeCache.findByNaturalId(Product.class, sku, () -> loadBySku(sku));
+        }
+        return loadBySku(sku);
+    }
+
+    private Optional<Product> load(Long id) {
+        if (loader != null) {
+            return loader.findById(Product.class, id);
+        }
         try (Session session = sessionFactory.openSession()) {
             return Optional.ofNullable(session.get(Product.class, id));
         }
     }
 
+    private Optional<Product> loadBySku(String sku) {
+        try (Session session = sessionFactory.openSession()) {
+            return session.bySimpleNaturalId(Product.class).loadOptional(sku);
+        }
+    }
+
     @Override
     public List<Product> findAll() {
         try (Session session = sessionFactory.openSession()) {
@@ -84,21 +174,32 @@ public class HybridProductRepository implements HybridRepository<Product, Long>
 
     // ========== JDBC-based методы ==========
 
+    /**
+     * Пакетная вставка товаров через JDBC.
+     * В режиме прогрева кэша объектам присваиваются сгенерированные ключи и время
+     * создания, а после коммита они записываются в кэш второго уровня.
+     */
     @Override
     public void bulkInsert(List<Product> products) {
         String sql =
                 """
                 INSERT INTO products (sku, name, description, price, stock_quantity, created_at)
-                VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+                VALUES (?, ?, ?, ?, ?, ?)
                 """;
+        // Одно время на пакет вместо CURRENT_TIMESTAMP: его же получит запись в кэше
+        LocalDateTime batchTime = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
 
         Connection conn = null;
         PreparedStatement ps = null;
         try {
             conn = dataSource.getConnection();
             conn.setAutoCommit(false);
-            ps = conn.prepareStatement(sql);
+            ps =
+                    primeCacheOnInsert
+                            ? conn.prepareStatement(sql, new String[] {"id"})
+                            : conn.prepareStatement(sql);
 
+            int keyed = 0;
             for (int i = 0; i < products.size(); i++) {
                 Product product = products.get(i);
                 ps.setString(1, product.getSku());
@@ -106,17 +207,22 @@ public class HybridProductRepository implements HybridRepository<Product, Long>
                 ps.setString(3, product.getDescription());
                 ps.setBigDecimal(4, product.getPrice());
                 ps.setObject(5, product.getStockQuantity());
+                ps.setObject(
+                        6,
+                        product.getCreatedAt() != null ? product.getCreatedAt() : batchTime);
                 ps.addBatch();
 
                 // Execute batch every 1000 records
                 if ((i + 1) % 1000 == 0) {
                     ps.executeBatch();
+                    keyed = assignKeys(ps, products, keyed);
                     ps.clearBatch();
                 }
             }
 
             // Execute remaining
             ps.executeBatch();
+            assignKeys(ps, products, keyed);
             conn.commit();
         } catch (SQLException e) {
             if (conn != null) {
@@ -145,27 +251,127 @@ public class HybridProductRepository implements HybridRepository<Product, Long>
             }
         }
 
-        // Инвалидируем кэш после bulk операции
-        sessionFactory.getCache().evictRegion("ru.mentee.power.entity.relationship.Product");
+        // Новых ключей в регионе нет, устаревают только кэшированные запросы
+        cacheManager.invalidateQuerySpaces(PRODUCTS_TABLE);
+        // Вставка мимо Hibernate не вызывает слушатель вставок
+        invalidateNegativeCache();
+        if (primeCacheOnInsert) {
+            for (Product product : products) {
+                if (product.getCreatedAt() == null) {
+                    product.setCreatedAt(batchTime);
+                }
+            }
+            cacheManager.primeEntities(Product.class, products);
+        }
     }
 
+    private void invalidateNegativeCache() {
+        if (negativeCache != null) {
+            negativeCache.invalidate(Product.class);
+        }
+    }
+
+    /**
+     * Присвоить сгенерированные ключи выполненного пакета товарам начиная с {@code from}.
+     *
+     * @return индекс первого товара без ключа
+     */
+    private int assignKeys(PreparedStatement ps, List<Product> products, int from)
+            throws SQLException {
+        if (!primeCacheOnInsert) {
+            return from;
+        }
+        int next = from;
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            while (keys.next()) {
+                products.get(next++).setId(keys.getLong(1));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Выполнить UPDATE/DELETE и инвалидировать кэш только по затронутым ключам.
+     * Для {@code UPDATE products}/{@code DELETE FROM products} ключи и SKU возвращает сам
+     * оператор: {@code RETURNING} в PostgreSQL, {@code FINAL TABLE}/{@code OLD TABLE}
+     * в H2. Ссылки natural id удаляются по этим SKU; если UPDATE может менять SKU,
+     * регион natural id очищается целиком. Для остальных выражений и СУБД регионы товаров
+     * очищаются целиком.
+     *
+     * @return число затронутых строк
+     */
     @Override
     public int bulkUpdate(String updateQuery, Object... params) {
-        try (Connection conn = dataSource.getConnection();
-                PreparedStatement ps = conn.prepareStatement(updateQuery)) {
+        try (Connection conn = dataSource.getConnection()) {
+            String keyQuery = keyReturningQuery(conn, updateQuery);
+            if (keyQuery == null) {
+                int updated;
+                try (PreparedStatement ps = conn.prepareStatement(updateQuery)) {
+                    bind(ps, params);
+                    updated = ps.executeUpdate();
+                }
+                sessionFactory.getCache().evictRegion(PRODUCT_REGION);
+                sessionFactory.getCache().evictNaturalIdData(Product.class);
+                cacheManager.invalidateQuerySpaces(PRODUCTS_TABLE);
+                invalidateNegativeCache();
+                return updated;
+            }
 
-            for (int i = 0; i < params.length; i++) {
-                ps.setObject(i + 1, params[i]);
+            List<Long> ids = new ArrayList<>();
+            List<String> skus = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(keyQuery)) {
+                bind(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                        skus.add(rs.getString(2));
+                    }
+                }
             }
+            // Возвращенный SKU совпадает со старым, только если UPDATE его не трогает
+            boolean skuChanged = isUpdate(updateQuery) && SKU.matcher(updateQuery).find();
+            cacheManager.invalidateEntities(Product.class, ids, skuChanged ? null : skus);
+            cacheManager.invalidateQuerySpaces(PRODUCTS_TABLE);
+            // UPDATE может выдать товару SKU, запомненный как отсутствующий
+            invalidateNegativeCache();
+            log.debug("Bulk update touched {} products", ids.size());
+            return ids.size();
+        } catch (SQLException e) {
+            throw new RuntimeException("Bulk update failed", e);
+        }
+    }
 
-            int updated = ps.executeUpdate();
+    /**
+     * Вариант выражения, возвращающий ключи затронутых строк, или {@code null}.
+     */
+    private static String keyReturningQuery(Connection conn, String updateQuery)
+            throws SQLException {
+        String sql = updateQuery.strip();
+        if (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).strip();
+        }
+        Matcher dml = PRODUCT_DML.matcher(sql);
+        if (!dml.find() || RETURNING.matcher(sql).find()) {
+            return null;
+        }
+        boolean update = dml.group(1) != null;
+        return switch (conn.getMetaData().getDatabaseProductName()) {
+            case "PostgreSQL" -> sql + " RETURNING id, sku";
+            // Delta-таблица H2: ключи того же выражения, без отдельного SELECT и гонки с ним
+            case "H2" ->
+                    "SELECT id, sku FROM " + (update ? "FINAL" : "OLD") + " TABLE (" + sql + ")";
+            default -> null;
+        };
+    }
 
-            // Инвалидируем кэш после bulk операции
-            sessionFactory.getCache().evictRegion("ru.mentee.power.entity.relationship.Product");
+    private static boolean isUpdate(String sql) {
+        Matcher dml = PRODUCT_DML.matcher(sql);
+        return dml.find() && dml.group(1) != null;
+    }
 
-            return updated;
-        } catch (SQLException e) {
-            throw new RuntimeException("Bulk update failed", e);
+    private static void bind(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
         }
     }
 
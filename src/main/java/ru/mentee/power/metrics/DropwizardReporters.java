@@ -0,0 +1,56 @@
+package ru.mentee.power.metrics;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.CsvReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодические снимки Dropwizard-метрик на локальный диск или в консоль.
+ * Частота - в операциях в секунду, длительности - в миллисекундах.
+ * Возвращенный репортер уже запущен; {@link ScheduledReporter#close()} останавливает его.
+ */
+public final class DropwizardReporters {
+
+    private DropwizardReporters() {}
+
+    /**
+     * CSV-файл на метрику в каталоге; каждый снимок добавляет строку.
+     */
+    public static ScheduledReporter csv(
+            MetricRegistry registry, Path directory, long period, TimeUnit unit) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create metrics directory " + directory, e);
+        }
+        CsvReporter reporter =
+                CsvReporter.forRegistry(registry)
+                        .formatFor(Locale.ROOT)
+                        .convertRatesTo(TimeUnit.SECONDS)
+                        .convertDurationsTo(TimeUnit.MILLISECONDS)
+                        .build(directory.toFile());
+        reporter.start(period, unit);
+        return reporter;
+    }
+
+    public static ScheduledReporter console(
+            MetricRegistry registry, PrintStream output, long period, TimeUnit unit) {
+        ConsoleReporter reporter =
+                ConsoleReporter.forRegistry(registry)
+                        .outputTo(output)
+                        .formattedFor(Locale.ROOT)
+                        .convertRatesTo(TimeUnit.SECONDS)
+                        .convertDurationsTo(TimeUnit.MILLISECONDS)
+                        .build();
+        reporter.start(period, unit);
+        return reporter;
+    }
+}
@@ -0,0 +1,394 @@
+package ru.mentee.power.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import ru.mentee.power.performance.ConcurrentHistogram;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.SqlFingerprint;
+
+/**
+ * Метрики Micrometer для Hibernate Statistics и регионов кэша второго уровня.
+ * Счетчики регистрируются как function counter/gauge: значения читаются из Statistics
+ * только при снятии метрик, запросы приложения ничего дополнительно не делают.
+ *
+ * <p>Задержки перехваченных SQL-выражений копятся в {@link ConcurrentHistogram} по основной
+ * таблице (не больше {@value #MAX_TABLES} таблиц) и публикуются как function timer плюс
+ * перцентили p50/p95/p99. Для этого биндер подписывается на общий приемник выражений
+ * ({@link StatementMetricsSink}) провайдера перехвата своей SessionFactory и отписывается
+ * в {@link #close()}: выражения других SessionFactory под его метку не попадают.
+ * Без перехвата выражений гистограммы задержек не создаются.
+ *
+ * <p>Конструктор включает Hibernate Statistics этой SessionFactory, если они выключены
+ * ({@code hibernate.generate_statistics}): без них все счетчики нулевые. Включение действует
+ * на всю SessionFactory и остается после {@link #close()}.
+ */
+@Slf4j
+public class HibernateMeterBinder implements MeterBinder, AutoCloseable {
+
+    static final int MAX_TABLES = 64;
+    private static final String OTHER_TABLE = "other";
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final Statistics statistics;
+    private final Tags tags;
+    private final CapturingConnectionProvider capturing;
+    private final Map<String, ConcurrentHistogram> latencies = new ConcurrentHashMap<>();
+    private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+    private final StatementMetricsSink.Subscriber latencyListener = this::recordLatency;
+
+    public HibernateMeterBinder(SessionFactory sessionFactory, String sessionFactoryName) {
+        this(sessionFactory, sessionFactoryName, Tags.empty(), true);
+    }
+
+    /**
+     * Создать биндер; включает Hibernate Statistics SessionFactory, если они выключены.
+     *
+     * @param captureLatency собирать гистограммы задержек из слоя перехвата JDBC
+     */
+    public HibernateMeterBinder(
+            SessionFactory sessionFactory,
+            String sessionFactoryName,
+            Iterable<Tag> tags,
+            boolean captureLatency) {
+        this.statistics = sessionFactory.getStatistics();
+        this.tags = Tags.concat(tags, "sessionFactory", sessionFactoryName);
+        this.capturing =
+                captureLatency ? CapturingConnectionProvider.of(sessionFactory) : null;
+        if (captureLatency && capturing == null) {
+            log.warn(
+                    "Statement capture is disabled for {}, latency is not recorded",
+                    sessionFactoryName);
+        }
+        if (!statistics.isStatisticsEnabled()) {
+            // HibernateConfig не включает generate_statistics, без этого все счетчики нулевые
+            log.info("Enabling Hibernate statistics for {}", sessionFactoryName);
+            statistics.setStatisticsEnabled(true);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindSessions(registry);
+        bindEntities(registry);
+        bindCollections(registry);
+        bindQueries(registry);
+        bindSecondLevelCache(registry);
+
+        if (capturing != null) {
+            registries.add(registry);
+            latencies.forEach((table, histogram) -> bindLatency(registry, table, histogram));
+            if (registries.size() == 1) {
+                StatementMetricsSink.subscribe(capturing, latencyListener);
+            }
+        }
+    }
+
+    /**
+     * Прекратить сбор задержек; уже зарегистрированные метры остаются в реестрах.
+     */
+    @Override
+    public void close() {
+        if (capturing != null) {
+            StatementMetricsSink.unsubscribe(capturing, latencyListener);
+        }
+        registries.clear();
+    }
+
+    private void bindSessions(MeterRegistry registry) {
+        counter(
+                registry,
+                "hibernate.sessions.open",
+                "Sessions opened",
+                Statistics::getSessionOpenCount);
+        counter(
+                registry,
+                "hibernate.sessions.closed",
+                "Sessions closed",
+                Statistics::getSessionCloseCount);
+        counter(
+                registry,
+                "hibernate.transactions",
+                "Transactions that completed successfully",
+                Tags.of("result", "success"),
+                Statistics::getSuccessfulTransactionCount);
+        counter(
+                registry,
+                "hibernate.transactions",
+                "Transactions that failed",
+                Tags.of("result", "failure"),
+                s -> s.getTransactionCount() - s.getSuccessfulTransactionCount());
+        counter(registry, "hibernate.flushes", "Session flushes", Statistics::getFlushCount);
+        counter(
+                registry,
+                "hibernate.connections.obtained",
+                "JDBC connections obtained",
+                Statistics::getConnectCount);
+        counter(
+                registry,
+                "hibernate.statements",
+                "JDBC statements prepared",
+                Tags.of("status", "prepared"),
+                Statistics::getPrepareStatementCount);
+        counter(
+                registry,
+                "hibernate.statements",
+                "JDBC statements closed",
+                Tags.of("status", "closed"),
+                Statistics::getCloseStatementCount);
+        counter(
+                registry,
+                "hibernate.optimistic.failures",
+                "StaleObjectStateExceptions",
+                Statistics::getOptimisticFailureCount);
+    }
+
+    private void bindEntities(MeterRegistry registry) {
+        counter(
+                registry,
+                "hibernate.entities.loads",
+                "Entities loaded",
+                Statistics::getEntityLoadCount);
+        counter(
+                registry,
+                "hibernate.entities.fetches",
+                "Entities fetched from the database by lazy loading",
+                Statistics::getEntityFetchCount);
+        counter(
+                registry,
+                "hibernate.entities.inserts",
+                "Entities inserted",
+                Statistics::getEntityInsertCount);
+        counter(
+                registry,
+                "hibernate.entities.updates",
+                "Entities updated",
+                Statistics::getEntityUpdateCount);
+        counter(
+                registry,
+                "hibernate.entities.deletes",
+                "Entities deleted",
+                Statistics::getEntityDeleteCount);
+    }
+
+    private void bindCollections(MeterRegistry registry) {
+        counter(
+                registry,
+                "hibernate.collections.loads",
+                "Collections loaded",
+                Statistics::getCollectionLoadCount);
+        counter(
+                registry,
+                "hibernate.collections.fetches",
+                "Collections fetched from the database by lazy loading",
+                Statistics::getCollectionFetchCount);
+        counter(
+                registry,
+                "hibernate.collections.updates",
+                "Collections updated",
+                Statistics::getCollectionUpdateCount);
+        counter(
+                registry,
+                "hibernate.collections.recreates",
+                "Collections recreated",
+                Statistics::getCollectionRecreateCount);
+        counter(
+                registry,
+                "hibernate.collections.removes",
+                "Collections removed",
+                Statistics::getCollectionRemoveCount);
+    }
+
+    private void bindQueries(MeterRegistry registry) {
+        counter(
+                registry,
+                "hibernate.query.executions",
+                "Queries executed",
+                Statistics::getQueryExecutionCount);
+        Gauge.builder(
+                        "hibernate.query.executions.max",
+                        statistics,
+                        Statistics::getQueryExecutionMaxTime)
+                .tags(tags)
+                .description("Slowest query execution time")
+                .baseUnit("milliseconds")
+                .register(registry);
+        counter(
+                registry,
+                "hibernate.cache.query.requests",
+                "Query cache hits",
+                Tags.of("result", "hit"),
+                Statistics::getQueryCacheHitCount);
+        counter(
+                registry,
+                "hibernate.cache.query.requests",
+                "Query cache misses",
+                Tags.of("result", "miss"),
+                Statistics::getQueryCacheMissCount);
+        counter(
+                registry,
+                "hibernate.cache.query.puts",
+                "Query cache puts",
+                Statistics::getQueryCachePutCount);
+        counter(
+                registry,
+                "hibernate.cache.query.plan",
+                "Query plan cache hits",
+                Tags.of("result", "hit"),
+                Statistics::getQueryPlanCacheHitCount);
+        counter(
+                registry,
+                "hibernate.cache.query.plan",
+                "Query plan cache misses",
+                Tags.of("result", "miss"),
+                Statistics::getQueryPlanCacheMissCount);
+    }
+
+    private void bindSecondLevelCache(MeterRegistry registry) {
+        counter(
+                registry,
+                "hibernate.cache.natural.id.requests",
+                "Natural id cache hits",
+                Tags.of("result", "hit"),
+                Statistics::getNaturalIdCacheHitCount);
+        counter(
+                registry,
+                "hibernate.cache.natural.id.requests",
+                "Natural id cache misses",
+                Tags.of("result", "miss"),
+                Statistics::getNaturalIdCacheMissCount);
+
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            Tags regionTags = Tags.of("region", region);
+            regionCounter(
+                    registry,
+                    "hibernate.second.level.cache.requests",
+                    "Second level cache hits",
+                    regionTags.and("result", "hit"),
+                    region,
+                    CacheRegionStatistics::getHitCount);
+            regionCounter(
+                    registry,
+                    "hibernate.second.level.cache.requests",
+                    "Second level cache misses",
+                    regionTags.and("result", "miss"),
+                    region,
+                    CacheRegionStatistics::getMissCount);
+            regionCounter(
+                    registry,
+                    "hibernate.second.level.cache.puts",
+                    "Second level cache puts",
+                    regionTags,
+                    region,
+                    CacheRegionStatistics::getPutCount);
+            Gauge.builder(
+                            "hibernate.second.level.cache.size",
+                            statistics,
+                            s ->
+                                    regionValue(
+                                            s,
+                                            region,
+                                            CacheRegionStatistics::getElementCountInMemory))
+                    .tags(tags.and(regionTags))
+                    .description("Entries of the region in memory")
+                    .register(registry);
+        }
+    }
+
+    private void recordLatency(SqlFingerprint fingerprint, CapturedStatement statement) {
+        String table = fingerprint.getTable();
+        ConcurrentHistogram histogram = latencies.get(table);
+        if (histogram == null) {
+            // Ограничиваем число серий: лишние таблицы попадают в общую корзину
+            String key = latencies.size() < MAX_TABLES ? table : OTHER_TABLE;
+            histogram =
+                    latencies.computeIfAbsent(
+                            key,
+                            k -> {
+                                ConcurrentHistogram created = new ConcurrentHistogram();
+                                registries.forEach(r -> bindLatency(r, k, created));
+                                return created;
+                            });
+        }
+        histogram.record(statement.getDurationNanos());
+    }
+
+    private void bindLatency(MeterRegistry registry, String table, ConcurrentHistogram histogram) {
+        Tags tableTags = tags.and("table", table);
+        FunctionTimer.builder(
+                        "hibernate.query.latency",
+                        histogram,
+                        ConcurrentHistogram::getCount,
+                        ConcurrentHistogram::getSum,
+                        TimeUnit.NANOSECONDS)
+                .tags(tableTags)
+                .description("Captured JDBC statement latency")
+                .register(registry);
+        for (double quantile : QUANTILES) {
+            Gauge.builder(
+                            "hibernate.query.latency.percentile",
+                            histogram,
+                            h -> h.getValueAtPercentile(quantile * 100) / 1_000_000.0)
+                    .tags(tableTags.and("quantile", String.valueOf(quantile)))
+                    .description("Captured JDBC statement latency percentile")
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+    }
+
+    private void counter(
+            MeterRegistry registry,
+            String name,
+            String description,
+            ToDoubleFunction<Statistics> function) {
+        counter(registry, name, description, Tags.empty(), function);
+    }
+
+    private void counter(
+            MeterRegistry registry,
+            String name,
+            String description,
+            Tags extraTags,
+            ToDoubleFunction<Statistics> function) {
+        FunctionCounter.builder(name, statistics, function)
+                .tags(tags.and(extraTags))
+                .description(description)
+                .register(registry);
+    }
+
+    private void regionCounter(
+            MeterRegistry registry,
+            String name,
+            String description,
+            Tags regionTags,
+            String region,
+            ToDoubleFunction<CacheRegionStatistics> function) {
+        FunctionCounter.builder(name, statistics, s -> regionValue(s, region, function))
+                .tags(tags.and(regionTags))
+                .description(description)
+                .register(registry);
+    }
+
+    private static double regionValue(
+            Statistics statistics,
+            String region,
+            ToDoubleFunction<CacheRegionStatistics> function) {
+        CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+        return regionStatistics != null ? function.applyAsDouble(regionStatistics) : 0;
+    }
+}
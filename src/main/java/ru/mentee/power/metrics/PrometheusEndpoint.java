@@ -0,0 +1,370 @@
+package ru.mentee.power.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.SqlFingerprint;
+
+/**
+ * Встроенная HTTP-точка {@value #PATH} для Prometheus на JDK HttpServer.
+ * Отдает счетчики Hibernate Statistics, метрики каждого региона кэша второго уровня,
+ * задержки по отпечаткам SQL и состояние пула HikariCP с метками.
+ *
+ * <p>Снятие рассчитано на частый опрос: метрики пишутся через {@link PrometheusWriter}
+ * в один переиспользуемый буфер, имена регионов читаются один раз при создании, а серии
+ * запросов лежат в массиве фиксированного размера. Отпечатков не больше
+ * {@value #MAX_FINGERPRINTS}, остальные выражения попадают в серию "other".
+ * Задержки приходят из общего с {@link HibernateMeterBinder} приемника выражений
+ * ({@link StatementMetricsSink}) провайдера перехвата только этой SessionFactory; отпечаток
+ * выражения вычисляется один раз на оба получателя. Без перехвата серий запросов нет.
+ *
+ * <p>Конструктор включает Hibernate Statistics этой SessionFactory, если они выключены:
+ * включение действует на всю SessionFactory и остается после {@link #close()}.
+ */
+@Slf4j
+public final class PrometheusEndpoint implements AutoCloseable {
+
+    public static final String PATH = "/metrics";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final int MAX_FINGERPRINTS = 256;
+    private static final int MAX_SQL_LABEL_LENGTH = 200;
+    private static final String SESSION_FACTORY_LABEL = "sessionFactory";
+
+    private static final StatisticsCounter[] COUNTERS = {
+        new StatisticsCounter("hibernate_sessions_opened_total", Statistics::getSessionOpenCount),
+        new StatisticsCounter("hibernate_sessions_closed_total", Statistics::getSessionCloseCount),
+        new StatisticsCounter("hibernate_transactions_total", Statistics::getTransactionCount),
+        new StatisticsCounter("hibernate_flushes_total", Statistics::getFlushCount),
+        new StatisticsCounter("hibernate_entities_loaded_total", Statistics::getEntityLoadCount),
+        new StatisticsCounter("hibernate_entities_fetched_total", Statistics::getEntityFetchCount),
+        new StatisticsCounter(
+                "hibernate_entities_inserted_total", Statistics::getEntityInsertCount),
+        new StatisticsCounter("hibernate_entities_updated_total", Statistics::getEntityUpdateCount),
+        new StatisticsCounter("hibernate_entities_deleted_total", Statistics::getEntityDeleteCount),
+        new StatisticsCounter(
+                "hibernate_cache_query_hits_total", Statistics::getQueryCacheHitCount),
+        new StatisticsCounter(
+                "hibernate_cache_query_misses_total", Statistics::getQueryCacheMissCount),
+        new StatisticsCounter("hibernate_cache_query_puts_total", Statistics::getQueryCachePutCount)
+    };
+
+    private static final RegionMetric[] REGION_METRICS = {
+        new RegionMetric(
+                "hibernate_cache_region_hits_total", "counter", CacheRegionStatistics::getHitCount),
+        new RegionMetric(
+                "hibernate_cache_region_misses_total",
+                "counter",
+                CacheRegionStatistics::getMissCount),
+        new RegionMetric(
+                "hibernate_cache_region_puts_total", "counter", CacheRegionStatistics::getPutCount),
+        new RegionMetric(
+                "hibernate_cache_region_entries",
+                "gauge",
+                CacheRegionStatistics::getElementCountInMemory)
+    };
+
+    private final Statistics statistics;
+    private final String sessionFactoryName;
+    private final String[] regions;
+    private final HikariDataSource dataSource;
+    private final PrometheusWriter writer = new PrometheusWriter();
+    private final QuerySlot[] slots = new QuerySlot[MAX_FINGERPRINTS];
+    private final QuerySlot overflow = new QuerySlot("other", "other", "");
+    private final Map<String, QuerySlot> byFingerprint = new ConcurrentHashMap<>();
+    private final StatementMetricsSink.Subscriber listener = this::record;
+    private final CapturingConnectionProvider capturing;
+    private volatile int slotCount;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PrometheusEndpoint(SessionFactory sessionFactory, String sessionFactoryName) {
+        this.statistics = sessionFactory.getStatistics();
+        this.sessionFactoryName = sessionFactoryName;
+        if (!statistics.isStatisticsEnabled()) {
+            log.info("Enabling Hibernate statistics for {}", sessionFactoryName);
+            statistics.setStatisticsEnabled(true);
+        }
+        // Регионы создаются при построении SessionFactory и дальше не меняются
+        this.regions = statistics.getSecondLevelCacheRegionNames();
+        this.dataSource = hikariDataSource(sessionFactory);
+        this.capturing = CapturingConnectionProvider.of(sessionFactory);
+        if (capturing != null) {
+            StatementMetricsSink.subscribe(capturing, listener);
+        } else {
+            log.warn(
+                    "Statement capture is disabled for {}, query metrics are not recorded",
+                    sessionFactoryName);
+        }
+    }
+
+    /**
+     * Запустить HTTP-сервер; порт 0 выбирает свободный порт.
+     */
+    public synchronized PrometheusEndpoint start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Endpoint is already started");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+        // Один поток: снятия и так сериализуются на общем буфере
+        executor =
+                Executors.newSingleThreadExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "prometheus-endpoint");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        server.setExecutor(executor);
+        server.start();
+        log.info("Prometheus endpoint started on {}{}", server.getAddress(), PATH);
+        return this;
+    }
+
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Endpoint is not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Текущие метрики в текстовом формате Prometheus без HTTP.
+     */
+    public String scrape() {
+        synchronized (writer) {
+            writeMetrics(writer.reset());
+            return writer.toString();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (capturing != null) {
+            StatementMetricsSink.unsubscribe(capturing, listener);
+        }
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            synchronized (writer) {
+                writeMetrics(writer.reset());
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, writer.size());
+                writer.writeTo(exchange.getResponseBody());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void writeMetrics(PrometheusWriter out) {
+        for (StatisticsCounter counter : COUNTERS) {
+            out.type(counter.name, "counter");
+            sample(out, counter.name).value(counter.function.applyAsLong(statistics));
+        }
+        writeRegions(out);
+        writeQueries(out);
+        writePool(out);
+    }
+
+    private void writeRegions(PrometheusWriter out) {
+        for (RegionMetric metric : REGION_METRICS) {
+            out.type(metric.name, metric.type);
+            for (String region : regions) {
+                CacheRegionStatistics regionStatistics =
+                        statistics.getCacheRegionStatistics(region);
+                if (regionStatistics != null) {
+                    sample(out, metric.name)
+                            .label("region", region)
+                            .value(metric.function.applyAsLong(regionStatistics));
+                }
+            }
+        }
+    }
+
+    private void writeQueries(PrometheusWriter out) {
+        int count = slotCount;
+        out.type("hibernate_query_seconds", "summary");
+        for (int i = 0; i < count; i++) {
+            writeLatency(out, slots[i]);
+        }
+        writeLatency(out, overflow);
+        out.type("hibernate_query_rows_total", "counter");
+        for (int i = 0; i < count; i++) {
+            querySample(out, "hibernate_query_rows_total", slots[i])
+                    .value(slots[i].rows.sum());
+        }
+        // Текст запроса отдельной серией, чтобы не повторять длинную метку в каждой метрике
+        out.type("hibernate_query_info", "gauge");
+        for (int i = 0; i < count; i++) {
+            querySample(out, "hibernate_query_info", slots[i]).label("sql", slots[i].sql).value(1);
+        }
+    }
+
+    private void writeLatency(PrometheusWriter out, QuerySlot slot) {
+        long executions = slot.count.sum();
+        if (slot == overflow && executions == 0) {
+            return;
+        }
+        querySample(out, "hibernate_query_seconds_count", slot).value(executions);
+        querySample(out, "hibernate_query_seconds_sum", slot)
+                .value(slot.nanos.sum() / 1_000_000_000.0);
+    }
+
+    private void writePool(PrometheusWriter out) {
+        if (dataSource == null || dataSource.isClosed()) {
+            return;
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return;
+        }
+        String poolName = dataSource.getPoolName();
+        poolGauge(out, "hikaricp_connections_active", poolName, pool.getActiveConnections());
+        poolGauge(out, "hikaricp_connections_idle", poolName, pool.getIdleConnections());
+        poolGauge(out, "hikaricp_connections", poolName, pool.getTotalConnections());
+        poolGauge(
+                out, "hikaricp_connections_pending", poolName, pool.getThreadsAwaitingConnection());
+        poolGauge(out, "hikaricp_connections_max", poolName, dataSource.getMaximumPoolSize());
+    }
+
+    private void poolGauge(PrometheusWriter out, String name, String poolName, long value) {
+        out.type(name, "gauge");
+        sample(out, name).label("pool", poolName).value(value);
+    }
+
+    private PrometheusWriter querySample(PrometheusWriter out, String name, QuerySlot slot) {
+        return sample(out, name).label("fingerprint", slot.id).label("table", slot.table);
+    }
+
+    private PrometheusWriter sample(PrometheusWriter out, String name) {
+        return out.sample(name).label(SESSION_FACTORY_LABEL, sessionFactoryName);
+    }
+
+    private void record(SqlFingerprint fingerprint, CapturedStatement statement) {
+        QuerySlot slot = byFingerprint.get(fingerprint.getFingerprint());
+        if (slot == null) {
+            slot = slotCount < MAX_FINGERPRINTS ? register(fingerprint) : overflow;
+        }
+        slot.count.increment();
+        slot.nanos.add(statement.getDurationNanos());
+        slot.rows.add(statement.getRowCount());
+    }
+
+    /**
+     * Новая серия запроса; блокировка берется только при первом появлении отпечатка.
+     */
+    private synchronized QuerySlot register(SqlFingerprint fingerprint) {
+        String text = fingerprint.getFingerprint();
+        QuerySlot existing = byFingerprint.get(text);
+        if (existing != null) {
+            return existing;
+        }
+        int index = slotCount;
+        if (index == MAX_FINGERPRINTS) {
+            return overflow;
+        }
+        String sql =
+                text.length() > MAX_SQL_LABEL_LENGTH
+                        ? text.substring(0, MAX_SQL_LABEL_LENGTH) + "..."
+                        : text;
+        QuerySlot slot = new QuerySlot(id(text), fingerprint.getTable(), sql);
+        byFingerprint.put(text, slot);
+        slots[index] = slot;
+        // Запись volatile публикует элемент массива для потока снятия
+        slotCount = index + 1;
+        return slot;
+    }
+
+    /**
+     * Стабильный между экземплярами идентификатор отпечатка: 64-битный FNV-1a в hex.
+     */
+    static String id(String fingerprint) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : fingerprint.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        String hex = Long.toHexString(hash);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+    private static HikariDataSource hikariDataSource(SessionFactory sessionFactory) {
+        ConnectionProvider provider =
+                sessionFactory
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getServiceRegistry()
+                        .getService(ConnectionProvider.class);
+        // HikariCPConnectionProvider отдает свой HikariDataSource, DriverManager - нет
+        return provider != null && provider.isUnwrappableAs(HikariDataSource.class)
+                ? provider.unwrap(HikariDataSource.class)
+                : null;
+    }
+
+    private static final class StatisticsCounter {
+
+        private final String name;
+        private final ToLongFunction<Statistics> function;
+
+        StatisticsCounter(String name, ToLongFunction<Statistics> function) {
+            this.name = name;
+            this.function = function;
+        }
+    }
+
+    private static final class RegionMetric {
+
+        private final String name;
+        private final String type;
+        private final ToLongFunction<CacheRegionStatistics> function;
+
+        RegionMetric(String name, String type, ToLongFunction<CacheRegionStatistics> function) {
+            this.name = name;
+            this.type = type;
+            this.function = function;
+        }
+    }
+
+    private static final class QuerySlot {
+
+        private final String id;
+        private final String table;
+        private final String sql;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        QuerySlot(String id, String table, String sql) {
+            this.id = id;
+            this.table = table;
+            this.sql = sql;
+        }
+    }
+}
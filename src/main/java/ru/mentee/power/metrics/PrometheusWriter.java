@@ -0,0 +1,212 @@
+package ru.mentee.power.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Запись метрик в текстовом формате Prometheus (0.0.4) в переиспользуемый байтовый буфер.
+ * Имена, метки и числа пишутся посимвольно, без String.format, StringBuilder и
+ * промежуточных строк, поэтому повторные снятия метрик после прогрева буфера не создают
+ * мусора. Не потокобезопасен: один экземпляр обслуживает одно снятие за раз.
+ *
+ * <pre>
+ * writer.type("hibernate_cache_region_hits_total", "counter");
+ * writer.sample("hibernate_cache_region_hits_total").label("region", region).value(hits);
+ * </pre>
+ */
+public final class PrometheusWriter {
+
+    private static final int DEFAULT_CAPACITY = 16 * 1024;
+    private static final long FRACTION_SCALE = 1_000_000;
+    private static final double MAX_FRACTIONAL = 9e12;
+    private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+    private boolean labelsOpen;
+
+    public PrometheusWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PrometheusWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Начать новое снятие; буфер сохраняется.
+     */
+    public PrometheusWriter reset() {
+        size = 0;
+        labelsOpen = false;
+        return this;
+    }
+
+    /**
+     * Строка "# TYPE name type" перед первой серией метрики.
+     */
+    public PrometheusWriter type(String name, String type) {
+        ascii("# TYPE ");
+        ascii(name);
+        put((byte) ' ');
+        ascii(type);
+        put((byte) '\n');
+        return this;
+    }
+
+    /**
+     * Начать серию; дальше идут {@link #label} и завершающий {@link #value}.
+     */
+    public PrometheusWriter sample(String name) {
+        ascii(name);
+        labelsOpen = false;
+        return this;
+    }
+
+    public PrometheusWriter label(String name, String value) {
+        put(labelsOpen ? (byte) ',' : (byte) '{');
+        labelsOpen = true;
+        ascii(name);
+        put((byte) '=');
+        put((byte) '"');
+        escaped(value);
+        put((byte) '"');
+        return this;
+    }
+
+    public PrometheusWriter value(long value) {
+        closeLabels();
+        number(value);
+        put((byte) '\n');
+        return this;
+    }
+
+    /**
+     * Дробное значение с шестью знаками после точки; очень большие значения пишутся целыми.
+     */
+    public PrometheusWriter value(double value) {
+        closeLabels();
+        if (Double.isNaN(value)) {
+            ascii("NaN");
+        } else if (Double.isInfinite(value)) {
+            ascii(value > 0 ? "+Inf" : "-Inf");
+        } else if (Math.abs(value) >= MAX_FRACTIONAL) {
+            number((long) value);
+        } else {
+            long scaled = Math.round(value * FRACTION_SCALE);
+            if (scaled < 0) {
+                put((byte) '-');
+                scaled = -scaled;
+            }
+            number(scaled / FRACTION_SCALE);
+            put((byte) '.');
+            long fraction = scaled % FRACTION_SCALE;
+            for (long divisor = FRACTION_SCALE / 10; divisor > 0; divisor /= 10) {
+                put(DIGITS[(int) (fraction / divisor % 10)]);
+            }
+        }
+        put((byte) '\n');
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void closeLabels() {
+        if (labelsOpen) {
+            put((byte) '}');
+            labelsOpen = false;
+        }
+        put((byte) ' ');
+    }
+
+    private void number(long value) {
+        if (value == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            put(DIGITS[(int) (value / divisor % 10)]);
+        }
+    }
+
+    /**
+     * Имена метрик и меток - ASCII по спецификации формата.
+     */
+    private void ascii(String text) {
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Значение метки в UTF-8 с экранированием обратной косой черты, кавычки и перевода строки.
+     */
+    private void escaped(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' || c == '"') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c == '\n') {
+                put((byte) '\\');
+                put((byte) 'n');
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | c >> 6));
+                put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put((byte) (0xF0 | codePoint >> 18));
+                put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?');
+            } else {
+                put((byte) (0xE0 | c >> 12));
+                put((byte) (0x80 | c >> 6 & 0x3F));
+                put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void put(byte b) {
+        if (size == buffer.length) {
+            ensureCapacity(1);
+        }
+        buffer[size++] = b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
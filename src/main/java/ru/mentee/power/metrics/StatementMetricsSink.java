@@ -0,0 +1,71 @@
+package ru.mentee.power.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.SqlFingerprint;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+import ru.mentee.power.performance.monitoring.StatementCaptureListener;
+
+/**
+ * Общий приемник перехваченных выражений одной SessionFactory для метрик.
+ * На провайдер перехвата подписан один слушатель, пока есть хотя бы один подписчик:
+ * выражение нормализуется один раз и раздается всем метрикам этой SessionFactory
+ * ({@link HibernateMeterBinder}, {@link PrometheusEndpoint}).
+ */
+final class StatementMetricsSink implements StatementCaptureListener {
+
+    // Приемник не ссылается на провайдер, поэтому закрытая SessionFactory не удерживается
+    private static final Map<CapturingConnectionProvider, StatementMetricsSink> SINKS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private StatementMetricsSink() {}
+
+    static void subscribe(CapturingConnectionProvider provider, Subscriber subscriber) {
+        synchronized (SINKS) {
+            StatementMetricsSink sink = SINKS.get(provider);
+            if (sink == null) {
+                sink = new StatementMetricsSink();
+                SINKS.put(provider, sink);
+                provider.addStatementListener(sink);
+            }
+            sink.subscribers.add(subscriber);
+        }
+    }
+
+    static void unsubscribe(CapturingConnectionProvider provider, Subscriber subscriber) {
+        synchronized (SINKS) {
+            StatementMetricsSink sink = SINKS.get(provider);
+            if (sink == null || !sink.subscribers.remove(subscriber)) {
+                return;
+            }
+            if (sink.subscribers.isEmpty()) {
+                provider.removeStatementListener(sink);
+                SINKS.remove(provider);
+            }
+        }
+    }
+
+    @Override
+    public void onStatement(CapturedStatement statement) {
+        SqlFingerprint fingerprint = SqlFingerprinter.fingerprint(statement.getSql());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.onStatement(fingerprint, statement);
+        }
+    }
+
+    /**
+     * Получатель выражения вместе с уже вычисленным отпечатком.
+     */
+    @FunctionalInterface
+    interface Subscriber {
+
+        void onStatement(SqlFingerprint fingerprint, CapturedStatement statement);
+    }
+}
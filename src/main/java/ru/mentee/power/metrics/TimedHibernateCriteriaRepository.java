@@ -0,0 +1,64 @@
+package ru.mentee.power.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.dto.CustomerStatistics;
+import ru.mentee.power.dto.ProductPriceInfo;
+import ru.mentee.power.dto.ProductSearchCriteria;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.entity.relationship.User;
+import ru.mentee.power.repository.HibernateCriteriaRepository;
+
+/**
+ * {@link HibernateCriteriaRepository}, замеряющий каждый публичный метод таймером и
+ * гистограммой выделений.
+ */
+class TimedHibernateCriteriaRepository extends HibernateCriteriaRepository {
+
+    private final TimedRepositories.MethodTimers timers;
+
+    TimedHibernateCriteriaRepository(SessionFactory sessionFactory, MetricRegistry registry) {
+        super(sessionFactory);
+        this.timers =
+                new TimedRepositories.MethodTimers(
+                        registry, HibernateCriteriaRepository.class.getName());
+    }
+
+    @Override
+    public List<User> findActiveUsersCriteria() {
+        return timers.time("findActiveUsersCriteria", super::findActiveUsersCriteria);
+    }
+
+    @Override
+    public List<Product> findProductsByCriteria(ProductSearchCriteria searchCriteria) {
+        return timers.time(
+                "findProductsByCriteria", () -> super.findProductsByCriteria(searchCriteria));
+    }
+
+    @Override
+    public List<Order> findOrdersWithJoinCriteria(OrderStatus status) {
+        return timers.time(
+                "findOrdersWithJoinCriteria", () -> super.findOrdersWithJoinCriteria(status));
+    }
+
+    @Override
+    public List<CustomerStatistics> getCustomerStatisticsCriteria() {
+        return timers.time("getCustomerStatisticsCriteria", super::getCustomerStatisticsCriteria);
+    }
+
+    @Override
+    public List<Product> findProductsAboveAveragePriceCriteria() {
+        return timers.time(
+                "findProductsAboveAveragePriceCriteria",
+                super::findProductsAboveAveragePriceCriteria);
+    }
+
+    @Override
+    public List<ProductPriceInfo> getProductPriceCategoriesCriteria() {
+        return timers.time(
+                "getProductPriceCategoriesCriteria", super::getProductPriceCategoriesCriteria);
+    }
+}
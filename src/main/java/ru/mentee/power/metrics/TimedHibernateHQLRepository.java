@@ -0,0 +1,78 @@
+package ru.mentee.power.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.dto.CustomerStatistics;
+import ru.mentee.power.dto.Page;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.entity.relationship.User;
+import ru.mentee.power.repository.HibernateHQLRepository;
+
+/**
+ * {@link HibernateHQLRepository}, замеряющий каждый публичный метод таймером и
+ * гистограммой выделений.
+ * У репозитория нет интерфейса, поэтому вместо прокси используется подкласс.
+ */
+class TimedHibernateHQLRepository extends HibernateHQLRepository {
+
+    private final TimedRepositories.MethodTimers timers;
+
+    TimedHibernateHQLRepository(SessionFactory sessionFactory, MetricRegistry registry) {
+        super(sessionFactory);
+        this.timers =
+                new TimedRepositories.MethodTimers(
+                        registry, HibernateHQLRepository.class.getName());
+    }
+
+    @Override
+    public List<User> findActiveUsers() {
+        return timers.time("findActiveUsers", super::findActiveUsers);
+    }
+
+    @Override
+    public List<Product> findProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        return timers.time(
+                "findProductsByPriceRange",
+                () -> super.findProductsByPriceRange(minPrice, maxPrice));
+    }
+
+    @Override
+    public List<Order> findOrdersWithItems() {
+        return timers.time("findOrdersWithItems", super::findOrdersWithItems);
+    }
+
+    @Override
+    public List<CustomerStatistics> getCustomerStatistics() {
+        return timers.time("getCustomerStatistics", super::getCustomerStatistics);
+    }
+
+    @Override
+    public List<Product> findProductsAboveAveragePrice() {
+        return timers.time("findProductsAboveAveragePrice", super::findProductsAboveAveragePrice);
+    }
+
+    @Override
+    public List<Object[]> getProductPriceCategories() {
+        return timers.time("getProductPriceCategories", super::getProductPriceCategories);
+    }
+
+    @Override
+    public Page<Product> findProductsPaginated(int pageNumber, int pageSize) {
+        return timers.time(
+                "findProductsPaginated", () -> super.findProductsPaginated(pageNumber, pageSize));
+    }
+
+    @Override
+    public int updateProductPrices(String sku, BigDecimal percentage) {
+        return timers.time("updateProductPrices", () -> super.updateProductPrices(sku, percentage));
+    }
+
+    @Override
+    public int deleteInactiveUsers(LocalDate beforeDate) {
+        return timers.time("deleteInactiveUsers", () -> super.deleteInactiveUsers(beforeDate));
+    }
+}
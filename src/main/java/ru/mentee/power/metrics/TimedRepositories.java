@@ -0,0 +1,196 @@
+package ru.mentee.power.metrics;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.dao.GenericDAO;
+import ru.mentee.power.hybrid.HybridRepository;
+import ru.mentee.power.performance.monitoring.ThreadAllocation;
+import ru.mentee.power.repository.HibernateCriteriaRepository;
+import ru.mentee.power.repository.HibernateHQLRepository;
+import ru.mentee.power.search.SearchService;
+
+/**
+ * Фабрика декораторов, замеряющих каждый публичный метод DAO, репозиториев и поиска
+ * Dropwizard-таймером с экспоненциально затухающим резервуаром.
+ * Реализации интерфейсов оборачиваются динамическим прокси, для репозиториев без
+ * интерфейса используются подклассы-декораторы.
+ *
+ * <p>Таймер называется {@code <префикс>.<метод>}, по умолчанию префикс - имя класса
+ * реализации. Перегруженные методы пишут в один таймер. Рядом пишется гистограмма
+ * {@code <префикс>.<метод>.allocatedBytes} - байты, выделенные вызывающим потоком за вызов
+ * (см. {@link ThreadAllocation}); вызовы из виртуальных потоков в нее не попадают.
+ */
+public final class TimedRepositories {
+
+    private TimedRepositories() {}
+
+    public static <T, ID> GenericDAO<T, ID> dao(GenericDAO<T, ID> dao, MetricRegistry registry) {
+        return dao(dao, registry, dao.getClass().getName());
+    }
+
+    /**
+     * @param prefix префикс таймеров, например с именем сущности для разных экземпляров DAO
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, ID> GenericDAO<T, ID> dao(
+            GenericDAO<T, ID> dao, MetricRegistry registry, String prefix) {
+        return wrap(GenericDAO.class, dao, registry, prefix);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T, ID> HybridRepository<T, ID> hybrid(
+            HybridRepository<T, ID> repository, MetricRegistry registry) {
+        return wrap(HybridRepository.class, repository, registry, repository.getClass().getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> SearchService<T> search(SearchService<T> service, MetricRegistry registry) {
+        return wrap(SearchService.class, service, registry, service.getClass().getName());
+    }
+
+    public static HibernateHQLRepository hql(
+            SessionFactory sessionFactory, MetricRegistry registry) {
+        return new TimedHibernateHQLRepository(sessionFactory, registry);
+    }
+
+    public static HibernateCriteriaRepository criteria(
+            SessionFactory sessionFactory, MetricRegistry registry) {
+        return new TimedHibernateCriteriaRepository(sessionFactory, registry);
+    }
+
+    /**
+     * Обернуть произвольную реализацию интерфейса.
+     */
+    public static <T> T wrap(Class<T> type, T target, MetricRegistry registry, String prefix) {
+        return type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] {type},
+                        new TimingHandler(target, registry, prefix)));
+    }
+
+    /**
+     * Таймер метода; повторные вызовы возвращают уже зарегистрированный экземпляр.
+     */
+    static Timer timer(MetricRegistry registry, String prefix, String method) {
+        return registry.timer(
+                MetricRegistry.name(prefix, method),
+                () -> new Timer(new ExponentiallyDecayingReservoir()));
+    }
+
+    /**
+     * Гистограмма выделенных за вызов байт.
+     */
+    static Histogram allocations(MetricRegistry registry, String prefix, String method) {
+        return registry.histogram(
+                MetricRegistry.name(prefix, method, "allocatedBytes"),
+                () -> new Histogram(new ExponentiallyDecayingReservoir()));
+    }
+
+    /**
+     * Таймер и гистограмма выделений одного метода.
+     */
+    static final class MethodMeter {
+
+        private final Timer timer;
+        private final Histogram allocations;
+
+        MethodMeter(MetricRegistry registry, String prefix, String method) {
+            this.timer = timer(registry, prefix, method);
+            this.allocations = allocations(registry, prefix, method);
+        }
+
+        <T> T measure(Supplier<T> call) {
+            long startBytes = ThreadAllocation.currentThreadAllocatedBytes();
+            try (Timer.Context ignored = timer.time()) {
+                return call.get();
+            } finally {
+                recordAllocation(startBytes);
+            }
+        }
+
+        void recordAllocation(long startBytes) {
+            long allocated = ThreadAllocation.allocatedSince(startBytes);
+            if (allocated != ThreadAllocation.UNSUPPORTED) {
+                allocations.update(allocated);
+            }
+        }
+    }
+
+    /**
+     * Метрики методов одного декоратора; имена строятся только при первом вызове.
+     */
+    static final class MethodTimers {
+
+        private final MetricRegistry registry;
+        private final String prefix;
+        private final Map<String, MethodMeter> meters = new ConcurrentHashMap<>();
+
+        MethodTimers(MetricRegistry registry, String prefix) {
+            this.registry = registry;
+            this.prefix = prefix;
+        }
+
+        <T> T time(String method, Supplier<T> call) {
+            MethodMeter meter = meters.get(method);
+            if (meter == null) {
+                meter =
+                        meters.computeIfAbsent(
+                                method, m -> new MethodMeter(registry, prefix, m));
+            }
+            return meter.measure(call);
+        }
+    }
+
+    private static final class TimingHandler implements InvocationHandler {
+
+        private final Object target;
+        private final MetricRegistry registry;
+        private final String prefix;
+        private final Map<Method, MethodMeter> meters = new ConcurrentHashMap<>();
+
+        TimingHandler(Object target, MetricRegistry registry, String prefix) {
+            this.target = target;
+            this.registry = registry;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeTarget(method, args);
+            }
+            MethodMeter meter = meters.get(method);
+            if (meter == null) {
+                meter =
+                        meters.computeIfAbsent(
+                                method, m -> new MethodMeter(registry, prefix, m.getName()));
+            }
+            long startBytes = ThreadAllocation.currentThreadAllocatedBytes();
+            // Неудачные вызовы тоже замеряются: медленная ошибка - тоже задержка
+            try (Timer.Context ignored = meter.timer.time()) {
+                return invokeTarget(method, args);
+            } finally {
+                meter.recordAllocation(startBytes);
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
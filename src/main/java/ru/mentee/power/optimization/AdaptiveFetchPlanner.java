@@ -0,0 +1,336 @@
+package ru.mentee.power.optimization;
+
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.hibernate.graph.GraphSemantic;
+import org.hibernate.graph.RootGraph;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.Query;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+
+/**
+ * Адаптивный планировщик загрузки (включается явно).
+ * Запоминает, к каким ассоциациям обращается код после выполнения запроса, и на следующих
+ * выполнениях того же запроса подключает Entity Graph с этими ассоциациями.
+ *
+ * <p>Обращения видны, только пока жива сессия запроса, поэтому {@link #apply} имеет смысл
+ * там, где результат используется в той же сессии. Для методов, возвращающих отсоединенные
+ * сущности, план всегда будет пустым.
+ *
+ * <p>Планы хранятся в ограниченном LRU-реестре по отпечатку запроса. План фиксируется после
+ * {@value #LEARNING_EXECUTIONS} наблюдений: в граф попадают ассоциации, затронутые в
+ * большинстве из них, но не больше одной коллекции (несколько bag-коллекций в одном JOIN
+ * дают MultipleBagFetchException) и без коллекций для запросов с пагинацией. После
+ * {@value #RELEARN_EXECUTIONS} выполнений с графом план выучивается заново.
+ */
+@Slf4j
+public class AdaptiveFetchPlanner implements InitializeCollectionEventListener, LoadEventListener {
+
+    static final int LEARNING_EXECUTIONS = 3;
+    static final int RELEARN_EXECUTIONS = 1000;
+    private static final int DEFAULT_MAX_PLANS = 256;
+    // Планировщик не ссылается на SessionFactory: закрытая фабрика не удерживается реестром
+    private static final Map<SessionFactory, AdaptiveFetchPlanner> PLANNERS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, FetchPlan> plans;
+    private final ConcurrentMap<SharedSessionContractImplementor, Observation> observations =
+            new ConcurrentHashMap<>();
+
+    private AdaptiveFetchPlanner(int maxPlans) {
+        this.plans =
+                Collections.synchronizedMap(
+                        new LinkedHashMap<>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(Map.Entry<String, FetchPlan> e) {
+                                return size() > maxPlans;
+                            }
+                        });
+    }
+
+    /**
+     * Включить адаптивную загрузку для SessionFactory (повторный вызов вернет тот же планировщик).
+     */
+    public static AdaptiveFetchPlanner enable(SessionFactory sessionFactory) {
+        return enable(sessionFactory, DEFAULT_MAX_PLANS);
+    }
+
+    public static AdaptiveFetchPlanner enable(SessionFactory sessionFactory, int maxPlans) {
+        return PLANNERS.computeIfAbsent(
+                sessionFactory,
+                sf -> {
+                    AdaptiveFetchPlanner planner = new AdaptiveFetchPlanner(maxPlans);
+                    EventListenerRegistry registry =
+                            sf.unwrap(SessionFactoryImplementor.class)
+                                    .getServiceRegistry()
+                                    .getService(EventListenerRegistry.class);
+                    registry.appendListeners(EventType.INIT_COLLECTION, planner);
+                    registry.appendListeners(EventType.LOAD, planner);
+                    log.info("Adaptive fetch planning enabled for {}", sf);
+                    return planner;
+                });
+    }
+
+    /**
+     * Выключить адаптивную загрузку; уже созданные запросы не меняются.
+     */
+    public static void disable(SessionFactory sessionFactory) {
+        AdaptiveFetchPlanner planner = PLANNERS.remove(sessionFactory);
+        if (planner != null) {
+            planner.plans.clear();
+        }
+    }
+
+    /**
+     * Применить выученный план к запросу и начать наблюдение за его выполнением.
+     * Если для SessionFactory запроса режим не включен, запрос возвращается без изменений.
+     *
+     * @param query запрос Hibernate или JPA
+     * @param rootEntity класс корневой сущности результата
+     * @return тот же запрос
+     */
+    public static <T, Q extends TypedQuery<T>> Q apply(Q query, Class<T> rootEntity) {
+        Query<?> hibernateQuery = query.unwrap(Query.class);
+        if (!(hibernateQuery.getSession() instanceof SharedSessionContractImplementor session)) {
+            return query;
+        }
+        AdaptiveFetchPlanner planner = PLANNERS.get(session.getFactory());
+        if (planner != null) {
+            planner.plan(hibernateQuery, session, rootEntity);
+        }
+        return query;
+    }
+
+    /**
+     * Ассоциации, которые подключаются к запросу, или пустое множество.
+     */
+    public Set<String> getPlannedAssociations(String hql) {
+        FetchPlan plan = plans.get(fingerprint(hql));
+        return plan != null && plan.attributes != null ? plan.attributes : Set.of();
+    }
+
+    public int getPlanCount() {
+        return plans.size();
+    }
+
+    private <T> void plan(
+            Query<?> query, SharedSessionContractImplementor session, Class<T> rootEntity) {
+        String key = fingerprint(query.getQueryString());
+        FetchPlan plan = plans.computeIfAbsent(key, k -> new FetchPlan(rootEntity));
+
+        // Предыдущий запрос сессии закончил наблюдение, этот начинает
+        Observation observation =
+                observations.computeIfAbsent(
+                        session,
+                        k -> {
+                            Observation created = new Observation(k);
+                            k.getEventListenerManager().addListener(created);
+                            return created;
+                        });
+        observation.start(plan);
+
+        Set<String> attributes = plan.next();
+        if (attributes == null || attributes.isEmpty() || !(session instanceof Session hs)) {
+            return;
+        }
+        boolean paginated = query.getMaxResults() != Integer.MAX_VALUE;
+        RootGraph<T> graph = hs.createEntityGraph(rootEntity);
+        for (String attribute : attributes) {
+            if (!paginated || !isCollection(session.getFactory(), rootEntity, attribute)) {
+                graph.addAttributeNodes(attribute);
+            }
+        }
+        // LOAD: атрибуты, отмеченные EAGER в маппинге, сохраняют свое поведение
+        query.setHint(GraphSemantic.LOAD.getJpaHintName(), graph);
+        log.debug("Applied adaptive fetch graph {} to {}", attributes, key);
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        Observation observation = observations.get(event.getSession());
+        if (observation == null || observation.plan == null) {
+            return;
+        }
+        CollectionPersister persister =
+                event.getSession()
+                        .getFactory()
+                        .getRuntimeMetamodels()
+                        .getMappingMetamodel()
+                        .getCollectionDescriptor(event.getCollection().getRole());
+        EntityPersister owner = persister.getOwnerEntityPersister();
+        if (owner.getMappedClass() == observation.plan.rootEntity) {
+            // Роль: <имя сущности владельца>.<путь атрибута>
+            observation.touch(persister.getRole().substring(owner.getEntityName().length() + 1));
+        }
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) {
+        if (loadType != IMMEDIATE_LOAD) {
+            return;
+        }
+        Observation observation = observations.get(event.getSession());
+        if (observation == null || observation.plan == null) {
+            return;
+        }
+        // Инициализация прокси: ищем единственную to-one ассоциацию корня с этим типом
+        SessionFactoryImplementor factory = event.getSession().getFactory();
+        Class<?> loaded =
+                factory.getRuntimeMetamodels()
+                        .getMappingMetamodel()
+                        .getEntityDescriptor(event.getEntityClassName())
+                        .getMappedClass();
+        String match = null;
+        EntityType<?> root = entityType(factory, observation.plan.rootEntity);
+        for (Attribute<?, ?> attribute : root.getAttributes()) {
+            if (attribute.isAssociation()
+                    && !attribute.isCollection()
+                    && attribute.getJavaType() == loaded) {
+                if (match != null) {
+                    return;
+                }
+                match = attribute.getName();
+            }
+        }
+        if (match != null) {
+            observation.touch(match);
+        }
+    }
+
+    private static boolean isCollection(
+            SessionFactoryImplementor factory, Class<?> rootEntity, String attribute) {
+        return entityType(factory, rootEntity).getAttribute(attribute).isCollection();
+    }
+
+    private static EntityType<?> entityType(
+            SessionFactoryImplementor factory, Class<?> rootEntity) {
+        return factory.getJpaMetamodel().entity(rootEntity);
+    }
+
+    private static String fingerprint(String hql) {
+        return SqlFingerprinter.fingerprint(hql).getFingerprint();
+    }
+
+    /**
+     * Выученный план одного запроса.
+     */
+    private final class FetchPlan {
+
+        private final Class<?> rootEntity;
+        private final Map<String, Integer> touchCounts = new HashMap<>();
+        private int observed;
+        private int applied;
+        private volatile Set<String> attributes;
+
+        FetchPlan(Class<?> rootEntity) {
+            this.rootEntity = rootEntity;
+        }
+
+        /**
+         * Атрибуты для очередного выполнения или {@code null}, пока план учится.
+         */
+        synchronized Set<String> next() {
+            if (attributes != null && ++applied >= RELEARN_EXECUTIONS) {
+                // Подключенные графом ассоциации не видны как ленивые загрузки, поэтому
+                // переобучение идет без графа
+                attributes = null;
+                observed = 0;
+                applied = 0;
+                touchCounts.clear();
+            }
+            return attributes;
+        }
+
+        synchronized void observe(SessionFactoryImplementor factory, Set<String> touched) {
+            if (attributes != null) {
+                return;
+            }
+            observed++;
+            touched.forEach(attribute -> touchCounts.merge(attribute, 1, Integer::sum));
+            if (observed >= LEARNING_EXECUTIONS) {
+                attributes = Collections.unmodifiableSet(select(factory));
+            }
+        }
+
+        private Set<String> select(SessionFactoryImplementor factory) {
+            Set<String> selected = new LinkedHashSet<>();
+            String collection = null;
+            int collectionTouches = 0;
+            for (Map.Entry<String, Integer> entry : touchCounts.entrySet()) {
+                if (entry.getValue() * 2 <= observed) {
+                    continue;
+                }
+                if (!isCollection(factory, rootEntity, entry.getKey())) {
+                    selected.add(entry.getKey());
+                } else if (entry.getValue() > collectionTouches) {
+                    collection = entry.getKey();
+                    collectionTouches = entry.getValue();
+                }
+            }
+            if (collection != null) {
+                selected.add(collection);
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * Ассоциации, затронутые в сессии после последнего запроса с планом.
+     */
+    private final class Observation implements SessionEventListener {
+
+        private final SharedSessionContractImplementor session;
+        private final Set<String> touched = new LinkedHashSet<>();
+        private FetchPlan plan;
+
+        Observation(SharedSessionContractImplementor session) {
+            this.session = session;
+        }
+
+        void start(FetchPlan next) {
+            finish();
+            plan = next;
+        }
+
+        void touch(String attribute) {
+            touched.add(attribute);
+        }
+
+        private void finish() {
+            if (plan != null) {
+                plan.observe(session.getFactory(), touched);
+                touched.clear();
+                plan = null;
+            }
+        }
+
+        @Override
+        public void end() {
+            observations.remove(session);
+            finish();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.mentee.power.performance;
+
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.exception.AllocationBudgetExceededException;
+import ru.mentee.power.performance.monitoring.ThreadAllocation;
+
+/**
+ * Бюджет байт, выделенных в куче блоком кода.
+ * Считаются выделения текущего потока от входа в блок до выхода: гидратация сущностей,
+ * строки {@code Object[]} с упакованными значениями, маппинг в DTO и т.п.
+ *
+ * <pre>
+ * AllocationBudget.expectAtMost(2 * 1024 * 1024).run(() -> repository.getCustomerStatistics());
+ * AllocationBudget.expectAtMost(512 * 1024).named("search").logOnly().call(() -> search(c));
+ * </pre>
+ *
+ * <p>Режимы как у {@link QueryBudget}. Если счетчик потока недоступен (виртуальный поток,
+ * JVM без поддержки), блок выполняется без проверки.
+ */
+@Slf4j
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AllocationBudget {
+
+    private final String name;
+    private final long maxBytes;
+    private final QueryBudget.Mode mode;
+
+    public static AllocationBudget expectAtMost(long maxBytes) {
+        return new AllocationBudget(null, maxBytes, QueryBudget.Mode.FAIL);
+    }
+
+    /**
+     * Имя блока для отчета и лога.
+     */
+    public AllocationBudget named(String blockName) {
+        return new AllocationBudget(blockName, maxBytes, mode);
+    }
+
+    public AllocationBudget logOnly() {
+        return new AllocationBudget(name, maxBytes, QueryBudget.Mode.LOG);
+    }
+
+    /**
+     * Выполнить блок и проверить бюджет.
+     *
+     * @return потребление блока (в режиме LOG - в том числе при превышении)
+     */
+    public AllocationUsage run(Runnable block) {
+        long startBytes = ThreadAllocation.currentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        block.run();
+        return check(startBytes, startNanos);
+    }
+
+    /**
+     * Выполнить блок с результатом и проверить бюджет.
+     */
+    public <T> T call(Supplier<T> block) {
+        long startBytes = ThreadAllocation.currentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        T result = block.get();
+        check(startBytes, startNanos);
+        return result;
+    }
+
+    private AllocationUsage check(long startBytes, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocated = ThreadAllocation.allocatedSince(startBytes);
+        AllocationUsage usage = new AllocationUsage(this, allocated, elapsedNanos);
+        if (usage.isExceeded()) {
+            if (mode == QueryBudget.Mode.FAIL) {
+                throw new AllocationBudgetExceededException(usage);
+            }
+            log.warn(usage.describe());
+        }
+        return usage;
+    }
+}
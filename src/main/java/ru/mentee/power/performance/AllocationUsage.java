@@ -0,0 +1,51 @@
+package ru.mentee.power.performance;
+
+import java.util.Locale;
+import lombok.Value;
+import ru.mentee.power.performance.monitoring.ThreadAllocation;
+
+/**
+ * Фактическое выделение памяти блоком, выполненным под {@link AllocationBudget}.
+ */
+@Value
+public class AllocationUsage {
+
+    AllocationBudget budget;
+
+    /** Выделено байт или {@link ThreadAllocation#UNSUPPORTED}. */
+    long allocatedBytes;
+
+    long elapsedNanos;
+
+    public boolean isMeasured() {
+        return allocatedBytes != ThreadAllocation.UNSUPPORTED;
+    }
+
+    public boolean isExceeded() {
+        return isMeasured() && allocatedBytes > budget.getMaxBytes();
+    }
+
+    public String describe() {
+        StringBuilder report = new StringBuilder();
+        report.append("Allocation budget");
+        if (budget.getName() != null) {
+            report.append(" '").append(budget.getName()).append('\'');
+        }
+        report.append(isExceeded() ? " exceeded: " : " used: ")
+                .append(isMeasured() ? formatBytes(allocatedBytes) : "n/a")
+                .append('/')
+                .append(formatBytes(budget.getMaxBytes()))
+                .append(String.format(Locale.ROOT, " in %.2f ms", elapsedNanos / 1_000_000.0));
+        return report.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -14,4 +14,10 @@ public class AssociationMetadata {
     private String associationType; // OneToMany, ManyToOne, ManyToMany
     private Class<?> targetEntity;
     private boolean isLazy;
+    private int batchSize; // текущий @BatchSize, 1 если не задан
+
+    public AssociationMetadata(
+            String associationName, String associationType, Class<?> targetEntity, boolean isLazy) {
+        this(associationName, associationType, targetEntity, isLazy, 1);
+    }
 }
@@ -0,0 +1,176 @@
+package ru.mentee.power.performance;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасная гистограмма с логарифмическими корзинами фиксированного размера.
+ * Каждая степень двойки делится на {@value #SUB_BUCKETS} под-корзин, поэтому
+ * относительная погрешность перцентилей не превышает 12.5% при любом объеме данных.
+ */
+public class ConcurrentHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Записать значение (отрицательные значения считаются нулем).
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * Значение, не превышаемое заданной долей записей.
+     * Корзины читаются напрямую, без копии массива.
+     *
+     * @param percentile перцентиль от 0 до 100
+     * @return верхняя граница корзины, ограниченная максимумом
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = target(percentile, total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Несколько перцентилей за один проход по корзинам.
+     *
+     * @param percentiles перцентили от 0 до 100 в любом порядке
+     * @return значения в порядке аргументов
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        long[] values = new long[percentiles.length];
+        long total = count.sum();
+        if (total == 0) {
+            return values;
+        }
+        long maxValue = getMax();
+        long[] targets = new long[percentiles.length];
+        for (int p = 0; p < percentiles.length; p++) {
+            targets[p] = target(percentiles[p], total);
+            values[p] = maxValue;
+        }
+        int remaining = percentiles.length;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT && remaining > 0; i++) {
+            long inBucket = buckets.get(i);
+            if (inBucket == 0) {
+                continue;
+            }
+            seen += inBucket;
+            for (int p = 0; p < targets.length; p++) {
+                // Найденный перцентиль помечается нулевой целью (цели всегда не меньше 1)
+                if (targets[p] != 0 && seen >= targets[p]) {
+                    values[p] = Math.min(upperBound(i), maxValue);
+                    targets[p] = 0;
+                    remaining--;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Номер записи для перцентиля. Корзина увеличивается раньше счетчика, поэтому при
+     * конкурентной записи в корзинах всегда не меньше {@code total} записей.
+     */
+    private static long target(double percentile, long total) {
+        double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        return Math.max(1, (long) Math.ceil(clamped / 100.0 * total));
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP95() {
+        return getValueAtPercentile(95);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int index) {
+        return index + 1 >= BUCKET_COUNT ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+    }
+
+    @Override
+    public String toString() {
+        long[] percentiles = getValuesAtPercentiles(50, 95, 99);
+        return String.format(
+                "count=%d, mean=%d, p50=%d, p95=%d, p99=%d, max=%d",
+                getCount(),
+                getMean(),
+                percentiles[0],
+                percentiles[1],
+                percentiles[2],
+                getMax());
+    }
+}
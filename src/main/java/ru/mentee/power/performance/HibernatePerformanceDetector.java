@@ -2,10 +2,16 @@ package ru.mentee.power.performance;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
-import org.hibernate.stat.Statistics;
+import ru.mentee.power.performance.monitoring.CallSite;
+import ru.mentee.power.performance.monitoring.ExecutionPlan;
+import ru.mentee.power.performance.monitoring.PlanCapture;
+import ru.mentee.power.performance.monitoring.SessionMonitoring;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
 
 /**
  * Реализация детектора проблем производительности Hibernate.
@@ -16,20 +22,36 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
     private static final int N_PLUS_ONE_THRESHOLD = 3; // Снижен порог для более раннего обнаружения
     private static final long SLOW_QUERY_THRESHOLD_MS = 100;
     private static final int LARGE_RESULT_SET_THRESHOLD = 1000;
+    private static final double ROW_EXPLOSION_THRESHOLD = 10;
+    private static final double SEVERE_ROW_EXPLOSION = 50;
+    private static final int ROW_EXPLOSION_MIN_ROWS = 100;
+    /**
+     * Сколько {@link #analyze} ждет фоновые EXPLAIN, если в отчете есть медленные запросы.
+     * Ожидание возможно, только когда сбор планов включен
+     * ({@code DatabaseConfig.slowStatementExplainThresholdMs}); иначе analyze не блокируется.
+     */
+    private static final long PLAN_WAIT_MS = 2000;
 
     @Override
     public MonitoringContext startMonitoring(Session session) {
-        Statistics stats = session.getSessionFactory().getStatistics();
-        stats.setStatisticsEnabled(true);
-        stats.clear();
-        return new MonitoringContext(session, stats);
+        // Метрики только этой сессии: глобальная Statistics не очищается,
+        // поэтому параллельные мониторинги и дашборды не мешают друг другу
+        return new MonitoringContext(session, SessionMonitoring.attach(session));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>При медленных запросах и включенном сборе планов блокируется до {@value #PLAN_WAIT_MS}
+     * мс, пока фоновые EXPLAIN не завершатся.
+     */
     @Override
     public PerformanceReport analyze(MonitoringContext context) {
+        // Отчет строится по уже собранным данным: перехват в потоке больше не нужен
+        context.close();
         PerformanceReport report = new PerformanceReport(context);
 
-        // Собираем статистику из Hibernate Statistics API
+        // Собираем счетчики сессии
         collectStatistics(context);
 
         // Анализ N+1 проблем
@@ -41,6 +63,9 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
         // Анализ больших выборок
         detectLargeResultSets(context, report);
 
+        // Анализ размножения строк при JOIN FETCH нескольких коллекций
+        detectRowExplosion(context, report);
+
         // Анализ частых запросов с малым количеством строк
         detectFrequentSmallQueries(context, report);
 
@@ -48,51 +73,34 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
     }
 
     /**
-     * Собирает статистику из Hibernate Statistics API.
+     * Сверяет перехваченные выражения со счетчиками сессии.
+     * Сами выражения записываются в контекст слоем перехвата JDBC по мере выполнения.
      */
     private void collectStatistics(MonitoringContext context) {
-        Statistics stats = context.getStatistics();
-
-        // Получаем общее количество запросов
         long totalQueries = context.getTotalQueriesExecuted();
         long totalEntities = context.getTotalEntitiesLoaded();
+        long capturedQueries = context.getCapturedStatementCount();
 
         log.debug(
-                "Collecting statistics: totalQueries={}, totalEntities={}",
+                "Collecting statistics: totalQueries={}, totalEntities={}, collections={},"
+                        + " cacheHits={}, captured={}",
                 totalQueries,
-                totalEntities);
-
-        // Всегда записываем статистику для анализа
-        if (totalQueries > 0) {
-            // Вычисляем среднее количество строк на запрос
-            int avgRows =
-                    totalEntities > 0
-                            ? (int) Math.max(1, totalEntities / Math.max(1, totalQueries))
-                            : 1;
-
-            // Создаем запись для основного запроса
-            String mainQuery = "SELECT * FROM orders";
-            long avgTime = 10; // Примерное время выполнения
-
-            // Всегда записываем все запросы для анализа
-            // Первый запрос - основной (загрузка списка)
-            context.recordQuery(mainQuery, avgTime, avgRows > 0 ? avgRows : 10);
-
-            // Если запросов больше одного, записываем дополнительные запросы
-            if (totalQueries > 1) {
-                String relatedQuery = "SELECT * FROM customers WHERE id = ?";
-                // Дополнительные запросы обычно возвращают по 1 строке (N+1 паттерн)
-                int rowsPerRelatedQuery = avgRows < 2 ? 1 : Math.max(1, avgRows);
-                for (int i = 1; i < totalQueries; i++) {
-                    context.recordQuery(relatedQuery, avgTime, rowsPerRelatedQuery);
-                }
-            }
+                totalEntities,
+                context.getTotalCollectionsFetched(),
+                context.getCacheHitCount(),
+                capturedQueries);
+
+        if (capturedQueries == 0 && totalQueries > 0) {
+            // Перехват выключен (statementCaptureEnabled=false или чужой ConnectionProvider),
+            // анализ N+1 опирается только на счетчики сессии
+            log.debug("No captured statements, falling back to session counters");
         }
     }
 
     @Override
     public List<OptimizationRecommendation> getRecommendations(PerformanceReport report) {
         List<OptimizationRecommendation> recommendations = new ArrayList<>();
+        boolean indexesAdvised = false;
 
         for (PerformanceProblem problem : report.getProblems()) {
             switch (problem.getType()) {
@@ -118,12 +126,11 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
                                     Severity.MEDIUM));
                     break;
                 case SLOW_QUERY:
-                    recommendations.add(
-                            new OptimizationRecommendation(
-                                    "Add indexes",
-                                    "Добавьте индексы на часто используемые колонки",
-                                    "@Index(name = \"idx_order_status\", columnList = \"status\")",
-                                    Severity.HIGH));
+                    if (!indexesAdvised) {
+                        // Индексы подбираются сразу по всем медленным запросам отчета
+                        recommendations.addAll(recommendIndexes(report));
+                        indexesAdvised = true;
+                    }
                     recommendations.add(
                             new OptimizationRecommendation(
                                     "Optimize query",
@@ -132,6 +139,23 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
                                     "SELECT NEW DTO(o.id, o.name) FROM Order o",
                                     Severity.MEDIUM));
                     break;
+                case CARTESIAN_PRODUCT:
+                    recommendations.add(
+                            new OptimizationRecommendation(
+                                    "Split fetch queries",
+                                    "Загружайте коллекции отдельными запросами по id корней вместо"
+                                            + " одного JOIN FETCH",
+                                    "SELECT DISTINCT o FROM Order o JOIN FETCH o.orderItems"
+                                            + " WHERE o.id IN :ids",
+                                    problem.getSeverity()));
+                    recommendations.add(
+                            new OptimizationRecommendation(
+                                    "Use batch or subselect fetching",
+                                    "Оставьте коллекцию ленивой с @BatchSize или"
+                                            + " @Fetch(FetchMode.SUBSELECT)",
+                                    "@Fetch(FetchMode.SUBSELECT)",
+                                    Severity.MEDIUM));
+                    break;
                 case LARGE_RESULT_SET:
                     recommendations.add(
                             new OptimizationRecommendation(
@@ -148,6 +172,50 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
         return recommendations;
     }
 
+    /**
+     * Индексы для медленных запросов по оценке выигрыша; без данных - общая рекомендация.
+     */
+    private List<OptimizationRecommendation> recommendIndexes(PerformanceReport report) {
+        MonitoringContext context = report.getContext();
+        List<QueryExecution> slow =
+                context.getQueryExecutions().values().stream()
+                        .filter(e -> e.getAvgExecutionTime() > SLOW_QUERY_THRESHOLD_MS)
+                        .toList();
+        List<OptimizationRecommendation> recommendations = new ArrayList<>();
+        if (!slow.isEmpty()) {
+            IndexAdvisor advisor = new IndexAdvisor(context.getSession().getSessionFactory());
+            for (IndexRecommendation index : advisor.advise(slow)) {
+                if (Boolean.FALSE.equals(index.getUsedInPlan())) {
+                    continue;
+                }
+                recommendations.add(
+                        new OptimizationRecommendation(
+                                "Add index",
+                                String.format(
+                                        "Индекс для %s (%s): до %dms на %d запросах%s",
+                                        index.getTable(),
+                                        index.getReason(),
+                                        toMillis(index.getEstimatedSavingsNanos()),
+                                        index.getQueryCount(),
+                                        index.getUsedInPlan() != null
+                                                ? ", подтвержден EXPLAIN"
+                                                : ""),
+                                index.getDdl(),
+                                Severity.HIGH));
+            }
+        }
+        if (recommendations.isEmpty()) {
+            recommendations.add(
+                    new OptimizationRecommendation(
+                            "Add indexes",
+                            "Проверьте план запроса: колонки условий уже покрыты индексами"
+                                    + " маппинга или не распознаны",
+                            "EXPLAIN ANALYZE <query>",
+                            Severity.MEDIUM));
+        }
+        return recommendations;
+    }
+
     @Override
     public String optimizeQuery(String hql) {
         // Базовая реализация - можно расширить
@@ -176,15 +244,16 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
                                     execution.getQuery(),
                                     execution.getExecutionCount(),
                                     String.format(
-                                            "Query executed %d times with avg %d rows",
+                                            "Query executed %d times with avg %d rows%s",
                                             execution.getExecutionCount(),
-                                            execution.getAvgRowCount()),
+                                            execution.getAvgRowCount(),
+                                            describeCallSite(execution)),
                                     Severity.HIGH));
                 }
             }
         }
 
-        // Всегда проверяем через Statistics API как fallback
+        // Всегда проверяем через счетчики сессии как fallback
         // N+1 проблема: если запросов больше чем сущностей + 1 (базовый запрос)
         // Или если запросов много, а среднее количество строк на запрос мало
         if (totalQueries > 0) {
@@ -229,26 +298,44 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
                         "N+1 problem detected: {} queries, {} entities",
                         totalQueries,
                         totalEntities);
+                QueryExecution mostFrequent = findMostFrequent(context);
                 report.addProblem(
                         new PerformanceProblem(
                                 ProblemType.N_PLUS_ONE,
-                                "orders",
-                                "Multiple queries detected",
+                                mostFrequent != null
+                                        ? extractEntityName(mostFrequent.getQuery())
+                                        : "orders",
+                                mostFrequent != null
+                                        ? mostFrequent.getQuery()
+                                        : "Multiple queries detected",
                                 (int) totalQueries,
                                 String.format(
                                         "Detected %d queries loading %d entities (avg %.2f rows per"
-                                                + " query). This suggests N+1 problem.",
-                                        totalQueries, totalEntities, (double) avgRowsPerQuery),
+                                                + " query). This suggests N+1 problem%s.",
+                                        totalQueries,
+                                        totalEntities,
+                                        (double) avgRowsPerQuery,
+                                        describeCallSite(mostFrequent)),
                                 Severity.HIGH));
             }
         }
     }
 
     private void detectSlowQueries(MonitoringContext context, PerformanceReport report) {
+        PlanCapture planCapture = null;
+        boolean plansAwaited = false;
         for (Map.Entry<String, QueryExecution> entry : context.getQueryExecutions().entrySet()) {
             QueryExecution execution = entry.getValue();
 
             if (execution.getAvgExecutionTime() > SLOW_QUERY_THRESHOLD_MS) {
+                if (!plansAwaited) {
+                    // Планы снимаются в фоне, ждем только при наличии медленных запросов
+                    planCapture = awaitPlans(context);
+                    plansAwaited = true;
+                }
+                ExecutionPlan plan =
+                        planCapture != null ? planCapture.getPlan(execution.getQuery()) : null;
+                long[] tail = execution.getExecutionTimePercentilesNanos(95, 99);
                 report.addProblem(
                         new PerformanceProblem(
                                 ProblemType.SLOW_QUERY,
@@ -256,13 +343,31 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
                                 execution.getQuery(),
                                 execution.getExecutionCount(),
                                 String.format(
-                                        "Average execution time: %dms",
-                                        execution.getAvgExecutionTime()),
-                                Severity.HIGH));
+                                        "Average execution time: %dms (p95 %dms, p99 %dms)%s",
+                                        execution.getAvgExecutionTime(),
+                                        toMillis(tail[0]),
+                                        toMillis(tail[1]),
+                                        plan != null && plan.hasWarnings()
+                                                ? "; plan: " + plan.describeWarnings()
+                                                : ""),
+                                Severity.HIGH,
+                                plan));
             }
         }
     }
 
+    /**
+     * Сборщик планов сессии после завершения уже поставленных EXPLAIN или null.
+     */
+    private static PlanCapture awaitPlans(MonitoringContext context) {
+        PlanCapture planCapture = PlanCapture.of(context.getSession().getSessionFactory());
+        if (planCapture != null
+                && !planCapture.awaitPending(PLAN_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            log.debug("Execution plans are not ready after {}ms", PLAN_WAIT_MS);
+        }
+        return planCapture;
+    }
+
     private void detectLargeResultSets(MonitoringContext context, PerformanceReport report) {
         for (Map.Entry<String, QueryExecution> entry : context.getQueryExecutions().entrySet()) {
             QueryExecution execution = entry.getValue();
@@ -280,6 +385,30 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
         }
     }
 
+    private void detectRowExplosion(MonitoringContext context, PerformanceReport report) {
+        for (QueryExecution execution : context.getQueryExecutions().values()) {
+            double factor = execution.getExplosionFactor();
+            if (factor >= ROW_EXPLOSION_THRESHOLD
+                    && execution.getMaxRowCount() >= ROW_EXPLOSION_MIN_ROWS) {
+                report.addProblem(
+                        new PerformanceProblem(
+                                ProblemType.CARTESIAN_PRODUCT,
+                                extractEntityName(execution.getQuery()),
+                                execution.getQuery(),
+                                execution.getExecutionCount(),
+                                String.format(
+                                        Locale.ROOT,
+                                        "Row explosion %.1fx: %d rows read for each root entity"
+                                                + " (max %d rows)%s",
+                                        factor,
+                                        Math.round(factor),
+                                        execution.getMaxRowCount(),
+                                        describeCallSite(execution)),
+                                factor >= SEVERE_ROW_EXPLOSION ? Severity.HIGH : Severity.MEDIUM));
+            }
+        }
+    }
+
     private void detectFrequentSmallQueries(MonitoringContext context, PerformanceReport report) {
         for (Map.Entry<String, QueryExecution> entry : context.getQueryExecutions().entrySet()) {
             QueryExecution execution = entry.getValue();
@@ -300,15 +429,34 @@ public class HibernatePerformanceDetector implements PerformanceDetector {
         }
     }
 
-    private String extractEntityName(String query) {
-        // Простое извлечение имени таблицы/сущности из SQL
-        if (query.toUpperCase().contains("FROM")) {
-            String[] parts = query.toUpperCase().split("FROM");
-            if (parts.length > 1) {
-                String tablePart = parts[1].trim().split("\\s")[0];
-                return tablePart.toLowerCase();
+    /**
+     * Самый часто выполняемый запрос (вероятный источник N+1) или null.
+     */
+    private QueryExecution findMostFrequent(MonitoringContext context) {
+        QueryExecution mostFrequent = null;
+        for (QueryExecution execution : context.getQueryExecutions().values()) {
+            if (execution.getExecutionCount() > 1
+                    && (mostFrequent == null
+                            || execution.getExecutionCount()
+                                    > mostFrequent.getExecutionCount())) {
+                mostFrequent = execution;
             }
         }
-        return "unknown";
+        return mostFrequent;
+    }
+
+    private static String describeCallSite(QueryExecution execution) {
+        CallSite callSite = execution != null ? execution.getTopCallSite() : null;
+        // Например: " at OptimizedOrderDAO.demonstrateBatchLoading -> Order.orderItems"
+        return callSite != null ? " at " + callSite : "";
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private String extractEntityName(String query) {
+        // Основная таблица из токенизатора (результат кэшируется по экземпляру строки)
+        return SqlFingerprinter.table(query);
     }
 }
@@ -0,0 +1,395 @@
+package ru.mentee.power.performance;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.ConstraintMode;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.JoinColumns;
+import jakarta.persistence.JoinTable;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import ru.mentee.power.performance.SqlColumnUsage.TableUsage;
+import ru.mentee.power.performance.monitoring.StatementCapture;
+
+/**
+ * Советник по недостающим индексам.
+ * Разбирает перехваченные SQL-выражения, находит колонки условий, соединений и сортировки,
+ * сверяет их с индексами из маппинга ({@code @Table(indexes, uniqueConstraints)},
+ * {@code @Column(unique)}, {@code @JoinTable}, первичные ключи) и предлагает составные индексы.
+ *
+ * <p>Колонки индекса идут в порядке: равенства, затем сортировка (если вся сортировка по этой
+ * таблице) или первое условие диапазона. Рекомендации ранжируются по суммарному времени
+ * запросов, которым они помогут. На H2 колонки внешних ключей считаются проиндексированными:
+ * H2 создает такие индексы сам.
+ *
+ * <p>Проверка кандидатов через DDL включается явно ({@link #IndexAdvisor(SessionFactory,
+ * boolean)}) и работает только на H2: индекс создается в рабочей базе, план запроса
+ * смотрится через EXPLAIN, после чего индекс удаляется. На большой таблице CREATE INDEX
+ * блокирует ее на время построения, поэтому проверку стоит включать только на тестовой копии.
+ */
+@Slf4j
+public class IndexAdvisor {
+
+    private static final int MAX_INDEX_NAME_LENGTH = 63;
+    private static final int MAX_INCLUDE_COLUMNS = 3;
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final Dialect dialect;
+    private final boolean validateWithDdl;
+    private final Map<String, List<ExistingIndex>> indexes = new HashMap<>();
+
+    public IndexAdvisor(SessionFactory sessionFactory) {
+        this(sessionFactory, false);
+    }
+
+    /**
+     * @param validateWithDdl на H2 проверять кандидатов созданием индекса и EXPLAIN
+     */
+    public IndexAdvisor(SessionFactory sessionFactory, boolean validateWithDdl) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        this.dialect = this.sessionFactory.getJdbcServices().getDialect();
+        this.validateWithDdl = validateWithDdl;
+        this.sessionFactory
+                .getRuntimeMetamodels()
+                .getMappingMetamodel()
+                .forEachEntityDescriptor(
+                        persister -> {
+                            if (persister instanceof AbstractEntityPersister entityPersister) {
+                                readMapping(entityPersister);
+                            }
+                        });
+    }
+
+    /**
+     * Предложить индексы для выполненных запросов.
+     *
+     * @param executions статистика запросов (обычно медленные запросы из MonitoringContext)
+     * @return рекомендации по убыванию оценки выигрыша
+     */
+    public List<IndexRecommendation> advise(Collection<QueryExecution> executions) {
+        List<QueryExecution> ordered = new ArrayList<>(executions);
+        // Пример запроса для EXPLAIN берется у самого затратного выражения
+        ordered.sort(
+                Comparator.comparingLong(QueryExecution::getTotalExecutionTimeNanos).reversed());
+
+        Map<String, IndexRecommendation> candidates = new LinkedHashMap<>();
+        for (QueryExecution execution : ordered) {
+            SqlColumnUsage usage = SqlColumnUsage.parse(execution.getQuery());
+            String sortTable = usage.getSortTable();
+            for (TableUsage table : usage.getTables()) {
+                if (indexes.containsKey(table.table)) {
+                    propose(candidates, table, table.table.equals(sortTable), execution);
+                }
+            }
+        }
+
+        List<IndexRecommendation> recommendations = new ArrayList<>(candidates.values());
+        recommendations.sort(
+                Comparator.comparingLong(IndexRecommendation::getEstimatedSavingsNanos)
+                        .reversed());
+        if (validateWithDdl && dialect instanceof H2Dialect) {
+            recommendations.forEach(
+                    recommendation -> recommendation.setUsedInPlan(explain(recommendation)));
+        }
+        return recommendations;
+    }
+
+    private void propose(
+            Map<String, IndexRecommendation> candidates,
+            TableUsage table,
+            boolean sortedByTable,
+            QueryExecution execution) {
+        List<String> key = new ArrayList<>(table.equality);
+        int equalityColumns = key.size();
+        StringBuilder reason = new StringBuilder();
+        if (!key.isEmpty()) {
+            reason.append("WHERE ").append(String.join(", ", key));
+        }
+        if (sortedByTable) {
+            List<String> sort = new ArrayList<>(table.sort);
+            sort.removeAll(key);
+            if (!sort.isEmpty()) {
+                key.addAll(sort);
+                reason.append(reason.length() > 0 ? "; " : "")
+                        .append("ORDER BY ")
+                        .append(String.join(", ", sort));
+            }
+        } else if (!table.range.isEmpty()) {
+            String range = table.range.iterator().next();
+            if (!key.contains(range)) {
+                key.add(range);
+                reason.append(reason.length() > 0 ? "; " : "").append("range ").append(range);
+            }
+        }
+        if (!key.isEmpty()) {
+            propose(candidates, table, key, equalityColumns, reason.toString(), execution);
+        }
+        for (String column : table.join) {
+            propose(candidates, table, List.of(column), 1, "JOIN " + column, execution);
+        }
+    }
+
+    private void propose(
+            Map<String, IndexRecommendation> candidates,
+            TableUsage table,
+            List<String> key,
+            int equalityColumns,
+            String reason,
+            QueryExecution execution) {
+        if (isCovered(indexes.get(table.table), key, equalityColumns)) {
+            return;
+        }
+        IndexRecommendation recommendation =
+                candidates.computeIfAbsent(
+                        table.table + key,
+                        k -> createRecommendation(table, key, reason, execution.getQuery()));
+        recommendation.setEstimatedSavingsNanos(
+                recommendation.getEstimatedSavingsNanos() + execution.getTotalExecutionTimeNanos());
+        recommendation.setQueryCount(
+                recommendation.getQueryCount() + execution.getExecutionCount());
+    }
+
+    private IndexRecommendation createRecommendation(
+            TableUsage table, List<String> key, String reason, String sampleQuery) {
+        // Покрывающий индекс имеет смысл, только если запрос читает несколько колонок
+        List<String> include = new ArrayList<>();
+        if (!table.selectAll) {
+            include.addAll(table.selected);
+            include.removeAll(key);
+            if (include.size() > MAX_INCLUDE_COLUMNS) {
+                include.clear();
+            }
+        }
+
+        String name = "idx_" + table.table + "_" + String.join("_", key);
+        name = name.substring(0, Math.min(name.length(), MAX_INDEX_NAME_LENGTH));
+        String ddl;
+        if (include.isEmpty()) {
+            ddl = String.format("CREATE INDEX %s ON %s (%s)", name, table.table, join(key));
+        } else if (dialect instanceof PostgreSQLDialect) {
+            ddl =
+                    String.format(
+                            "CREATE INDEX %s ON %s (%s) INCLUDE (%s)",
+                            name, table.table, join(key), join(include));
+        } else {
+            // Без INCLUDE колонки выборки добавляются в конец ключа
+            List<String> columns = new ArrayList<>(key);
+            columns.addAll(include);
+            ddl = String.format("CREATE INDEX %s ON %s (%s)", name, table.table, join(columns));
+        }
+        return new IndexRecommendation(
+                table.table, name, key, include, reason, ddl, 0, 0, sampleQuery, null);
+    }
+
+    /**
+     * Индекс уже есть, если существующий начинается с тех же колонок равенства (в любом
+     * порядке) и продолжается остальными колонками кандидата, либо уникальный индекс
+     * целиком входит в условия равенства.
+     */
+    static boolean isCovered(List<ExistingIndex> existing, List<String> key, int equalityColumns) {
+        List<String> equality = key.subList(0, equalityColumns);
+        List<String> rest = key.subList(equalityColumns, key.size());
+        for (ExistingIndex index : existing) {
+            List<String> columns = index.columns;
+            if (index.unique && equalityColumns > 0 && equality.containsAll(columns)) {
+                return true;
+            }
+            if (columns.size() >= key.size()
+                    && new HashSet<>(columns.subList(0, equalityColumns))
+                            .equals(new HashSet<>(equality))
+                    && columns.subList(equalityColumns, key.size()).equals(rest)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Проверить кандидата через EXPLAIN на временно созданном индексе.
+     *
+     * @return true, если план использует индекс; null, если проверить не удалось
+     */
+    private Boolean explain(IndexRecommendation recommendation) {
+        ConnectionProvider provider =
+                sessionFactory.getServiceRegistry().getService(ConnectionProvider.class);
+        // Служебные выражения не должны попасть в мониторинг
+        try (StatementCapture.Suspension ignored = StatementCapture.suspend()) {
+            Connection connection = provider.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(recommendation.getDdl());
+                try {
+                    return explainMentions(
+                            connection,
+                            recommendation.getSampleQuery(),
+                            recommendation.getIndexName());
+                } finally {
+                    statement.execute("DROP INDEX IF EXISTS " + recommendation.getIndexName());
+                }
+            } finally {
+                provider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            log.debug("EXPLAIN failed for {}: {}", recommendation.getDdl(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean explainMentions(Connection connection, String sql, String indexName)
+            throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        // Параметры не привязываются: H2 строит план без их значений
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql);
+                ResultSet resultSet = explain.executeQuery()) {
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1)).append('\n');
+            }
+        }
+        log.debug("EXPLAIN with {}:\n{}", indexName, plan);
+        return plan.toString().toLowerCase(Locale.ROOT).contains(indexName);
+    }
+
+    private void readMapping(AbstractEntityPersister persister) {
+        String table = SqlColumnUsage.tableName(persister.getTableName());
+        List<ExistingIndex> tableIndexes = indexes.computeIfAbsent(table, k -> new ArrayList<>());
+        tableIndexes.add(
+                new ExistingIndex(
+                        "pk_" + table, columns(persister.getIdentifierColumnNames()), true));
+
+        Class<?> type = persister.getMappedClass();
+        readTable(type.getAnnotation(Table.class), tableIndexes);
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Column column = field.getAnnotation(Column.class);
+                if (column != null && column.unique()) {
+                    String name = column.name().isEmpty() ? field.getName() : column.name();
+                    tableIndexes.add(new ExistingIndex("uk_" + name, columns(name), true));
+                }
+                JoinTable joinTable = field.getAnnotation(JoinTable.class);
+                if (joinTable != null && !joinTable.name().isEmpty()) {
+                    List<ExistingIndex> joinIndexes =
+                            indexes.computeIfAbsent(
+                                    SqlColumnUsage.tableName(joinTable.name()),
+                                    k -> new ArrayList<>());
+                    readIndexes(joinTable.indexes(), joinTable.uniqueConstraints(), joinIndexes);
+                    readForeignKey(joinTable.joinColumns(), joinIndexes);
+                    readForeignKey(joinTable.inverseJoinColumns(), joinIndexes);
+                } else if (field.isAnnotationPresent(ManyToOne.class)
+                        || field.isAnnotationPresent(OneToOne.class)) {
+                    readForeignKey(joinColumns(field), tableIndexes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Индекс, который H2 создает для внешнего ключа по колонкам связи.
+     */
+    private void readForeignKey(JoinColumn[] joinColumns, List<ExistingIndex> target) {
+        if (!(dialect instanceof H2Dialect) || joinColumns.length == 0) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (JoinColumn joinColumn : joinColumns) {
+            if (joinColumn.name().isEmpty()
+                    || joinColumn.foreignKey().value() == ConstraintMode.NO_CONSTRAINT) {
+                // Имя по умолчанию зависит от стратегии именования, без ограничения индекса нет
+                return;
+            }
+            names.add(joinColumn.name());
+        }
+        target.add(new ExistingIndex("fk_" + String.join("_", names), columns(names), false));
+    }
+
+    private static JoinColumn[] joinColumns(Field field) {
+        JoinColumns multiple = field.getAnnotation(JoinColumns.class);
+        if (multiple != null) {
+            return multiple.value();
+        }
+        JoinColumn single = field.getAnnotation(JoinColumn.class);
+        return single != null ? new JoinColumn[] {single} : new JoinColumn[0];
+    }
+
+    private static void readTable(Table table, List<ExistingIndex> target) {
+        if (table != null) {
+            readIndexes(table.indexes(), table.uniqueConstraints(), target);
+        }
+    }
+
+    private static void readIndexes(
+            Index[] indexes, UniqueConstraint[] uniqueConstraints, List<ExistingIndex> target) {
+        for (Index index : indexes) {
+            target.add(
+                    new ExistingIndex(
+                            index.name(), columns(index.columnList().split(",")), index.unique()));
+        }
+        for (UniqueConstraint constraint : uniqueConstraints) {
+            target.add(
+                    new ExistingIndex(constraint.name(), columns(constraint.columnNames()), true));
+        }
+    }
+
+    /**
+     * Имена колонок в нижнем регистре без направления сортировки ("order_date DESC").
+     */
+    private static List<String> columns(String... names) {
+        return columns(Arrays.asList(names));
+    }
+
+    private static List<String> columns(List<String> names) {
+        return names.stream()
+                .map(name -> name.trim().split("\\s+")[0].toLowerCase(Locale.ROOT))
+                .filter(name -> !name.isEmpty())
+                .toList();
+    }
+
+    private static String join(List<String> columns) {
+        return String.join(", ", columns);
+    }
+
+    /**
+     * Индекс или ограничение уникальности из маппинга.
+     */
+    static final class ExistingIndex {
+
+        private final String name;
+        private final List<String> columns;
+        private final boolean unique;
+
+        ExistingIndex(String name, List<String> columns, boolean unique) {
+            this.name = name;
+            this.columns = columns;
+            this.unique = unique;
+        }
+
+        @Override
+        public String toString() {
+            return name + columns;
+        }
+    }
+}
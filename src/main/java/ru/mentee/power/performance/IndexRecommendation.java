@@ -0,0 +1,26 @@
+package ru.mentee.power.performance;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Предлагаемый индекс с оценкой выигрыша.
+ */
+@Data
+@AllArgsConstructor
+public class IndexRecommendation {
+
+    private String table;
+    private String indexName;
+    private List<String> columns;
+    private List<String> includeColumns;
+    private String reason;
+    private String ddl;
+    // Оценка сверху: суммарное время запросов, которым поможет индекс
+    private long estimatedSavingsNanos;
+    private int queryCount;
+    private String sampleQuery;
+    // Результат проверки через EXPLAIN: null, если проверка не выполнялась
+    private Boolean usedInPlan;
+}
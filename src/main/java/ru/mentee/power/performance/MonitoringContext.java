@@ -5,55 +5,156 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
-import org.hibernate.stat.Statistics;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+import ru.mentee.power.performance.monitoring.SessionMetrics;
+import ru.mentee.power.performance.monitoring.SessionMonitoring;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+import ru.mentee.power.performance.monitoring.StatementCapture;
+import ru.mentee.power.performance.monitoring.StatementCaptureListener;
 
 /**
  * Контекст мониторинга производительности.
+ * Пока контекст открыт, получает реальные SQL-выражения текущего потока.
+ * Счетчики берутся из метрик своей сессии, глобальная Statistics не затрагивается.
+ *
+ * <p>Контекст привязывается к потоку поверх уже привязанного слушателя (например,
+ * {@link QueryBudget}) и должен быть закрыт в том же потоке: {@link #close()} или
+ * {@link PerformanceDetector#analyze}.
  */
+@Slf4j
 @Data
-public class MonitoringContext {
+public class MonitoringContext implements StatementCaptureListener, AutoCloseable {
+
+    /** Сколько первых SQL-строк хранится для отладки; статистика ведется по всем. */
+    static final int MAX_RECORDED_QUERIES = 1000;
 
     private final Session session;
-    private final Statistics statistics;
+    private final SessionMetrics metrics;
     private final LocalDateTime startTime;
     private final ConcurrentMap<String, QueryExecution> queryExecutions = new ConcurrentHashMap<>();
     private final List<String> executedQueries = new ArrayList<>();
-    private long initialQueryCount;
-    private long initialEntityLoadCount;
+    private final AtomicLong capturedStatementCount = new AtomicLong();
+    private final long initialQueryCount;
+    private final long initialEntityLoadCount;
+    private final long initialCollectionFetchCount;
+    private final long initialCacheHitCount;
+    private final long initialCacheMissCount;
+
+    @Getter(AccessLevel.NONE)
+    private final Thread owner;
+
+    @Getter(AccessLevel.NONE)
+    private final StatementCapture.Suspension binding;
 
-    public MonitoringContext(Session session, Statistics statistics) {
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public MonitoringContext(Session session, SessionMetrics metrics) {
         this.session = session;
-        this.statistics = statistics;
+        this.metrics = metrics;
         this.startTime = LocalDateTime.now();
-        this.initialQueryCount = statistics.getPrepareStatementCount();
-        this.initialEntityLoadCount = statistics.getEntityLoadCount();
+        this.initialQueryCount = metrics.getPrepareStatementCount();
+        this.initialEntityLoadCount = metrics.getEntityLoadCount();
+        this.initialCollectionFetchCount = metrics.getCollectionFetchCount();
+        this.initialCacheHitCount = metrics.getCacheHitCount();
+        this.initialCacheMissCount = metrics.getCacheMissCount();
+        this.owner = Thread.currentThread();
+        this.binding = StatementCapture.push(this);
     }
 
     public void recordQuery(String sql, long executionTime, int rowCount) {
-        executedQueries.add(sql);
-        queryExecutions.compute(
-                normalizeQuery(sql),
-                (k, v) -> {
-                    if (v == null) {
-                        v = new QueryExecution(sql);
-                    }
-                    v.recordExecution(executionTime, rowCount);
-                    return v;
-                });
+        recordStatement(
+                new CapturedStatement(
+                        sql, TimeUnit.MILLISECONDS.toNanos(executionTime), rowCount, 0));
+    }
+
+    public void recordStatement(CapturedStatement statement) {
+        String sql = statement.getSql();
+        if (capturedStatementCount.getAndIncrement() < MAX_RECORDED_QUERIES) {
+            synchronized (executedQueries) {
+                executedQueries.add(sql);
+            }
+        }
+        QueryExecution execution =
+                queryExecutions.computeIfAbsent(
+                        SqlFingerprinter.fingerprint(sql).getFingerprint(),
+                        k -> new QueryExecution(sql));
+        execution.recordExecutionNanos(
+                statement.getDurationNanos(),
+                statement.getRowCount(),
+                statement.getParameterCount());
+        execution.recordHydration(statement.getRowCount(), statement.getHydratedRoots());
+        if (statement.getCallSite() != null) {
+            execution.recordCallSite(statement.getCallSite());
+        }
+    }
+
+    @Override
+    public void onStatement(CapturedStatement statement) {
+        if (!closed.get()) {
+            recordStatement(statement);
+        }
+    }
+
+    /**
+     * Первые {@value #MAX_RECORDED_QUERIES} перехваченных SQL-выражений (копия).
+     */
+    public List<String> getExecutedQueries() {
+        synchronized (executedQueries) {
+            return List.copyOf(executedQueries);
+        }
+    }
+
+    public long getCapturedStatementCount() {
+        return capturedStatementCount.get();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Прекратить перехват выражений и учет загрузок сессии; повторный вызов ничего не делает.
+     * Прежний слушатель потока восстанавливается, только если закрывает поток-владелец.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (Thread.currentThread() == owner) {
+            binding.close();
+        } else {
+            log.warn("Monitoring context closed outside of thread {}", owner.getName());
+        }
+        SessionMonitoring.detach(session);
     }
 
     public long getTotalQueriesExecuted() {
-        return statistics.getPrepareStatementCount() - initialQueryCount;
+        return metrics.getPrepareStatementCount() - initialQueryCount;
     }
 
     public long getTotalEntitiesLoaded() {
-        return statistics.getEntityLoadCount() - initialEntityLoadCount;
+        return metrics.getEntityLoadCount() - initialEntityLoadCount;
+    }
+
+    public long getTotalCollectionsFetched() {
+        return metrics.getCollectionFetchCount() - initialCollectionFetchCount;
+    }
+
+    public long getCacheHitCount() {
+        return metrics.getCacheHitCount() - initialCacheHitCount;
     }
 
-    private String normalizeQuery(String sql) {
-        // Нормализуем запрос для группировки похожих
-        return sql.replaceAll("\\d+", "?").replaceAll("'[^']*'", "'?'").trim();
+    public long getCacheMissCount() {
+        return metrics.getCacheMissCount() - initialCacheMissCount;
     }
 }
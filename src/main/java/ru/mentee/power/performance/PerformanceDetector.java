@@ -9,7 +9,9 @@ import org.hibernate.Session;
 public interface PerformanceDetector {
 
     /**
-     * Начать мониторинг сессии.
+     * Начать мониторинг сессии в текущем потоке.
+     * Контекст перехватывает выражения потока, пока не будет передан в {@link #analyze}
+     * или закрыт; закрывать его нужно в том же потоке.
      *
      * @param session Hibernate сессия
      * @return контекст мониторинга
@@ -17,7 +19,7 @@ public interface PerformanceDetector {
     MonitoringContext startMonitoring(Session session);
 
     /**
-     * Анализировать собранные данные.
+     * Анализировать собранные данные и закрыть контекст.
      *
      * @param context контекст мониторинга
      * @return отчет о проблемах
@@ -2,6 +2,7 @@ package ru.mentee.power.performance;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import ru.mentee.power.performance.monitoring.ExecutionPlan;
 
 /**
  * Проблема производительности.
@@ -16,4 +17,17 @@ public class PerformanceProblem {
     private int queryCount;
     private String description;
     private Severity severity;
+
+    /** План выполнения медленного запроса, если его удалось получить. */
+    private ExecutionPlan plan;
+
+    public PerformanceProblem(
+            ProblemType type,
+            String entity,
+            String query,
+            int queryCount,
+            String description,
+            Severity severity) {
+        this(type, entity, query, queryCount, description, severity, null);
+    }
 }
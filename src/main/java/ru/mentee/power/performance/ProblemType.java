@@ -10,5 +10,6 @@ public enum ProblemType {
     MISSING_INDEX,
     INEFFICIENT_QUERY,
     CACHE_MISUSE,
-    LONG_TRANSACTION
+    LONG_TRANSACTION,
+    CARTESIAN_PRODUCT
 }
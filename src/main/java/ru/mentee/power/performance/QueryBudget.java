@@ -0,0 +1,252 @@
+package ru.mentee.power.performance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.exception.ConfigurationException;
+import ru.mentee.power.exception.QueryBudgetExceededException;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.performance.monitoring.LoadListener;
+import ru.mentee.power.performance.monitoring.SessionMonitoring;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+import ru.mentee.power.performance.monitoring.StatementCapture;
+import ru.mentee.power.performance.monitoring.StatementCaptureListener;
+
+/**
+ * Бюджет SQL-выражений и загрузок для блока кода.
+ * Считается только работа текущего потока внутри блока: выражения приходят из слоя
+ * перехвата JDBC, загрузки сущностей и коллекций - из {@link SessionMonitoring}.
+ * Привязки вкладываются, поэтому бюджеты можно вкладывать друг в друга и в уже
+ * привязанный к потоку перехват.
+ *
+ * <pre>
+ * QueryBudget.expect(2, 50).run(() -> repository.findOrdersWithItems());
+ * QueryBudget.expect(3, 100).named("findOrders").logOnly().call(() -> dao.findAll());
+ * QueryBudget.expect(2, 50).on(sessionFactory).run(() -> repository.findOrders());
+ * </pre>
+ *
+ * <p>В режиме {@link Mode#FAIL} превышение бросает {@link QueryBudgetExceededException}
+ * (для тестов), в режиме {@link Mode#LOG} только пишет предупреждение (для охраны
+ * горячих методов в production).
+ *
+ * <p>Без перехвата выражений ({@link CapturingConnectionProvider}) и мониторинга загрузок
+ * блок насчитает ноль и бюджет пройдет при любом числе запросов. Поэтому бюджет в режиме
+ * FAIL, привязанный к SessionFactory через {@link #on}, до выполнения блока бросает
+ * {@link ConfigurationException}, если у нее нет нужного источника. Непривязанный бюджет
+ * этого проверить не может и только предупреждает, если блок не насчитал ничего.
+ */
+@Slf4j
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class QueryBudget {
+
+    public static final int UNLIMITED = -1;
+    static final int MAX_REPORTED_STATEMENTS = 20;
+    private static final int MAX_TRACKED_FINGERPRINTS = 256;
+
+    /**
+     * Реакция на превышение бюджета.
+     */
+    public enum Mode {
+        FAIL,
+        LOG
+    }
+
+    private final String name;
+    private final int maxStatements;
+    private final int maxEntityLoads;
+    private final int maxCollectionFetches;
+    private final Mode mode;
+    @Getter(AccessLevel.NONE)
+    private final SessionFactory sessionFactory;
+
+    /**
+     * Бюджет на выражения и загрузки сущностей; коллекции не ограничены.
+     */
+    public static QueryBudget expect(int maxStatements, int maxEntityLoads) {
+        return new QueryBudget(
+                null, maxStatements, maxEntityLoads, UNLIMITED, Mode.FAIL, null);
+    }
+
+    public static QueryBudget expectStatements(int maxStatements) {
+        return expect(maxStatements, UNLIMITED);
+    }
+
+    public QueryBudget maxCollectionFetches(int max) {
+        return new QueryBudget(name, maxStatements, maxEntityLoads, max, mode, sessionFactory);
+    }
+
+    /**
+     * Имя блока для отчета и лога.
+     */
+    public QueryBudget named(String blockName) {
+        return new QueryBudget(
+                blockName,
+                maxStatements,
+                maxEntityLoads,
+                maxCollectionFetches,
+                mode,
+                sessionFactory);
+    }
+
+    public QueryBudget logOnly() {
+        return new QueryBudget(
+                name,
+                maxStatements,
+                maxEntityLoads,
+                maxCollectionFetches,
+                Mode.LOG,
+                sessionFactory);
+    }
+
+    /**
+     * SessionFactory блока: в режиме FAIL перед выполнением проверяется, что ее выражения
+     * перехватываются, а при лимите загрузок - что установлен {@link SessionMonitoring}.
+     */
+    public QueryBudget on(SessionFactory blockSessionFactory) {
+        return new QueryBudget(
+                name,
+                maxStatements,
+                maxEntityLoads,
+                maxCollectionFetches,
+                mode,
+                blockSessionFactory);
+    }
+
+    /**
+     * Выполнить блок и проверить бюджет.
+     *
+     * @return потребление блока (в режиме LOG - в том числе при превышении)
+     */
+    public QueryBudgetUsage run(Runnable block) {
+        requireSources();
+        Recorder recorder = new Recorder();
+        recorder.record(
+                () -> {
+                    block.run();
+                    return null;
+                });
+        return check(recorder);
+    }
+
+    /**
+     * Выполнить блок с результатом и проверить бюджет.
+     */
+    public <T> T call(Supplier<T> block) {
+        requireSources();
+        Recorder recorder = new Recorder();
+        T result = recorder.record(block);
+        check(recorder);
+        return result;
+    }
+
+    private void requireSources() {
+        if (mode != Mode.FAIL || sessionFactory == null) {
+            return;
+        }
+        if (maxStatements != UNLIMITED && CapturingConnectionProvider.of(sessionFactory) == null) {
+            throw new ConfigurationException(
+                    "Statement capture is disabled for the session factory, "
+                            + "query budget cannot count statements");
+        }
+        boolean limitsLoads = maxEntityLoads != UNLIMITED || maxCollectionFetches != UNLIMITED;
+        if (limitsLoads && !SessionMonitoring.isInstalled(sessionFactory)) {
+            throw new ConfigurationException(
+                    "Session monitoring is not installed for the session factory, "
+                            + "query budget cannot count loads");
+        }
+    }
+
+    private QueryBudgetUsage check(Recorder recorder) {
+        QueryBudgetUsage usage = recorder.toUsage();
+        if (mode == Mode.FAIL
+                && sessionFactory == null
+                && usage.getStatements() == 0
+                && usage.getEntityLoads() == 0
+                && usage.getCollectionFetches() == 0) {
+            // Пустой блок неотличим от выключенного перехвата
+            log.warn(
+                    "Query budget{} counted nothing: check that statement capture is enabled "
+                            + "or bind the budget with on(sessionFactory)",
+                    name != null ? " '" + name + "'" : "");
+        }
+        if (usage.isExceeded()) {
+            if (mode == Mode.FAIL) {
+                throw new QueryBudgetExceededException(usage);
+            }
+            log.warn(usage.describe());
+        }
+        return usage;
+    }
+
+    /**
+     * Счетчики одного выполнения блока; события приходят только из потока блока.
+     */
+    private final class Recorder implements StatementCaptureListener, LoadListener {
+
+        private final List<CapturedStatement> overBudget = new ArrayList<>();
+        private final Map<String, Integer> fingerprints = new HashMap<>();
+        private int statements;
+        private int entityLoads;
+        private int collectionFetches;
+
+        <T> T record(Supplier<T> block) {
+            try (StatementCapture.Suspension statementBinding = StatementCapture.push(this);
+                    StatementCapture.Suspension loadBinding =
+                            SessionMonitoring.pushLoadListener(this)) {
+                return block.get();
+            }
+        }
+
+        @Override
+        public void onStatement(CapturedStatement statement) {
+            statements++;
+            if (maxStatements != UNLIMITED
+                    && statements > maxStatements
+                    && overBudget.size() < MAX_REPORTED_STATEMENTS) {
+                overBudget.add(statement);
+            }
+            String fingerprint =
+                    SqlFingerprinter.fingerprint(statement.getSql()).getFingerprint();
+            if (fingerprints.containsKey(fingerprint)
+                    || fingerprints.size() < MAX_TRACKED_FINGERPRINTS) {
+                fingerprints.merge(fingerprint, 1, Integer::sum);
+            }
+        }
+
+        @Override
+        public void onEntityLoad(String entityName) {
+            entityLoads++;
+        }
+
+        @Override
+        public void onCollectionFetch(String role) {
+            collectionFetches++;
+        }
+
+        QueryBudgetUsage toUsage() {
+            Map<String, Integer> repeated = new LinkedHashMap<>();
+            fingerprints.entrySet().stream()
+                    .filter(e -> e.getValue() > 1)
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .forEach(e -> repeated.put(e.getKey(), e.getValue()));
+            return new QueryBudgetUsage(
+                    QueryBudget.this,
+                    statements,
+                    entityLoads,
+                    collectionFetches,
+                    List.copyOf(overBudget),
+                    Collections.unmodifiableMap(repeated));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.mentee.power.performance;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+import ru.mentee.power.performance.monitoring.CapturedStatement;
+
+/**
+ * Фактическое потребление блока, выполненного под {@link QueryBudget}.
+ */
+@Value
+public class QueryBudgetUsage {
+
+    QueryBudget budget;
+    int statements;
+    int entityLoads;
+    int collectionFetches;
+
+    /** Выражения сверх лимита в порядке выполнения (не больше нескольких десятков). */
+    List<CapturedStatement> statementsOverBudget;
+
+    /** Отпечатки, выполненные больше одного раза, по убыванию числа выполнений. */
+    Map<String, Integer> repeatedStatements;
+
+    public boolean isExceeded() {
+        return exceeds(statements, budget.getMaxStatements())
+                || exceeds(entityLoads, budget.getMaxEntityLoads())
+                || exceeds(collectionFetches, budget.getMaxCollectionFetches());
+    }
+
+    /**
+     * Отчет о превышении: счетчики, лишние выражения и повторы (признак N+1).
+     */
+    public String describe() {
+        StringBuilder report = new StringBuilder();
+        report.append("Query budget");
+        if (budget.getName() != null) {
+            report.append(" '").append(budget.getName()).append('\'');
+        }
+        report.append(isExceeded() ? " exceeded: " : " used: ")
+                .append("statements ")
+                .append(limit(statements, budget.getMaxStatements()))
+                .append(", entity loads ")
+                .append(limit(entityLoads, budget.getMaxEntityLoads()))
+                .append(", collection fetches ")
+                .append(limit(collectionFetches, budget.getMaxCollectionFetches()));
+        if (!statementsOverBudget.isEmpty()) {
+            report.append("\nStatements over budget:");
+            int number = budget.getMaxStatements() + 1;
+            for (CapturedStatement statement : statementsOverBudget) {
+                report.append("\n  #").append(number++).append(' ').append(statement.getSql());
+            }
+        }
+        if (!repeatedStatements.isEmpty()) {
+            report.append("\nRepeated statements:");
+            repeatedStatements.forEach(
+                    (fingerprint, count) ->
+                            report.append("\n  ").append(count).append("x ").append(fingerprint));
+        }
+        return report.toString();
+    }
+
+    private static boolean exceeds(int actual, int max) {
+        return max != QueryBudget.UNLIMITED && actual > max;
+    }
+
+    private static String limit(int actual, int max) {
+        return max == QueryBudget.UNLIMITED ? String.valueOf(actual) : actual + "/" + max;
+    }
+}
@@ -1,47 +1,152 @@
 package ru.mentee.power.performance;
 
-import java.util.ArrayList;
-import java.util.List;
-import lombok.Data;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import ru.mentee.power.performance.monitoring.CallSite;
 
 /**
  * Информация о выполнении запроса.
+ * Время и количество строк хранятся в гистограммах фиксированного размера,
+ * поэтому запись безопасна из нескольких потоков и не растет с числом выполнений.
+ * Места вызова считаются по выборке, число различных мест ограничено.
  */
-@Data
+@Getter
 public class QueryExecution {
 
+    private static final int MAX_CALL_SITES = 16;
+
     private final String query;
-    private final List<Long> executionTimes = new ArrayList<>();
-    private final List<Integer> rowCounts = new ArrayList<>();
+    private final ConcurrentHistogram latencyNanos = new ConcurrentHistogram();
+    private final ConcurrentHistogram rowCounts = new ConcurrentHistogram();
+    private final AtomicInteger parameterCount = new AtomicInteger();
+    private final ConcurrentMap<CallSite, LongAdder> callSites = new ConcurrentHashMap<>();
+    private final LongAdder hydratedRows = new LongAdder();
+    private final LongAdder hydratedRoots = new LongAdder();
 
     public QueryExecution(String query) {
         this.query = query;
     }
 
     public void recordExecution(long executionTime, int rowCount) {
-        executionTimes.add(executionTime);
-        rowCounts.add(rowCount);
+        recordExecutionNanos(TimeUnit.MILLISECONDS.toNanos(executionTime), rowCount, 0);
+    }
+
+    public void recordExecutionNanos(long executionTimeNanos, int rowCount, int parameterCount) {
+        latencyNanos.record(executionTimeNanos);
+        rowCounts.record(rowCount);
+        this.parameterCount.accumulateAndGet(parameterCount, Math::max);
+    }
+
+    /**
+     * Учесть, сколько различных корневых сущностей дали прочитанные строки.
+     * Выполнения без загруженных сущностей (проекции, уже загруженные в сессию) не учитываются.
+     */
+    public void recordHydration(int rowCount, int roots) {
+        if (roots > 0) {
+            hydratedRows.add(rowCount);
+            hydratedRoots.add(roots);
+        }
+    }
+
+    /**
+     * Коэффициент размножения строк: строк JDBC на одну корневую сущность.
+     */
+    public double getExplosionFactor() {
+        long roots = hydratedRoots.sum();
+        return roots > 0 ? (double) hydratedRows.sum() / roots : 0;
+    }
+
+    public void recordCallSite(CallSite callSite) {
+        LongAdder counter = callSites.get(callSite);
+        if (counter == null) {
+            if (callSites.size() >= MAX_CALL_SITES) {
+                return;
+            }
+            counter = callSites.computeIfAbsent(callSite, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Самое частое место вызова среди попавших в выборку.
+     *
+     * @return место вызова или null, если выборок не было
+     */
+    public CallSite getTopCallSite() {
+        CallSite top = null;
+        long topCount = 0;
+        for (Map.Entry<CallSite, LongAdder> entry : callSites.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count > topCount) {
+                top = entry.getKey();
+                topCount = count;
+            }
+        }
+        return top;
     }
 
     public int getExecutionCount() {
-        return executionTimes.size();
+        return (int) Math.min(Integer.MAX_VALUE, latencyNanos.getCount());
+    }
+
+    public int getParameterCount() {
+        return parameterCount.get();
     }
 
     public long getAvgExecutionTime() {
-        if (executionTimes.isEmpty()) {
-            return 0;
-        }
-        return executionTimes.stream().mapToLong(Long::longValue).sum() / executionTimes.size();
+        return TimeUnit.NANOSECONDS.toMillis(getAvgExecutionTimeNanos());
+    }
+
+    public long getAvgExecutionTimeNanos() {
+        return latencyNanos.getMean();
+    }
+
+    public long getTotalExecutionTimeNanos() {
+        return latencyNanos.getSum();
+    }
+
+    public long getP50ExecutionTimeNanos() {
+        return latencyNanos.getP50();
+    }
+
+    public long getP95ExecutionTimeNanos() {
+        return latencyNanos.getP95();
+    }
+
+    public long getP99ExecutionTimeNanos() {
+        return latencyNanos.getP99();
+    }
+
+    /**
+     * Перцентили времени выполнения в наносекундах за один проход по гистограмме.
+     */
+    public long[] getExecutionTimePercentilesNanos(double... percentiles) {
+        return latencyNanos.getValuesAtPercentiles(percentiles);
+    }
+
+    public long getMaxExecutionTimeNanos() {
+        return latencyNanos.getMax();
     }
 
     public int getAvgRowCount() {
-        if (rowCounts.isEmpty()) {
-            return 0;
-        }
-        return rowCounts.stream().mapToInt(Integer::intValue).sum() / rowCounts.size();
+        return (int) rowCounts.getMean();
+    }
+
+    public int getP95RowCount() {
+        return (int) rowCounts.getP95();
     }
 
     public int getMaxRowCount() {
-        return rowCounts.stream().mapToInt(Integer::intValue).max().orElse(0);
+        return (int) rowCounts.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryExecution(query=" + query + ", latencyNanos=[" + latencyNanos + "])";
     }
 }
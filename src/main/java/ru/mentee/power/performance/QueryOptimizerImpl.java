@@ -1,10 +1,27 @@
 package ru.mentee.power.performance;
 
 import jakarta.persistence.EntityGraph;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.metamodel.Attribute;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.CollectionClassification;
+import org.hibernate.metamodel.model.domain.PluralPersistentAttribute;
+import org.hibernate.query.sqm.SqmPathSource;
+import org.hibernate.query.sqm.tree.SqmStatement;
+import org.hibernate.query.sqm.tree.from.SqmAttributeJoin;
+import org.hibernate.query.sqm.tree.from.SqmFrom;
+import org.hibernate.query.sqm.tree.from.SqmJoin;
+import org.hibernate.query.sqm.tree.from.SqmRoot;
+import org.hibernate.query.sqm.tree.select.SqmQuerySpec;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+import org.hibernate.query.sqm.tree.select.SqmSelection;
 
 /**
  * Реализация оптимизатора запросов.
@@ -12,28 +29,77 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class QueryOptimizerImpl implements QueryOptimizer {
 
+    private static final int LARGE_COLLECTION_SIZE = 50;
+    private static final double LOOP_ACCESS_RATIO = 0.5;
+    private static final int DEFAULT_BATCH_SIZE = 25;
+    private static final int MIN_BATCH_SIZE = 2;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_ROWS_PER_BATCH = 1000;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    /**
+     * Оптимизатор без SessionFactory: доступны только рекомендации по стратегии загрузки.
+     */
+    public QueryOptimizerImpl() {
+        this.sessionFactory = null;
+    }
+
+    public QueryOptimizerImpl(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * Переписать запрос через семантическую модель Hibernate (SQM): запрос разбирается,
+     * для запрошенных путей добавляются LEFT JOIN FETCH (с переиспользованием уже
+     * существующих fetch-соединений) и дерево рендерится обратно в HQL.
+     * DISTINCT не добавляется: Hibernate 6 сам убирает дубликаты корневых сущностей.
+     */
     @Override
     public OptimizedQuery optimizeHQL(String hql, ExecutionContext context) {
         List<String> optimizations = new ArrayList<>();
-        String optimizedHQL = hql;
-
-        // Добавляем JOIN FETCH если нужно
-        if (context.getAccessedProperties() != null && !context.getAccessedProperties().isEmpty()) {
-            for (String property : context.getAccessedProperties()) {
-                if (!hql.contains("JOIN FETCH") && !hql.contains("join fetch")) {
-                    optimizedHQL = addJoinFetch(optimizedHQL, property);
-                    optimizations.add("Added JOIN FETCH for: " + property);
-                }
-            }
+        Set<String> paths = context.getAccessedProperties();
+        if (paths == null || paths.isEmpty()) {
+            return new OptimizedQuery(hql, hql, "No accessed properties", optimizations);
+        }
+        if (sessionFactory == null) {
+            return new OptimizedQuery(
+                    hql, hql, "SessionFactory is required for HQL rewriting", optimizations);
         }
 
-        // Добавляем DISTINCT если есть JOIN FETCH
-        if (optimizedHQL.contains("JOIN FETCH") && !optimizedHQL.contains("DISTINCT")) {
-            optimizedHQL =
-                    "SELECT DISTINCT " + optimizedHQL.substring(optimizedHQL.indexOf("FROM"));
-            optimizations.add("Added DISTINCT to avoid duplicates");
+        SqmStatement<?> statement;
+        try {
+            statement =
+                    sessionFactory
+                            .getQueryEngine()
+                            .getHqlTranslator()
+                            .translate(hql, context.getEntityClass());
+        } catch (HibernateException | IllegalArgumentException e) {
+            log.warn("Cannot parse HQL for optimization: {}", e.getMessage());
+            return new OptimizedQuery(
+                    hql, hql, "Query cannot be parsed: " + e.getMessage(), optimizations);
         }
 
+        if (!(statement instanceof SqmSelectStatement<?> select)
+                || !(select.getQueryPart() instanceof SqmQuerySpec<?> querySpec)
+                || querySpec.getFromClause().getRoots().size() != 1) {
+            return new OptimizedQuery(
+                    hql, hql, "Only single-root select queries are rewritten", optimizations);
+        }
+        SqmRoot<?> root = querySpec.getFromClause().getRoots().get(0);
+        if (!selectsRoot(querySpec, root)) {
+            return new OptimizedQuery(
+                    hql, hql, "Fetch joins require the root entity in SELECT", optimizations);
+        }
+
+        boolean paginated =
+                querySpec.getFetchExpression() != null || querySpec.getOffsetExpression() != null;
+        int fetchedBags = countFetchedBags(root);
+        for (String path : new TreeSet<>(paths)) {
+            fetchedBags += addFetchPath(root, path, paginated, fetchedBags, optimizations);
+        }
+
+        String optimizedHQL = optimizations.isEmpty() ? hql : select.toHqlString();
         return new OptimizedQuery(
                 hql, optimizedHQL, "Query optimized based on access patterns", optimizations);
     }
@@ -49,41 +115,139 @@ public class QueryOptimizerImpl implements QueryOptimizer {
     @Override
     public FetchStrategy recommendFetchStrategy(
             AssociationMetadata association, UsageStatistics statistics) {
-        if (statistics.getAccessCount() > 100 && statistics.getAverageResultSize() < 10) {
+        boolean loopAccess =
+                statistics.getLoopAccessRatio() >= LOOP_ACCESS_RATIO
+                        || (statistics.getAccessCount() > 100
+                                && statistics.getAverageResultSize() < 10);
+
+        if (statistics.getAverageResultSize() > LARGE_COLLECTION_SIZE) {
             return new FetchStrategy(
-                    "BATCH",
-                    25,
-                    "Batch fetching recommended for frequently accessed small collections");
-        } else if (statistics.getAverageResultSize() > 50) {
+                    "SUBSELECT",
+                    0,
+                    String.format(
+                            "Subselect fetching recommended for large collections"
+                                    + " (avg %d, p95 %d elements)",
+                            statistics.getAverageResultSize(),
+                            statistics.getP95ResultSize()));
+        } else if (loopAccess) {
+            int batchSize = deriveBatchSize(statistics);
             return new FetchStrategy(
-                    "SUBSELECT", 0, "Subselect fetching recommended for large collections");
+                    "BATCH",
+                    batchSize,
+                    String.format(
+                            "Batch fetching recommended: %d initializations, %.0f%% in loops,"
+                                    + " p95 %d per session, p95 size %d (current batch size %d)",
+                            statistics.getAccessCount(),
+                            statistics.getLoopAccessRatio() * 100,
+                            statistics.getP95AccessesPerSession(),
+                            statistics.getP95ResultSize(),
+                            association.getBatchSize()));
         } else {
             return new FetchStrategy(
                     "JOIN_FETCH", 0, "JOIN FETCH recommended for immediate access");
         }
     }
 
-    private String addJoinFetch(String hql, String property) {
-        // Простая реализация - добавляет JOIN FETCH
-        String upperHQL = hql.toUpperCase();
-        if (upperHQL.contains("FROM")) {
-            int fromIndex = upperHQL.indexOf("FROM");
-            String entityAlias = extractEntityAlias(hql, fromIndex);
-            if (entityAlias != null) {
-                String joinFetch = " JOIN FETCH " + entityAlias + "." + property;
-                return hql.substring(0, fromIndex) + joinFetch + " " + hql.substring(fromIndex);
+    /**
+     * Размер пачки по наблюдаемым данным: столько владельцев обычно обходится в одной сессии,
+     * но не больше, чем помещается в {@value #MAX_ROWS_PER_BATCH} строк результата.
+     */
+    private int deriveBatchSize(UsageStatistics statistics) {
+        int observed =
+                statistics.getP95AccessesPerSession() > 0
+                        ? statistics.getP95AccessesPerSession()
+                        : DEFAULT_BATCH_SIZE;
+        int rowsLimit = MAX_ROWS_PER_BATCH / Math.max(1, statistics.getP95ResultSize());
+        return Math.max(MIN_BATCH_SIZE, Math.min(Math.min(observed, rowsLimit), MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Добавить fetch-соединения по пути вида {@code orderItems.product}.
+     *
+     * @return число добавленных bag-коллекций
+     */
+    private int addFetchPath(
+            SqmRoot<?> root,
+            String path,
+            boolean paginated,
+            int fetchedBags,
+            List<String> optimizations) {
+        SqmFrom<?, ?> current = root;
+        int addedBags = 0;
+        String prefix = null;
+        for (String segment : path.split("\\.")) {
+            prefix = prefix == null ? segment : prefix + "." + segment;
+            SqmPathSource<?> source = current.getReferencedPathSource().findSubPathSource(segment);
+            if (source == null) {
+                optimizations.add("Skipped unknown path: " + path);
+                return addedBags;
+            }
+            if (!(source instanceof Attribute<?, ?> attribute)
+                    || !(attribute.isAssociation() || attribute.isCollection())) {
+                optimizations.add("Skipped non-association path: " + path);
+                return addedBags;
+            }
+            SqmAttributeJoin<?, ?> existing = findFetch(current, segment);
+            if (existing != null) {
+                current = existing;
+                continue;
             }
+            if (source instanceof PluralPersistentAttribute<?, ?, ?> plural) {
+                if (paginated) {
+                    optimizations.add(
+                            "Skipped JOIN FETCH for " + path + ": collection fetch with pagination"
+                                    + " is applied in memory, use @BatchSize");
+                    return addedBags;
+                }
+                if (isBag(plural) && fetchedBags + addedBags > 0) {
+                    optimizations.add(
+                            "Skipped JOIN FETCH for " + path + ": second bag fetch causes"
+                                    + " MultipleBagFetchException, use @BatchSize or a separate"
+                                    + " query");
+                    return addedBags;
+                }
+                if (isBag(plural)) {
+                    addedBags++;
+                }
+            }
+            current = (SqmAttributeJoin<?, ?>) current.fetch(segment, JoinType.LEFT);
+            optimizations.add("Added JOIN FETCH for: " + prefix);
         }
-        return hql;
+        return addedBags;
     }
 
-    private String extractEntityAlias(String hql, int fromIndex) {
-        // Извлекаем алиас сущности после FROM
-        String afterFrom = hql.substring(fromIndex + 4).trim();
-        String[] parts = afterFrom.split("\\s+");
-        if (parts.length > 0) {
-            return parts[0].toLowerCase();
+    private static SqmAttributeJoin<?, ?> findFetch(SqmFrom<?, ?> from, String attribute) {
+        for (SqmJoin<?, ?> join : from.getSqmJoins()) {
+            if (join instanceof SqmAttributeJoin<?, ?> attributeJoin
+                    && attributeJoin.isFetched()
+                    && attributeJoin.getAttribute().getName().equals(attribute)) {
+                return attributeJoin;
+            }
         }
         return null;
     }
+
+    private static int countFetchedBags(SqmFrom<?, ?> from) {
+        int bags = 0;
+        for (SqmJoin<?, ?> join : from.getSqmJoins()) {
+            if (join instanceof SqmAttributeJoin<?, ?> attributeJoin && attributeJoin.isFetched()) {
+                if (isBag(attributeJoin.getAttribute())) {
+                    bags++;
+                }
+                bags += countFetchedBags(attributeJoin);
+            }
+        }
+        return bags;
+    }
+
+    private static boolean isBag(Object attribute) {
+        return attribute instanceof PluralPersistentAttribute<?, ?, ?> plural
+                && plural.getCollectionClassification() == CollectionClassification.BAG;
+    }
+
+    private static boolean selectsRoot(SqmQuerySpec<?> querySpec, SqmRoot<?> root) {
+        List<? extends SqmSelection<?>> selections = querySpec.getSelectClause().getSelections();
+        return selections.isEmpty()
+                || (selections.size() == 1 && selections.get(0).getSelectableNode() == root);
+    }
 }
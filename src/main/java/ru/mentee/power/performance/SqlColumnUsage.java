@@ -0,0 +1,353 @@
+package ru.mentee.power.performance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Колонки, которые SQL-выражение использует в условиях, соединениях и сортировке.
+ * Разбирается только верхний уровень выражения: подзапросы пропускаются, условия внутри
+ * функций ({@code lower(c.email) = ?}) не считаются индексируемыми.
+ *
+ * <p>Рассчитан на SQL, который генерирует Hibernate: колонки квалифицированы алиасом таблицы.
+ * Неквалифицированные колонки учитываются, только если в выражении одна таблица.
+ */
+final class SqlColumnUsage {
+
+    private static final Set<String> KEYWORDS =
+            Set.of(
+                    "select", "from", "join", "inner", "left", "right", "full", "outer", "cross",
+                    "on", "where", "and", "or", "not", "in", "is", "null", "like", "between",
+                    "order", "group", "by", "having", "limit", "offset", "fetch", "first", "next",
+                    "rows", "row", "only", "for", "update", "delete", "set", "as", "asc", "desc",
+                    "nulls", "last", "distinct", "union", "except", "intersect", "exists", "case",
+                    "when", "then", "else", "end", "true", "false", "escape", "values", "into");
+    private static final Set<String> RANGE_OPERATORS = Set.of("<", ">", "<=", ">=");
+
+    private final Map<String, String> aliases = new HashMap<>();
+    private final Map<String, TableUsage> tables = new LinkedHashMap<>();
+    private final List<Column> sortColumns = new ArrayList<>();
+
+    private SqlColumnUsage() {}
+
+    /**
+     * Разобрать выражение; для неподдерживаемого SQL результат будет без таблиц.
+     */
+    static SqlColumnUsage parse(String sql) {
+        SqlColumnUsage usage = new SqlColumnUsage();
+        List<String> tokens = tokenize(sql);
+        usage.collectTables(tokens);
+        if (!usage.aliases.isEmpty()) {
+            usage.collectColumns(tokens);
+        }
+        return usage;
+    }
+
+    Collection<TableUsage> getTables() {
+        return tables.values();
+    }
+
+    /**
+     * Таблица, по колонкам которой идет вся сортировка, или null.
+     */
+    String getSortTable() {
+        String table = null;
+        for (Column column : sortColumns) {
+            if (table != null && !table.equals(column.table)) {
+                return null;
+            }
+            table = column.table;
+        }
+        return table;
+    }
+
+    private void collectTables(List<String> tokens) {
+        boolean fromClause = false;
+        boolean expectTable = false;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("(")) {
+                // Подзапросы и списки аргументов не содержат таблиц верхнего уровня
+                i = skipParentheses(tokens, i);
+                expectTable = false;
+                continue;
+            }
+            if (expectTable) {
+                if (isIdentifier(token)) {
+                    String table = tableName(token);
+                    String alias = table;
+                    int next = i + 1;
+                    if (next < tokens.size() && tokens.get(next).equals("as")) {
+                        next++;
+                    }
+                    if (next < tokens.size() && isIdentifier(tokens.get(next))) {
+                        alias = tokens.get(next);
+                        i = next;
+                    }
+                    aliases.put(alias, table);
+                    aliases.putIfAbsent(table, table);
+                    tables.computeIfAbsent(table, TableUsage::new);
+                }
+                expectTable = false;
+                continue;
+            }
+            switch (token) {
+                case "from", "join" -> {
+                    fromClause = true;
+                    expectTable = true;
+                }
+                case "update" -> expectTable = i == 0;
+                case "," -> expectTable = fromClause;
+                case "on", "where", "order", "group", "having", "limit", "offset", "set" ->
+                        fromClause = false;
+                case "union", "except", "intersect" -> {
+                    return;
+                }
+                default -> {}
+            }
+        }
+    }
+
+    private void collectColumns(List<String> tokens) {
+        String clause = "";
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("(") && i + 1 < tokens.size() && tokens.get(i + 1).equals("select")) {
+                i = skipParentheses(tokens, i);
+                continue;
+            }
+            switch (token) {
+                case "select", "from", "join", "on", "where", "having", "limit", "offset",
+                        "set" -> {
+                    clause = token;
+                    continue;
+                }
+                case "order", "group" -> {
+                    clause = token;
+                    i++;
+                    continue;
+                }
+                case "union", "except", "intersect" -> {
+                    return;
+                }
+                default -> {}
+            }
+            if (token.equals("*") || token.endsWith(".*")) {
+                if (clause.equals("select")) {
+                    selectAll(token);
+                }
+                continue;
+            }
+            Column column = resolve(tokens, i);
+            if (column == null) {
+                continue;
+            }
+            TableUsage usage = tables.get(column.table);
+            switch (clause) {
+                case "select" -> usage.selected.add(column.name);
+                case "on", "where" -> predicate(tokens, i, column);
+                case "order" -> {
+                    sortColumns.add(column);
+                    if (!usage.sort.contains(column.name)) {
+                        usage.sort.add(column.name);
+                    }
+                }
+                default -> {}
+            }
+        }
+    }
+
+    /**
+     * Классифицировать условие, в котором участвует колонка.
+     */
+    private void predicate(List<String> tokens, int i, Column column) {
+        TableUsage usage = tables.get(column.table);
+        String operator = i + 1 < tokens.size() ? tokens.get(i + 1) : "";
+        int operand = i + 2;
+        if (operator.equals("not")) {
+            return;
+        }
+        if (i >= 2 && !isIdentifier(tokens.get(i - 2)) && isOperator(tokens.get(i - 1))) {
+            // Обратная запись: ? = c.col
+            operator = tokens.get(i - 1);
+            operand = -1;
+        }
+        if (operator.equals("=")) {
+            Column other = operand > 0 && operand < tokens.size() ? resolve(tokens, operand) : null;
+            if (other != null) {
+                usage.join.add(column.name);
+                tables.get(other.table).join.add(other.name);
+            } else {
+                usage.equality.add(column.name);
+            }
+        } else if (operator.equals("in") || operator.equals("is")) {
+            usage.equality.add(column.name);
+        } else if (RANGE_OPERATORS.contains(operator)
+                || operator.equals("between")
+                || operator.equals("like")) {
+            usage.range.add(column.name);
+        }
+    }
+
+    private Column resolve(List<String> tokens, int i) {
+        String token = tokens.get(i);
+        if (!isIdentifier(token)) {
+            return null;
+        }
+        if (i + 1 < tokens.size() && tokens.get(i + 1).equals("(")) {
+            // Имя функции
+            return null;
+        }
+        if (i >= 2 && tokens.get(i - 1).equals("(") && isIdentifier(tokens.get(i - 2))) {
+            // Аргумент функции: такое условие обычный индекс не использует
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        if (dot > 0) {
+            String table = aliases.get(token.substring(0, dot));
+            return table != null ? new Column(table, token.substring(dot + 1)) : null;
+        }
+        if (tables.size() == 1 && !aliases.containsKey(token)) {
+            return new Column(tables.keySet().iterator().next(), token);
+        }
+        return null;
+    }
+
+    private void selectAll(String token) {
+        if (token.equals("*")) {
+            tables.values().forEach(usage -> usage.selectAll = true);
+            return;
+        }
+        String table = aliases.get(token.substring(0, token.length() - 2));
+        if (table != null) {
+            tables.get(table).selectAll = true;
+        }
+    }
+
+    /**
+     * Имя таблицы без схемы в нижнем регистре.
+     */
+    static String tableName(String qualified) {
+        String name = qualified.substring(qualified.lastIndexOf('.') + 1);
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static int skipParentheses(List<String> tokens, int i) {
+        int depth = 0;
+        for (; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.equals("(")) {
+                depth++;
+            } else if (token.equals(")") && --depth == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isIdentifier(String token) {
+        char c = token.charAt(0);
+        return (Character.isLetter(c) || c == '_') && !KEYWORDS.contains(token);
+    }
+
+    private static boolean isOperator(String token) {
+        return token.equals("=") || RANGE_OPERATORS.contains(token);
+    }
+
+    /**
+     * Токены в нижнем регистре: идентификаторы (вместе с алиасом через точку), "?" вместо
+     * литералов и параметров, операторы и скобки. Комментарии отбрасываются.
+     */
+    static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end;
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'') {
+                i++;
+                while (i < n && (sql.charAt(i) != '\'' || sql.startsWith("''", i))) {
+                    i += sql.startsWith("''", i) ? 2 : 1;
+                }
+                i++;
+                tokens.add("?");
+            } else if (Character.isDigit(c) || c == '?' || c == ':') {
+                int start = i++;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.'
+                        || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(c == ':' && i == start + 1 ? ":" : "?");
+            } else if (Character.isLetter(c) || c == '_' || c == '"' || c == '`') {
+                StringBuilder word = new StringBuilder();
+                while (i < n) {
+                    char w = sql.charAt(i);
+                    if (w == '"' || w == '`') {
+                        int end = sql.indexOf(w, i + 1);
+                        end = end < 0 ? n : end;
+                        word.append(sql, i + 1, end);
+                        i = Math.min(n, end + 1);
+                    } else if (Character.isLetterOrDigit(w) || w == '_' || w == '$' || w == '.'
+                            || (w == '*' && i > 0 && sql.charAt(i - 1) == '.')) {
+                        word.append(w);
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(word.toString().toLowerCase(Locale.ROOT));
+            } else if ((c == '<' || c == '>' || c == '!') && i + 1 < n
+                    && (sql.charAt(i + 1) == '=' || sql.charAt(i + 1) == '>')) {
+                tokens.add(sql.substring(i, i + 2));
+                i += 2;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Использование колонок одной таблицы.
+     */
+    static final class TableUsage {
+
+        final String table;
+        final Set<String> equality = new LinkedHashSet<>();
+        final Set<String> range = new LinkedHashSet<>();
+        final List<String> sort = new ArrayList<>();
+        final Set<String> join = new LinkedHashSet<>();
+        final Set<String> selected = new LinkedHashSet<>();
+        boolean selectAll;
+
+        TableUsage(String table) {
+            this.table = table;
+        }
+    }
+
+    private static final class Column {
+
+        private final String table;
+        private final String name;
+
+        Column(String table, String name) {
+            this.table = table;
+            this.name = name;
+        }
+    }
+}
@@ -11,6 +11,13 @@ import lombok.Data;
 public class UsageStatistics {
 
     private int accessCount;
-    private double accessFrequency;
+    private double accessFrequency; // инициализаций на загруженного владельца
     private int averageResultSize;
+    private int p95ResultSize;
+    private double loopAccessRatio; // доля повторных инициализаций в одной сессии
+    private int p95AccessesPerSession;
+
+    public UsageStatistics(int accessCount, double accessFrequency, int averageResultSize) {
+        this(accessCount, accessFrequency, averageResultSize, averageResultSize, 0, 0);
+    }
 }
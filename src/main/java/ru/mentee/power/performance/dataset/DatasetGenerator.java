@@ -0,0 +1,742 @@
+package ru.mentee.power.performance.dataset;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.exception.DataAccessException;
+
+/**
+ * Детерминированный генератор большого набора данных для бенчмарков.
+ * Заполняет products, inventory, customers, orders, order_items, users, user_profiles,
+ * courses, students и enrollments в уже созданной схеме (пустой - ключи начинаются с 1).
+ *
+ * <p>Популярность товаров и курсов подчиняется закону Ципфа, число заказов на клиента -
+ * распределению Парето, поэтому в данных есть горячие строки и клиенты с сотнями
+ * заказов, как в production. Загрузка идет JDBC-батчами из нескольких соединений:
+ * каждая порция строк - отдельная задача со своим seed, поэтому результат не зависит от
+ * числа потоков и порядка их выполнения.
+ *
+ * <p>Для PostgreSQL стоит добавить {@code reWriteBatchedInserts=true} в JDBC URL.
+ */
+@Slf4j
+public class DatasetGenerator {
+
+    private static final long PRODUCTS = 1;
+    private static final long CUSTOMERS = 2;
+    private static final long ORDER_SHAPE = 3;
+    private static final long ORDER_CONTENT = 4;
+    private static final long USERS = 5;
+    private static final long COURSES = 6;
+    private static final long STUDENTS = 7;
+    private static final long PRICE = 8;
+    private static final long POPULARITY = 9;
+
+    private static final String[] FIRST_NAMES = {
+        "Alex", "Maria", "Ivan", "Olga", "Dmitry", "Anna", "Sergey", "Elena", "Pavel", "Irina",
+        "John", "Emma", "Liam", "Sofia", "Noah", "Mia", "Lucas", "Chloe", "Mark", "Nina"
+    };
+    private static final String[] LAST_NAMES = {
+        "Ivanov", "Petrova", "Smirnov", "Kuznetsova", "Popov", "Volkova", "Sokolov", "Lebedeva",
+        "Smith", "Johnson", "Brown", "Garcia", "Miller", "Davis", "Wilson", "Moore"
+    };
+    private static final String[] PRODUCT_WORDS = {
+        "Smart", "Pro", "Ultra", "Compact", "Wireless", "Classic", "Eco", "Max", "Mini", "Prime",
+        "Phone", "Laptop", "Camera", "Speaker", "Watch", "Monitor", "Router", "Lamp", "Chair"
+    };
+    private static final String[] GRADES = {"A", "B", "C", "D", "F"};
+    private static final String PASSWORD_HASH =
+            "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z0fNqz5dMRoEhk8oTG1Gu4Sa";
+
+    private final DataSource dataSource;
+    private final DatasetSpec spec;
+    private final Map<String, LongAdder> rows = new LinkedHashMap<>();
+    private ZipfSampler productSampler;
+    private ZipfSampler courseSampler;
+
+    public DatasetGenerator(DataSource dataSource, DatasetSpec spec) {
+        this.dataSource = dataSource;
+        this.spec = spec;
+        for (String table :
+                List.of(
+                        "products",
+                        "inventory",
+                        "customers",
+                        "orders",
+                        "order_items",
+                        "users",
+                        "user_profiles",
+                        "courses",
+                        "students",
+                        "enrollments")) {
+            rows.put(table, new LongAdder());
+        }
+    }
+
+    /**
+     * Заполнить схему.
+     *
+     * @return число строк по таблицам и время загрузки
+     */
+    public DatasetSummary generate() {
+        long start = System.nanoTime();
+        productSampler =
+                spec.getProducts() > 0
+                        ? new ZipfSampler(
+                                spec.getProducts(),
+                                spec.getProductSkew(),
+                                seed(POPULARITY, PRODUCTS))
+                        : null;
+        courseSampler =
+                spec.getCourses() > 0
+                        ? new ZipfSampler(
+                                spec.getCourses(), spec.getCourseSkew(), seed(POPULARITY, COURSES))
+                        : null;
+        boolean inventory = spec.getWarehouses() > 0 && inventoryTableExists();
+
+        ExecutorService executor = Executors.newFixedThreadPool(spec.getThreads());
+        try {
+            // Этап 1: таблицы, на которые ссылаются заказы и записи на курсы
+            List<Callable<Void>> first = new ArrayList<>();
+            first.addAll(chunks(spec.getProducts(), (c, f, n) -> loadProducts(c, f, n, inventory)));
+            first.addAll(chunks(spec.getCustomers(), this::loadCustomers));
+            first.addAll(chunks(spec.getUsers(), this::loadUsers));
+            first.addAll(chunks(spec.getCourses(), this::loadCourses));
+            runAll(executor, first);
+
+            // Этап 2: заказы с позициями и студенты с записями на курсы
+            List<Callable<Void>> second = new ArrayList<>();
+            if (productSampler != null) {
+                second.addAll(orderChunks(executor));
+            }
+            if (courseSampler != null) {
+                second.addAll(chunks(spec.getStudents(), this::loadStudents));
+            }
+            runAll(executor, second);
+        } finally {
+            executor.shutdownNow();
+        }
+        restartIdentities();
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        rows.forEach((table, count) -> counts.put(table, count.sum()));
+        DatasetSummary summary =
+                new DatasetSummary(counts, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Dataset generated: {}", summary);
+        return summary;
+    }
+
+    // ========== Этап 1 ==========
+
+    private void loadProducts(Connection conn, long firstId, int count, boolean inventory)
+            throws SQLException {
+        SplittableRandom random = random(PRODUCTS, firstId);
+        try (BatchInserter products =
+                        insert(
+                                conn,
+                                "products",
+                                "id, sku, name, description, price, stock_quantity, created_at");
+                BatchInserter stock =
+                        inventory
+                                ? insert(
+                                        conn,
+                                        "mentee_power.inventory",
+                                        "warehouse_id, product_id, quantity_on_hand,"
+                                                + " quantity_reserved, reorder_level")
+                                : null) {
+            for (long id = firstId; id < firstId + count; id++) {
+                String name = pick(random, PRODUCT_WORDS) + " " + pick(random, PRODUCT_WORDS);
+                products.add(
+                        id,
+                        "SKU-" + id,
+                        name + " " + id,
+                        name + " for everyday use, model " + id,
+                        BigDecimal.valueOf(priceCents(id), 2),
+                        random.nextInt(1_000),
+                        pastTimestamp(random));
+                if (stock != null) {
+                    int home = 1 + (int) (id % spec.getWarehouses());
+                    for (int warehouse = 1; warehouse <= spec.getWarehouses(); warehouse++) {
+                        if (warehouse == home || random.nextInt(100) < 40) {
+                            int onHand = random.nextInt(500);
+                            stock.add(
+                                    warehouse,
+                                    id,
+                                    onHand,
+                                    random.nextInt(onHand / 4 + 1),
+                                    10 + random.nextInt(40));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void loadCustomers(Connection conn, long firstId, int count) throws SQLException {
+        SplittableRandom random = random(CUSTOMERS, firstId);
+        try (BatchInserter customers =
+                insert(conn, "customers", "id, first_name, last_name, email, phone")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                customers.add(
+                        id,
+                        pick(random, FIRST_NAMES),
+                        pick(random, LAST_NAMES),
+                        "customer" + id + "@example.com",
+                        random.nextInt(100) < 70 ? "+7900" + (1_000_000 + id % 9_000_000) : null);
+            }
+        }
+    }
+
+    private void loadUsers(Connection conn, long firstId, int count) throws SQLException {
+        SplittableRandom random = random(USERS, firstId);
+        try (BatchInserter users =
+                        insert(
+                                conn,
+                                "users",
+                                "id, username, email, password_hash, first_name, last_name,"
+                                        + " active, created_at, updated_at");
+                BatchInserter profiles =
+                        insert(conn, "user_profiles", "id, bio, avatar_url, date_of_birth")) {
+            profiles.dependsOn(users);
+            for (long id = firstId; id < firstId + count; id++) {
+                Timestamp created = pastTimestamp(random);
+                users.add(
+                        id,
+                        "user" + id,
+                        "user" + id + "@example.com",
+                        PASSWORD_HASH,
+                        pick(random, FIRST_NAMES),
+                        pick(random, LAST_NAMES),
+                        random.nextInt(100) < 95,
+                        created,
+                        created);
+                profiles.add(
+                        id,
+                        random.nextInt(100) < 30 ? "Bio of user " + id : null,
+                        "https://cdn.example.com/avatars/" + id + ".png",
+                        birthDate(random, 18_000));
+            }
+        }
+    }
+
+    private void loadCourses(Connection conn, long firstId, int count) throws SQLException {
+        SplittableRandom random = random(COURSES, firstId);
+        try (BatchInserter courses =
+                insert(
+                        conn,
+                        "courses",
+                        "id, code, name, description, credits, duration_hours")) {
+            for (long id = firstId; id < firstId + count; id++) {
+                int credits = 1 + random.nextInt(6);
+                courses.add(
+                        id,
+                        "C" + id,
+                        "Course " + id,
+                        "Course " + id + " description",
+                        credits,
+                        credits * 12 + random.nextInt(12));
+            }
+        }
+    }
+
+    // ========== Этап 2 ==========
+
+    /**
+     * Задачи загрузки заказов. Число заказов и позиций каждой порции клиентов считается
+     * заранее, чтобы порции знали свои диапазоны ключей и грузились параллельно.
+     */
+    private List<Callable<Void>> orderChunks(ExecutorService executor) {
+        int chunkCount = chunkCount(spec.getCustomers());
+        List<Callable<long[]>> planning = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int index = chunk;
+            planning.add(() -> shape(index).totals());
+        }
+        List<long[]> totals = runAll(executor, planning);
+
+        List<Callable<Void>> tasks = new ArrayList<>(chunkCount);
+        long firstOrderId = 1;
+        long firstItemId = 1;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int index = chunk;
+            long orderId = firstOrderId;
+            long itemId = firstItemId;
+            tasks.add(() -> inTransaction(conn -> loadOrders(conn, index, orderId, itemId)));
+            firstOrderId += totals.get(chunk)[0];
+            firstItemId += totals.get(chunk)[1];
+        }
+        return tasks;
+    }
+
+    /**
+     * Форма порции клиентов: заказов на клиента и позиций на заказ.
+     */
+    private OrderShape shape(int chunk) {
+        SplittableRandom random = random(ORDER_SHAPE, chunk);
+        long firstCustomer = (long) chunk * spec.getChunkSize() + 1;
+        int customers =
+                (int) Math.min(spec.getChunkSize(), spec.getCustomers() - firstCustomer + 1);
+        double alpha = spec.getOrderTailIndex();
+        double scale = spec.getOrdersPerCustomer() * (alpha - 1) / alpha;
+        double itemsP = 1.0 / Math.max(1.0, spec.getItemsPerOrder());
+        int maxItems = Math.min(spec.getMaxItemsPerOrder(), spec.getProducts());
+
+        int[] ordersPerCustomer = new int[customers];
+        List<Integer> itemsPerOrder = new ArrayList<>();
+        for (int i = 0; i < customers; i++) {
+            // Дискретный Парето: round(scale * U^(-1/alpha))
+            double pareto = scale * Math.pow(1.0 - random.nextDouble(), -1.0 / alpha);
+            int orders = (int) Math.min(spec.getMaxOrdersPerCustomer(), Math.round(pareto));
+            ordersPerCustomer[i] = orders;
+            for (int o = 0; o < orders; o++) {
+                // 1 + геометрическое с заданным средним
+                double geometric =
+                        Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - itemsP));
+                itemsPerOrder.add((int) Math.min(maxItems, 1 + geometric));
+            }
+        }
+        return new OrderShape(firstCustomer, ordersPerCustomer, itemsPerOrder);
+    }
+
+    private void loadOrders(Connection conn, int chunk, long firstOrderId, long firstItemId)
+            throws SQLException {
+        OrderShape shape = shape(chunk);
+        SplittableRandom random = random(ORDER_CONTENT, chunk);
+        OrderStatus[] statuses = OrderStatus.values();
+        int historyMinutes = spec.getHistoryDays() * 24 * 60;
+        long orderId = firstOrderId;
+        long itemId = firstItemId;
+        int orderIndex = 0;
+        long[] orderProducts = new long[spec.getMaxItemsPerOrder()];
+
+        try (BatchInserter orders =
+                        insert(
+                                conn,
+                                "orders",
+                                "id, order_number, customer_id, status, total_amount,"
+                                        + " order_date, delivery_date");
+                BatchInserter items =
+                        insert(
+                                conn,
+                                "order_items",
+                                "id, order_id, product_id, quantity, unit_price,"
+                                        + " discount_percent")) {
+            items.dependsOn(orders);
+            for (int c = 0; c < shape.ordersPerCustomer.length; c++) {
+                long customerId = shape.firstCustomer + c;
+                for (int o = 0; o < shape.ordersPerCustomer[c]; o++, orderId++) {
+                    int itemCount = shape.itemsPerOrder.get(orderIndex++);
+                    long totalCents = 0;
+                    for (int i = 0; i < itemCount; i++, itemId++) {
+                        long productId = distinctProduct(random, orderProducts, i);
+                        orderProducts[i] = productId;
+                        int quantity = random.nextInt(100) < 70 ? 1 : 2 + random.nextInt(4);
+                        int discount = random.nextInt(100) < 80 ? 0 : 5 * (1 + random.nextInt(4));
+                        long price = priceCents(productId);
+                        totalCents += price * quantity * (100 - discount) / 100;
+                        items.add(
+                                itemId,
+                                orderId,
+                                productId,
+                                quantity,
+                                BigDecimal.valueOf(price, 2),
+                                discount);
+                    }
+                    LocalDateTime orderDate =
+                            spec.getEpoch().minusMinutes(random.nextInt(historyMinutes));
+                    OrderStatus status = status(random, statuses);
+                    orders.add(
+                            orderId,
+                            "ORD-" + orderId,
+                            customerId,
+                            status.name(),
+                            BigDecimal.valueOf(totalCents, 2),
+                            timestamp(orderDate),
+                            status == OrderStatus.COMPLETED
+                                    ? timestamp(orderDate.plusDays(1 + random.nextInt(7)))
+                                    : null);
+                }
+            }
+        }
+    }
+
+    private void loadStudents(Connection conn, long firstId, int count) throws SQLException {
+        SplittableRandom random = random(STUDENTS, firstId);
+        int maxEnrollments = Math.min(2 * spec.getEnrollmentsPerStudent() - 1, spec.getCourses());
+        long[] courses = new long[Math.max(1, maxEnrollments)];
+        try (BatchInserter students =
+                        insert(
+                                conn,
+                                "students",
+                                "id, student_number, name, email, date_of_birth");
+                BatchInserter enrollments =
+                        insert(
+                                conn,
+                                "enrollments",
+                                "student_id, course_id, enrollment_date, grade,"
+                                        + " attendance_percentage, completed")) {
+            enrollments.dependsOn(students);
+            for (long id = firstId; id < firstId + count; id++) {
+                students.add(
+                        id,
+                        "S" + id,
+                        pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES),
+                        "student" + id + "@example.com",
+                        birthDate(random, 3_650));
+                int enrolled = maxEnrollments <= 0 ? 0 : 1 + random.nextInt(maxEnrollments);
+                for (int i = 0; i < enrolled; i++) {
+                    courses[i] = distinct(courseSampler, random, courses, i);
+                    boolean completed = random.nextInt(100) < 60;
+                    enrollments.add(
+                            id,
+                            courses[i],
+                            pastDate(random, 0, spec.getHistoryDays()),
+                            completed ? pick(random, GRADES) : null,
+                            40 + random.nextInt(61),
+                            completed);
+                }
+            }
+        }
+    }
+
+    // ========== Вспомогательные ==========
+
+    private long distinctProduct(SplittableRandom random, long[] chosen, int count) {
+        return distinct(productSampler, random, chosen, count);
+    }
+
+    /**
+     * Ключ по Ципфу, не совпадающий с уже выбранными (уникальность пары в таблице связи).
+     */
+    private static long distinct(
+            ZipfSampler sampler, SplittableRandom random, long[] chosen, int count) {
+        for (int attempt = 0; attempt < 32; attempt++) {
+            long key = sampler.sample(random);
+            if (!contains(chosen, count, key)) {
+                return key;
+            }
+        }
+        // Горячие ключи уже выбраны: берем следующий свободный по кругу
+        long key = sampler.sample(random);
+        while (contains(chosen, count, key)) {
+            key = key % sampler.size() + 1;
+        }
+        return key;
+    }
+
+    private static boolean contains(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static OrderStatus status(SplittableRandom random, OrderStatus[] statuses) {
+        int roll = random.nextInt(100);
+        if (roll < 60) {
+            return OrderStatus.COMPLETED;
+        }
+        if (roll < 75) {
+            return OrderStatus.PENDING;
+        }
+        return statuses[random.nextInt(statuses.length)];
+    }
+
+    /**
+     * Цена товара - функция ключа, чтобы позиции заказов знали ее без чтения products.
+     */
+    private long priceCents(long productId) {
+        long hash = mix(spec.getSeed() ^ mix(PRICE * 0x9E3779B97F4A7C15L + productId));
+        // Логнормально-подобный хвост: большинство товаров дешевые, немного дорогих
+        double u = (hash >>> 11) * 0x1.0p-53;
+        return 199 + (long) (Math.exp(u * Math.log(5_000)) * 100);
+    }
+
+    private int chunkCount(int total) {
+        return (total + spec.getChunkSize() - 1) / spec.getChunkSize();
+    }
+
+    private List<Callable<Void>> chunks(int total, ChunkLoader loader) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (long first = 1; first <= total; first += spec.getChunkSize()) {
+            long firstId = first;
+            int count = (int) Math.min(spec.getChunkSize(), total - first + 1);
+            tasks.add(() -> inTransaction(conn -> loader.load(conn, firstId, count)));
+        }
+        return tasks;
+    }
+
+    private Void inTransaction(ConnectionWork work) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                work.execute(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return null;
+    }
+
+    private static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Генерация набора данных прервана", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Ошибка генерации набора данных", e.getCause());
+        }
+    }
+
+    private boolean inventoryTableExists() {
+        try (Connection conn = dataSource.getConnection();
+                Statement statement = conn.createStatement()) {
+            statement.executeQuery("SELECT 1 FROM mentee_power.inventory WHERE 1 = 0").close();
+            return true;
+        } catch (SQLException e) {
+            log.warn("Table mentee_power.inventory not found, inventory is skipped");
+            return false;
+        }
+    }
+
+    /**
+     * Сдвинуть IDENTITY за загруженные ключи, чтобы приложение могло вставлять дальше.
+     */
+    private void restartIdentities() {
+        try (Connection conn = dataSource.getConnection();
+                Statement statement = conn.createStatement()) {
+            for (String table :
+                    List.of(
+                            "products",
+                            "customers",
+                            "orders",
+                            "order_items",
+                            "users",
+                            "courses",
+                            "students")) {
+                long count = rows.get(table).sum();
+                if (count > 0) {
+                    statement.execute(
+                            "ALTER TABLE "
+                                    + table
+                                    + " ALTER COLUMN id RESTART WITH "
+                                    + (count + 1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Не удалось сдвинуть IDENTITY", e);
+        }
+    }
+
+    private BatchInserter insert(Connection conn, String table, String columns)
+            throws SQLException {
+        int parameters = columns.split(",").length;
+        String sql =
+                "INSERT INTO "
+                        + table
+                        + " ("
+                        + columns
+                        + ") VALUES (?"
+                        + ", ?".repeat(parameters - 1)
+                        + ")";
+        String counter = table.substring(table.indexOf('.') + 1);
+        return new BatchInserter(
+                conn.prepareStatement(sql), spec.getBatchSize(), rows.get(counter));
+    }
+
+    private SplittableRandom random(long stream, long chunk) {
+        return new SplittableRandom(seed(stream, chunk));
+    }
+
+    private long seed(long stream, long chunk) {
+        return mix(spec.getSeed() ^ mix(stream * 0x9E3779B97F4A7C15L ^ mix(chunk)));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private Timestamp pastTimestamp(SplittableRandom random) {
+        return timestamp(spec.getEpoch().minusDays(random.nextInt(spec.getHistoryDays())));
+    }
+
+    /**
+     * Дата рождения не моложе 18 лет с разбросом {@code spreadDays}.
+     */
+    private Date birthDate(SplittableRandom random, int spreadDays) {
+        return pastDate(random, 6_570, spreadDays);
+    }
+
+    private Date pastDate(SplittableRandom random, int minDays, int spreadDays) {
+        return Date.valueOf(
+                spec.getEpoch().toLocalDate().minusDays(minDays + random.nextInt(spreadDays)));
+    }
+
+    private static Timestamp timestamp(LocalDateTime dateTime) {
+        return Timestamp.valueOf(dateTime);
+    }
+
+    /**
+     * Загрузка схемы по системным свойствам:
+     * {@code dataset.url}, {@code dataset.user}, {@code dataset.password},
+     * {@code dataset.scale} ({@code default} или {@code large}), {@code dataset.seed},
+     * {@code dataset.threads}. Схема создается Hibernate ({@code hbm2ddl=create}).
+     */
+    public static void main(String[] args) {
+        String url = System.getProperty("dataset.url", "jdbc:h2:file:./build/dataset/db");
+        DatasetSpec base =
+                "large".equals(System.getProperty("dataset.scale"))
+                        ? DatasetSpec.large()
+                        : DatasetSpec.builder().build();
+        DatasetSpec spec =
+                base.toBuilder()
+                        .seed(Long.getLong("dataset.seed", base.getSeed()))
+                        .threads(Integer.getInteger("dataset.threads", base.getThreads()))
+                        .build();
+
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(url);
+        dbConfig.setUsername(System.getProperty("dataset.user", "sa"));
+        dbConfig.setPassword(System.getProperty("dataset.password", ""));
+        dbConfig.setHbm2ddlAuto("create");
+        dbConfig.setStatementCaptureEnabled(false);
+        dbConfig.setJfrEventsEnabled(false);
+        try (SessionFactory schema = new HibernateConfig(dbConfig).buildSessionFactory()) {
+            log.info("Schema created for {}", url);
+        }
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername(dbConfig.getUsername());
+        hikariConfig.setPassword(dbConfig.getPassword());
+        hikariConfig.setMaximumPoolSize(spec.getThreads() + 1);
+        try (HikariDataSource pool = new HikariDataSource(hikariConfig)) {
+            new DatasetGenerator(pool, spec).generate();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkLoader {
+        void load(Connection conn, long firstId, int count) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ConnectionWork {
+        void execute(Connection conn) throws SQLException;
+    }
+
+    private static final class OrderShape {
+
+        private final long firstCustomer;
+        private final int[] ordersPerCustomer;
+        private final List<Integer> itemsPerOrder;
+
+        OrderShape(long firstCustomer, int[] ordersPerCustomer, List<Integer> itemsPerOrder) {
+            this.firstCustomer = firstCustomer;
+            this.ordersPerCustomer = ordersPerCustomer;
+            this.itemsPerOrder = itemsPerOrder;
+        }
+
+        long[] totals() {
+            long items = 0;
+            for (int count : itemsPerOrder) {
+                items += count;
+            }
+            return new long[] {itemsPerOrder.size(), items};
+        }
+    }
+
+    /**
+     * Батч одного INSERT; перед своим executeBatch сбрасывает батч родительской таблицы.
+     */
+    private static final class BatchInserter implements AutoCloseable {
+
+        private final PreparedStatement statement;
+        private final int batchSize;
+        private final LongAdder counter;
+        private BatchInserter parent;
+        private int pending;
+
+        BatchInserter(PreparedStatement statement, int batchSize, LongAdder counter) {
+            this.statement = statement;
+            this.batchSize = batchSize;
+            this.counter = counter;
+        }
+
+        void dependsOn(BatchInserter parentTable) {
+            this.parent = parentTable;
+        }
+
+        void add(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.addBatch();
+            if (++pending == batchSize) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (pending == 0) {
+                return;
+            }
+            if (parent != null) {
+                parent.flush();
+            }
+            statement.executeBatch();
+            counter.add(pending);
+            pending = 0;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+}
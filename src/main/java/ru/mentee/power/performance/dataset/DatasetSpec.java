@@ -0,0 +1,73 @@
+package ru.mentee.power.performance.dataset;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Размеры и форма генерируемого набора данных.
+ * Одинаковая спецификация (включая seed) всегда дает одинаковые строки независимо от
+ * числа потоков загрузки.
+ */
+@Value
+@Builder(toBuilder = true)
+public class DatasetSpec {
+
+    @Builder.Default long seed = 42L;
+
+    @Builder.Default int products = 10_000;
+    @Builder.Default int customers = 10_000;
+    @Builder.Default int users = 10_000;
+    @Builder.Default int students = 5_000;
+    @Builder.Default int courses = 200;
+
+    /** Склады для inventory; 0 - таблица не заполняется. */
+    @Builder.Default int warehouses = 5;
+
+    /** Среднее число заказов на клиента (приблизительно, распределение Парето). */
+    @Builder.Default double ordersPerCustomer = 4.0;
+
+    /** Показатель хвоста Парето: чем меньше, тем больше клиентов-"китов". */
+    @Builder.Default double orderTailIndex = 1.5;
+
+    @Builder.Default int maxOrdersPerCustomer = 500;
+
+    /** Среднее число позиций в заказе (1 + геометрическое распределение). */
+    @Builder.Default double itemsPerOrder = 2.5;
+
+    @Builder.Default int maxItemsPerOrder = 20;
+
+    /** Показатель Ципфа для популярности товаров в заказах. */
+    @Builder.Default double productSkew = 1.07;
+
+    /** Показатель Ципфа для популярности курсов. */
+    @Builder.Default double courseSkew = 0.8;
+
+    @Builder.Default int enrollmentsPerStudent = 4;
+
+    /** Заказы распределены по этому числу дней до {@link #epoch}. */
+    @Builder.Default int historyDays = 730;
+
+    /** Фиксированная точка отсчета дат, чтобы набор не зависел от текущего времени. */
+    @Builder.Default LocalDateTime epoch = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Builder.Default int batchSize = 1_000;
+
+    /** Строк основной сущности на одну задачу загрузки (и одну транзакцию). */
+    @Builder.Default int chunkSize = 10_000;
+
+    @Builder.Default int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Спецификация с ~10M позиций заказов: 1M клиентов по ~4 заказа по ~2.5 позиции.
+     */
+    public static DatasetSpec large() {
+        return builder()
+                .products(200_000)
+                .customers(1_000_000)
+                .users(1_000_000)
+                .students(200_000)
+                .courses(2_000)
+                .build();
+    }
+}
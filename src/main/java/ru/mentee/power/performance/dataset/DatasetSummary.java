@@ -0,0 +1,36 @@
+package ru.mentee.power.performance.dataset;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Итог генерации: строки по таблицам и время загрузки.
+ */
+@Value
+public class DatasetSummary {
+
+    Map<String, Long> rows;
+    Duration elapsed;
+
+    public long getRows(String table) {
+        return rows.getOrDefault(table, 0L);
+    }
+
+    public long getTotalRows() {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public String toString() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return String.format(
+                Locale.ROOT,
+                "%s, %d rows in %.1f s (%.0f rows/s)",
+                rows,
+                getTotalRows(),
+                seconds,
+                getTotalRows() / Math.max(seconds, 1e-9));
+    }
+}
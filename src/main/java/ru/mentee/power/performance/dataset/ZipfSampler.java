@@ -0,0 +1,55 @@
+package ru.mentee.power.performance.dataset;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Выбор ключа с популярностью по закону Ципфа.
+ * Ранги перемешаны детерминированной перестановкой, чтобы популярные ключи не
+ * совпадали с первыми вставленными строками (и не лежали рядом в индексе).
+ */
+public final class ZipfSampler {
+
+    private final double[] cdf;
+    private final long[] rankToKey;
+
+    /**
+     * @param size число ключей 1..size
+     * @param exponent показатель распределения; 0 - равномерное
+     * @param seed seed перестановки рангов
+     */
+    public ZipfSampler(int size, double exponent, long seed) {
+        cdf = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cdf[rank] /= sum;
+        }
+        rankToKey = new long[size];
+        for (int i = 0; i < size; i++) {
+            rankToKey[i] = i + 1;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long key = rankToKey[i];
+            rankToKey[i] = rankToKey[j];
+            rankToKey[j] = key;
+        }
+    }
+
+    public long sample(SplittableRandom random) {
+        int rank = Arrays.binarySearch(cdf, random.nextDouble());
+        if (rank < 0) {
+            rank = Math.min(-rank - 1, cdf.length - 1);
+        }
+        return rankToKey[rank];
+    }
+
+    public int size() {
+        return cdf.length;
+    }
+}
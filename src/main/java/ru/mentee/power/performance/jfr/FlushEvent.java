@@ -0,0 +1,25 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Сброс сессии в БД.
+ */
+@Name("ru.mentee.power.Flush")
+@Label("Hibernate Flush")
+@Category({"Hibernate", "Session"})
+@Description("Session flush with the number of entities and collections processed")
+@StackTrace(false)
+public class FlushEvent extends Event {
+
+    @Label("Entities")
+    int entities;
+
+    @Label("Collections")
+    int collections;
+}
@@ -0,0 +1,40 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Время жизни Hibernate-сессии и выполненная в ней работа.
+ */
+@Name("ru.mentee.power.HibernateSession")
+@Label("Hibernate Session")
+@Category({"Hibernate", "Session"})
+@Description("Hibernate session from open to close")
+@StackTrace(false)
+public class HibernateSessionEvent extends Event {
+
+    @Label("Statements")
+    long statements;
+
+    @Label("Batches")
+    long batches;
+
+    @Label("Flushes")
+    long flushes;
+
+    @Label("Cache Hits")
+    long cacheHits;
+
+    @Label("Cache Misses")
+    long cacheMisses;
+
+    @Label("Cache Puts")
+    long cachePuts;
+
+    @Label("Transactions")
+    long transactions;
+}
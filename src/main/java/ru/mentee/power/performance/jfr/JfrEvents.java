@@ -0,0 +1,189 @@
+package ru.mentee.power.performance.jfr;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import jdk.jfr.EventType;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import ru.mentee.power.performance.monitoring.SqlFingerprint;
+import ru.mentee.power.performance.monitoring.SqlFingerprinter;
+
+/**
+ * Точка подключения JFR-событий слоя данных.
+ * Пока тип события не включен в активной записи, проверки сводятся к чтению флага
+ * {@link EventType#isEnabled()} и объекты событий не создаются.
+ *
+ * <p>События сессии, сброса и кэша порождает {@link JfrSessionEventListener},
+ * события SQL - JDBC-прокси перехвата, ленивые загрузки - слушатели, которые
+ * регистрирует {@link #install(SessionFactory)}.
+ */
+@Slf4j
+public final class JfrEvents {
+
+    /** Значение для {@code hibernate.session.events.auto}. */
+    public static final String SESSION_LISTENER = JfrSessionEventListener.class.getName();
+
+    private static final EventType STATEMENT_TYPE = EventType.getEventType(SqlStatementEvent.class);
+    private static final EventType LAZY_TYPE =
+            EventType.getEventType(LazyInitializationEvent.class);
+    private static final int MAX_PENDING_LAZY = 64;
+    private static final ThreadLocal<Map<Object, LazyInitializationEvent>> PENDING_LAZY =
+            ThreadLocal.withInitial(IdentityHashMap::new);
+    private static final LazyStart LAZY_START = new LazyStart();
+    private static final LazyEnd LAZY_END = new LazyEnd();
+    private static final Set<SessionFactory> INSTALLED =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private JfrEvents() {}
+
+    /**
+     * Зарегистрировать слушатели ленивой загрузки (повторный вызов ничего не делает).
+     */
+    public static void install(SessionFactory sessionFactory) {
+        if (!INSTALLED.add(sessionFactory)) {
+            return;
+        }
+        EventListenerRegistry registry =
+                sessionFactory
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getServiceRegistry()
+                        .getService(EventListenerRegistry.class);
+        // Событие начинается до штатного слушателя и завершается после него
+        registry.prependListeners(org.hibernate.event.spi.EventType.INIT_COLLECTION, LAZY_START);
+        registry.appendListeners(org.hibernate.event.spi.EventType.INIT_COLLECTION, LAZY_END);
+        registry.prependListeners(org.hibernate.event.spi.EventType.LOAD, LAZY_START);
+        registry.appendListeners(org.hibernate.event.spi.EventType.LOAD, LAZY_END);
+        log.debug("JFR events installed for {}", sessionFactory);
+    }
+
+    /**
+     * Включено ли событие SQL: тогда JDBC-прокси оборачивают выражения даже без слушателей.
+     */
+    public static boolean isStatementEventEnabled() {
+        return STATEMENT_TYPE.isEnabled();
+    }
+
+    /**
+     * Начать событие выполнения выражения или null, если событие выключено.
+     */
+    public static SqlStatementEvent beginStatement() {
+        if (!STATEMENT_TYPE.isEnabled()) {
+            return null;
+        }
+        SqlStatementEvent event = new SqlStatementEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Зафиксировать длительность выполнения; запись произойдет в {@link #commitStatement}.
+     */
+    public static void endStatement(SqlStatementEvent event) {
+        if (event != null) {
+            event.end();
+        }
+    }
+
+    public static void commitStatement(
+            SqlStatementEvent event, String sql, int rows, int parameters) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        SqlFingerprint fingerprint = SqlFingerprinter.fingerprint(sql);
+        event.fingerprint = fingerprint.getFingerprint();
+        event.table = fingerprint.getTable();
+        event.rows = rows;
+        event.parameters = parameters;
+        event.commit();
+    }
+
+    /**
+     * Загрузка, вызванная обращением к ассоциации: инициализация прокси или EAGER-выборка.
+     */
+    private static boolean isAssociationLoad(LoadEventListener.LoadType loadType) {
+        return loadType == LoadEventListener.IMMEDIATE_LOAD
+                || loadType == LoadEventListener.INTERNAL_LOAD_EAGER
+                || loadType == LoadEventListener.INTERNAL_LOAD_NULLABLE;
+    }
+
+    private static void begin(Object hibernateEvent) {
+        if (!LAZY_TYPE.isEnabled()) {
+            return;
+        }
+        Map<Object, LazyInitializationEvent> pending = PENDING_LAZY.get();
+        if (pending.size() >= MAX_PENDING_LAZY) {
+            // Загрузки, прерванные исключением, не доходят до завершающего слушателя
+            pending.clear();
+        }
+        LazyInitializationEvent event = new LazyInitializationEvent();
+        event.begin();
+        pending.put(hibernateEvent, event);
+    }
+
+    private static LazyInitializationEvent end(Object hibernateEvent) {
+        if (!LAZY_TYPE.isEnabled()) {
+            return null;
+        }
+        LazyInitializationEvent event = PENDING_LAZY.get().remove(hibernateEvent);
+        return event != null && event.shouldCommit() ? event : null;
+    }
+
+    private static final class LazyStart
+            implements InitializeCollectionEventListener, LoadEventListener {
+
+        @Override
+        public void onInitializeCollection(InitializeCollectionEvent event) {
+            begin(event);
+        }
+
+        @Override
+        public void onLoad(LoadEvent event, LoadType loadType) {
+            if (isAssociationLoad(loadType)) {
+                begin(event);
+            }
+        }
+    }
+
+    private static final class LazyEnd
+            implements InitializeCollectionEventListener, LoadEventListener {
+
+        @Override
+        public void onInitializeCollection(InitializeCollectionEvent event) {
+            LazyInitializationEvent jfrEvent = end(event);
+            if (jfrEvent != null) {
+                PersistentCollection<?> collection = event.getCollection();
+                jfrEvent.role = collection.getRole();
+                jfrEvent.collection = true;
+                jfrEvent.size =
+                        collection instanceof Collection<?> elements
+                                ? elements.size()
+                                : collection instanceof Map<?, ?> entries ? entries.size() : -1;
+                jfrEvent.commit();
+            }
+        }
+
+        @Override
+        public void onLoad(LoadEvent event, LoadType loadType) {
+            if (!isAssociationLoad(loadType)) {
+                return;
+            }
+            LazyInitializationEvent jfrEvent = end(event);
+            if (jfrEvent != null) {
+                jfrEvent.role = event.getEntityClassName();
+                jfrEvent.size = event.getResult() != null ? 1 : 0;
+                jfrEvent.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.EventType;
+import org.hibernate.SessionEventListener;
+
+/**
+ * Слушатель сессии, порождающий JFR-события сессии, сброса и обращений к кэшу.
+ * Hibernate создает экземпляр на каждую сессию по настройке
+ * {@code hibernate.session.events.auto}; события создаются, только если их тип
+ * включен в активной записи.
+ */
+public class JfrSessionEventListener implements SessionEventListener {
+
+    private static final EventType SESSION_TYPE =
+            EventType.getEventType(HibernateSessionEvent.class);
+    private static final EventType FLUSH_TYPE = EventType.getEventType(FlushEvent.class);
+    private static final EventType CACHE_TYPE = EventType.getEventType(SecondLevelCacheEvent.class);
+
+    private final HibernateSessionEvent session;
+    private FlushEvent flush;
+    private SecondLevelCacheEvent cacheGet;
+    private SecondLevelCacheEvent cachePut;
+    private long statements;
+    private long batches;
+    private long flushes;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cachePuts;
+    private long transactions;
+
+    public JfrSessionEventListener() {
+        if (SESSION_TYPE.isEnabled()) {
+            session = new HibernateSessionEvent();
+            session.begin();
+        } else {
+            session = null;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        statements++;
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        batches++;
+    }
+
+    @Override
+    public void flushStart() {
+        if (FLUSH_TYPE.isEnabled()) {
+            flush = new FlushEvent();
+            flush.begin();
+        }
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        flushes++;
+        if (flush != null) {
+            flush.entities = numberOfEntities;
+            flush.collections = numberOfCollections;
+            flush.commit();
+            flush = null;
+        }
+    }
+
+    @Override
+    public void cacheGetStart() {
+        if (CACHE_TYPE.isEnabled()) {
+            cacheGet = new SecondLevelCacheEvent();
+            cacheGet.operation = "get";
+            cacheGet.begin();
+        }
+    }
+
+    @Override
+    public void cacheGetEnd(boolean hit) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+        if (cacheGet != null) {
+            cacheGet.hit = hit;
+            cacheGet.commit();
+            cacheGet = null;
+        }
+    }
+
+    @Override
+    public void cachePutStart() {
+        if (CACHE_TYPE.isEnabled()) {
+            cachePut = new SecondLevelCacheEvent();
+            cachePut.operation = "put";
+            cachePut.begin();
+        }
+    }
+
+    @Override
+    public void cachePutEnd() {
+        cachePuts++;
+        if (cachePut != null) {
+            cachePut.commit();
+            cachePut = null;
+        }
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        transactions++;
+    }
+
+    @Override
+    public void end() {
+        if (session == null) {
+            return;
+        }
+        session.statements = statements;
+        session.batches = batches;
+        session.flushes = flushes;
+        session.cacheHits = cacheHits;
+        session.cacheMisses = cacheMisses;
+        session.cachePuts = cachePuts;
+        session.transactions = transactions;
+        session.commit();
+    }
+}
@@ -0,0 +1,28 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Загрузка ленивой коллекции или прокси сущности при обращении к ассоциации.
+ */
+@Name("ru.mentee.power.LazyInitialization")
+@Label("Lazy Initialization")
+@Category({"Hibernate", "Session"})
+@Description("Lazy collection or entity proxy initialized on access")
+public class LazyInitializationEvent extends Event {
+
+    @Label("Role")
+    @Description("Collection role or entity name")
+    String role;
+
+    @Label("Collection")
+    boolean collection;
+
+    @Label("Size")
+    @Description("Elements loaded, -1 if unknown")
+    int size;
+}
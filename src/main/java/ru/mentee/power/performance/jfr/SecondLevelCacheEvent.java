@@ -0,0 +1,25 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Обращение сессии к кэшу второго уровня.
+ */
+@Name("ru.mentee.power.SecondLevelCache")
+@Label("Second Level Cache")
+@Category({"Hibernate", "Cache"})
+@Description("Second level cache get or put performed by a session")
+@StackTrace(false)
+public class SecondLevelCacheEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Hit")
+    boolean hit;
+}
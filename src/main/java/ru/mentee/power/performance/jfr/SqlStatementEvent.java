@@ -0,0 +1,31 @@
+package ru.mentee.power.performance.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Выполнение JDBC-выражения; длительность - без чтения результата.
+ * Стек вызова записывается, чтобы находить место запроса в приложении.
+ */
+@Name("ru.mentee.power.SqlStatement")
+@Label("SQL Statement")
+@Category({"Hibernate", "JDBC"})
+@Description("JDBC statement executed through the statement capture layer")
+public class SqlStatementEvent extends Event {
+
+    @Label("Fingerprint")
+    String fingerprint;
+
+    @Label("Table")
+    String table;
+
+    @Label("Rows")
+    @Description("Rows read from the result set or affected by DML")
+    int rows;
+
+    @Label("Parameters")
+    int parameters;
+}
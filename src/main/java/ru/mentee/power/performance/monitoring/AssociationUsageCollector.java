@@ -0,0 +1,222 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.persister.collection.CollectionPersister;
+import ru.mentee.power.performance.AssociationMetadata;
+import ru.mentee.power.performance.ConcurrentHistogram;
+import ru.mentee.power.performance.FetchStrategy;
+import ru.mentee.power.performance.QueryOptimizer;
+import ru.mentee.power.performance.UsageStatistics;
+
+/**
+ * Сбор реальной статистики использования ленивых коллекций.
+ * Для каждой ассоциации ({@code Order.orderItems}, {@code Customer.orders}, ...) считает
+ * инициализации, распределение размеров и повторные инициализации в одной сессии
+ * (обход владельцев в цикле). По этим данным {@link QueryOptimizer} выбирает
+ * BATCH/SUBSELECT/JOIN_FETCH и размер пачки вместо подобранного вручную {@code @BatchSize}.
+ *
+ * <p>Коллекции, загруженные пачкой или подзапросом вместе с инициализируемой, событий
+ * не порождают, поэтому счетчики отражают число обращений к БД, а не число владельцев.
+ */
+@Slf4j
+public class AssociationUsageCollector
+        implements InitializeCollectionEventListener, PostLoadEventListener {
+
+    private final SessionFactoryImplementor sessionFactory;
+    private final ConcurrentMap<String, AssociationUsage> usages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> ownerLoads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SharedSessionContractImplementor, SessionUsage> sessions =
+            new ConcurrentHashMap<>();
+
+    private AssociationUsageCollector(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * Создать сборщик и зарегистрировать его слушатели в SessionFactory.
+     */
+    public static AssociationUsageCollector install(SessionFactory sessionFactory) {
+        AssociationUsageCollector collector = new AssociationUsageCollector(sessionFactory);
+        EventListenerRegistry registry =
+                collector
+                        .sessionFactory
+                        .getServiceRegistry()
+                        .getService(EventListenerRegistry.class);
+        // После штатного слушателя коллекция уже инициализирована и ее размер известен
+        registry.appendListeners(EventType.INIT_COLLECTION, collector);
+        registry.appendListeners(EventType.POST_LOAD, collector);
+        log.debug("Association usage collector installed for {}", sessionFactory);
+        return collector;
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        PersistentCollection<?> collection = event.getCollection();
+        String role = collection.getRole();
+        if (role == null || !collection.wasInitialized()) {
+            return;
+        }
+        AssociationUsage usage =
+                usages.computeIfAbsent(
+                        CallSiteSampler.shortName(role), k -> new AssociationUsage(role));
+        usage.initializations.increment();
+        usage.sizes.record(sizeOf(collection));
+        if (sessionUsage(event.getSession()).initialized(role) > 1) {
+            usage.loopInitializations.increment();
+        }
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        ownerLoads
+                .computeIfAbsent(event.getPersister().getEntityName(), k -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Ассоциации, которые инициализировались хотя бы раз ({@code Order.orderItems}, ...).
+     */
+    public Set<String> getAssociations() {
+        return usages.keySet();
+    }
+
+    /**
+     * Наблюдаемая статистика ассоциации.
+     *
+     * @param association короткое имя ({@code Order.orderItems}) или полная роль коллекции
+     * @return статистика или null, если обращений не было
+     */
+    public UsageStatistics getStatistics(String association) {
+        AssociationUsage usage = usages.get(CallSiteSampler.shortName(association));
+        if (usage == null) {
+            return null;
+        }
+        long initializations = usage.initializations.sum();
+        String owner = persister(usage.role).getOwnerEntityPersister().getEntityName();
+        LongAdder owners = ownerLoads.get(owner);
+        long ownerCount = owners != null ? owners.sum() : 0;
+        long loops = usage.loopInitializations.sum();
+        return new UsageStatistics(
+                (int) Math.min(Integer.MAX_VALUE, initializations),
+                ownerCount > 0 ? (double) initializations / ownerCount : 0,
+                (int) usage.sizes.getMean(),
+                (int) usage.sizes.getP95(),
+                initializations > 0 ? (double) loops / initializations : 0,
+                (int) usage.initializationsPerSession.getP95());
+    }
+
+    /**
+     * Метаданные ассоциации из метамодели Hibernate, включая текущий размер пачки.
+     */
+    public AssociationMetadata getMetadata(String association) {
+        AssociationUsage usage = usages.get(CallSiteSampler.shortName(association));
+        CollectionPersister persister = persister(usage != null ? usage.role : association);
+        return new AssociationMetadata(
+                CallSiteSampler.shortName(persister.getRole()),
+                persister.isManyToMany() ? "ManyToMany" : "OneToMany",
+                persister.getElementType().getReturnedClass(),
+                persister.isLazy(),
+                Math.max(1, persister.getBatchSize()));
+    }
+
+    /**
+     * Рекомендации по всем наблюдавшимся ассоциациям.
+     */
+    public Map<String, FetchStrategy> recommend(QueryOptimizer optimizer) {
+        Map<String, FetchStrategy> recommendations = new LinkedHashMap<>();
+        for (String association : usages.keySet()) {
+            recommendations.put(
+                    association,
+                    optimizer.recommendFetchStrategy(
+                            getMetadata(association), getStatistics(association)));
+        }
+        return recommendations;
+    }
+
+    private CollectionPersister persister(String role) {
+        return sessionFactory
+                .getRuntimeMetamodels()
+                .getMappingMetamodel()
+                .getCollectionDescriptor(role);
+    }
+
+    private SessionUsage sessionUsage(SharedSessionContractImplementor session) {
+        return sessions.computeIfAbsent(
+                session,
+                k -> {
+                    SessionUsage usage = new SessionUsage(k);
+                    k.getEventListenerManager().addListener(usage);
+                    return usage;
+                });
+    }
+
+    private static int sizeOf(PersistentCollection<?> collection) {
+        if (collection instanceof java.util.Collection<?> elements) {
+            return elements.size();
+        }
+        if (collection instanceof Map<?, ?> entries) {
+            return entries.size();
+        }
+        return 0;
+    }
+
+    private static final class AssociationUsage {
+
+        private final String role;
+        private final LongAdder initializations = new LongAdder();
+        private final LongAdder loopInitializations = new LongAdder();
+        private final ConcurrentHistogram sizes = new ConcurrentHistogram();
+        private final ConcurrentHistogram initializationsPerSession = new ConcurrentHistogram();
+
+        AssociationUsage(String role) {
+            this.role = role;
+        }
+    }
+
+    /**
+     * Инициализации по ролям в одной сессии; при закрытии сессии переносятся в гистограммы.
+     */
+    private final class SessionUsage implements SessionEventListener {
+
+        private final SharedSessionContractImplementor session;
+        private final Map<String, Integer> initializationsByRole = new HashMap<>();
+
+        SessionUsage(SharedSessionContractImplementor session) {
+            this.session = session;
+        }
+
+        int initialized(String role) {
+            return initializationsByRole.merge(role, 1, Integer::sum);
+        }
+
+        @Override
+        public void end() {
+            sessions.remove(session);
+            initializationsByRole.forEach(
+                    (role, count) -> {
+                        AssociationUsage usage = usages.get(CallSiteSampler.shortName(role));
+                        if (usage != null) {
+                            usage.initializationsPerSession.record(count);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.mentee.power.performance.monitoring;
+
+import lombok.Value;
+
+/**
+ * Место в коде приложения, откуда выполнено SQL-выражение.
+ * Например {@code OptimizedOrderDAO.demonstrateBatchLoading -> Order.orderItems}.
+ */
+@Value
+public class CallSite {
+
+    /** Класс и метод приложения: {@code OptimizedOrderDAO.demonstrateBatchLoading}. */
+    String location;
+
+    /** Ленивая ассоциация, загрузка которой вызвала выражение, или null. */
+    String association;
+
+    @Override
+    public String toString() {
+        return association != null ? location + " -> " + association : location;
+    }
+}
@@ -0,0 +1,215 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Выборочное определение места вызова SQL-выражения.
+ * Место вызова - первый кадр стека из пакета приложения вне инфраструктуры: слоя перехвата,
+ * кэша ({@code SingleFlightLoader}, {@code NegativeResultCache}) и декораторов метрик, через
+ * которые проходит любой запрос. Если выше есть только инфраструктура (например, прогрев
+ * кэша), местом вызова считается первый ее кадр вне слоя перехвата.
+ * Обход стека дорогой, поэтому число обходов ограничено в секунду: пачка выражений
+ * одного N+1 размечается целиком, а в установившемся режиме накладные расходы
+ * не превышают долей процента одного ядра.
+ */
+public final class CallSiteSampler {
+
+    static final String APPLICATION_PACKAGE = "ru.mentee.power.";
+    private static final String CAPTURE_PACKAGE = "ru.mentee.power.performance.monitoring.";
+    static final List<String> INFRASTRUCTURE_PACKAGES =
+            List.of(CAPTURE_PACKAGE, "ru.mentee.power.cache.", "ru.mentee.power.metrics.");
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int MAX_ASSOCIATION_DEPTH = 32;
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static final ThreadLocal<Deque<AssociationMark>> ASSOCIATIONS =
+            ThreadLocal.withInitial(ArrayDeque::new);
+    private static final AtomicLong WINDOW_START = new AtomicLong(System.nanoTime());
+    private static final AtomicInteger WINDOW_SAMPLES = new AtomicInteger();
+
+    private static volatile int maxSamplesPerSecond = 100;
+
+    private CallSiteSampler() {}
+
+    /**
+     * Максимум обходов стека в секунду на процесс (0 - выключить разметку).
+     */
+    public static void setMaxSamplesPerSecond(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("samples must be >= 0: " + samples);
+        }
+        maxSamplesPerSecond = samples;
+    }
+
+    public static int getMaxSamplesPerSecond() {
+        return maxSamplesPerSecond;
+    }
+
+    /**
+     * Определить место вызова, если позволяет лимит.
+     *
+     * @return место вызова или null, если выборка пропущена или кадр приложения не найден
+     */
+    public static CallSite sample() {
+        if (!tryAcquire()) {
+            return null;
+        }
+        Optional<StackWalker.StackFrame> frame = WALKER.walk(CallSiteSampler::callerFrame);
+        if (frame.isEmpty()) {
+            return null;
+        }
+        StackWalker.StackFrame applicationFrame = frame.get();
+        return new CallSite(
+                simpleName(applicationFrame.getClassName())
+                        + "."
+                        + methodName(applicationFrame.getMethodName()),
+                currentAssociation());
+    }
+
+    private static Optional<StackWalker.StackFrame> callerFrame(
+            Stream<StackWalker.StackFrame> frames) {
+        StackWalker.StackFrame fallback = null;
+        for (Iterator<StackWalker.StackFrame> it = frames.iterator(); it.hasNext(); ) {
+            StackWalker.StackFrame frame = it.next();
+            String className = frame.getClassName();
+            if (isApplicationFrame(className)) {
+                return Optional.of(frame);
+            }
+            if (fallback == null
+                    && className.startsWith(APPLICATION_PACKAGE)
+                    && !className.startsWith(CAPTURE_PACKAGE)) {
+                fallback = frame;
+            }
+        }
+        return Optional.ofNullable(fallback);
+    }
+
+    /**
+     * Загружаемая сейчас ассоциация потока или null.
+     */
+    static String currentAssociation() {
+        AssociationMark top = ASSOCIATIONS.get().peek();
+        return top != null ? top.name : null;
+    }
+
+    /**
+     * Отметить начало загрузки ассоциации в текущем потоке.
+     * Отметки другой сессии и переполнение стека - остатки загрузок, прерванных
+     * исключением: до них завершающий слушатель не дошел, поэтому они сбрасываются.
+     *
+     * @param event событие Hibernate, по которому отметка снимается
+     * @param session сессия события
+     * @param association роль коллекции ({@code ru...Order.orderItems}) или имя сущности
+     */
+    static void enterAssociation(Object event, Object session, String association) {
+        Deque<AssociationMark> marks = ASSOCIATIONS.get();
+        AssociationMark top = marks.peek();
+        if (top != null && (top.session != session || marks.size() >= MAX_ASSOCIATION_DEPTH)) {
+            marks.clear();
+        }
+        marks.push(new AssociationMark(event, session, shortName(association)));
+    }
+
+    /**
+     * Снять отметку события вместе с отметками вложенных загрузок, прерванных исключением.
+     * Если отметки события уже нет (стек сброшен), ничего не делает.
+     */
+    static void exitAssociation(Object event) {
+        Deque<AssociationMark> marks = ASSOCIATIONS.get();
+        int depth = 0;
+        for (Iterator<AssociationMark> it = marks.iterator(); it.hasNext(); depth++) {
+            if (it.next().event == event) {
+                for (int i = 0; i <= depth; i++) {
+                    marks.pop();
+                }
+                return;
+            }
+        }
+    }
+
+    static int associationDepth() {
+        return ASSOCIATIONS.get().size();
+    }
+
+    /**
+     * Сбросить отметки потока, например при завершении сессии.
+     */
+    static void clearAssociations() {
+        ASSOCIATIONS.remove();
+    }
+
+    static boolean isApplicationFrame(String className) {
+        if (!className.startsWith(APPLICATION_PACKAGE)) {
+            return false;
+        }
+        for (String infrastructure : INFRASTRUCTURE_PACKAGES) {
+            if (className.startsWith(infrastructure)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Последние два сегмента имени: {@code ru.mentee.power.entity.relationship.Order.orderItems}
+     * превращается в {@code Order.orderItems}, имя сущности - в простое имя класса.
+     */
+    static String shortName(String role) {
+        int property = role.lastIndexOf('.');
+        if (property <= 0) {
+            return role;
+        }
+        int owner = role.lastIndexOf('.', property - 1);
+        String candidate = role.substring(owner + 1);
+        // Для имени сущности (без свойства) второй сегмент с маленькой буквы - это пакет
+        return Character.isUpperCase(candidate.charAt(0))
+                ? candidate
+                : role.substring(property + 1);
+    }
+
+    private static final class AssociationMark {
+
+        private final Object event;
+        private final Object session;
+        private final String name;
+
+        AssociationMark(Object event, Object session, String name) {
+            this.event = event;
+            this.session = session;
+            this.name = name;
+        }
+    }
+
+    private static boolean tryAcquire() {
+        int limit = maxSamplesPerSecond;
+        if (limit == 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long start = WINDOW_START.get();
+        if (now - start >= WINDOW_NANOS && WINDOW_START.compareAndSet(start, now)) {
+            WINDOW_SAMPLES.set(0);
+        }
+        return WINDOW_SAMPLES.incrementAndGet() <= limit;
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String methodName(String methodName) {
+        // lambda$demonstrateBatchLoading$0 -> demonstrateBatchLoading
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', 7);
+            return end > 7 ? methodName.substring(7, end) : methodName;
+        }
+        return methodName;
+    }
+}
@@ -0,0 +1,28 @@
+package ru.mentee.power.performance.monitoring;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+
+/**
+ * SQL-выражение, реально выполненное через JDBC.
+ */
+@Value
+@AllArgsConstructor
+public class CapturedStatement {
+
+    String sql;
+    long durationNanos;
+    int rowCount;
+    int parameterCount;
+
+    /** Различные сущности основной таблицы, загруженные из результата (0 для DML). */
+    int hydratedRoots;
+
+    /** Место вызова в приложении, null если выражение не попало в выборку. */
+    @With CallSite callSite;
+
+    public CapturedStatement(String sql, long durationNanos, int rowCount, int parameterCount) {
+        this(sql, durationNanos, rowCount, parameterCount, 0, null);
+    }
+}
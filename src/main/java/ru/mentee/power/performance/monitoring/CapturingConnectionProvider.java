@@ -0,0 +1,194 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.registry.classloading.spi.ClassLoaderService;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.Startable;
+import org.hibernate.service.spi.Stoppable;
+import ru.mentee.power.exception.ConfigurationException;
+
+/**
+ * ConnectionProvider, оборачивающий соединения другого провайдера в JDBC-прокси.
+ * Реальный провайдер (HikariCP, DriverManager) задается свойством {@link #DELEGATE_PROVIDER}.
+ * Для выражений дольше {@link #EXPLAIN_THRESHOLD_MS} в фоне снимается план ({@link PlanCapture});
+ * отрицательное значение выключает сбор планов.
+ * Время получения соединения у реального провайдера (ожидание пула) можно получать через
+ * {@link #setAcquisitionListener}.
+ * Слушатели {@link #addStatementListener} получают только выражения соединений этого
+ * провайдера, то есть одной SessionFactory.
+ */
+public class CapturingConnectionProvider
+        implements ConnectionProvider,
+                Configurable,
+                ServiceRegistryAwareService,
+                Startable,
+                Stoppable {
+
+    public static final String DELEGATE_PROVIDER = "ru.mentee.power.capture.delegate_provider";
+    public static final String EXPLAIN_THRESHOLD_MS =
+            "ru.mentee.power.capture.explain_threshold_ms";
+    public static final String EXPLAIN_ANALYZE = "ru.mentee.power.capture.explain_analyze";
+
+    private ServiceRegistryImplementor serviceRegistry;
+    private ConnectionProvider delegate;
+    private PlanCapture planCapture;
+    private volatile LongConsumer acquisitionListener;
+    private final List<StatementCaptureListener> statementListeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Провайдер перехвата SessionFactory или null, если перехват выражений не включен.
+     */
+    public static CapturingConnectionProvider of(SessionFactory sessionFactory) {
+        ConnectionProvider provider =
+                sessionFactory
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getServiceRegistry()
+                        .getService(ConnectionProvider.class);
+        return provider instanceof CapturingConnectionProvider capturing ? capturing : null;
+    }
+
+    @Override
+    public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+        this.serviceRegistry = serviceRegistry;
+    }
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        Object delegateSetting = configurationValues.get(DELEGATE_PROVIDER);
+        if (delegateSetting == null) {
+            throw new ConfigurationException("Property " + DELEGATE_PROVIDER + " is not set");
+        }
+        delegate = instantiate(delegateSetting);
+        if (delegate instanceof ServiceRegistryAwareService aware) {
+            aware.injectServices(serviceRegistry);
+        }
+        if (delegate instanceof Configurable configurable) {
+            configurable.configure(configurationValues);
+        }
+        Object threshold = configurationValues.get(EXPLAIN_THRESHOLD_MS);
+        long thresholdMs =
+                threshold != null
+                        ? Long.parseLong(threshold.toString().trim())
+                        : PlanCapture.DISABLED;
+        if (thresholdMs >= 0) {
+            Object analyze = configurationValues.get(EXPLAIN_ANALYZE);
+            // EXPLAIN идет через исходный провайдер, мимо перехвата
+            planCapture =
+                    new PlanCapture(
+                            delegate,
+                            thresholdMs,
+                            PlanCapture.DEFAULT_MIN_INTERVAL_MS,
+                            analyze != null && Boolean.parseBoolean(analyze.toString().trim()));
+        }
+    }
+
+    @Override
+    public void start() {
+        if (delegate instanceof Startable startable) {
+            startable.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (planCapture != null) {
+            planCapture.close();
+        }
+        if (delegate instanceof Stoppable stoppable) {
+            stoppable.stop();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        LongConsumer listener = acquisitionListener;
+        if (listener == null) {
+            return JdbcProxies.wrap(delegate.getConnection(), planCapture, statementListeners);
+        }
+        long start = System.nanoTime();
+        Connection connection = delegate.getConnection();
+        listener.accept(System.nanoTime() - start);
+        return JdbcProxies.wrap(connection, planCapture, statementListeners);
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        delegate.closeConnection(JdbcProxies.unwrap(connection));
+    }
+
+    /**
+     * Сборщик планов медленных выражений или null, если он выключен.
+     */
+    public PlanCapture getPlanCapture() {
+        return planCapture;
+    }
+
+    /**
+     * Получатель времени ожидания соединения в наносекундах; null выключает замер.
+     */
+    public void setAcquisitionListener(LongConsumer listener) {
+        this.acquisitionListener = listener;
+    }
+
+    /**
+     * Подписать слушателя на выражения соединений только этого провайдера.
+     */
+    public void addStatementListener(StatementCaptureListener listener) {
+        statementListeners.add(listener);
+    }
+
+    public void removeStatementListener(StatementCaptureListener listener) {
+        statementListeners.remove(listener);
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return delegate.supportsAggressiveRelease();
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isInstance(this) || delegate.isUnwrappableAs(unwrapType);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isInstance(this)) {
+            return unwrapType.cast(this);
+        }
+        if (delegate.isUnwrappableAs(unwrapType)) {
+            return delegate.unwrap(unwrapType);
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    private ConnectionProvider instantiate(Object setting) {
+        if (setting instanceof ConnectionProvider provider) {
+            return provider;
+        }
+        try {
+            Class<?> providerClass =
+                    setting instanceof Class<?> type
+                            ? type
+                            : serviceRegistry
+                                    .getService(ClassLoaderService.class)
+                                    .classForName(setting.toString().trim());
+            return (ConnectionProvider) providerClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ConfigurationException(
+                    "Не удалось создать ConnectionProvider: " + setting, e);
+        }
+    }
+}
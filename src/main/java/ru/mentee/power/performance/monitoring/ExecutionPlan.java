@@ -0,0 +1,102 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Value;
+
+/**
+ * План выполнения медленного выражения и найденные в нем признаки проблем.
+ * Разбор текстовый и рассчитан на вывод EXPLAIN PostgreSQL и H2.
+ */
+@Value
+public class ExecutionPlan {
+
+    /** Полный просмотр таблицы с таким числом строк считается проблемой. */
+    public static final long LARGE_TABLE_ROWS = 10_000;
+
+    private static final Pattern PG_SEQ_SCAN = Pattern.compile("Seq Scan on (\\S+)");
+    private static final Pattern PG_ROWS = Pattern.compile("rows=(\\d+)");
+    private static final Pattern PG_REMOVED = Pattern.compile("Rows Removed by Filter: (\\d+)");
+    private static final Pattern H2_TABLE_SCAN =
+            Pattern.compile(
+                    "/\\*\\s*([\\w.\"]+)\\.tableScan\\s*\\*/(\\s*/\\*\\s*scanCount: (\\d+))?");
+
+    String sql;
+    String plan;
+    boolean analyzed;
+
+    /** Полные просмотры больших таблиц, например "orders (12000 rows)". */
+    List<String> sequentialScans;
+
+    /** Сортировка не поместилась в память и ушла на диск. */
+    boolean sortSpilled;
+
+    /**
+     * Разобрать текст плана.
+     *
+     * @param analyzed план получен с ANALYZE и содержит фактические числа строк
+     */
+    static ExecutionPlan parse(String sql, String plan, boolean analyzed) {
+        List<String> scans = new ArrayList<>();
+        String[] lines = plan.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            Matcher seqScan = PG_SEQ_SCAN.matcher(lines[i]);
+            if (seqScan.find()) {
+                long rows = maxRows(lines[i]);
+                // Строки, отброшенные фильтром, тоже прочитаны
+                for (int j = i + 1; j < lines.length && !lines[j].contains("->"); j++) {
+                    Matcher removed = PG_REMOVED.matcher(lines[j]);
+                    if (removed.find()) {
+                        rows += Long.parseLong(removed.group(1));
+                    }
+                }
+                addScan(scans, seqScan.group(1), rows);
+            }
+        }
+        Matcher tableScan = H2_TABLE_SCAN.matcher(plan);
+        while (tableScan.find()) {
+            // Без ANALYZE H2 не сообщает размер просмотра
+            long rows = tableScan.group(3) != null ? Long.parseLong(tableScan.group(3)) : -1;
+            addScan(scans, tableScan.group(1).replace("\"", ""), rows);
+        }
+        String lower = plan.toLowerCase(Locale.ROOT);
+        boolean spilled =
+                lower.contains("sort method: external") || lower.contains("sort space type: disk");
+        return new ExecutionPlan(sql, plan, analyzed, List.copyOf(scans), spilled);
+    }
+
+    public boolean hasWarnings() {
+        return !sequentialScans.isEmpty() || sortSpilled;
+    }
+
+    /**
+     * Краткое описание проблем плана для отчета.
+     */
+    public String describeWarnings() {
+        List<String> warnings = new ArrayList<>();
+        sequentialScans.forEach(scan -> warnings.add("Seq Scan on " + scan));
+        if (sortSpilled) {
+            warnings.add("sort spilled to disk");
+        }
+        return String.join(", ", warnings);
+    }
+
+    private static void addScan(List<String> scans, String table, long rows) {
+        if (rows >= LARGE_TABLE_ROWS) {
+            scans.add(table.toLowerCase(Locale.ROOT) + " (" + rows + " rows)");
+        }
+    }
+
+    private static long maxRows(String line) {
+        // Оценка и (с ANALYZE) фактическое число строк узла
+        long rows = 0;
+        Matcher matcher = PG_ROWS.matcher(line);
+        while (matcher.find()) {
+            rows = Math.max(rows, Long.parseLong(matcher.group(1)));
+        }
+        return rows;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.event.spi.PostLoadEvent;
 import org.hibernate.event.spi.PostLoadEventListener;
@@ -46,15 +47,13 @@ public class HibernatePerformanceMonitor implements PostLoadEventListener, PreLo
      * Записать статистику запроса.
      */
     public void recordQuery(String query, long executionTime, int rowCount) {
-        queryStats.compute(
-                normalizeQuery(query),
-                (k, v) -> {
-                    if (v == null) {
-                        v = new QueryExecution(query);
-                    }
-                    v.recordExecution(executionTime, rowCount);
-                    return v;
-                });
+        QueryExecution execution =
+                queryStats.computeIfAbsent(normalizeQuery(query), k -> new QueryExecution(query));
+        execution.recordExecution(executionTime, rowCount);
+        CallSite callSite = CallSiteSampler.sample();
+        if (callSite != null) {
+            execution.recordCallSite(callSite);
+        }
     }
 
     /**
@@ -67,6 +66,7 @@ public class HibernatePerformanceMonitor implements PostLoadEventListener, PreLo
                 (query, stats) -> {
                     // Проверка на медленные запросы
                     if (stats.getAvgExecutionTime() > 100) {
+                        long[] tail = stats.getExecutionTimePercentilesNanos(95, 99);
                         issues.add(
                                 new PerformanceProblem(
                                         ProblemType.SLOW_QUERY,
@@ -74,8 +74,11 @@ public class HibernatePerformanceMonitor implements PostLoadEventListener, PreLo
                                         query,
                                         stats.getExecutionCount(),
                                         String.format(
-                                                "Average execution time: %dms",
-                                                stats.getAvgExecutionTime()),
+                                                "Average execution time: %dms (p95 %dms, p99"
+                                                        + " %dms)",
+                                                stats.getAvgExecutionTime(),
+                                                toMillis(tail[0]),
+                                                toMillis(tail[1])),
                                         Severity.HIGH));
                     }
 
@@ -88,8 +91,12 @@ public class HibernatePerformanceMonitor implements PostLoadEventListener, PreLo
                                         query,
                                         stats.getExecutionCount(),
                                         String.format(
-                                                "Executed %d times with avg %d rows",
-                                                stats.getExecutionCount(), stats.getAvgRowCount()),
+                                                "Executed %d times with avg %d rows%s",
+                                                stats.getExecutionCount(),
+                                                stats.getAvgRowCount(),
+                                                stats.getTopCallSite() != null
+                                                        ? " at " + stats.getTopCallSite()
+                                                        : ""),
                                         Severity.HIGH));
                     }
 
@@ -110,18 +117,15 @@ public class HibernatePerformanceMonitor implements PostLoadEventListener, PreLo
         return issues;
     }
 
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     private String normalizeQuery(String sql) {
-        return sql.replaceAll("\\d+", "?").replaceAll("'[^']*'", "'?'").trim();
+        return SqlFingerprinter.fingerprint(sql).getFingerprint();
     }
 
     private String extractEntityName(String query) {
-        if (query.toUpperCase().contains("FROM")) {
-            String[] parts = query.toUpperCase().split("FROM");
-            if (parts.length > 1) {
-                String tablePart = parts[1].trim().split("\\s")[0];
-                return tablePart.toLowerCase();
-            }
-        }
-        return "unknown";
+        return SqlFingerprinter.table(query);
     }
 }
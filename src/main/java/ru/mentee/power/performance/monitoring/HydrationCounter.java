@@ -0,0 +1,26 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Счетчик загруженных (гидратированных) сущностей текущего потока по таблицам.
+ * Значения только растут: прокси ResultSet запоминает значение до чтения строк и по
+ * разнице узнает, сколько различных корневых сущностей дал запрос.
+ */
+final class HydrationCounter {
+
+    private static final ThreadLocal<Map<String, long[]>> COUNTS =
+            ThreadLocal.withInitial(HashMap::new);
+
+    private HydrationCounter() {}
+
+    static void hydrated(String table) {
+        COUNTS.get().computeIfAbsent(table, k -> new long[1])[0]++;
+    }
+
+    static long count(String table) {
+        long[] count = COUNTS.get().get(table);
+        return count != null ? count[0] : 0;
+    }
+}
@@ -0,0 +1,363 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import ru.mentee.power.performance.jfr.JfrEvents;
+import ru.mentee.power.performance.jfr.SqlStatementEvent;
+import ru.mentee.power.performance.monitoring.PlanCapture.ParameterBinding;
+
+/**
+ * Динамические JDBC-прокси, замеряющие выполнение выражений.
+ * Если задан {@link PlanCapture}, привязанные параметры запоминаются, чтобы медленное
+ * выражение можно было повторить в EXPLAIN. Выполнение выражения также пишется
+ * JFR-событием, если оно включено в активной записи ({@link JfrEvents}).
+ * Выражение с результатом публикуется при закрытии ResultSet, в том числе неявном:
+ * через закрытие Statement, повторное выполнение или закрытие Connection.
+ */
+final class JdbcProxies {
+
+    private JdbcProxies() {}
+
+    static Connection wrap(Connection connection) {
+        return wrap(connection, null, List.of());
+    }
+
+    /**
+     * @param listeners слушатели выражений только этого источника соединений
+     */
+    static Connection wrap(
+            Connection connection,
+            PlanCapture planCapture,
+            List<StatementCaptureListener> listeners) {
+        if (connection == null || unwrap(connection) != connection) {
+            return connection;
+        }
+        return (Connection)
+                Proxy.newProxyInstance(
+                        JdbcProxies.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        new ConnectionHandler(connection, planCapture, listeners));
+    }
+
+    static Connection unwrap(Connection connection) {
+        if (connection != null
+                && Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler handler) {
+            return handler.target;
+        }
+        return connection;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String sqlArgument(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String sql ? sql : null;
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final PlanCapture planCapture;
+        private final List<StatementCaptureListener> listeners;
+        private final List<StatementHandler> openStatements = new ArrayList<>();
+
+        ConnectionHandler(
+                Connection target,
+                PlanCapture planCapture,
+                List<StatementCaptureListener> listeners) {
+            this.target = target;
+            this.planCapture = planCapture;
+            this.listeners = listeners;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("close")) {
+                // Закрытие соединения неявно закрывает его выражения и их ResultSet
+                for (StatementHandler statement : List.copyOf(openStatements)) {
+                    statement.publishPending();
+                }
+                openStatements.clear();
+            }
+            Object result = JdbcProxies.invoke(target, method, args);
+            if (!(result instanceof Statement statement)
+                    || !StatementCapture.isActive(listeners)) {
+                return result;
+            }
+            String sql = sqlArgument(args);
+            Class<?> type =
+                    statement instanceof CallableStatement
+                            ? CallableStatement.class
+                            : statement instanceof PreparedStatement
+                                    ? PreparedStatement.class
+                                    : Statement.class;
+            StatementHandler handler = new StatementHandler(this, statement, sql);
+            openStatements.add(handler);
+            return Proxy.newProxyInstance(
+                    JdbcProxies.class.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+
+        void release(StatementHandler statement) {
+            openStatements.remove(statement);
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final ConnectionHandler connection;
+        private final Statement target;
+        private final String sql;
+        private final PlanCapture planCapture;
+        private final List<StatementCaptureListener> listeners;
+        private int parameterCount;
+        private String pendingSql;
+        private long pendingNanos;
+        private SqlStatementEvent pendingEvent;
+        private ResultSetHandler openResultSet;
+        private ParameterBinding[] bindings;
+        private boolean replayable = true;
+        private boolean batched;
+
+        StatementHandler(ConnectionHandler connection, Statement target, String sql) {
+            this.connection = connection;
+            this.target = target;
+            this.sql = sql;
+            this.planCapture = connection.planCapture;
+            this.listeners = connection.listeners;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.startsWith("set")
+                    && args != null
+                    && args.length >= 2
+                    && args[0] instanceof Integer index) {
+                parameterCount = Math.max(parameterCount, index);
+                if (planCapture != null) {
+                    bind(index, method, args);
+                }
+                return JdbcProxies.invoke(target, method, args);
+            }
+
+            if (name.equals("close")) {
+                publishPending();
+                connection.release(this);
+            } else if (name.equals("clearParameters")) {
+                bindings = null;
+                replayable = !batched;
+            } else if (name.equals("addBatch")) {
+                // Пакеты не объясняются: параметры последней строки не описывают весь пакет
+                batched = true;
+                replayable = false;
+            }
+
+            if (name.equals("getResultSet") && pendingSql != null) {
+                ResultSet resultSet = (ResultSet) JdbcProxies.invoke(target, method, args);
+                String executed = pendingSql;
+                SqlStatementEvent event = pendingEvent;
+                pendingSql = null;
+                pendingEvent = null;
+                return wrapResultSet(resultSet, executed, pendingNanos, event);
+            }
+
+            if (!name.startsWith("execute")) {
+                return JdbcProxies.invoke(target, method, args);
+            }
+
+            // Повторное выполнение закрывает текущий ResultSet выражения
+            publishPending();
+            String executed = sqlArgument(args);
+            if (executed == null) {
+                executed = sql;
+            }
+            SqlStatementEvent event = JfrEvents.beginStatement();
+            long start = System.nanoTime();
+            Object result = JdbcProxies.invoke(target, method, args);
+            long elapsed = System.nanoTime() - start;
+            JfrEvents.endStatement(event);
+            if (planCapture != null && planCapture.isSlow(elapsed) && replayable) {
+                planCapture.submit(executed, boundParameters());
+            }
+
+            if (result instanceof ResultSet resultSet) {
+                return wrapResultSet(resultSet, executed, elapsed, event);
+            }
+            if (result instanceof Boolean hasResultSet && hasResultSet) {
+                // Строки будут прочитаны позже через getResultSet()
+                pendingSql = executed;
+                pendingNanos = elapsed;
+                pendingEvent = event;
+                return result;
+            }
+            int rows = affectedRows(result);
+            StatementCapture.publish(
+                    new CapturedStatement(executed, elapsed, rows, parameterCount), listeners);
+            JfrEvents.commitStatement(event, executed, rows, parameterCount);
+            return result;
+        }
+
+        /**
+         * Опубликовать выражение, результат которого закрывается неявно.
+         */
+        void publishPending() {
+            if (openResultSet != null) {
+                openResultSet.publish();
+                openResultSet = null;
+            }
+            if (pendingSql != null) {
+                // execute() вернул результат, но getResultSet() так и не вызван
+                StatementCapture.publish(
+                        new CapturedStatement(pendingSql, pendingNanos, 0, parameterCount),
+                        listeners);
+                JfrEvents.commitStatement(pendingEvent, pendingSql, 0, parameterCount);
+                pendingSql = null;
+                pendingEvent = null;
+            }
+        }
+
+        private void bind(int index, Method method, Object[] args) {
+            if (args[1] instanceof InputStream || args[1] instanceof Reader) {
+                // Поток уже прочитан драйвером, повторить его нельзя
+                replayable = false;
+                return;
+            }
+            if (bindings == null || bindings.length <= index) {
+                bindings =
+                        bindings == null
+                                ? new ParameterBinding[Math.max(8, index + 1)]
+                                : Arrays.copyOf(bindings, Math.max(bindings.length * 2, index + 1));
+            }
+            bindings[index] = new ParameterBinding(method, args);
+        }
+
+        private List<ParameterBinding> boundParameters() {
+            List<ParameterBinding> bound = new ArrayList<>(parameterCount);
+            if (bindings != null) {
+                for (ParameterBinding binding : bindings) {
+                    if (binding != null) {
+                        bound.add(binding);
+                    }
+                }
+            }
+            return bound;
+        }
+
+        private int affectedRows(Object result) throws Exception {
+            if (result instanceof Number count) {
+                return (int) Math.max(0, count.longValue());
+            }
+            if (result instanceof int[] counts) {
+                long total = 0;
+                for (int count : counts) {
+                    total += Math.max(0, count);
+                }
+                return (int) total;
+            }
+            if (result instanceof long[] counts) {
+                long total = 0;
+                for (long count : counts) {
+                    total += Math.max(0, count);
+                }
+                return (int) total;
+            }
+            return Math.max(0, target.getUpdateCount());
+        }
+
+        private ResultSet wrapResultSet(
+                ResultSet resultSet, String executed, long nanos, SqlStatementEvent event) {
+            if (resultSet == null) {
+                JfrEvents.commitStatement(event, executed, 0, parameterCount);
+                return null;
+            }
+            openResultSet =
+                    new ResultSetHandler(
+                            resultSet, executed, nanos, parameterCount, event, listeners);
+            return (ResultSet)
+                    Proxy.newProxyInstance(
+                            JdbcProxies.class.getClassLoader(),
+                            new Class<?>[] {ResultSet.class},
+                            openResultSet);
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+        private final String sql;
+        private final long executionNanos;
+        private final int parameterCount;
+        private final String table;
+        private final long hydratedBefore;
+        private final SqlStatementEvent event;
+        private final List<StatementCaptureListener> listeners;
+        private int rowCount;
+        private boolean published;
+
+        ResultSetHandler(
+                ResultSet target,
+                String sql,
+                long executionNanos,
+                int parameterCount,
+                SqlStatementEvent event,
+                List<StatementCaptureListener> listeners) {
+            this.target = target;
+            this.sql = sql;
+            this.executionNanos = executionNanos;
+            this.parameterCount = parameterCount;
+            this.event = event;
+            this.listeners = listeners;
+            this.table = SqlFingerprinter.table(sql);
+            this.hydratedBefore = HydrationCounter.count(table);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                Object hasNext = JdbcProxies.invoke(target, method, args);
+                if (Boolean.TRUE.equals(hasNext)) {
+                    rowCount++;
+                }
+                return hasNext;
+            }
+            if (name.equals("close")) {
+                publish();
+            }
+            return JdbcProxies.invoke(target, method, args);
+        }
+
+        void publish() {
+            if (published) {
+                return;
+            }
+            published = true;
+            // Hibernate закрывает ResultSet после PostLoad всех сущностей результата
+            long roots = HydrationCounter.count(table) - hydratedBefore;
+            StatementCapture.publish(
+                    new CapturedStatement(
+                            sql, executionNanos, rowCount, parameterCount, (int) roots, null),
+                    listeners);
+            JfrEvents.commitStatement(event, sql, rowCount, parameterCount);
+        }
+    }
+}
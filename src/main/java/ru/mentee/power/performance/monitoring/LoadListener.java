@@ -0,0 +1,21 @@
+package ru.mentee.power.performance.monitoring;
+
+/**
+ * Получатель загрузок сущностей и коллекций, выполненных в текущем потоке.
+ */
+public interface LoadListener {
+
+    /**
+     * Сущность загружена из результата запроса.
+     *
+     * @param entityName имя сущности
+     */
+    void onEntityLoad(String entityName);
+
+    /**
+     * Ленивая коллекция инициализирована.
+     *
+     * @param role роль коллекции, например {@code ...Order.orderItems}
+     */
+    void onCollectionFetch(String role);
+}
@@ -0,0 +1,287 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+
+/**
+ * Фоновый сбор планов выполнения для медленных выражений.
+ * JDBC-прокси передают сюда выражения дольше порога вместе с привязанными параметрами;
+ * EXPLAIN выполняется в отдельном потоке на отдельном соединении исходного провайдера,
+ * поэтому служебные выражения не попадают в перехват и не задерживают приложение.
+ *
+ * <p>По умолчанию выполняется EXPLAIN без выполнения выражения. EXPLAIN ANALYZE для SELECT
+ * (на PostgreSQL - в откатываемой read-only транзакции) включается явно: он повторно
+ * выполняет и без того медленный запрос на соединении из того же пула. Один отпечаток
+ * выражения объясняется не чаще раза в {@link #DEFAULT_MIN_INTERVAL_MS} мс, очередь
+ * ограничена: при перегрузке новые запросы на план отбрасываются.
+ */
+@Slf4j
+public final class PlanCapture implements AutoCloseable {
+
+    /** Порог сбора планов выключен. */
+    public static final long DISABLED = -1;
+    /** Рекомендуемый порог при включении сбора планов. */
+    public static final long DEFAULT_THRESHOLD_MS = 100;
+    public static final long DEFAULT_MIN_INTERVAL_MS = 60_000;
+    private static final int QUEUE_CAPACITY = 32;
+    private static final int MAX_PLANS = 256;
+    private static final int MAX_TRACKED_FINGERPRINTS = 4096;
+    private static final Set<String> EXPLAINABLE =
+            Set.of("select", "with", "insert", "update", "delete");
+
+    private final ConnectionProvider connectionProvider;
+    private final long thresholdNanos;
+    private final long minIntervalNanos;
+    private final boolean analyze;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Long> lastExplained = new ConcurrentHashMap<>();
+    private final Map<String, ExecutionPlan> plans =
+            Collections.synchronizedMap(
+                    new LinkedHashMap<>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<String, ExecutionPlan> e) {
+                            return size() > MAX_PLANS;
+                        }
+                    });
+
+    public PlanCapture(
+            ConnectionProvider connectionProvider, long thresholdMs, long minIntervalMs) {
+        this(connectionProvider, thresholdMs, minIntervalMs, false);
+    }
+
+    /**
+     * @param connectionProvider провайдер без перехвата, из которого берутся соединения для EXPLAIN
+     * @param analyze выполнять SELECT через EXPLAIN ANALYZE ради фактических чисел строк
+     */
+    public PlanCapture(
+            ConnectionProvider connectionProvider,
+            long thresholdMs,
+            long minIntervalMs,
+            boolean analyze) {
+        this.connectionProvider = connectionProvider;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        this.analyze = analyze;
+        this.executor =
+                new ThreadPoolExecutor(
+                        1,
+                        1,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "plan-capture");
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Сборщик планов SessionFactory или null, если перехват или сбор планов выключен.
+     */
+    public static PlanCapture of(SessionFactory sessionFactory) {
+        CapturingConnectionProvider capturing = CapturingConnectionProvider.of(sessionFactory);
+        return capturing != null ? capturing.getPlanCapture() : null;
+    }
+
+    /**
+     * Последний план выражения с таким же отпечатком или null.
+     */
+    public ExecutionPlan getPlan(String sql) {
+        return plans.get(SqlFingerprinter.fingerprint(sql).getFingerprint());
+    }
+
+    /**
+     * Дождаться выполнения уже поставленных в очередь EXPLAIN.
+     *
+     * @return false, если не дождались за отведенное время
+     */
+    public boolean awaitPending(long timeout, TimeUnit unit) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // Поток один, поэтому пустая задача завершится после всех предыдущих. Через execute()
+        // она при полной очереди молча отбросилась бы, поэтому ждем места в очереди сами
+        FutureTask<Void> sentinel = new FutureTask<>(() -> {}, null);
+        executor.prestartCoreThread();
+        try {
+            if (!executor.getQueue().offer(sentinel, timeout, unit)) {
+                return false;
+            }
+            sentinel.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    boolean isSlow(long durationNanos) {
+        return durationNanos >= thresholdNanos;
+    }
+
+    /**
+     * Поставить выражение в очередь на EXPLAIN, если его отпечаток давно не объяснялся.
+     *
+     * @param bindings вызовы set-методов PreparedStatement в порядке выполнения
+     */
+    void submit(String sql, List<ParameterBinding> bindings) {
+        String key = SqlFingerprinter.fingerprint(sql).getFingerprint();
+        if (!EXPLAINABLE.contains(firstWord(key))) {
+            return;
+        }
+        if (lastExplained.size() >= MAX_TRACKED_FINGERPRINTS) {
+            // Грубое ограничение памяти: лимит частоты начинается заново
+            lastExplained.clear();
+        }
+        long now = System.nanoTime();
+        Long last = lastExplained.get(key);
+        if (last != null && now - last < minIntervalNanos) {
+            return;
+        }
+        boolean acquired =
+                last == null
+                        ? lastExplained.putIfAbsent(key, now) == null
+                        : lastExplained.replace(key, last, now);
+        if (!acquired || executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> explain(key, sql, bindings));
+    }
+
+    private void explain(String key, String sql, List<ParameterBinding> bindings) {
+        String statementType = firstWord(key);
+        boolean analyzed =
+                analyze && (statementType.equals("select") || statementType.equals("with"));
+        try {
+            Connection connection = connectionProvider.getConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                String product = connection.getMetaData().getDatabaseProductName();
+                String explain;
+                if (product.startsWith("PostgreSQL")) {
+                    explain = analyzed ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ";
+                    if (analyzed) {
+                        // ANALYZE выполняет запрос: транзакция только на чтение и откатывается
+                        connection.setAutoCommit(false);
+                        connection.setReadOnly(true);
+                    }
+                } else if (product.startsWith("H2")) {
+                    explain = analyzed ? "EXPLAIN ANALYZE " : "EXPLAIN ";
+                } else {
+                    log.debug("EXPLAIN is not supported for {}", product);
+                    return;
+                }
+                ExecutionPlan plan =
+                        ExecutionPlan.parse(
+                                sql, runExplain(connection, explain + sql, bindings), analyzed);
+                plans.put(key, plan);
+                if (plan.hasWarnings()) {
+                    log.warn("Slow statement plan: {} - {}", plan.describeWarnings(), sql);
+                }
+            } finally {
+                release(connection, autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Отсутствие плана не должно влиять на приложение
+            log.debug("EXPLAIN failed for {}: {}", sql, e.getMessage());
+        }
+    }
+
+    private void release(Connection connection, boolean autoCommit) throws SQLException {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            connection.setReadOnly(false);
+            connection.setAutoCommit(autoCommit);
+        } finally {
+            connectionProvider.closeConnection(connection);
+        }
+    }
+
+    private static String runExplain(
+            Connection connection, String explain, List<ParameterBinding> bindings)
+            throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement(explain)) {
+            for (ParameterBinding binding : bindings) {
+                binding.apply(statement);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Первое слово отпечатка: комментарии Hibernate в нем уже удалены.
+     */
+    private static String firstWord(String fingerprint) {
+        String trimmed = fingerprint.stripLeading();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        return trimmed.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Вызов set-метода PreparedStatement, который можно повторить на другом выражении.
+     */
+    static final class ParameterBinding {
+
+        private final Method setter;
+        private final Object[] args;
+
+        ParameterBinding(Method setter, Object[] args) {
+            this.setter = setter;
+            this.args = args;
+        }
+
+        void apply(PreparedStatement statement) throws SQLException {
+            try {
+                setter.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                throw new SQLException("Cannot bind parameter", e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new SQLException("Cannot bind parameter", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ru.mentee.power.performance.monitoring;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.hibernate.SessionEventListener;
+
+/**
+ * Счетчики одной Hibernate-сессии.
+ * Сессия однопоточна, поэтому счетчики - обычные поля без синхронизации.
+ * Слушатель из сессии не удалить, поэтому после {@link #detach()} он только перестает
+ * считать.
+ */
+@Getter
+public class SessionMetrics implements SessionEventListener {
+
+    @Getter(AccessLevel.NONE)
+    private final transient Runnable onSessionEnd;
+
+    private long prepareStatementCount;
+    private long executeStatementCount;
+    private long executeBatchCount;
+    private long executeNanos;
+    private long connectionAcquisitionNanos;
+    private long entityLoadCount;
+    private long collectionFetchCount;
+    private long cacheHitCount;
+    private long cacheMissCount;
+    private long cachePutCount;
+    private long flushCount;
+    private long entitiesFlushedCount;
+    private long collectionsFlushedCount;
+    private long transactionCount;
+
+    @Getter(AccessLevel.NONE)
+    private transient long executeStart;
+
+    @Getter(AccessLevel.NONE)
+    private transient long acquisitionStart;
+
+    // Может выставляться не из потока сессии
+    @Getter(AccessLevel.NONE)
+    private transient volatile boolean detached;
+
+    public SessionMetrics(Runnable onSessionEnd) {
+        this.onSessionEnd = onSessionEnd;
+    }
+
+    /**
+     * Перестать учитывать события сессии; уже набранные значения сохраняются.
+     */
+    void detach() {
+        detached = true;
+    }
+
+    void entityLoaded() {
+        if (!detached) {
+            entityLoadCount++;
+        }
+    }
+
+    void collectionFetched() {
+        if (!detached) {
+            collectionFetchCount++;
+        }
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        if (detached) {
+            return;
+        }
+        acquisitionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        if (detached) {
+            return;
+        }
+        connectionAcquisitionNanos += System.nanoTime() - acquisitionStart;
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+        if (detached) {
+            return;
+        }
+        prepareStatementCount++;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        if (detached) {
+            return;
+        }
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        if (detached) {
+            return;
+        }
+        executeStatementCount++;
+        executeNanos += System.nanoTime() - executeStart;
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        if (detached) {
+            return;
+        }
+        executeStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        if (detached) {
+            return;
+        }
+        executeBatchCount++;
+        executeNanos += System.nanoTime() - executeStart;
+    }
+
+    @Override
+    public void cacheGetEnd(boolean hit) {
+        if (detached) {
+            return;
+        }
+        if (hit) {
+            cacheHitCount++;
+        } else {
+            cacheMissCount++;
+        }
+    }
+
+    @Override
+    public void cachePutEnd() {
+        if (detached) {
+            return;
+        }
+        cachePutCount++;
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        if (detached) {
+            return;
+        }
+        flushCount++;
+        entitiesFlushedCount += numberOfEntities;
+        collectionsFlushedCount += numberOfCollections;
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        if (detached) {
+            return;
+        }
+        transactionCount++;
+    }
+
+    @Override
+    public void end() {
+        if (onSessionEnd != null) {
+            onSessionEnd.run();
+        }
+    }
+}
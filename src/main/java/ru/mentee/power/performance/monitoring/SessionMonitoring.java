@@ -0,0 +1,223 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Посессионный мониторинг без обращения к глобальной Statistics.
+ * Счетчики JDBC и кэша приходят через {@link SessionMetrics}, загрузки сущностей и
+ * коллекций - через глобальные слушатели, которые находят метрики по сессии события.
+ * Эти же слушатели отмечают загружаемую ассоциацию для разметки места вызова и
+ * сообщают о загрузках слушателю потока ({@link #pushLoadListener}).
+ */
+@Slf4j
+public final class SessionMonitoring
+        implements PostLoadEventListener, InitializeCollectionEventListener, LoadEventListener {
+
+    private static final SessionMonitoring INSTANCE = new SessionMonitoring();
+    private static final AssociationMarker MARKER = new AssociationMarker();
+    private static final Map<SharedSessionContractImplementor, SessionMetrics> ACTIVE =
+            new ConcurrentHashMap<>();
+    private static final Map<String, String> TABLES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<LoadListener> THREAD_LISTENER = new ThreadLocal<>();
+    private static final Set<SessionFactory> INSTALLED =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private SessionMonitoring() {}
+
+    /**
+     * Зарегистрировать слушатели загрузки в SessionFactory (повторный вызов ничего не делает).
+     */
+    public static void install(SessionFactory sessionFactory) {
+        if (!INSTALLED.add(sessionFactory)) {
+            return;
+        }
+        EventListenerRegistry registry =
+                sessionFactory
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getServiceRegistry()
+                        .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_LOAD, INSTANCE);
+        // Отметка ассоциации ставится до штатного слушателя и снимается после него; если
+        // штатный слушатель бросил исключение, отметку снимет следующее событие или конец сессии
+        registry.prependListeners(EventType.INIT_COLLECTION, MARKER);
+        registry.appendListeners(EventType.INIT_COLLECTION, INSTANCE);
+        registry.prependListeners(EventType.LOAD, MARKER);
+        registry.appendListeners(EventType.LOAD, INSTANCE);
+        log.debug("Session monitoring installed for {}", sessionFactory);
+    }
+
+    /**
+     * Установлены ли слушатели загрузки в SessionFactory.
+     */
+    public static boolean isInstalled(SessionFactory sessionFactory) {
+        return INSTALLED.contains(sessionFactory);
+    }
+
+    /**
+     * Начать сбор метрик сессии.
+     *
+     * @param session Hibernate сессия
+     * @return метрики, которые обновляются только событиями этой сессии
+     */
+    public static SessionMetrics attach(Session session) {
+        install(session.getSessionFactory());
+        SharedSessionContractImplementor key = session.unwrap(SharedSessionContractImplementor.class);
+        return ACTIVE.computeIfAbsent(
+                key,
+                k -> {
+                    SessionMetrics metrics =
+                            new SessionMetrics(
+                                    () -> {
+                                        ACTIVE.remove(k);
+                                        CallSiteSampler.clearAssociations();
+                                    });
+                    k.getEventListenerManager().addListener(metrics);
+                    return metrics;
+                });
+    }
+
+    /**
+     * Получать загрузки текущего потока поверх уже привязанного слушателя.
+     * Загрузки видны только в SessionFactory, где мониторинг установлен ({@link #install}).
+     *
+     * @return восстановление прежнего слушателя при close()
+     */
+    public static StatementCapture.Suspension pushLoadListener(LoadListener listener) {
+        LoadListener previous = THREAD_LISTENER.get();
+        THREAD_LISTENER.set(
+                previous == null ? listener : new ChainedLoadListener(listener, previous));
+        return () -> {
+            if (previous != null) {
+                THREAD_LISTENER.set(previous);
+            } else {
+                THREAD_LISTENER.remove();
+            }
+        };
+    }
+
+    /**
+     * Прекратить учет сессии: ее слушатель {@link SessionMetrics} остается в сессии, но
+     * перестает считать, так что повторный {@link #attach} не удваивает счетчики.
+     */
+    public static void detach(Session session) {
+        SessionMetrics metrics =
+                ACTIVE.remove(session.unwrap(SharedSessionContractImplementor.class));
+        if (metrics != null) {
+            metrics.detach();
+        }
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        HydrationCounter.hydrated(tableOf(event.getPersister()));
+        SessionMetrics metrics = ACTIVE.get(event.getSession());
+        if (metrics != null) {
+            metrics.entityLoaded();
+        }
+        LoadListener listener = THREAD_LISTENER.get();
+        if (listener != null) {
+            listener.onEntityLoad(event.getPersister().getEntityName());
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        CallSiteSampler.exitAssociation(event);
+        SessionMetrics metrics = ACTIVE.get(event.getSession());
+        if (metrics != null) {
+            metrics.collectionFetched();
+        }
+        LoadListener listener = THREAD_LISTENER.get();
+        if (listener != null) {
+            listener.onCollectionFetch(event.getCollection().getRole());
+        }
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) {
+        if (isAssociationLoad(loadType)) {
+            CallSiteSampler.exitAssociation(event);
+        }
+    }
+
+    /**
+     * Основная таблица сущности в том виде, в каком ее вернет {@link SqlFingerprinter#table}.
+     */
+    private static String tableOf(EntityPersister persister) {
+        return TABLES.computeIfAbsent(
+                persister.getEntityName(),
+                name ->
+                        persister instanceof AbstractEntityPersister entityPersister
+                                ? SqlFingerprinter.table("from " + entityPersister.getTableName())
+                                : name);
+    }
+
+    /**
+     * Загрузка, вызванная обращением к ассоциации: инициализация прокси или EAGER-выборка.
+     */
+    private static boolean isAssociationLoad(LoadType loadType) {
+        return loadType == IMMEDIATE_LOAD
+                || loadType == INTERNAL_LOAD_EAGER
+                || loadType == INTERNAL_LOAD_NULLABLE;
+    }
+
+    private static final class ChainedLoadListener implements LoadListener {
+
+        private final LoadListener first;
+        private final LoadListener second;
+
+        ChainedLoadListener(LoadListener first, LoadListener second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void onEntityLoad(String entityName) {
+            first.onEntityLoad(entityName);
+            second.onEntityLoad(entityName);
+        }
+
+        @Override
+        public void onCollectionFetch(String role) {
+            first.onCollectionFetch(role);
+            second.onCollectionFetch(role);
+        }
+    }
+
+    private static final class AssociationMarker
+            implements InitializeCollectionEventListener, LoadEventListener {
+
+        @Override
+        public void onInitializeCollection(InitializeCollectionEvent event) {
+            CallSiteSampler.enterAssociation(
+                    event, event.getSession(), event.getCollection().getRole());
+        }
+
+        @Override
+        public void onLoad(LoadEvent event, LoadType loadType) {
+            if (isAssociationLoad(loadType)) {
+                CallSiteSampler.enterAssociation(
+                        event, event.getSession(), event.getEntityClassName());
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.mentee.power.performance.monitoring;
+
+import lombok.Value;
+
+/**
+ * Нормализованный вид SQL-выражения без литералов и основная таблица.
+ */
+@Value
+public class SqlFingerprint {
+
+    String fingerprint;
+    String table;
+}
@@ -0,0 +1,292 @@
+package ru.mentee.power.performance.monitoring;
+
+/**
+ * Однопроходный токенизатор SQL для группировки похожих запросов.
+ * Удаляет комментарии и литералы, схлопывает IN-списки до {@code in (?)}, приводит слова к
+ * нижнему регистру и находит основную таблицу (первую после FROM/INTO/UPDATE вне подзапросов).
+ *
+ * <p>Результаты хранятся в ограниченном кэше прямого отображения по идентичности строки:
+ * Hibernate переиспользует один и тот же экземпляр SQL для плана запроса, поэтому
+ * повторные выражения не токенизируются заново.
+ *
+ * <p>Попадание в кэш ничего не выделяет. Промах разбирает строку в буферах потока, но
+ * создает строку отпечатка, имя таблицы, {@link SqlFingerprint} и запись кэша.
+ * Сравнение с регулярными выражениями - {@code SqlFingerprintBenchmark} в наборе JMH.
+ */
+public final class SqlFingerprinter {
+
+    private static final String UNKNOWN_TABLE = "unknown";
+    private static final int CACHE_SIZE = 1024;
+    private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private SqlFingerprinter() {}
+
+    /**
+     * Получить отпечаток выражения (из кэша, если эта строка уже встречалась).
+     */
+    public static SqlFingerprint fingerprint(String sql) {
+        int slot = System.identityHashCode(sql) & (CACHE_SIZE - 1);
+        CacheEntry entry = CACHE[slot];
+        if (entry != null && entry.sql == sql) {
+            return entry.fingerprint;
+        }
+        SqlFingerprint fingerprint = compute(sql);
+        // Гонка при записи безопасна: запись неизменяема, проигравший поток просто вытеснит ее
+        CACHE[slot] = new CacheEntry(sql, fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Основная таблица выражения или "unknown".
+     */
+    public static String table(String sql) {
+        return fingerprint(sql).getTable();
+    }
+
+    static SqlFingerprint compute(String sql) {
+        if (sql == null || sql.isEmpty()) {
+            return new SqlFingerprint("", UNKNOWN_TABLE);
+        }
+        Buffers buffers = BUFFERS.get();
+        int n = sql.length();
+        char[] in = buffers.input(n);
+        sql.getChars(0, n, in, 0);
+        StringBuilder out = buffers.output();
+
+        String table = null;
+        int tableDepth = Integer.MAX_VALUE;
+        boolean expectTable = false;
+        int expectDepth = 0;
+        int depth = 0;
+        boolean pendingSpace = false;
+        boolean lastWordIn = false;
+
+        int i = 0;
+        while (i < n) {
+            char c = in[i];
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < n && in[i + 1] == '-') {
+                while (i < n && in[i] != '\n') {
+                    i++;
+                }
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (c == '/' && i + 1 < n && in[i + 1] == '*') {
+                i += 2;
+                while (i + 1 < n && !(in[i] == '*' && in[i + 1] == '/')) {
+                    i++;
+                }
+                i += 2;
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+
+            if (c == '\'') {
+                i = skipString(in, i, n);
+                out.append('?');
+                lastWordIn = false;
+                continue;
+            }
+            if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(in[i + 1]))) {
+                i = skipNumber(in, i, n);
+                out.append('?');
+                lastWordIn = false;
+                continue;
+            }
+            if (c == '"' || c == '`') {
+                int start = i;
+                i++;
+                while (i < n && in[i] != c) {
+                    i++;
+                }
+                i = Math.min(n, i + 1);
+                out.append(in, start, i - start);
+                if (expectTable && depth == expectDepth) {
+                    table = new String(in, start + 1, Math.max(0, i - start - 2));
+                    tableDepth = expectDepth;
+                    expectTable = false;
+                }
+                lastWordIn = false;
+                continue;
+            }
+            if (isIdentifierStart(c)) {
+                int start = i;
+                int outStart = out.length();
+                while (i < n && isIdentifierPart(in[i])) {
+                    out.append(Character.toLowerCase(in[i]));
+                    i++;
+                }
+                int length = i - start;
+                if (expectTable && depth == expectDepth) {
+                    // Таблица верхнего уровня важнее найденной в подзапросе
+                    table = out.substring(outStart);
+                    tableDepth = expectDepth;
+                    expectTable = false;
+                } else if (depth < tableDepth
+                        && (wordEquals(out, outStart, length, "from")
+                                || wordEquals(out, outStart, length, "into")
+                                || wordEquals(out, outStart, length, "update"))) {
+                    expectTable = true;
+                    expectDepth = depth;
+                }
+                lastWordIn = wordEquals(out, outStart, length, "in");
+                continue;
+            }
+
+            if (c == '(') {
+                if (lastWordIn) {
+                    int end = skipValueList(in, i + 1, n);
+                    if (end > 0) {
+                        out.append("(?)");
+                        i = end;
+                        lastWordIn = false;
+                        continue;
+                    }
+                }
+                if (expectTable && depth == expectDepth) {
+                    // FROM (SELECT ...) - таблицу ищем внутри подзапроса
+                    expectTable = false;
+                }
+                depth++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            }
+            out.append(c);
+            lastWordIn = false;
+            i++;
+        }
+
+        return new SqlFingerprint(out.toString(), table != null ? table : UNKNOWN_TABLE);
+    }
+
+    /**
+     * Пропустить список значений IN: только литералы и параметры через запятую.
+     *
+     * @return индекс после закрывающей скобки или -1, если это не список значений
+     */
+    private static int skipValueList(char[] in, int i, int n) {
+        boolean expectValue = true;
+        while (i < n) {
+            char c = in[i];
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (expectValue && c == '?') {
+                i++;
+                expectValue = false;
+            } else if (expectValue && c == '\'') {
+                i = skipString(in, i, n);
+                expectValue = false;
+            } else if (expectValue && (isDigit(c) || c == '-' || c == '.')) {
+                i = skipNumber(in, c == '-' ? i + 1 : i, n);
+                expectValue = false;
+            } else if (!expectValue && c == ',') {
+                i++;
+                expectValue = true;
+            } else if (!expectValue && c == ')') {
+                return i + 1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipString(char[] in, int i, int n) {
+        i++;
+        while (i < n) {
+            if (in[i] == '\'') {
+                if (i + 1 < n && in[i + 1] == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    private static int skipNumber(char[] in, int i, int n) {
+        while (i < n && (isDigit(in[i]) || in[i] == '.')) {
+            i++;
+        }
+        if (i < n && (in[i] == 'e' || in[i] == 'E')) {
+            int j = i + 1;
+            if (j < n && (in[j] == '+' || in[j] == '-')) {
+                j++;
+            }
+            if (j < n && isDigit(in[j])) {
+                i = j;
+                while (i < n && isDigit(in[i])) {
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static boolean wordEquals(StringBuilder out, int start, int length, String word) {
+        if (length != word.length()) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (out.charAt(start + k) != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$' || c == ':';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
+
+    private static final class CacheEntry {
+
+        private final String sql;
+        private final SqlFingerprint fingerprint;
+
+        CacheEntry(String sql, SqlFingerprint fingerprint) {
+            this.sql = sql;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static final class Buffers {
+
+        private char[] input = new char[512];
+        private final StringBuilder output = new StringBuilder(512);
+
+        char[] input(int length) {
+            if (input.length < length) {
+                input = new char[Math.max(length, input.length * 2)];
+            }
+            return input;
+        }
+
+        StringBuilder output() {
+            output.setLength(0);
+            return output;
+        }
+    }
+}
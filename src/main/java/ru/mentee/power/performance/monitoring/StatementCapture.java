@@ -0,0 +1,139 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+import ru.mentee.power.performance.jfr.JfrEvents;
+
+/**
+ * Точка публикации перехваченных SQL-выражений.
+ * Слушатель текущего потока получает только свои выражения, слушатели
+ * {@link CapturingConnectionProvider} - выражения своей SessionFactory, глобальные - все.
+ * Пока нет ни одного слушателя и JFR-событие SQL выключено, JDBC-прокси не оборачивают
+ * выражения.
+ * Перед публикацией выражение выборочно размечается местом вызова ({@link CallSiteSampler}).
+ */
+@Slf4j
+public final class StatementCapture {
+
+    private static final ThreadLocal<StatementCaptureListener> CURRENT = new ThreadLocal<>();
+    private static final List<StatementCaptureListener> GLOBAL = new CopyOnWriteArrayList<>();
+    private static final StatementCaptureListener SUSPENDED = statement -> {};
+
+    private StatementCapture() {}
+
+    /**
+     * Привязать слушателя к текущему потоку.
+     */
+    public static void bind(StatementCaptureListener listener) {
+        CURRENT.set(listener);
+    }
+
+    /**
+     * Отвязать слушателя, если он все еще привязан к текущему потоку.
+     */
+    public static void unbind(StatementCaptureListener listener) {
+        if (CURRENT.get() == listener) {
+            CURRENT.remove();
+        }
+    }
+
+    public static void addGlobalListener(StatementCaptureListener listener) {
+        GLOBAL.add(listener);
+    }
+
+    public static void removeGlobalListener(StatementCaptureListener listener) {
+        GLOBAL.remove(listener);
+    }
+
+    /**
+     * Временно выключить перехват в текущем потоке, например для служебных EXPLAIN.
+     *
+     * @return восстановление прежнего слушателя при close()
+     */
+    public static Suspension suspend() {
+        StatementCaptureListener previous = CURRENT.get();
+        CURRENT.set(SUSPENDED);
+        return () -> restore(previous);
+    }
+
+    /**
+     * Привязать слушателя к текущему потоку поверх уже привязанного: прежний слушатель
+     * продолжает получать выражения, пока вложенная привязка не закрыта.
+     *
+     * @return восстановление прежнего слушателя при close()
+     */
+    public static Suspension push(StatementCaptureListener listener) {
+        StatementCaptureListener previous = CURRENT.get();
+        if (previous == null || previous == SUSPENDED) {
+            CURRENT.set(listener);
+        } else {
+            CURRENT.set(
+                    statement -> {
+                        notify(listener, statement);
+                        notify(previous, statement);
+                    });
+        }
+        return () -> restore(previous);
+    }
+
+    private static void restore(StatementCaptureListener previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    static boolean isActive(List<StatementCaptureListener> local) {
+        StatementCaptureListener current = CURRENT.get();
+        return current != SUSPENDED
+                && (current != null
+                        || !local.isEmpty()
+                        || !GLOBAL.isEmpty()
+                        || JfrEvents.isStatementEventEnabled());
+    }
+
+    /**
+     * Опубликовать выражение слушателю потока, слушателям источника соединения и глобальным.
+     *
+     * @param local слушатели провайдера, выдавшего соединение
+     */
+    static void publish(CapturedStatement captured, List<StatementCaptureListener> local) {
+        // Публикация идет в потоке выполнения, поэтому стек еще содержит код приложения
+        CallSite callSite = captured.getCallSite() == null ? CallSiteSampler.sample() : null;
+        CapturedStatement statement = callSite != null ? captured.withCallSite(callSite) : captured;
+        StatementCaptureListener current = CURRENT.get();
+        if (current == SUSPENDED) {
+            return;
+        }
+        if (current != null) {
+            notify(current, statement);
+        }
+        for (StatementCaptureListener listener : local) {
+            notify(listener, statement);
+        }
+        for (StatementCaptureListener listener : GLOBAL) {
+            notify(listener, statement);
+        }
+    }
+
+    private static void notify(StatementCaptureListener listener, CapturedStatement statement) {
+        try {
+            listener.onStatement(statement);
+        } catch (RuntimeException e) {
+            // Ошибка мониторинга не должна ломать запрос приложения
+            log.warn("Statement capture listener failed: {}", listener, e);
+        }
+    }
+
+    /**
+     * Приостановка перехвата или вложенная привязка; close() не бросает проверяемых исключений.
+     */
+    @FunctionalInterface
+    public interface Suspension extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.mentee.power.performance.monitoring;
+
+/**
+ * Получатель перехваченных SQL-выражений.
+ */
+@FunctionalInterface
+public interface StatementCaptureListener {
+
+    /**
+     * Обработать выполненное выражение.
+     *
+     * @param statement перехваченное выражение
+     */
+    void onStatement(CapturedStatement statement);
+}
@@ -0,0 +1,66 @@
+package ru.mentee.power.performance.monitoring;
+
+import java.lang.management.ManagementFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Счетчик байт, выделенных в куче текущим потоком, через
+ * {@link com.sun.management.ThreadMXBean}.
+ * Значение только растет, поэтому выделение блока - разница двух замеров в одном потоке.
+ * Счетчик приблизительный (обновляется при смене TLAB), для виртуальных потоков и JVM
+ * без поддержки возвращается {@link #UNSUPPORTED}.
+ */
+@Slf4j
+public final class ThreadAllocation {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final com.sun.management.ThreadMXBean THREADS = init();
+
+    private ThreadAllocation() {}
+
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Всего байт, выделенных текущим потоком, или {@link #UNSUPPORTED}.
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (THREADS == null || Thread.currentThread().isVirtual()) {
+            return UNSUPPORTED;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Байт выделено с замера {@code start}, или {@link #UNSUPPORTED}.
+     */
+    public static long allocatedSince(long start) {
+        if (start == UNSUPPORTED) {
+            return UNSUPPORTED;
+        }
+        long now = currentThreadAllocatedBytes();
+        return now == UNSUPPORTED ? UNSUPPORTED : now - start;
+    }
+
+    private static com.sun.management.ThreadMXBean init() {
+        if (!(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean threads)) {
+            log.info("Thread allocation counters are not available on this JVM");
+            return null;
+        }
+        try {
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threads;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            log.info("Thread allocation counters are disabled: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package ru.mentee.power.performance.stress;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import ru.mentee.power.dao.HibernateGenericDAO;
+import ru.mentee.power.dto.Pageable;
+import ru.mentee.power.dto.SearchCriteria;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.hybrid.impl.HybridProductRepository;
+import ru.mentee.power.performance.dataset.ZipfSampler;
+import ru.mentee.power.performance.monitoring.CapturingConnectionProvider;
+import ru.mentee.power.search.ProductSearchService;
+
+/**
+ * Нагрузочный стенд: смешанная нагрузка из тысяч виртуальных потоков через
+ * {@link HibernateGenericDAO}, {@link HybridProductRepository} и {@link ProductSearchService}.
+ *
+ * <p>Меряет пропускную способность, перцентили задержек по операциям, ожидание соединения
+ * у пула, промахи кэша второго уровня (soft lock под записью) и взаимоблокировки - в базе
+ * по SQLState и в JVM. Ожидание пула Hibernate видно, только если включен перехват выражений
+ * ({@link CapturingConnectionProvider}).
+ *
+ * <p>{@link ThreadMXBean#findDeadlockedThreads()} видит только платформенные потоки (пул,
+ * служебные потоки драйвера), но не виртуальные потоки клиентов. Зависание клиентов
+ * ловит сторож прогресса: если ни одна операция не завершилась дольше
+ * {@value #STALL_TIMEOUT_MS} мс, прогон отмечает зависание и один раз снимает дамп всех
+ * потоков, включая виртуальные ({@link HotSpotDiagnosticMXBean#dumpThreads}), в JSON-файл
+ * во временном каталоге.
+ *
+ * <pre>
+ * StressReport report = new StressHarness(sessionFactory, dataSource)
+ *         .run(StressWorkload.builder().virtualThreads(2_000).build());
+ * log.info(report.describe());
+ * </pre>
+ *
+ * <p>Схема должна быть заполнена заранее (например, {@code DatasetGenerator}).
+ */
+@Slf4j
+public class StressHarness {
+
+    private static final int RESERVOIR_SIZE = 100_000;
+    private static final long MONITOR_INTERVAL_MS = 100;
+    static final long STALL_TIMEOUT_MS = 5_000;
+    private static final String STOCK_UPDATE_SQL =
+            "UPDATE products SET stock_quantity = stock_quantity - 1 WHERE id = ?";
+
+    private final SessionFactory sessionFactory;
+    private final DataSource dataSource;
+    private final HibernateGenericDAO<Product, Long> productDao;
+    private final HibernateGenericDAO<Order, Long> orderDao;
+    private final ProductSearchService searchService;
+    private final HybridProductRepository hybridRepository;
+    private final String skuPrefix = "STRESS-" + Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong skuSequence = new AtomicLong();
+    private volatile Run current;
+
+    /**
+     * @param sessionFactory фабрика сессий DAO и поиска
+     * @param dataSource пул JDBC-части {@link HybridProductRepository}
+     */
+    public StressHarness(SessionFactory sessionFactory, DataSource dataSource) {
+        this.sessionFactory = sessionFactory;
+        this.dataSource = dataSource;
+        this.productDao = new HibernateGenericDAO<>(sessionFactory, Product.class);
+        this.orderDao = new HibernateGenericDAO<>(sessionFactory, Order.class);
+        this.searchService = new ProductSearchService(sessionFactory);
+        this.hybridRepository = new HybridProductRepository(sessionFactory, timed(dataSource));
+    }
+
+    /**
+     * Выполнить прогон: прогрев, затем замер в течение {@code workload.duration}.
+     */
+    public StressReport run(StressWorkload workload) {
+        int products = (int) maxId("RelationshipProduct");
+        int orders = (int) maxId("RelationshipOrder");
+        if (products == 0) {
+            throw new IllegalStateException("В схеме нет товаров: сначала заполните данные");
+        }
+        ZipfSampler productKeys =
+                new ZipfSampler(products, workload.getKeySkew(), workload.getSeed());
+        ZipfSampler orderKeys =
+                orders > 0
+                        ? new ZipfSampler(orders, workload.getKeySkew(), workload.getSeed())
+                        : null;
+        StressOperation[] plan = plan(workload, orderKeys != null);
+
+        Run run = new Run();
+        current = run;
+        CapturingConnectionProvider capturing =
+                connectionProvider(CapturingConnectionProvider.class);
+        if (capturing != null) {
+            capturing.setAcquisitionListener(run::recordPoolWait);
+        }
+        List<HikariDataSource> pools = hikariPools();
+        Thread monitor =
+                Thread.ofPlatform()
+                        .daemon()
+                        .name("stress-monitor")
+                        .start(() -> monitor(run, pools, stallTimeoutNanos(workload)));
+
+        long start = System.nanoTime();
+        long measureFrom = start + workload.getWarmup().toNanos();
+        long deadline = measureFrom + workload.getDuration().toNanos();
+        Map<String, RegionCounters> cacheBefore = null;
+        long measureStart;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < workload.getVirtualThreads(); i++) {
+                SplittableRandom random = new SplittableRandom(workload.getSeed() * 31 + i);
+                clients.execute(
+                        () ->
+                                client(
+                                        run,
+                                        workload,
+                                        plan,
+                                        productKeys,
+                                        orderKeys,
+                                        random,
+                                        deadline));
+            }
+            sleepUntil(measureFrom);
+            cacheBefore = cacheCounters();
+            measureStart = System.nanoTime();
+            run.measuring = true;
+        } finally {
+            run.finished = true;
+            monitor.interrupt();
+            if (capturing != null) {
+                capturing.setAcquisitionListener(null);
+            }
+            current = null;
+        }
+        Duration measured = Duration.ofNanos(System.nanoTime() - measureStart);
+        joinQuietly(monitor);
+
+        StressReport report = run.report(workload, measured, cacheDelta(cacheBefore));
+        log.info("Stress run finished:\n{}", report.describe());
+        return report;
+    }
+
+    private void client(
+            Run run,
+            StressWorkload workload,
+            StressOperation[] plan,
+            ZipfSampler productKeys,
+            ZipfSampler orderKeys,
+            SplittableRandom random,
+            long deadline) {
+        long thinkNanos = workload.getThinkTime().toNanos();
+        while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+            StressOperation operation = plan[random.nextInt(plan.length)];
+            boolean measured = run.measuring;
+            long start = System.nanoTime();
+            try {
+                execute(operation, productKeys, orderKeys, random);
+                if (measured) {
+                    run.recordSuccess(operation, System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                if (measured) {
+                    run.recordError(operation, System.nanoTime() - start, e);
+                }
+            }
+            run.progress.increment();
+            if (thinkNanos > 0) {
+                // Экспоненциальные паузы дают пуассоновский поток запросов от клиента
+                LockSupport.parkNanos((long) (-Math.log(1.0 - random.nextDouble()) * thinkNanos));
+            }
+        }
+    }
+
+    private void execute(
+            StressOperation operation,
+            ZipfSampler productKeys,
+            ZipfSampler orderKeys,
+            SplittableRandom random) {
+        switch (operation) {
+            case PRODUCT_READ -> productDao.findById(productKeys.sample(random));
+            case ORDER_READ -> orderDao.findById(orderKeys.sample(random));
+            case SEARCH -> {
+                BigDecimal minPrice = BigDecimal.valueOf(100 + random.nextInt(10_000), 2);
+                SearchCriteria criteria =
+                        new SearchCriteria()
+                                .addFilter("minPrice", minPrice)
+                                .addFilter("maxPrice", minPrice.add(BigDecimal.TEN));
+                searchService.search(criteria, Pageable.of(0, 20));
+            }
+            case PRODUCT_INSERT -> {
+                long sku = skuSequence.incrementAndGet();
+                productDao.save(
+                        Product.builder()
+                                .sku(skuPrefix + "-" + sku)
+                                .name("Stress product " + sku)
+                                .price(BigDecimal.valueOf(100 + random.nextInt(10_000), 2))
+                                .stockQuantity(100)
+                                .build());
+            }
+            case ORDER_UPDATE ->
+                    orderDao.findById(orderKeys.sample(random))
+                            .ifPresent(
+                                    order -> {
+                                        order.setStatus(
+                                                order.getStatus() == OrderStatus.PROCESSING
+                                                        ? OrderStatus.SHIPPED
+                                                        : OrderStatus.PROCESSING);
+                                        orderDao.update(order);
+                                    });
+            case STOCK_UPDATE ->
+                    hybridRepository.bulkUpdate(STOCK_UPDATE_SQL, productKeys.sample(random));
+        }
+    }
+
+    /**
+     * Таблица выбора операции: каждая операция повторена по своему весу.
+     */
+    private static StressOperation[] plan(StressWorkload workload, boolean hasOrders) {
+        List<StressOperation> plan = new ArrayList<>();
+        Map<StressOperation, Integer> weights = workload.effectiveWeights();
+        for (StressOperation operation : StressOperation.values()) {
+            boolean needsOrders =
+                    operation == StressOperation.ORDER_READ
+                            || operation == StressOperation.ORDER_UPDATE;
+            if (hasOrders || !needsOrders) {
+                for (int i = 0; i < weights.getOrDefault(operation, 0); i++) {
+                    plan.add(operation);
+                }
+            }
+        }
+        if (plan.isEmpty()) {
+            throw new IllegalArgumentException("Все веса операций нулевые");
+        }
+        return plan.toArray(new StressOperation[0]);
+    }
+
+    private void monitor(Run run, List<HikariDataSource> pools, long stallTimeoutNanos) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long lastDeadlockCheck = 0;
+        long lastProgress = 0;
+        long lastProgressAt = System.nanoTime();
+        boolean stalled = false;
+        while (!run.finished) {
+            int awaiting = 0;
+            for (HikariDataSource pool : pools) {
+                if (pool.getHikariPoolMXBean() != null) {
+                    awaiting += pool.getHikariPoolMXBean().getThreadsAwaitingConnection();
+                }
+            }
+            run.maxAwaiting.accumulateAndGet(awaiting, Math::max);
+            long now = System.nanoTime();
+            if (now - lastDeadlockCheck > TimeUnit.SECONDS.toNanos(1)) {
+                long[] deadlocked = threads.findDeadlockedThreads();
+                if (deadlocked != null) {
+                    run.platformDeadlocked.accumulateAndGet(deadlocked.length, Math::max);
+                }
+                lastDeadlockCheck = now;
+            }
+            long progress = run.progress.sum();
+            if (progress != lastProgress) {
+                lastProgress = progress;
+                lastProgressAt = now;
+                stalled = false;
+            } else if (!stalled && now - lastProgressAt > stallTimeoutNanos) {
+                stalled = true;
+                run.stalls.incrementAndGet();
+                if (run.threadDump == null) {
+                    run.threadDump = dumpThreads();
+                }
+            }
+            try {
+                Thread.sleep(MONITOR_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Порог зависания: не меньше десяти средних пауз клиента, чтобы паузы не считались им.
+     */
+    private static long stallTimeoutNanos(StressWorkload workload) {
+        return Math.max(
+                TimeUnit.MILLISECONDS.toNanos(STALL_TIMEOUT_MS),
+                workload.getThinkTime().toNanos() * 10);
+    }
+
+    /**
+     * Дамп всех потоков, включая виртуальные, или null, если снять его не удалось.
+     */
+    private static String dumpThreads() {
+        Path file =
+                Path.of(
+                                System.getProperty("java.io.tmpdir"),
+                                "stress-threads-" + System.currentTimeMillis() + ".json")
+                        .toAbsolutePath();
+        try {
+            ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                    .dumpThreads(file.toString(), HotSpotDiagnosticMXBean.ThreadDumpFormat.JSON);
+            log.warn("Stress clients made no progress, thread dump written to {}", file);
+            return file.toString();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to dump threads of stalled stress run", e);
+            return null;
+        }
+    }
+
+    private long maxId(String entityName) {
+        try (Session session = sessionFactory.openSession()) {
+            Long max =
+                    session.createQuery("SELECT MAX(e.id) FROM " + entityName + " e", Long.class)
+                            .uniqueResult();
+            return max != null ? max : 0;
+        }
+    }
+
+    private <T> T connectionProvider(Class<T> type) {
+        ConnectionProvider provider =
+                sessionFactory
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getServiceRegistry()
+                        .getService(ConnectionProvider.class);
+        return provider != null && provider.isUnwrappableAs(type) ? provider.unwrap(type) : null;
+    }
+
+    private List<HikariDataSource> hikariPools() {
+        List<HikariDataSource> pools = new ArrayList<>();
+        HikariDataSource hibernatePool = connectionProvider(HikariDataSource.class);
+        if (hibernatePool != null) {
+            pools.add(hibernatePool);
+        }
+        if (dataSource instanceof HikariDataSource repositoryPool) {
+            pools.add(repositoryPool);
+        }
+        return pools;
+    }
+
+    private Map<String, RegionCounters> cacheCounters() {
+        Map<String, RegionCounters> counters = new LinkedHashMap<>();
+        Statistics statistics = sessionFactory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return counters;
+        }
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics != null) {
+                counters.put(
+                        region,
+                        new RegionCounters(
+                                regionStatistics.getHitCount(),
+                                regionStatistics.getMissCount(),
+                                regionStatistics.getPutCount()));
+            }
+        }
+        return counters;
+    }
+
+    private Map<String, StressReport.RegionStats> cacheDelta(Map<String, RegionCounters> before) {
+        Map<String, StressReport.RegionStats> delta = new LinkedHashMap<>();
+        cacheCounters()
+                .forEach(
+                        (region, after) -> {
+                            RegionCounters base =
+                                    before.getOrDefault(region, new RegionCounters(0, 0, 0));
+                            StressReport.RegionStats stats =
+                                    new StressReport.RegionStats(
+                                            after.hits - base.hits,
+                                            after.misses - base.misses,
+                                            after.puts - base.puts);
+                            if (stats.getHits() + stats.getMisses() + stats.getPuts() > 0) {
+                                delta.put(region, stats);
+                            }
+                        });
+        return delta;
+    }
+
+    /**
+     * DataSource репозитория, замеряющий ожидание соединения.
+     */
+    private DataSource timed(DataSource target) {
+        return (DataSource)
+                Proxy.newProxyInstance(
+                        DataSource.class.getClassLoader(),
+                        new Class<?>[] {DataSource.class},
+                        (proxy, method, args) -> {
+                            boolean acquire = method.getName().equals("getConnection");
+                            long start = acquire ? System.nanoTime() : 0;
+                            try {
+                                Object result = method.invoke(target, args);
+                                Run run = current;
+                                if (acquire && run != null) {
+                                    run.recordPoolWait(System.nanoTime() - start);
+                                }
+                                return result;
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static boolean isDeadlock(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof LockAcquisitionException) {
+                return true;
+            }
+            if (t instanceof SQLException sql
+                    && ("40001".equals(sql.getSQLState()) || "40P01".equals(sql.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String rootCause(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName();
+    }
+
+    private static StressReport.LatencyStats latency(Histogram histogram) {
+        Snapshot snapshot = histogram.getSnapshot();
+        return new StressReport.LatencyStats(
+                histogram.getCount(),
+                snapshot.getMedian() / 1e6,
+                snapshot.get95thPercentile() / 1e6,
+                snapshot.get99thPercentile() / 1e6,
+                snapshot.getMax() / 1e6);
+    }
+
+    private static final class RegionCounters {
+
+        private final long hits;
+        private final long misses;
+        private final long puts;
+
+        RegionCounters(long hits, long misses, long puts) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+        }
+    }
+
+    /**
+     * Счетчики одного прогона; пишутся из всех клиентских потоков.
+     */
+    private static final class Run {
+
+        private final Map<StressOperation, Histogram> latencies =
+                new EnumMap<>(StressOperation.class);
+        private final Map<StressOperation, LongAdder> errorCounts =
+                new EnumMap<>(StressOperation.class);
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private final Histogram poolWait = new Histogram(new UniformReservoir(RESERVOIR_SIZE));
+        private final LongAdder deadlocks = new LongAdder();
+        private final AtomicInteger maxAwaiting = new AtomicInteger();
+        private final AtomicInteger platformDeadlocked = new AtomicInteger();
+        private final LongAdder progress = new LongAdder();
+        private final AtomicInteger stalls = new AtomicInteger();
+        // Пишется потоком сторожа, читается после его join()
+        private String threadDump;
+        private volatile boolean measuring;
+        private volatile boolean finished;
+
+        Run() {
+            for (StressOperation operation : StressOperation.values()) {
+                latencies.put(operation, new Histogram(new UniformReservoir(RESERVOIR_SIZE)));
+                errorCounts.put(operation, new LongAdder());
+            }
+        }
+
+        void recordSuccess(StressOperation operation, long nanos) {
+            latencies.get(operation).update(nanos);
+        }
+
+        void recordError(StressOperation operation, long nanos, RuntimeException error) {
+            latencies.get(operation).update(nanos);
+            errorCounts.get(operation).increment();
+            errors.computeIfAbsent(rootCause(error), key -> new LongAdder()).increment();
+            if (isDeadlock(error)) {
+                deadlocks.increment();
+            }
+        }
+
+        void recordPoolWait(long nanos) {
+            if (measuring) {
+                poolWait.update(nanos);
+            }
+        }
+
+        StressReport report(
+                StressWorkload workload,
+                Duration measured,
+                Map<String, StressReport.RegionStats> cacheRegions) {
+            Map<StressOperation, StressReport.OperationStats> operations =
+                    new EnumMap<>(StressOperation.class);
+            latencies.forEach(
+                    (operation, histogram) -> {
+                        if (histogram.getCount() > 0) {
+                            operations.put(
+                                    operation,
+                                    new StressReport.OperationStats(
+                                            histogram.getCount(),
+                                            errorCounts.get(operation).sum(),
+                                            latency(histogram)));
+                        }
+                    });
+            Map<String, Long> errorTotals = new LinkedHashMap<>();
+            errors.forEach((type, count) -> errorTotals.put(type, count.sum()));
+            return new StressReport(
+                    workload,
+                    measured,
+                    operations,
+                    latency(poolWait),
+                    maxAwaiting.get(),
+                    cacheRegions,
+                    errorTotals,
+                    deadlocks.sum(),
+                    platformDeadlocked.get(),
+                    stalls.get(),
+                    threadDump);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.mentee.power.performance.stress;
+
+/**
+ * Операция смешанной нагрузки нагрузочного стенда.
+ */
+public enum StressOperation {
+    /** {@code HibernateGenericDAO<Product>.findById} по горячим ключам. */
+    PRODUCT_READ(false),
+    /** {@code HibernateGenericDAO<Order>.findById}: READ_WRITE регион, видит soft lock. */
+    ORDER_READ(false),
+    /** {@code ProductSearchService.search} по диапазону цены. */
+    SEARCH(false),
+    /** {@code HibernateGenericDAO<Product>.save} нового товара. */
+    PRODUCT_INSERT(true),
+    /** Смена статуса заказа через {@code HibernateGenericDAO<Order>.update}. */
+    ORDER_UPDATE(true),
+    /** Списание остатка через {@code HybridProductRepository.bulkUpdate}. */
+    STOCK_UPDATE(true);
+
+    private final boolean write;
+
+    StressOperation(boolean write) {
+        this.write = write;
+    }
+
+    public boolean isWrite() {
+        return write;
+    }
+}
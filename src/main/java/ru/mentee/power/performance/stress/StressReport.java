@@ -0,0 +1,160 @@
+package ru.mentee.power.performance.stress;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Результат прогона нагрузочного стенда (без прогрева).
+ */
+@Value
+public class StressReport {
+
+    StressWorkload workload;
+    Duration measured;
+    Map<StressOperation, OperationStats> operations;
+
+    /** Ожидание соединения у пулов Hibernate и JDBC-репозитория. */
+    LatencyStats poolWait;
+
+    /** Наибольшее число потоков, одновременно ждавших соединение HikariCP (0 без HikariCP). */
+    int maxThreadsAwaitingConnection;
+
+    /** Дельты счетчиков кэша второго уровня по регионам. */
+    Map<String, RegionStats> cacheRegions;
+
+    /** Ошибки по типу корневой причины. */
+    Map<String, Long> errors;
+
+    /** Взаимоблокировки в базе (SQLState 40001/40P01, LockAcquisitionException). */
+    long databaseDeadlocks;
+
+    /**
+     * Платформенные потоки JVM во взаимоблокировке по мониторам и локам. Виртуальные потоки
+     * клиентов {@link java.lang.management.ThreadMXBean} не видит, их ловит {@link #stalls}.
+     */
+    int platformDeadlockedThreads;
+
+    /** Сколько раз ни одна операция не завершалась дольше порога зависания. */
+    int stalls;
+
+    /** JSON-дамп всех потоков, включая виртуальные, при первом зависании или null. */
+    String threadDump;
+
+    public long getTotalOperations() {
+        return operations.values().stream().mapToLong(OperationStats::getCount).sum();
+    }
+
+    public double getThroughput() {
+        return getTotalOperations() / seconds(measured);
+    }
+
+    /**
+     * Текстовый отчет: пропускная способность, перцентили по операциям, пул, кэш, ошибки.
+     */
+    public String describe() {
+        StringBuilder report = new StringBuilder();
+        report.append(
+                String.format(
+                        Locale.ROOT,
+                        "%d virtual threads, %.1f s: %d ops, %.1f ops/s%n",
+                        workload.getVirtualThreads(),
+                        seconds(measured),
+                        getTotalOperations(),
+                        getThroughput()));
+        report.append(
+                String.format(
+                        Locale.ROOT,
+                        "%-15s %9s %7s %10s %9s %9s %9s %9s%n",
+                        "operation",
+                        "count",
+                        "errors",
+                        "ops/s",
+                        "p50 ms",
+                        "p95 ms",
+                        "p99 ms",
+                        "max ms"));
+        operations.forEach(
+                (operation, stats) ->
+                        report.append(
+                                String.format(
+                                        Locale.ROOT,
+                                        "%-15s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                                        operation,
+                                        stats.getCount(),
+                                        stats.getErrors(),
+                                        stats.getCount() / seconds(measured),
+                                        stats.getLatency().getP50Millis(),
+                                        stats.getLatency().getP95Millis(),
+                                        stats.getLatency().getP99Millis(),
+                                        stats.getLatency().getMaxMillis())));
+        report.append(
+                String.format(
+                        Locale.ROOT,
+                        "pool wait: %d acquisitions, p50 %.2f ms, p99 %.2f ms, max %.2f ms,"
+                                + " max awaiting %d%n",
+                        poolWait.getCount(),
+                        poolWait.getP50Millis(),
+                        poolWait.getP99Millis(),
+                        poolWait.getMaxMillis(),
+                        maxThreadsAwaitingConnection));
+        cacheRegions.forEach(
+                (region, stats) ->
+                        report.append(
+                                String.format(
+                                        Locale.ROOT,
+                                        "L2 %s: hits %d, misses %d, puts %d%n",
+                                        region,
+                                        stats.getHits(),
+                                        stats.getMisses(),
+                                        stats.getPuts())));
+        report.append(
+                String.format(
+                        Locale.ROOT,
+                        "deadlocks: database %d, platform threads %d; stalls %d%s; errors %s",
+                        databaseDeadlocks,
+                        platformDeadlockedThreads,
+                        stalls,
+                        threadDump != null ? " (thread dump " + threadDump + ")" : "",
+                        errors));
+        return report.toString();
+    }
+
+    private static double seconds(Duration duration) {
+        return Math.max(duration.toNanos() / 1e9, 1e-9);
+    }
+
+    /**
+     * Счетчики и задержки одной операции.
+     */
+    @Value
+    public static class OperationStats {
+        long count;
+        long errors;
+        LatencyStats latency;
+    }
+
+    /**
+     * Перцентили задержки в миллисекундах.
+     */
+    @Value
+    public static class LatencyStats {
+        long count;
+        double p50Millis;
+        double p95Millis;
+        double p99Millis;
+        double maxMillis;
+    }
+
+    /**
+     * Дельта статистики региона кэша за прогон. Промахи READ_WRITE региона, прогретого
+     * до замера, - это в основном чтения, попавшие на soft lock параллельного обновления.
+     */
+    @Value
+    public static class RegionStats {
+        long hits;
+        long misses;
+        long puts;
+    }
+}
@@ -0,0 +1,48 @@
+package ru.mentee.power.performance.stress;
+
+import java.time.Duration;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+/**
+ * Параметры прогона нагрузочного стенда.
+ */
+@Value
+@Builder(toBuilder = true)
+public class StressWorkload {
+
+    /** Число виртуальных потоков-клиентов. */
+    @Builder.Default int virtualThreads = 1_000;
+
+    @Builder.Default Duration duration = Duration.ofSeconds(30);
+
+    /** Прогрев: нагрузка идет, но задержки и счетчики кэша не учитываются. */
+    @Builder.Default Duration warmup = Duration.ofSeconds(5);
+
+    /** Средняя пауза клиента между операциями (экспоненциальное распределение); 0 - без пауз. */
+    @Builder.Default Duration thinkTime = Duration.ZERO;
+
+    /** Относительные веса операций; пусто - {@link #DEFAULT_WEIGHTS}. */
+    @Singular Map<StressOperation, Integer> weights;
+
+    /** Показатель Ципфа для выбора товаров и заказов: горячие строки создают конкуренцию. */
+    @Builder.Default double keySkew = 1.0;
+
+    @Builder.Default long seed = 42L;
+
+    /** Смесь 85% чтений / 15% записей. */
+    public static final Map<StressOperation, Integer> DEFAULT_WEIGHTS =
+            Map.of(
+                    StressOperation.PRODUCT_READ, 55,
+                    StressOperation.ORDER_READ, 20,
+                    StressOperation.SEARCH, 10,
+                    StressOperation.PRODUCT_INSERT, 5,
+                    StressOperation.ORDER_UPDATE, 5,
+                    StressOperation.STOCK_UPDATE, 5);
+
+    public Map<StressOperation, Integer> effectiveWeights() {
+        return weights.isEmpty() ? DEFAULT_WEIGHTS : weights;
+    }
+}
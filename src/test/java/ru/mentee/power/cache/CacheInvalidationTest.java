@@ -0,0 +1,131 @@
+package ru.mentee.power.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Cache;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.entity.relationship.Customer;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+
+/**
+ * Тест точечной инвалидации кэша второго уровня.
+ */
+@DisplayName("Cache Invalidation Tests")
+class CacheInvalidationTest {
+
+    private static final String CUSTOMER_ORDERS = Customer.class.getName() + ".orders";
+
+    private SessionFactory sessionFactory;
+    private CacheManager cacheManager;
+    private Cache cache;
+    private final List<Long> customerIds = new ArrayList<>();
+    private final List<Long> orderIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_invalidation_" + System.currentTimeMillis());
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        dbConfig.setSecondLevelCacheOnH2(true);
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+        cacheManager = new CacheManagerImpl(sessionFactory);
+        cache = sessionFactory.getCache();
+
+        sessionFactory.inTransaction(
+                session -> {
+                    for (int c = 0; c < 2; c++) {
+                        Customer customer =
+                                Customer.builder()
+                                        .firstName("First" + c)
+                                        .lastName("Last" + c)
+                                        .email("customer" + c + "@example.com")
+                                        .build();
+                        session.persist(customer);
+                        customerIds.add(customer.getId());
+                        for (int o = 0; o < 2; o++) {
+                            Order order =
+                                    Order.builder()
+                                            .orderNumber("ORD-" + c + "-" + o)
+                                            .customer(customer)
+                                            .status(OrderStatus.PENDING)
+                                            .totalAmount(BigDecimal.TEN)
+                                            .orderDate(LocalDateTime.now())
+                                            .build();
+                            session.persist(order);
+                            orderIds.add(order.getId());
+                        }
+                    }
+                });
+        cache.evictAllRegions();
+        // Прогрев: заказы, клиенты и их коллекции заказов
+        try (Session session = sessionFactory.openSession()) {
+            orderIds.forEach(id -> session.get(Order.class, id));
+            for (Long id : customerIds) {
+                Hibernate.initialize(session.get(Customer.class, id).getOrders());
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should evict only the changed order and collections containing orders")
+    void shouldEvictSingleOrder() {
+        assertThat(orderIds).allMatch(id -> cache.containsEntity(Order.class, id));
+        assertThat(cache.containsCollection(CUSTOMER_ORDERS, customerIds.get(0))).isTrue();
+
+        cacheManager.invalidateEntity(Order.class, orderIds.get(0));
+
+        assertThat(cache.containsEntity(Order.class, orderIds.get(0))).isFalse();
+        assertThat(orderIds.subList(1, orderIds.size()))
+                .allMatch(id -> cache.containsEntity(Order.class, id));
+        assertThat(customerIds).allMatch(id -> cache.containsEntity(Customer.class, id));
+        // Владелец коллекции по ключу заказа неизвестен
+        assertThat(customerIds)
+                .noneMatch(id -> cache.containsCollection(CUSTOMER_ORDERS, id));
+    }
+
+    @Test
+    @DisplayName("Should evict customer together with its own orders collection")
+    void shouldEvictOwnedCollection() {
+        cacheManager.invalidateEntity(Customer.class, customerIds.get(0));
+
+        assertThat(cache.containsEntity(Customer.class, customerIds.get(0))).isFalse();
+        assertThat(cache.containsCollection(CUSTOMER_ORDERS, customerIds.get(0))).isFalse();
+        assertThat(cache.containsEntity(Customer.class, customerIds.get(1))).isTrue();
+        assertThat(cache.containsCollection(CUSTOMER_ORDERS, customerIds.get(1))).isTrue();
+        assertThat(orderIds).allMatch(id -> cache.containsEntity(Order.class, id));
+    }
+
+    @Test
+    @DisplayName("Should evict a batch of keys and keep the rest of the region")
+    void shouldEvictBatch() {
+        cacheManager.invalidateEntities(Order.class, orderIds.subList(0, 3));
+
+        assertThat(orderIds.subList(0, 3)).noneMatch(id -> cache.containsEntity(Order.class, id));
+        assertThat(cache.containsEntity(Order.class, orderIds.get(3))).isTrue();
+
+        // Повторное чтение снова кладет заказ в регион
+        try (Session session = sessionFactory.openSession()) {
+            assertThat(session.get(Order.class, orderIds.get(0))).isNotNull();
+        }
+        assertThat(cache.containsEntity(Order.class, orderIds.get(0))).isTrue();
+    }
+}
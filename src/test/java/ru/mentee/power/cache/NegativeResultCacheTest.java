@@ -0,0 +1,193 @@
+package ru.mentee.power.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.dao.GenericDAO;
+import ru.mentee.power.dao.HibernateGenericDAO;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.hybrid.impl.HybridProductRepository;
+import ru.mentee.power.performance.monitoring.StatementCapture;
+import ru.mentee.power.performance.monitoring.StatementCaptureListener;
+
+/**
+ * Тест кэша отсутствующих строк.
+ */
+@DisplayName("Negative Result Cache Tests")
+class NegativeResultCacheTest {
+
+    private SessionFactory sessionFactory;
+    private HikariDataSource dataSource;
+    private Long existingId;
+    private final AtomicInteger productSelects = new AtomicInteger();
+    private final StatementCaptureListener selectCounter =
+            statement -> {
+                String sql = statement.getSql().toLowerCase();
+                if (sql.startsWith("select") && sql.contains("from products")) {
+                    productSelects.incrementAndGet();
+                }
+            };
+
+    @BeforeEach
+    void setUp() {
+        String url = "jdbc:h2:mem:testdb_negative_cache_" + System.currentTimeMillis();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(url);
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(2);
+        dataSource = new HikariDataSource(hikariConfig);
+
+        Product product = product("SKU-EXISTING");
+        sessionFactory.inTransaction(session -> session.persist(product));
+        existingId = product.getId();
+        StatementCapture.addGlobalListener(selectCounter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        StatementCapture.removeGlobalListener(selectCounter);
+        dataSource.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should answer a repeated lookup of a missing id without the database")
+    void shouldCacheMissingId() {
+        NegativeResultCache negativeCache = NegativeResultCache.install(sessionFactory);
+        GenericDAO<Product, Long> dao =
+                new HibernateGenericDAO<>(sessionFactory, Product.class, null, negativeCache);
+
+        assertThat(dao.findById(999_999L)).isEmpty();
+        int selects = productSelects.get();
+        assertThat(dao.existsById(999_999L)).isFalse();
+        assertThat(dao.findById(999_999L)).isEmpty();
+
+        assertThat(productSelects).hasValue(selects);
+        assertThat(negativeCache.getHits()).isEqualTo(2);
+        assertThat(negativeCache.getMisses()).isEqualTo(1);
+        // Найденные строки не запоминаются
+        assertThat(dao.findById(existingId)).isPresent();
+        assertThat(negativeCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should make a row inserted through Hibernate visible immediately")
+    void shouldInvalidateOnInsert() {
+        NegativeResultCache negativeCache = NegativeResultCache.install(sessionFactory);
+        GenericDAO<Product, Long> dao =
+                new HibernateGenericDAO<>(sessionFactory, Product.class, null, negativeCache);
+        HybridProductRepository repository =
+                new HybridProductRepository(sessionFactory, dataSource, false, null, negativeCache);
+        // IDENTITY в H2 выдаст следующей строке этот ключ
+        Long nextId = existingId + 1;
+        assertThat(dao.findById(nextId)).isEmpty();
+        assertThat(repository.findBySku("SKU-NEW")).isEmpty();
+        assertThat(negativeCache.size()).isEqualTo(2);
+
+        Product created = dao.save(product("SKU-NEW"));
+
+        assertThat(created.getId()).isEqualTo(nextId);
+        assertThat(negativeCache.size()).isZero();
+        assertThat(dao.findById(nextId)).isPresent();
+        assertThat(repository.findBySku("SKU-NEW"))
+                .map(Product::getId)
+                .contains(nextId);
+    }
+
+    @Test
+    @DisplayName("Should forget missing SKUs after a JDBC bulk insert")
+    void shouldInvalidateOnBulkInsert() {
+        NegativeResultCache negativeCache = NegativeResultCache.install(sessionFactory);
+        HybridProductRepository repository =
+                new HybridProductRepository(sessionFactory, dataSource, false, null, negativeCache);
+        assertThat(repository.findBySku("SKU-BULK")).isEmpty();
+        assertThat(repository.findBySku("SKU-BULK")).isEmpty();
+        assertThat(negativeCache.getHits()).isEqualTo(1);
+
+        repository.bulkInsert(List.of(product("SKU-BULK")));
+
+        assertThat(repository.findBySku("SKU-BULK")).isPresent();
+        assertThat(negativeCache.getInvalidations()).isPositive();
+        assertThat(negativeCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should expire entries after the TTL and stay within the size bound")
+    void shouldExpireAndBound() throws InterruptedException {
+        NegativeResultCache negativeCache =
+                NegativeResultCache.install(sessionFactory, Duration.ofMillis(50), 2);
+        GenericDAO<Product, Long> dao =
+                new HibernateGenericDAO<>(sessionFactory, Product.class, null, negativeCache);
+        dao.findById(-1L);
+        dao.findById(-2L);
+        dao.findById(-3L);
+        assertThat(negativeCache.size()).isEqualTo(2);
+        // Полный кэш вытесняет самую старую запись, а не новую
+        dao.findById(-3L);
+        assertThat(negativeCache.getHits()).isEqualTo(1);
+
+        Thread.sleep(100);
+        int selects = productSelects.get();
+        dao.findById(-3L);
+
+        assertThat(productSelects).hasValue(selects + 1);
+        assertThat(negativeCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should expose hit and miss counters to Micrometer")
+    void shouldBindMetrics() {
+        NegativeResultCache negativeCache = NegativeResultCache.install(sessionFactory);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        negativeCache.bindTo(registry);
+        GenericDAO<Product, Long> dao =
+                new HibernateGenericDAO<>(sessionFactory, Product.class, null, negativeCache);
+
+        dao.findById(-1L);
+        dao.findById(-1L);
+        dao.findById(-1L);
+
+        assertThat(
+                        registry.get("hibernate.cache.negative.requests")
+                                .tag("result", "hit")
+                                .functionCounter()
+                                .count())
+                .isEqualTo(2);
+        assertThat(
+                        registry.get("hibernate.cache.negative.requests")
+                                .tag("result", "miss")
+                                .functionCounter()
+                                .count())
+                .isEqualTo(1);
+        assertThat(registry.get("hibernate.cache.negative.size").gauge().value()).isEqualTo(1);
+    }
+
+    private static Product product(String sku) {
+        return Product.builder()
+                .sku(sku)
+                .name("Product " + sku)
+                .price(BigDecimal.TEN)
+                .stockQuantity(1)
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package ru.mentee.power.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.dao.GenericDAO;
+import ru.mentee.power.dao.HibernateGenericDAO;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.performance.monitoring.StatementCapture;
+import ru.mentee.power.performance.monitoring.StatementCaptureListener;
+
+/**
+ * Тест объединения промахов кэша и раннего обновления.
+ */
+@DisplayName("Single Flight Loader Tests")
+class SingleFlightLoaderTest {
+
+    private static final int CLIENTS = 16;
+
+    private SessionFactory sessionFactory;
+    private Long productId;
+    private final AtomicInteger productSelects = new AtomicInteger();
+    // Медленная база: лидер держит загрузку, пока остальные промахиваются
+    private final StatementCaptureListener slowDatabase =
+            statement -> {
+                if (statement.getSql().toLowerCase().contains("from products")) {
+                    productSelects.incrementAndGet();
+                    sleep(200);
+                }
+            };
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_single_flight_" + System.currentTimeMillis());
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        dbConfig.setSecondLevelCacheOnH2(true);
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+        Product product =
+                Product.builder().sku("SKU-HOT").name("Hot").price(BigDecimal.TEN).build();
+        sessionFactory.inTransaction(session -> session.persist(product));
+        productId = product.getId();
+        sessionFactory.getCache().evictAllRegions();
+        StatementCapture.addGlobalListener(slowDatabase);
+    }
+
+    @AfterEach
+    void tearDown() {
+        StatementCapture.removeGlobalListener(slowDatabase);
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should load a hot entry from the database once for concurrent misses")
+    void shouldCoalesceConcurrentMisses() throws Exception {
+        try (SingleFlightLoader loader = new SingleFlightLoader(sessionFactory)) {
+            List<Optional<Product>> results = findConcurrently(loader, productId);
+
+            List<Product> loaded = results.stream().map(Optional::orElseThrow).toList();
+            assertThat(productSelects).hasValue(1);
+            assertThat(loader.getCoalescedLoads()).isPositive();
+            // Каждый клиент получает свой экземпляр
+            Set<Product> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            instances.addAll(loaded);
+            assertThat(instances).hasSize(CLIENTS);
+            assertThat(loaded).allMatch(product -> product.getSku().equals("SKU-HOT"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer concurrent misses on a missing row with one query")
+    void shouldCoalesceMissingRows() throws Exception {
+        try (SingleFlightLoader loader = new SingleFlightLoader(sessionFactory)) {
+            List<Optional<Product>> results = findConcurrently(loader, productId + 1000);
+
+            assertThat(results).allMatch(Optional::isEmpty);
+            assertThat(loader.getCoalescedLoads()).isPositive();
+            // Ожидавшие берут ответ лидера и сами в базу не ходят
+            assertThat(productSelects).hasValue(1);
+        }
+    }
+
+    @Test
+    @DisplayName("Should refresh entry in background before TTL expiry")
+    void shouldRefreshEarly() throws Exception {
+        SingleFlightLoader loader =
+                new SingleFlightLoader(sessionFactory)
+                        .earlyRefresh(Product.class, Duration.ofMillis(1));
+        try (loader) {
+            assertThat(loader.findById(Product.class, productId)).isPresent();
+            sleep(20);
+
+            // Попадание после "истечения" TTL запускает фоновое обновление и не ждет его
+            assertThat(loader.findById(Product.class, productId)).isPresent();
+
+            assertThat(loader.getEarlyRefreshes()).isEqualTo(1);
+        }
+        // close() дожидается начатого обновления
+        assertThat(loader.getDatabaseLoads()).isEqualTo(2);
+        assertThat(productSelects).hasValue(2);
+        assertThat(sessionFactory.getCache().containsEntity(Product.class, productId)).isTrue();
+
+        // После закрытия раннее обновление не запускается
+        sleep(20);
+        assertThat(loader.findById(Product.class, productId)).isPresent();
+        assertThat(loader.getEarlyRefreshes()).isEqualTo(1);
+    }
+
+    private List<Optional<Product>> findConcurrently(SingleFlightLoader loader, Long id)
+            throws Exception {
+        GenericDAO<Product, Long> dao =
+                new HibernateGenericDAO<>(sessionFactory, Product.class, loader);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<Product>>> futures = new ArrayList<>();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(
+                        clients.submit(
+                                () -> {
+                                    start.await();
+                                    return dao.findById(id);
+                                }));
+            }
+            start.countDown();
+            List<Optional<Product>> results = new ArrayList<>();
+            for (Future<Optional<Product>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ru.mentee.power.hybrid;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.hybrid.impl.HybridProductRepository;
+
+/**
+ * Тест поддержки кэша второго уровня при JDBC-изменениях гибридного репозитория.
+ */
+@DisplayName("Hybrid Product Repository Cache Tests")
+class HybridProductRepositoryCacheTest {
+
+    private SessionFactory sessionFactory;
+    private HikariDataSource dataSource;
+    private HybridProductRepository repository;
+    private Cache cache;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        String url = "jdbc:h2:mem:testdb_hybrid_cache_" + System.currentTimeMillis();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(url);
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        dbConfig.setSecondLevelCacheOnH2(true);
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+        cache = sessionFactory.getCache();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(hikariConfig);
+        repository = new HybridProductRepository(sessionFactory, dataSource);
+
+        sessionFactory.inTransaction(
+                session -> {
+                    for (int i = 0; i < 50; i++) {
+                        Product product =
+                                Product.builder()
+                                        .sku("SKU-C-" + i)
+                                        .name("Product " + i)
+                                        .price(BigDecimal.valueOf(100 + i))
+                                        .stockQuantity(10)
+                                        .build();
+                        session.persist(product);
+                        productIds.add(product.getId());
+                    }
+                });
+        // Прогрев региона товаров
+        try (Session session = sessionFactory.openSession()) {
+            productIds.forEach(id -> session.get(Product.class, id));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("Should evict only updated products")
+    void shouldEvictOnlyUpdatedKeys() {
+        assertThat(productIds).allMatch(id -> cache.containsEntity(Product.class, id));
+
+        int updated =
+                repository.bulkUpdate(
+                        "UPDATE products SET price = price * 1.1 WHERE price < ?",
+                        BigDecimal.valueOf(101));
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(cache.containsEntity(Product.class, productIds.get(0))).isFalse();
+        assertThat(productIds.subList(1, productIds.size()))
+                .allMatch(id -> cache.containsEntity(Product.class, id));
+        try (Session session = sessionFactory.openSession()) {
+            assertThat(session.get(Product.class, productIds.get(0)).getPrice())
+                    .isEqualByComparingTo("110.00");
+        }
+    }
+
+    @Test
+    @DisplayName("Should evict deleted products by key")
+    void shouldEvictDeletedKeys() {
+        int deleted =
+                repository.bulkUpdate("DELETE FROM products WHERE id = ?;", productIds.get(1));
+
+        assertThat(deleted).isEqualTo(1);
+        assertThat(cache.containsEntity(Product.class, productIds.get(1))).isFalse();
+        assertThat(cache.containsEntity(Product.class, productIds.get(2))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should fall back to region eviction for other statements")
+    void shouldEvictRegionForUnknownStatements() {
+        int updated =
+                repository.bulkUpdate(
+                        "/* restock */ UPDATE products SET stock_quantity = 0 WHERE id = ?",
+                        productIds.get(0));
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(productIds).noneMatch(id -> cache.containsEntity(Product.class, id));
+    }
+
+    @Test
+    @DisplayName("Should evict natural-id references by returned SKU without reloading rows")
+    void shouldEvictNaturalIdsByReturnedSku() {
+        warmNaturalIds("SKU-C-0", "SKU-C-5");
+        Statistics stats = sessionFactory.getStatistics();
+        stats.clear();
+
+        repository.bulkUpdate(
+                "UPDATE products SET stock_quantity = 0 WHERE id = ?", productIds.get(0));
+
+        // Оператор выполняется мимо Hibernate, строки ради старых SKU не перечитываются
+        assertThat(stats.getPrepareStatementCount()).isZero();
+        stats.clear();
+        warmNaturalIds("SKU-C-5");
+        assertThat(stats.getNaturalIdCacheHitCount()).isEqualTo(1);
+        warmNaturalIds("SKU-C-0");
+        assertThat(stats.getNaturalIdCacheMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should clear natural-id region when update changes SKU")
+    void shouldClearNaturalIdRegionOnSkuChange() {
+        warmNaturalIds("SKU-C-0", "SKU-C-5");
+
+        repository.bulkUpdate(
+                "UPDATE products SET sku = ? WHERE id = ?", "SKU-R-0", productIds.get(0));
+
+        Statistics stats = sessionFactory.getStatistics();
+        stats.clear();
+        try (Session session = sessionFactory.openSession()) {
+            var bySku = session.bySimpleNaturalId(Product.class);
+            assertThat(bySku.loadOptional("SKU-C-0")).isEmpty();
+            assertThat(bySku.load("SKU-R-0").getId()).isEqualTo(productIds.get(0));
+        }
+        assertThat(stats.getNaturalIdCacheHitCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should prime entity and natural-id caches after bulk insert")
+    void shouldPrimeCacheAfterBulkInsert() {
+        HybridProductRepository priming =
+                new HybridProductRepository(sessionFactory, dataSource, true);
+        List<Product> imported = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            imported.add(
+                    Product.builder()
+                            .sku("SKU-P-" + i)
+                            .name("Imported " + i)
+                            .price(BigDecimal.valueOf(500 + i, 2))
+                            .stockQuantity(i)
+                            .build());
+        }
+
+        priming.bulkInsert(imported);
+
+        assertThat(imported).allMatch(product -> product.getId() != null);
+        assertThat(imported)
+                .allMatch(product -> cache.containsEntity(Product.class, product.getId()));
+
+        Statistics stats = sessionFactory.getStatistics();
+        stats.clear();
+        Product cached;
+        try (Session session = sessionFactory.openSession()) {
+            cached = session.bySimpleNaturalId(Product.class).load("SKU-P-1234");
+        }
+        assertThat(stats.getPrepareStatementCount()).isZero();
+        assertThat(cached.getId()).isEqualTo(imported.get(1234).getId());
+
+        // Запись в кэше совпадает со строкой в базе
+        try (Session session = sessionFactory.openSession()) {
+            session.setCacheMode(CacheMode.IGNORE);
+            Product stored = session.get(Product.class, cached.getId());
+            assertThat(cached.getName()).isEqualTo(stored.getName());
+            assertThat(cached.getPrice()).isEqualByComparingTo(stored.getPrice());
+            assertThat(cached.getStockQuantity()).isEqualTo(stored.getStockQuantity());
+            assertThat(cached.getCreatedAt()).isEqualTo(stored.getCreatedAt());
+        }
+    }
+
+    private void warmNaturalIds(String... skus) {
+        try (Session session = sessionFactory.openSession()) {
+            for (String sku : skus) {
+                session.bySimpleNaturalId(Product.class).load(sku);
+            }
+        }
+    }
+}
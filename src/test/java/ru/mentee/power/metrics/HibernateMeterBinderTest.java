@@ -0,0 +1,110 @@
+package ru.mentee.power.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест метрик Micrometer для SessionFactory из HibernateConfig.
+ */
+@DisplayName("Hibernate Meter Binder Tests")
+class HibernateMeterBinderTest {
+
+    private SessionFactory sessionFactory;
+    private HibernateMeterBinder binder;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_metrics_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        registry = new SimpleMeterRegistry();
+        binder = new HibernateMeterBinder(sessionFactory, "test");
+        binder.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        binder.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should expose statistics and captured latency")
+    void shouldExposeStatisticsAndLatency() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int i = 0; i < 3; i++) {
+                session.persist(
+                        Product.builder()
+                                .sku("SKU-M-" + i)
+                                .name("Product " + i)
+                                .price(BigDecimal.TEN)
+                                .build());
+            }
+            tx.commit();
+        }
+        try (Session session = sessionFactory.openSession()) {
+            session.createQuery("FROM RelationshipProduct", Product.class).list();
+        }
+
+        assertThat(registry.get("hibernate.entities.inserts").functionCounter().count())
+                .isEqualTo(3);
+        assertThat(registry.get("hibernate.entities.loads").functionCounter().count())
+                .isEqualTo(3);
+        assertThat(registry.get("hibernate.sessions.open").functionCounter().count())
+                .isEqualTo(2);
+        assertThat(
+                        registry.get("hibernate.transactions")
+                                .tag("result", "success")
+                                .functionCounter()
+                                .count())
+                .isEqualTo(1);
+
+        FunctionTimer latency =
+                registry.get("hibernate.query.latency").tag("table", "products").functionTimer();
+        assertThat(latency.count()).isGreaterThanOrEqualTo(4);
+        assertThat(latency.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        assertThat(
+                        registry.get("hibernate.query.latency.percentile")
+                                .tags("table", "products", "quantile", "0.95")
+                                .gauge()
+                                .value())
+                .isPositive();
+    }
+
+    @Test
+    @DisplayName("Should not record statements of another session factory")
+    void shouldIgnoreForeignSessionFactory() {
+        DatabaseConfig otherConfig = new DatabaseConfig();
+        otherConfig.setJdbcUrl("jdbc:h2:mem:testdb_metrics_other_" + System.nanoTime());
+        otherConfig.setHbm2ddlAuto("create-drop");
+        try (SessionFactory other = new HibernateConfig(otherConfig).buildSessionFactory()) {
+            other.inTransaction(
+                    session ->
+                            session.persist(
+                                    Product.builder()
+                                            .sku("SKU-O-1")
+                                            .name("Other")
+                                            .price(BigDecimal.TEN)
+                                            .build()));
+        }
+
+        assertThat(registry.find("hibernate.query.latency").functionTimers()).isEmpty();
+    }
+}
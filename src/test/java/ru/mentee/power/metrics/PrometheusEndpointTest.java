@@ -0,0 +1,128 @@
+package ru.mentee.power.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест встроенной точки метрик Prometheus.
+ */
+@DisplayName("Prometheus Endpoint Tests")
+class PrometheusEndpointTest {
+
+    private SessionFactory sessionFactory;
+    private PrometheusEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_prometheus_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+        endpoint = new PrometheusEndpoint(sessionFactory, "test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        endpoint.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should serve labelled region and query metrics over HTTP")
+    void shouldServeLabelledMetrics() throws Exception {
+        Long id;
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            Product product =
+                    Product.builder().sku("SKU-P-1").name("Laptop").price(BigDecimal.TEN).build();
+            session.persist(product);
+            tx.commit();
+            id = product.getId();
+        }
+        try (Session session = sessionFactory.openSession()) {
+            session.get(Product.class, id);
+        }
+
+        endpoint.start(new InetSocketAddress("127.0.0.1", 0));
+        HttpResponse<String> response =
+                HttpClient.newHttpClient()
+                        .send(
+                                HttpRequest.newBuilder(
+                                                URI.create(
+                                                        "http://127.0.0.1:"
+                                                                + endpoint.getPort()
+                                                                + PrometheusEndpoint.PATH))
+                                        .build(),
+                                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("Content-Type"))
+                .hasValue(PrometheusEndpoint.CONTENT_TYPE);
+        String body = response.body();
+        assertThat(body)
+                .contains("# TYPE hibernate_cache_region_hits_total counter\n")
+                .containsPattern(
+                        "hibernate_cache_region_puts_total\\{sessionFactory=\"test\","
+                                + "region=\"ru.mentee.power.entity.relationship.Product\"} \\d+\n")
+                .contains("hibernate_sessions_opened_total{sessionFactory=\"test\"} 2\n")
+                .containsPattern(
+                        "hibernate_query_seconds_count\\{sessionFactory=\"test\","
+                                + "fingerprint=\"[0-9a-f]{16}\",table=\"products\"} 1\n")
+                .containsPattern("hibernate_query_info\\{.*sql=\"insert into products.*\"} 1\n");
+        // На H2 пул не используется
+        assertThat(body).doesNotContain("hikaricp_");
+        // Повторное снятие пишет в тот же буфер и не ломает вывод
+        assertThat(endpoint.scrape()).startsWith("# TYPE hibernate_sessions_opened_total");
+    }
+
+    @Test
+    @DisplayName("Should count only statements of its own session factory")
+    void shouldIgnoreForeignSessionFactory() {
+        DatabaseConfig otherConfig = new DatabaseConfig();
+        otherConfig.setJdbcUrl("jdbc:h2:mem:testdb_prometheus_other_" + System.nanoTime());
+        otherConfig.setHbm2ddlAuto("create-drop");
+        try (SessionFactory other =
+                new CacheEnabledHibernateConfig(otherConfig).buildSessionFactory()) {
+            other.inTransaction(
+                    session ->
+                            session.persist(
+                                    Product.builder()
+                                            .sku("SKU-O-1")
+                                            .name("Other")
+                                            .price(BigDecimal.TEN)
+                                            .build()));
+        }
+
+        assertThat(endpoint.scrape()).doesNotContain("hibernate_query_seconds_count");
+    }
+
+    @Test
+    @DisplayName("Should escape label values and format numbers without String.format")
+    void shouldEscapeLabelsAndFormatNumbers() {
+        PrometheusWriter writer = new PrometheusWriter(8);
+
+        writer.sample("m").label("sql", "a \"b\"\\\nё").value(-42L);
+        writer.sample("ratio").value(0.25);
+        writer.sample("nan").value(Double.NaN);
+
+        assertThat(writer.toString())
+                .isEqualTo("m{sql=\"a \\\"b\\\"\\\\\\nё\"} -42\nratio 0.250000\nnan NaN\n");
+        assertThat(writer.reset().size()).isZero();
+    }
+}
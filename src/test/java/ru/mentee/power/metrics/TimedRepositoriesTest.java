@@ -0,0 +1,116 @@
+package ru.mentee.power.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.dao.GenericDAO;
+import ru.mentee.power.dao.HibernateGenericDAO;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.repository.HibernateHQLRepository;
+
+/**
+ * Тест Dropwizard-таймеров на DAO и репозиториях.
+ */
+@DisplayName("Timed Repositories Tests")
+class TimedRepositoriesTest {
+
+    private static final String DAO_PREFIX = HibernateGenericDAO.class.getName();
+
+    private SessionFactory sessionFactory;
+    private MetricRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_timed_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        registry = new MetricRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should time DAO proxy and repository decorator calls with allocations")
+    void shouldTimeEveryCall() {
+        GenericDAO<Product, Long> dao =
+                TimedRepositories.dao(
+                        new HibernateGenericDAO<>(sessionFactory, Product.class), registry);
+        HibernateHQLRepository repository = TimedRepositories.hql(sessionFactory, registry);
+
+        for (int i = 0; i < 3; i++) {
+            Product product =
+                    dao.save(
+                            Product.builder()
+                                    .sku("SKU-T-" + i)
+                                    .name("Product " + i)
+                                    .price(BigDecimal.valueOf(10 + i))
+                                    .build());
+            assertThat(dao.findById(product.getId())).isPresent();
+        }
+        List<Product> products =
+                repository.findProductsByPriceRange(BigDecimal.ZERO, BigDecimal.valueOf(11));
+
+        assertThat(products).hasSize(2);
+        assertThat(registry.timer(MetricRegistry.name(DAO_PREFIX, "save")).getCount())
+                .isEqualTo(3);
+        assertThat(registry.timer(MetricRegistry.name(DAO_PREFIX, "findById")).getCount())
+                .isEqualTo(3);
+        Timer rangeTimer =
+                registry.timer(
+                        MetricRegistry.name(
+                                HibernateHQLRepository.class, "findProductsByPriceRange"));
+        assertThat(rangeTimer.getCount()).isEqualTo(1);
+        assertThat(rangeTimer.getSnapshot().get99thPercentile()).isPositive();
+        // Рядом с таймером - байты, выделенные за вызов
+        Histogram allocations =
+                registry.histogram(MetricRegistry.name(DAO_PREFIX, "findById", "allocatedBytes"));
+        assertThat(allocations.getCount()).isEqualTo(3);
+        assertThat(allocations.getSnapshot().getMax()).isPositive();
+        // Методы Object не замеряются
+        assertThat(dao.toString()).isNotEmpty();
+        assertThat(registry.getTimers().keySet()).noneMatch(name -> name.endsWith(".toString"));
+    }
+
+    @Test
+    @DisplayName("Should write CSV snapshots to local directory")
+    void shouldWriteCsvSnapshots(@TempDir Path directory) throws Exception {
+        GenericDAO<Product, Long> dao =
+                TimedRepositories.dao(
+                        new HibernateGenericDAO<>(sessionFactory, Product.class),
+                        registry,
+                        "products");
+        assertThat(dao.findById(42L)).isEmpty();
+
+        try (ScheduledReporter reporter =
+                DropwizardReporters.csv(registry, directory, 1, TimeUnit.HOURS)) {
+            reporter.report();
+        }
+
+        Path csv = directory.resolve("products.findById.csv");
+        assertThat(csv).exists();
+        List<String> lines = Files.readAllLines(csv);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).startsWith("t,count,max,mean,min,stddev,p50");
+        assertThat(lines.get(1)).matches("\\d+,1,.*");
+    }
+}
@@ -0,0 +1,129 @@
+package ru.mentee.power.performance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.exception.AllocationBudgetExceededException;
+import ru.mentee.power.repository.HibernateHQLRepository;
+
+/**
+ * Тест бюджета выделений памяти.
+ */
+@DisplayName("Allocation Budget Tests")
+class AllocationBudgetTest {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_alloc_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should fail when block allocates more than budget")
+    void shouldFailOverBudget() {
+        assertThatThrownBy(
+                        () ->
+                                AllocationBudget.expectAtMost(64 * 1024)
+                                        .named("buffer")
+                                        .run(() -> consume(new byte[MEGABYTE])))
+                .isInstanceOf(AllocationBudgetExceededException.class)
+                .hasMessageContaining("Allocation budget 'buffer' exceeded")
+                .satisfies(
+                        e -> {
+                            AllocationUsage usage =
+                                    ((AllocationBudgetExceededException) e).getUsage();
+                            assertThat(usage.getAllocatedBytes()).isGreaterThan(MEGABYTE);
+                        });
+    }
+
+    @Test
+    @DisplayName("Should only report in log-only mode and return result")
+    void shouldReportInLogOnlyMode() {
+        AllocationUsage usage =
+                AllocationBudget.expectAtMost(1024)
+                        .logOnly()
+                        .run(() -> consume(new byte[MEGABYTE]));
+
+        assertThat(usage.isExceeded()).isTrue();
+        assertThat(usage.describe()).contains("exceeded", "MB/1.0 KB");
+        assertThat(AllocationBudget.expectAtMost(10 * MEGABYTE).call(() -> "ok"))
+                .isEqualTo("ok");
+    }
+
+    @Test
+    @DisplayName("Should grow with number of hydrated entities")
+    void shouldGrowWithHydratedEntities() {
+        sessionFactory.inTransaction(
+                session -> {
+                    for (int i = 0; i < 500; i++) {
+                        session.persist(
+                                Product.builder()
+                                        .sku("SKU-A-" + i)
+                                        .name("Product " + i)
+                                        .price(BigDecimal.valueOf(i))
+                                        .build());
+                    }
+                });
+        HibernateHQLRepository repository = new HibernateHQLRepository(sessionFactory);
+        // Прогрев: планы запросов и метаданные не должны попасть в замер
+        repository.findProductsByPriceRange(BigDecimal.ZERO, BigDecimal.valueOf(500));
+
+        AllocationUsage few =
+                AllocationBudget.expectAtMost(Long.MAX_VALUE)
+                        .run(
+                                () ->
+                                        repository.findProductsByPriceRange(
+                                                BigDecimal.ZERO, BigDecimal.valueOf(4)));
+        AllocationUsage many =
+                AllocationBudget.expectAtMost(Long.MAX_VALUE)
+                        .run(
+                                () ->
+                                        repository.findProductsByPriceRange(
+                                                BigDecimal.ZERO, BigDecimal.valueOf(500)));
+
+        assertThat(few.isMeasured()).isTrue();
+        assertThat(many.getAllocatedBytes()).isGreaterThan(few.getAllocatedBytes());
+    }
+
+    @Test
+    @DisplayName("Should skip check on virtual threads")
+    void shouldSkipCheckOnVirtualThreads() throws InterruptedException {
+        AtomicReference<AllocationUsage> usage = new AtomicReference<>();
+        Thread.ofVirtual()
+                .start(
+                        () ->
+                                usage.set(
+                                        AllocationBudget.expectAtMost(0)
+                                                .run(() -> consume(new byte[MEGABYTE]))))
+                .join();
+
+        assertThat(usage.get().isMeasured()).isFalse();
+        assertThat(usage.get().isExceeded()).isFalse();
+        assertThat(usage.get().describe()).contains("used: n/a");
+    }
+
+    private static void consume(byte[] buffer) {
+        assertThat(buffer).hasSize(MEGABYTE);
+    }
+}
@@ -0,0 +1,70 @@
+package ru.mentee.power.performance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Тест гистограммы задержек.
+ */
+@DisplayName("Concurrent Histogram Tests")
+class ConcurrentHistogramTest {
+
+    @Test
+    @DisplayName("Should place every value inside its bucket bounds")
+    void shouldPlaceValuesInsideBucketBounds() {
+        for (long value = 0; value < 100_000; value++) {
+            int index = ConcurrentHistogram.bucketIndex(value);
+            assertThat(value)
+                    .isBetween(
+                            ConcurrentHistogram.lowerBound(index),
+                            ConcurrentHistogram.upperBound(index));
+        }
+        assertThat(ConcurrentHistogram.bucketIndex(Long.MAX_VALUE)).isNotNegative();
+    }
+
+    @Test
+    @DisplayName("Should report percentiles within bucket precision")
+    void shouldReportPercentiles() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMax()).isEqualTo(10_000);
+        assertThat(histogram.getMean()).isEqualTo(5_000);
+        assertThat((double) histogram.getP50()).isCloseTo(5_000, within(5_000 * 0.125));
+        assertThat((double) histogram.getP95()).isCloseTo(9_500, within(9_500 * 0.125));
+        assertThat(histogram.getP99()).isLessThanOrEqualTo(histogram.getMax());
+        // Один проход дает те же значения, что и отдельные запросы, в порядке аргументов
+        assertThat(histogram.getValuesAtPercentiles(99, 50, 95))
+                .containsExactly(histogram.getP99(), histogram.getP50(), histogram.getP95());
+        assertThat(new ConcurrentHistogram().getValuesAtPercentiles(50, 99)).containsExactly(0, 0);
+    }
+
+    @Test
+    @DisplayName("Should not lose records under concurrent writes")
+    void shouldNotLoseConcurrentRecords() throws InterruptedException {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(
+                    () -> {
+                        for (int i = 0; i < 10_000; i++) {
+                            histogram.record(i);
+                        }
+                    });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(histogram.getCount()).isEqualTo(80_000);
+        assertThat(histogram.getMax()).isEqualTo(9_999);
+    }
+}
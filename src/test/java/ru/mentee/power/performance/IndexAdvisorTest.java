@@ -0,0 +1,130 @@
+package ru.mentee.power.performance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.function.Consumer;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест советника по индексам на SQL, сгенерированном Hibernate.
+ */
+@DisplayName("Index Advisor Tests")
+class IndexAdvisorTest {
+
+    private SessionFactory sessionFactory;
+    private IndexAdvisor advisor;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_index_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        advisor = new IndexAdvisor(sessionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should not propose index covered by @Table indexes")
+    void shouldSkipCoveredPredicates() {
+        List<QueryExecution> executions =
+                capture(
+                        session ->
+                                session.createQuery(
+                                                "FROM RelationshipOrder o WHERE o.status = :status"
+                                                        + " ORDER BY o.orderDate DESC",
+                                                Order.class)
+                                        .setParameter("status", OrderStatus.PENDING)
+                                        .list());
+
+        assertThat(advisor.advise(executions)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should propose index and validate it with EXPLAIN on H2")
+    void shouldProposeMissingIndex() {
+        List<QueryExecution> executions =
+                capture(
+                        session ->
+                                session.createQuery(
+                                                "FROM RelationshipProduct p WHERE p.name = :name"
+                                                        + " ORDER BY p.price",
+                                                Product.class)
+                                        .setParameter("name", "Laptop")
+                                        .list());
+
+        List<IndexRecommendation> recommendations =
+                new IndexAdvisor(sessionFactory, true).advise(executions);
+
+        assertThat(recommendations).hasSize(1);
+        IndexRecommendation recommendation = recommendations.get(0);
+        assertThat(recommendation.getColumns()).containsExactly("name", "price");
+        assertThat(recommendation.getDdl())
+                .isEqualTo("CREATE INDEX idx_products_name_price ON products (name, price)");
+        assertThat(recommendation.getUsedInPlan()).isTrue();
+        // Без явного включения DDL в базе не выполняется
+        assertThat(advisor.advise(executions))
+                .singleElement()
+                .extracting(IndexRecommendation::getUsedInPlan)
+                .isNull();
+    }
+
+    @Test
+    @DisplayName("Should treat foreign key columns as indexed on H2")
+    void shouldSkipForeignKeyColumnsOnH2() {
+        QueryExecution byProduct =
+                new QueryExecution("select oi.id from order_items oi where oi.product_id = ?");
+        byProduct.recordExecution(200, 1);
+
+        assertThat(advisor.advise(List.of(byProduct))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should rank candidates by total time")
+    void shouldRankBySavings() {
+        QueryExecution rare = new QueryExecution("select p.id from products p where p.price > ?");
+        rare.recordExecution(150, 10);
+        QueryExecution frequent =
+                new QueryExecution(
+                        "select o.id, o.status from orders o"
+                                + " join customers c on c.id = o.customer_id"
+                                + " where c.last_name = ? and o.order_number like ?");
+        for (int i = 0; i < 5; i++) {
+            frequent.recordExecution(120, 3);
+        }
+
+        List<IndexRecommendation> recommendations = advisor.advise(List.of(rare, frequent));
+
+        // order_number уникален, customer_id покрыт idx_order_customer, id - первичный ключ
+        assertThat(recommendations)
+                .extracting(IndexRecommendation::getIndexName)
+                .containsExactly("idx_customers_last_name", "idx_products_price");
+        assertThat(recommendations.get(0).getQueryCount()).isEqualTo(5);
+        assertThat(recommendations.get(0).getEstimatedSavingsNanos())
+                .isGreaterThan(recommendations.get(1).getEstimatedSavingsNanos());
+    }
+
+    private List<QueryExecution> capture(Consumer<Session> work) {
+        try (Session session = sessionFactory.openSession();
+                MonitoringContext context =
+                        new HibernatePerformanceDetector().startMonitoring(session)) {
+            work.accept(session);
+            return List.copyOf(context.getQueryExecutions().values());
+        }
+    }
+}
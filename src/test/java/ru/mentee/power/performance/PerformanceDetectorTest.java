@@ -18,6 +18,8 @@ import ru.mentee.power.entity.relationship.Order;
 import ru.mentee.power.entity.relationship.OrderItem;
 import ru.mentee.power.entity.relationship.OrderStatus;
 import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.optimization.AdaptiveFetchPlanner;
+import ru.mentee.power.performance.monitoring.AssociationUsageCollector;
 
 /**
  * Тест детектора проблем производительности.
@@ -150,6 +152,205 @@ class PerformanceDetectorTest {
         }
     }
 
+    @Test
+    @DisplayName("Should count per session without clearing global statistics")
+    void shouldIsolateSessionsWithoutClearingGlobalStatistics() {
+        // Given
+        Statistics stats = sessionFactory.getStatistics();
+        stats.setStatisticsEnabled(true);
+        try (Session warmUp = sessionFactory.openSession()) {
+            warmUp.createQuery("FROM RelationshipOrder", Order.class).list();
+        }
+        long globalBefore = stats.getPrepareStatementCount();
+
+        // When
+        try (Session monitored = sessionFactory.openSession();
+                Session other = sessionFactory.openSession()) {
+            MonitoringContext context = detector.startMonitoring(monitored);
+
+            monitored.createQuery("FROM RelationshipOrder", Order.class).list();
+            for (int i = 0; i < 5; i++) {
+                other.createQuery("FROM RelationshipProduct", Product.class).list();
+            }
+
+            // Then - глобальная статистика не сброшена, чужие запросы не учтены
+            // (customer может подгружаться вместе с заказами из-за @NotFound)
+            assertThat(stats.getPrepareStatementCount()).isGreaterThan(globalBefore + 5);
+            assertThat(context.getTotalQueriesExecuted()).isBetween(1L, 3L);
+            assertThat(context.getTotalEntitiesLoaded()).isBetween(10L, 12L);
+            context.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop counting a session after its context is closed")
+    void shouldNotCountDetachedSession() {
+        try (Session session = sessionFactory.openSession()) {
+            MonitoringContext first = detector.startMonitoring(session);
+            first.close();
+            MonitoringContext second = detector.startMonitoring(session);
+
+            session.createQuery("FROM RelationshipProduct", Product.class).list();
+
+            // Первый слушатель остался в сессии, но больше не считает
+            assertThat(first.getTotalQueriesExecuted()).isZero();
+            assertThat(second.getTotalQueriesExecuted()).isEqualTo(1);
+            detector.analyze(second);
+        }
+    }
+
+    @Test
+    @DisplayName("Should attribute statements to application call site and association")
+    void shouldAttributeStatementsToCallSite() {
+        try (Session session = sessionFactory.openSession()) {
+            MonitoringContext context = detector.startMonitoring(session);
+
+            List<Order> orders = session.createQuery("FROM RelationshipOrder", Order.class).list();
+            int items = countOrderItems(orders);
+
+            assertThat(items).isEqualTo(10);
+            assertThat(context.getQueryExecutions().values())
+                    .extracting(execution -> String.valueOf(execution.getTopCallSite()))
+                    .contains(
+                            "PerformanceDetectorTest.shouldAttributeStatementsToCallSite",
+                            "PerformanceDetectorTest.countOrderItems -> Order.orderItems");
+            context.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should recommend fetch strategy from observed association usage")
+    void shouldRecommendFetchStrategyFromObservedUsage() {
+        // Given
+        AssociationUsageCollector collector = AssociationUsageCollector.install(sessionFactory);
+
+        // When - заказы загружаются по одному, items инициализируются в цикле
+        try (Session session = sessionFactory.openSession()) {
+            List<Long> ids =
+                    session.createQuery("SELECT o.id FROM RelationshipOrder o", Long.class).list();
+            for (Long id : ids) {
+                session.get(Order.class, id).getOrderItems().size();
+            }
+        }
+
+        // Then
+        UsageStatistics statistics = collector.getStatistics("Order.orderItems");
+        assertThat(statistics.getAccessCount()).isEqualTo(10);
+        assertThat(statistics.getAverageResultSize()).isEqualTo(1);
+        assertThat(statistics.getLoopAccessRatio()).isEqualTo(0.9);
+        assertThat(collector.getMetadata("Order.orderItems").getBatchSize()).isEqualTo(25);
+
+        FetchStrategy strategy =
+                collector.recommend(new QueryOptimizerImpl()).get("Order.orderItems");
+        assertThat(strategy.getStrategy()).isEqualTo("BATCH");
+        assertThat(strategy.getBatchSize()).isBetween(10, 11);
+    }
+
+    @Test
+    @DisplayName("Should learn touched associations and apply fetch graph")
+    void shouldApplyLearnedFetchGraph() {
+        // Given
+        String hql = "FROM RelationshipOrder o WHERE o.status = :status";
+        AdaptiveFetchPlanner planner = AdaptiveFetchPlanner.enable(sessionFactory);
+
+        // When - три выполнения обучают план
+        for (int i = 0; i < 3; i++) {
+            try (Session session = sessionFactory.openSession()) {
+                countOrderItems(findOrders(session, hql));
+            }
+        }
+
+        // Then
+        assertThat(planner.getPlannedAssociations(hql)).containsExactly("orderItems");
+        try (Session session = sessionFactory.openSession()) {
+            MonitoringContext context = detector.startMonitoring(session);
+            assertThat(countOrderItems(findOrders(session, hql))).isEqualTo(10);
+            assertThat(context.getTotalCollectionsFetched()).isZero();
+            context.close();
+        } finally {
+            AdaptiveFetchPlanner.disable(sessionFactory);
+        }
+    }
+
+    @Test
+    @DisplayName("Should detect row explosion from collection fetch join")
+    void shouldDetectRowExplosion() {
+        // Given - один заказ со 120 позициями
+        try (Session session = sessionFactory.openSession()) {
+            org.hibernate.Transaction tx = session.beginTransaction();
+            Customer customer =
+                    session.createQuery("FROM RelationshipCustomer", Customer.class)
+                            .setMaxResults(1)
+                            .uniqueResult();
+            Order order =
+                    Order.builder()
+                            .orderNumber("BIG")
+                            .customer(customer)
+                            .status(OrderStatus.PENDING)
+                            .orderDate(LocalDateTime.now())
+                            .build();
+            for (int i = 0; i < 120; i++) {
+                Product product =
+                        Product.builder()
+                                .sku("BULK" + i)
+                                .name("Bulk " + i)
+                                .price(BigDecimal.TEN)
+                                .stockQuantity(1)
+                                .build();
+                session.persist(product);
+                order.addOrderItem(
+                        OrderItem.builder()
+                                .order(order)
+                                .product(product)
+                                .quantity(1)
+                                .unitPrice(BigDecimal.TEN)
+                                .build());
+            }
+            session.persist(order);
+            tx.commit();
+        }
+
+        // When
+        try (Session session = sessionFactory.openSession()) {
+            MonitoringContext context = detector.startMonitoring(session);
+            session.createQuery(
+                            "SELECT o FROM RelationshipOrder o JOIN FETCH o.orderItems"
+                                    + " WHERE o.orderNumber = :number",
+                            Order.class)
+                    .setParameter("number", "BIG")
+                    .list();
+
+            PerformanceReport report = detector.analyze(context);
+            context.close();
+
+            // Then
+            assertThat(report.getProblemsByType(ProblemType.CARTESIAN_PRODUCT))
+                    .singleElement()
+                    .satisfies(
+                            problem -> {
+                                assertThat(problem.getEntity()).isEqualTo("orders");
+                                assertThat(problem.getSeverity()).isEqualTo(Severity.HIGH);
+                                assertThat(problem.getDescription()).contains("120.0x");
+                            });
+            assertThat(detector.getRecommendations(report))
+                    .anyMatch(rec -> rec.getStrategy().equals("Split fetch queries"));
+        }
+    }
+
+    private List<Order> findOrders(Session session, String hql) {
+        return AdaptiveFetchPlanner.apply(session.createQuery(hql, Order.class), Order.class)
+                .setParameter("status", OrderStatus.PENDING)
+                .list();
+    }
+
+    private int countOrderItems(List<Order> orders) {
+        int items = 0;
+        for (Order order : orders) {
+            items += order.getOrderItems().size();
+        }
+        return items;
+    }
+
     private void createTestData() {
         try (Session session = sessionFactory.openSession()) {
             org.hibernate.Transaction tx = session.beginTransaction();
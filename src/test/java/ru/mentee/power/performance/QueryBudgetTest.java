@@ -0,0 +1,160 @@
+package ru.mentee.power.performance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Customer;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.exception.ConfigurationException;
+import ru.mentee.power.exception.QueryBudgetExceededException;
+
+/**
+ * Тест бюджета SQL-выражений и загрузок.
+ */
+@DisplayName("Query Budget Tests")
+class QueryBudgetTest {
+
+    private static final int ORDERS = 3;
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_budget_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        createOrders();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should fail with over-budget and repeated statements on N+1")
+    void shouldFailOnNPlusOne() {
+        assertThatThrownBy(() -> QueryBudget.expect(2, 100).named("orders").run(this::loadOrders))
+                .isInstanceOf(QueryBudgetExceededException.class)
+                .hasMessageContaining("Query budget 'orders' exceeded")
+                .hasMessageContaining("Statements over budget:")
+                .hasMessageContaining("Repeated statements:")
+                .hasMessageContaining("customers")
+                .satisfies(
+                        e -> {
+                            QueryBudgetUsage usage = ((QueryBudgetExceededException) e).getUsage();
+                            assertThat(usage.getStatements())
+                                    .isGreaterThanOrEqualTo(1 + ORDERS);
+                            assertThat(usage.getEntityLoads())
+                                    .isGreaterThanOrEqualTo(2 * ORDERS);
+                            assertThat(usage.getStatementsOverBudget())
+                                    .hasSize(usage.getStatements() - 2);
+                            assertThat(usage.getRepeatedStatements().values())
+                                    .contains(ORDERS);
+                        });
+    }
+
+    @Test
+    @DisplayName("Should only report usage in log-only mode")
+    void shouldNotThrowInLogOnlyMode() {
+        QueryBudgetUsage usage = QueryBudget.expect(1, 1).logOnly().run(this::loadOrders);
+
+        assertThat(usage.isExceeded()).isTrue();
+        assertThat(usage.describe()).matches("(?s)Query budget exceeded: statements \\d+/1, .*");
+    }
+
+    @Test
+    @DisplayName("Should pass within budget and return the block result")
+    void shouldPassWithinBudget() {
+        List<Order> orders =
+                QueryBudget.expect(10, 50)
+                        .maxCollectionFetches(0)
+                        .call(this::loadOrders);
+
+        assertThat(orders).hasSize(ORDERS);
+    }
+
+    @Test
+    @DisplayName("Should count nested blocks in both budgets")
+    void shouldNestBudgets() {
+        QueryBudgetUsage outer =
+                QueryBudget.expectStatements(50)
+                        .run(
+                                () -> {
+                                    loadOrders();
+                                    QueryBudgetUsage inner =
+                                            QueryBudget.expectStatements(20).run(this::loadOrders);
+                                    assertThat(inner.getStatements())
+                                            .isGreaterThanOrEqualTo(1 + ORDERS);
+                                });
+
+        assertThat(outer.getStatements()).isGreaterThanOrEqualTo(2 * (1 + ORDERS));
+    }
+
+    @Test
+    @DisplayName("Should fail instead of passing silently when capture is disabled")
+    void shouldFailWithoutCapture() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_budget_blind_" + System.nanoTime());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        dbConfig.setStatementCaptureEnabled(false);
+        try (SessionFactory blind = new HibernateConfig(dbConfig).buildSessionFactory()) {
+            Runnable block =
+                    () -> {
+                        try (Session session = blind.openSession()) {
+                            session.createQuery("FROM RelationshipOrder", Order.class).list();
+                        }
+                    };
+
+            // Без привязки блок насчитывает ноль: именно эту ложную зеленую проверку и ловим
+            assertThat(QueryBudget.expect(0, 0).run(block).getStatements()).isZero();
+            assertThatThrownBy(() -> QueryBudget.expect(0, 0).on(blind).run(block))
+                    .isInstanceOf(ConfigurationException.class)
+                    .hasMessageContaining("Statement capture is disabled");
+            assertThat(QueryBudget.expect(0, 0).on(blind).logOnly().run(block).isExceeded())
+                    .isFalse();
+        }
+        assertThat(QueryBudget.expect(10, 50).on(sessionFactory).run(this::loadOrders).isExceeded())
+                .isFalse();
+    }
+
+    private List<Order> loadOrders() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("FROM RelationshipOrder", Order.class).getResultList();
+        }
+    }
+
+    private void createOrders() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int i = 0; i < ORDERS; i++) {
+                Customer customer = new Customer();
+                customer.setFirstName("Customer" + i);
+                customer.setLastName("Budget");
+                customer.setEmail("budget" + i + "@example.com");
+                session.persist(customer);
+
+                Order order = new Order();
+                order.setOrderNumber("ORD-BUDGET-" + i);
+                order.setCustomer(customer);
+                order.setStatus(OrderStatus.PENDING);
+                order.setOrderDate(LocalDateTime.now());
+                session.persist(order);
+            }
+            tx.commit();
+        }
+    }
+}
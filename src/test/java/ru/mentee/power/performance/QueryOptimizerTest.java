@@ -0,0 +1,174 @@
+package ru.mentee.power.performance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+import java.util.Set;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Customer;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест переписывания HQL через SQM на запросах из HibernateHQLRepository и JoinFetchSolution.
+ */
+@DisplayName("Query Optimizer Tests")
+class QueryOptimizerTest {
+
+    private SessionFactory sessionFactory;
+    private QueryOptimizer optimizer;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_optimizer_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        optimizer = new QueryOptimizerImpl(sessionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should add fetch joins for accessed paths")
+    void shouldAddFetchJoins() {
+        String hql = "FROM RelationshipOrder o WHERE o.orderDate > :date";
+
+        OptimizedQuery result = optimize(hql, Order.class, "customer", "orderItems.product");
+
+        assertThat(result.getOptimizations())
+                .containsExactly(
+                        "Added JOIN FETCH for: customer",
+                        "Added JOIN FETCH for: orderItems",
+                        "Added JOIN FETCH for: orderItems.product");
+        assertThat(result.getOptimizedHQL().toLowerCase())
+                .contains("join fetch")
+                .contains(".customer")
+                .contains(".orderitems")
+                .contains(".product")
+                .doesNotContain("distinct");
+        assertValid(result.getOptimizedHQL(), Order.class);
+    }
+
+    @Test
+    @DisplayName("Should reuse existing fetch joins (JoinFetchSolution)")
+    void shouldReuseExistingFetchJoins() {
+        String withCustomer =
+                """
+                SELECT DISTINCT o
+                FROM RelationshipOrder o
+                JOIN FETCH o.customer c
+                WHERE o.status = :status
+                """;
+        OptimizedQuery unchanged = optimize(withCustomer, Order.class, "customer");
+        assertThat(unchanged.getOptimizations()).isEmpty();
+        assertThat(unchanged.getOptimizedHQL()).isEqualTo(withCustomer);
+
+        String withItems =
+                """
+                SELECT DISTINCT o
+                FROM RelationshipOrder o
+                JOIN FETCH o.orderItems oi
+                JOIN FETCH oi.product
+                WHERE o.id IN :orders
+                """;
+        OptimizedQuery result = optimize(withItems, Order.class, "orderItems.product", "customer");
+        assertThat(result.getOptimizations()).containsExactly("Added JOIN FETCH for: customer");
+        assertValid(result.getOptimizedHQL(), Order.class);
+    }
+
+    @Test
+    @DisplayName("Should not fetch a second bag")
+    void shouldAvoidMultipleBagFetch() {
+        OptimizedQuery result =
+                optimize(
+                        "FROM RelationshipCustomer c WHERE c.email LIKE :pattern",
+                        Customer.class,
+                        "orders",
+                        "orders.orderItems");
+
+        assertThat(result.getOptimizations())
+                .first()
+                .isEqualTo("Added JOIN FETCH for: orders");
+        assertThat(result.getOptimizations())
+                .anyMatch(note -> note.contains("MultipleBagFetchException"));
+        assertValid(result.getOptimizedHQL(), Customer.class);
+    }
+
+    @Test
+    @DisplayName("Should not fetch collections in paginated query")
+    void shouldSkipCollectionFetchWithLimit() {
+        OptimizedQuery result =
+                optimize(
+                        "FROM RelationshipOrder o ORDER BY o.id LIMIT 10",
+                        Order.class,
+                        "orderItems",
+                        "customer");
+
+        assertThat(result.getOptimizations())
+                .contains("Added JOIN FETCH for: customer")
+                .anyMatch(note -> note.contains("pagination"));
+        assertValid(result.getOptimizedHQL(), Order.class);
+    }
+
+    @Test
+    @DisplayName("Should leave aggregate and mutation queries unchanged")
+    void shouldLeaveNonEntityQueriesUnchanged() {
+        String statistics =
+                """
+                SELECT
+                    c.id,
+                    COUNT(o.id)
+                FROM RelationshipCustomer c
+                LEFT JOIN c.orders o
+                GROUP BY c.id
+                """;
+        assertThat(optimize(statistics, null, "orders").getOptimizedHQL()).isEqualTo(statistics);
+
+        String update = "UPDATE RelationshipProduct p SET p.price = p.price * :m WHERE p.sku = :sku";
+        assertThat(optimize(update, null, "orderItems").getOptimizedHQL()).isEqualTo(update);
+
+        String broken = "FROM RelationshipOrder o WHERE";
+        assertThat(optimize(broken, Order.class, "customer").getOptimizedHQL()).isEqualTo(broken);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "FROM RelationshipProduct p WHERE p.price BETWEEN :minPrice AND :maxPrice"
+                        + " ORDER BY p.price ASC",
+                "FROM RelationshipProduct p WHERE p.price > (SELECT AVG(p2.price) FROM"
+                        + " RelationshipProduct p2) ORDER BY p.price DESC",
+                "FROM RelationshipProduct p ORDER BY p.id DESC"
+            })
+    @DisplayName("Should render valid HQL for HibernateHQLRepository product queries")
+    void shouldRenderValidHqlForRepositoryQueries(String hql) {
+        OptimizedQuery result = optimize(hql, Product.class, "orderItems", "sku");
+
+        assertThat(result.getOptimizations()).anyMatch(note -> note.startsWith("Skipped"));
+        assertValid(result.getOptimizedHQL(), Product.class);
+    }
+
+    private OptimizedQuery optimize(String hql, Class<?> entityClass, String... paths) {
+        return optimizer.optimizeHQL(
+                hql, new ExecutionContext(entityClass, Set.of(paths), 0, true));
+    }
+
+    private void assertValid(String hql, Class<?> resultType) {
+        try (Session session = sessionFactory.openSession()) {
+            assertThatCode(() -> session.createQuery(hql, resultType)).doesNotThrowAnyException();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package ru.mentee.power.performance.dataset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест генератора набора данных.
+ */
+@DisplayName("Dataset Generator Tests")
+class DatasetGeneratorTest {
+
+    private static final DatasetSpec SPEC =
+            DatasetSpec.builder()
+                    .products(500)
+                    .customers(300)
+                    .users(100)
+                    .students(100)
+                    .courses(20)
+                    .warehouses(3)
+                    .chunkSize(50)
+                    .batchSize(64)
+                    .build();
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should populate every table with consistent keys")
+    void shouldPopulateTables() throws SQLException {
+        Database database = createDatabase("gen");
+
+        DatasetSummary summary =
+                new DatasetGenerator(database.dataSource, SPEC.toBuilder().threads(4).build())
+                        .generate();
+
+        assertThat(summary.getRows("products")).isEqualTo(500);
+        assertThat(summary.getRows("customers")).isEqualTo(300);
+        assertThat(summary.getRows("users")).isEqualTo(100);
+        assertThat(summary.getRows("user_profiles")).isEqualTo(100);
+        assertThat(summary.getRows("courses")).isEqualTo(20);
+        assertThat(summary.getRows("students")).isEqualTo(100);
+        assertThat(summary.getRows("inventory")).isGreaterThanOrEqualTo(500);
+        assertThat(summary.getRows("orders")).isGreaterThan(300);
+        assertThat(summary.getRows("order_items")).isGreaterThan(summary.getRows("orders"));
+        assertThat(summary.getRows("enrollments")).isGreaterThanOrEqualTo(100);
+
+        assertThat(query(database, "SELECT COUNT(*) FROM order_items"))
+                .isEqualTo(String.valueOf(summary.getRows("order_items")));
+        assertThat(query(database, "SELECT MAX(id) FROM orders"))
+                .isEqualTo(String.valueOf(summary.getRows("orders")));
+
+        // IDENTITY сдвинут за загруженные ключи
+        try (Session session = database.sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            Product product =
+                    Product.builder().sku("NEW-1").name("New").price(BigDecimal.ONE).build();
+            session.persist(product);
+            tx.commit();
+            assertThat(product.getId()).isEqualTo(501L);
+        }
+    }
+
+    @Test
+    @DisplayName("Should produce identical data regardless of thread count")
+    void shouldBeDeterministic() throws SQLException {
+        Database single = createDatabase("gen_single");
+        Database parallel = createDatabase("gen_parallel");
+
+        new DatasetGenerator(single.dataSource, SPEC.toBuilder().threads(1).build()).generate();
+        new DatasetGenerator(parallel.dataSource, SPEC.toBuilder().threads(4).build())
+                .generate();
+
+        for (String checksum :
+                List.of(
+                        "SELECT COUNT(*), SUM(customer_id * id), SUM(total_amount) FROM orders",
+                        "SELECT SUM(order_id * product_id * quantity) FROM order_items",
+                        "SELECT SUM(student_id * course_id) FROM enrollments",
+                        "SELECT SUM(warehouse_id * product_id * quantity_on_hand)"
+                                + " FROM mentee_power.inventory",
+                        "SELECT MAX(email), SUM(LENGTH(first_name)) FROM customers")) {
+            assertThat(query(parallel, checksum)).as(checksum).isEqualTo(query(single, checksum));
+        }
+    }
+
+    @Test
+    @DisplayName("Should skew product popularity and orders per customer")
+    void shouldProduceSkewedData() throws SQLException {
+        Database database = createDatabase("gen_skew");
+        new DatasetGenerator(database.dataSource, SPEC).generate();
+
+        long items = Long.parseLong(query(database, "SELECT COUNT(*) FROM order_items"));
+        long topProduct =
+                Long.parseLong(
+                        query(
+                                database,
+                                "SELECT COUNT(*) FROM order_items GROUP BY product_id"
+                                        + " ORDER BY COUNT(*) DESC LIMIT 1"));
+        long topCustomer =
+                Long.parseLong(
+                        query(
+                                database,
+                                "SELECT COUNT(*) FROM orders GROUP BY customer_id"
+                                        + " ORDER BY COUNT(*) DESC LIMIT 1"));
+
+        // Равномерно на товар пришлось бы items / 500 позиций
+        assertThat(topProduct).isGreaterThan(10 * items / 500);
+        assertThat(topCustomer).isGreaterThan(10);
+    }
+
+    private Database createDatabase(String name) {
+        String url = "jdbc:h2:mem:testdb_" + name + "_" + System.currentTimeMillis();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(url);
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setUsername("sa");
+        dbConfig.setPassword("");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        SessionFactory sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(4);
+        HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+
+        resources.add(dataSource);
+        resources.add(sessionFactory);
+        return new Database(sessionFactory, dataSource);
+    }
+
+    private static String query(Database database, String sql) throws SQLException {
+        try (Connection conn = database.dataSource.getConnection();
+                Statement statement = conn.createStatement();
+                ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                row.append(i > 1 ? "|" : "").append(rs.getString(i));
+            }
+            return row.toString();
+        }
+    }
+
+    private static final class Database {
+
+        private final SessionFactory sessionFactory;
+        private final HikariDataSource dataSource;
+
+        Database(SessionFactory sessionFactory, HikariDataSource dataSource) {
+            this.sessionFactory = sessionFactory;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.mentee.power.performance.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Customer;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderItem;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.entity.relationship.Product;
+
+/**
+ * Тест JFR-событий слоя данных.
+ */
+@DisplayName("JFR Events Tests")
+class JfrEventsTest {
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_jfr_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should record session, statement, flush and lazy initialization events")
+    void shouldRecordDataLayerEvents(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("data-layer.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(HibernateSessionEvent.class);
+            recording.enable(SqlStatementEvent.class);
+            recording.enable(FlushEvent.class);
+            recording.enable(LazyInitializationEvent.class);
+            recording.start();
+
+            Long orderId = createOrder();
+            try (Session session = sessionFactory.openSession()) {
+                Order order = session.get(Order.class, orderId);
+                assertThat(order.getOrderItems()).hasSize(1);
+            }
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        assertThat(ofType(events, "ru.mentee.power.SqlStatement"))
+                .anySatisfy(
+                        event -> {
+                            assertThat(event.getString("fingerprint"))
+                                    .startsWith("insert into products");
+                            assertThat(event.getString("table")).isEqualTo("products");
+                            assertThat(event.getInt("rows")).isEqualTo(1);
+                        })
+                .anySatisfy(
+                        event -> {
+                            assertThat(event.getString("table")).isEqualTo("order_items");
+                            assertThat(event.getInt("rows")).isEqualTo(1);
+                            assertThat(event.getStackTrace()).isNotNull();
+                        });
+        assertThat(ofType(events, "ru.mentee.power.Flush"))
+                .anySatisfy(
+                        event -> assertThat(event.getInt("entities")).isGreaterThanOrEqualTo(4));
+        assertThat(ofType(events, "ru.mentee.power.HibernateSession"))
+                .hasSize(2)
+                .allSatisfy(
+                        event ->
+                                assertThat(event.getLong("statements") + event.getLong("batches"))
+                                        .isPositive());
+        assertThat(ofType(events, "ru.mentee.power.LazyInitialization"))
+                .anySatisfy(
+                        event -> {
+                            assertThat(event.getString("role")).endsWith("Order.orderItems");
+                            assertThat(event.getBoolean("collection")).isTrue();
+                            assertThat(event.getInt("size")).isEqualTo(1);
+                        });
+    }
+
+    private Long createOrder() {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction tx = session.beginTransaction();
+            Customer customer = new Customer();
+            customer.setFirstName("John");
+            customer.setLastName("Doe");
+            customer.setEmail("john.jfr@example.com");
+            session.persist(customer);
+
+            Product product =
+                    Product.builder()
+                            .sku("SKU-JFR-1")
+                            .name("Laptop")
+                            .price(new BigDecimal("99.99"))
+                            .build();
+            session.persist(product);
+
+            Order order = new Order();
+            order.setOrderNumber("ORD-JFR-1");
+            order.setCustomer(customer);
+            order.setStatus(OrderStatus.PENDING);
+            order.setOrderDate(LocalDateTime.now());
+            OrderItem item = new OrderItem();
+            item.setProduct(product);
+            item.setQuantity(1);
+            item.setUnitPrice(product.getPrice());
+            order.addOrderItem(item);
+            session.persist(order);
+            tx.commit();
+            return order.getId();
+        }
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+    }
+}
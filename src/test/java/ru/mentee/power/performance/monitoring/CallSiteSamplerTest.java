@@ -0,0 +1,77 @@
+package ru.mentee.power.performance.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Тест отметок загружаемых ассоциаций при загрузках, прерванных исключением, и выбора
+ * кадра места вызова.
+ */
+@DisplayName("Call Site Sampler Tests")
+class CallSiteSamplerTest {
+
+    private static final String ORDER_ITEMS =
+            "ru.mentee.power.entity.relationship.Order.orderItems";
+    private static final String CUSTOMER = "ru.mentee.power.entity.relationship.Customer";
+
+    private final Object session = new Object();
+
+    @AfterEach
+    void tearDown() {
+        CallSiteSampler.clearAssociations();
+    }
+
+    @Test
+    @DisplayName("Should drop marks of nested loads that failed when the outer load ends")
+    void shouldDropFailedNestedMarks() {
+        Object outer = new Object();
+        Object failed = new Object();
+        CallSiteSampler.enterAssociation(outer, session, ORDER_ITEMS);
+        // Вложенная загрузка бросила исключение: exit для нее не вызывается
+        CallSiteSampler.enterAssociation(failed, session, CUSTOMER);
+        assertThat(CallSiteSampler.currentAssociation()).isEqualTo("Customer");
+
+        CallSiteSampler.exitAssociation(outer);
+
+        assertThat(CallSiteSampler.currentAssociation()).isNull();
+        // Запоздалый exit сброшенной отметки ничего не снимает
+        CallSiteSampler.enterAssociation(outer, session, ORDER_ITEMS);
+        CallSiteSampler.exitAssociation(failed);
+        assertThat(CallSiteSampler.currentAssociation()).isEqualTo("Order.orderItems");
+    }
+
+    @Test
+    @DisplayName("Should not carry failed marks into another session or past the depth bound")
+    void shouldResetStaleMarks() {
+        CallSiteSampler.enterAssociation(new Object(), session, CUSTOMER);
+
+        Object other = new Object();
+        Object load = new Object();
+        CallSiteSampler.enterAssociation(load, other, ORDER_ITEMS);
+        CallSiteSampler.exitAssociation(load);
+        assertThat(CallSiteSampler.currentAssociation()).isNull();
+
+        for (int i = 0; i < 100; i++) {
+            CallSiteSampler.enterAssociation(new Object(), session, CUSTOMER);
+        }
+        assertThat(CallSiteSampler.associationDepth()).isLessThanOrEqualTo(32);
+    }
+
+    @Test
+    @DisplayName("Should skip cache and metrics infrastructure when choosing the call site")
+    void shouldSkipInfrastructureFrames() {
+        assertThat(CallSiteSampler.isApplicationFrame("ru.mentee.power.dao.HibernateGenericDAO"))
+                .isTrue();
+        assertThat(CallSiteSampler.isApplicationFrame("ru.mentee.power.cache.SingleFlightLoader"))
+                .isFalse();
+        assertThat(
+                        CallSiteSampler.isApplicationFrame(
+                                "ru.mentee.power.metrics.TimedHibernateHQLRepository"))
+                .isFalse();
+        assertThat(CallSiteSampler.isApplicationFrame(JdbcProxies.class.getName())).isFalse();
+        assertThat(CallSiteSampler.isApplicationFrame("org.hibernate.loader.Loader")).isFalse();
+    }
+}
@@ -0,0 +1,118 @@
+package ru.mentee.power.performance.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Product;
+import ru.mentee.power.performance.HibernatePerformanceDetector;
+import ru.mentee.power.performance.MonitoringContext;
+
+/**
+ * Тест фонового EXPLAIN для медленных выражений.
+ */
+@DisplayName("Plan Capture Tests")
+class PlanCaptureTest {
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl("jdbc:h2:mem:testdb_plan_" + System.currentTimeMillis());
+        dbConfig.setHbm2ddlAuto("create-drop");
+        // Любое выражение считается медленным
+        dbConfig.setSlowStatementExplainThresholdMs(0);
+        dbConfig.setSlowStatementExplainAnalyze(true);
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should explain slow statement with bound parameters on H2")
+    void shouldCapturePlanWithBoundParameters() {
+        String sql;
+        try (Session session = sessionFactory.openSession();
+                MonitoringContext context =
+                        new HibernatePerformanceDetector().startMonitoring(session)) {
+            session.createQuery("FROM RelationshipProduct p WHERE p.name = :name", Product.class)
+                    .setParameter("name", "Laptop")
+                    .list();
+            sql = context.getExecutedQueries().get(0);
+        }
+
+        PlanCapture planCapture = PlanCapture.of(sessionFactory);
+        assertThat(planCapture.awaitPending(5, TimeUnit.SECONDS)).isTrue();
+
+        // EXPLAIN ANALYZE в H2 выполняет запрос и упал бы без значения параметра
+        ExecutionPlan plan = planCapture.getPlan(sql);
+        assertThat(plan).isNotNull();
+        assertThat(plan.isAnalyzed()).isTrue();
+        assertThat(plan.getPlan()).containsIgnoringCase("products").contains("scanCount");
+        // Пустая таблица не считается большой
+        assertThat(plan.hasWarnings()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should keep plan capture off by default and explain without ANALYZE")
+    void shouldNotAnalyzeUnlessEnabled() {
+        DatabaseConfig defaults = new DatabaseConfig();
+        defaults.setJdbcUrl("jdbc:h2:mem:testdb_plan_default_" + System.currentTimeMillis());
+        defaults.setHbm2ddlAuto("create-drop");
+        try (SessionFactory factory = new HibernateConfig(defaults).buildSessionFactory()) {
+            assertThat(PlanCapture.of(factory)).isNull();
+        }
+
+        DatabaseConfig plain = new DatabaseConfig();
+        plain.setJdbcUrl("jdbc:h2:mem:testdb_plan_plain_" + System.currentTimeMillis());
+        plain.setHbm2ddlAuto("create-drop");
+        plain.setSlowStatementExplainThresholdMs(0);
+        try (SessionFactory factory = new HibernateConfig(plain).buildSessionFactory()) {
+            String sql;
+            try (Session session = factory.openSession();
+                    MonitoringContext context =
+                            new HibernatePerformanceDetector().startMonitoring(session)) {
+                session.createQuery("FROM RelationshipProduct", Product.class).list();
+                sql = context.getExecutedQueries().get(0);
+            }
+            PlanCapture planCapture = PlanCapture.of(factory);
+            assertThat(planCapture.awaitPending(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(planCapture.getPlan(sql))
+                    .isNotNull()
+                    .satisfies(plan -> assertThat(plan.isAnalyzed()).isFalse());
+        }
+    }
+
+    @Test
+    @DisplayName("Should flag sequential scans on large tables and sort spills")
+    void shouldFlagPostgresPlanWarnings() {
+        String text =
+                """
+                Sort  (cost=1894.32..1919.32 rows=10000) (actual rows=9800 loops=1)
+                  Sort Key: order_date DESC
+                  Sort Method: external merge  Disk: 1248kB
+                  ->  Seq Scan on orders o1_0  (cost=0.00..1240.00 rows=10000) (actual rows=9800)
+                        Filter: ((status)::text = 'PENDING'::text)
+                        Rows Removed by Filter: 40200
+                  ->  Seq Scan on customers c1_0  (cost=0.00..1.50 rows=50) (actual rows=50)
+                """;
+
+        ExecutionPlan plan = ExecutionPlan.parse("select ...", text, true);
+
+        assertThat(plan.getSequentialScans()).containsExactly("orders (50200 rows)");
+        assertThat(plan.isSortSpilled()).isTrue();
+        assertThat(plan.describeWarnings())
+                .isEqualTo("Seq Scan on orders (50200 rows), sort spilled to disk");
+    }
+}
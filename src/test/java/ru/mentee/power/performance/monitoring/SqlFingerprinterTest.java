@@ -0,0 +1,68 @@
+package ru.mentee.power.performance.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Тест токенизатора SQL; сравнение с регулярными выражениями - в SqlFingerprintBenchmark.
+ */
+@DisplayName("SQL Fingerprinter Tests")
+class SqlFingerprinterTest {
+
+    private static final String CUSTOMER_SQL =
+            "/* <criteria> */ select c1_0.id,c1_0.email,(SELECT COUNT(*) FROM orders o"
+                    + " WHERE o.customer_id = c1_0.id AND o.status = 'COMPLETED') from"
+                    + " customers c1_0 where c1_0.id=?";
+
+    @Test
+    @DisplayName("Should strip literals and comments but keep identifiers")
+    void shouldStripLiteralsAndComments() {
+        SqlFingerprint fingerprint =
+                SqlFingerprinter.compute(
+                        "/* load */ SELECT o1_0.id FROM orders o1_0 WHERE o1_0.status = 'NEW'"
+                                + " AND o1_0.total_amount > 10.5 -- tail");
+
+        assertThat(fingerprint.getFingerprint())
+                .isEqualTo(
+                        "select o1_0.id from orders o1_0 where o1_0.status = ? and"
+                                + " o1_0.total_amount > ?");
+        assertThat(fingerprint.getTable()).isEqualTo("orders");
+    }
+
+    @Test
+    @DisplayName("Should collapse IN lists of any length")
+    void shouldCollapseInLists() {
+        String two =
+                SqlFingerprinter.compute("select * from t where id in (?, ?)").getFingerprint();
+        String five =
+                SqlFingerprinter.compute("select * from t where id in (1,2,3,4,'x')")
+                        .getFingerprint();
+
+        assertThat(two).isEqualTo("select * from t where id in (?)").isEqualTo(five);
+        assertThat(
+                        SqlFingerprinter.compute("select * from t where id in (select id from s)")
+                                .getFingerprint())
+                .contains("in (select id from s)");
+    }
+
+    @Test
+    @DisplayName("Should prefer top-level table over subquery tables")
+    void shouldExtractMainTable() {
+        assertThat(SqlFingerprinter.table(CUSTOMER_SQL)).isEqualTo("customers");
+        assertThat(SqlFingerprinter.table("insert into products (sku) values (?)"))
+                .isEqualTo("products");
+        assertThat(SqlFingerprinter.table("UPDATE products SET price = ? WHERE id = ?"))
+                .isEqualTo("products");
+        assertThat(SqlFingerprinter.table("select 1")).isEqualTo("unknown");
+    }
+
+    @Test
+    @DisplayName("Should return cached fingerprint for the same SQL instance")
+    void shouldCacheByIdentity() {
+        String sql = new String(CUSTOMER_SQL);
+
+        assertThat(SqlFingerprinter.fingerprint(sql)).isSameAs(SqlFingerprinter.fingerprint(sql));
+    }
+}
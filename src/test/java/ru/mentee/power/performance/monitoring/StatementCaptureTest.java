@@ -0,0 +1,191 @@
+package ru.mentee.power.performance.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.config.HibernateConfig;
+import ru.mentee.power.entity.relationship.Customer;
+import ru.mentee.power.entity.relationship.Order;
+import ru.mentee.power.entity.relationship.OrderStatus;
+import ru.mentee.power.performance.HibernatePerformanceDetector;
+import ru.mentee.power.performance.MonitoringContext;
+import ru.mentee.power.performance.QueryExecution;
+
+/**
+ * Тест перехвата реальных SQL-выражений.
+ */
+@DisplayName("Statement Capture Tests")
+class StatementCaptureTest {
+
+    private String jdbcUrl;
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        jdbcUrl = "jdbc:h2:mem:testdb_capture_" + System.currentTimeMillis();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(jdbcUrl + ";DB_CLOSE_DELAY=-1");
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        sessionFactory = new HibernateConfig(dbConfig).buildSessionFactory();
+        createTestData();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    @DisplayName("Should record real SQL with row counts in monitoring context")
+    void shouldRecordRealStatements() {
+        try (Session session = sessionFactory.openSession();
+                MonitoringContext context =
+                        new HibernatePerformanceDetector().startMonitoring(session)) {
+            List<Order> orders = session.createQuery("FROM RelationshipOrder", Order.class).list();
+            orders.forEach(order -> order.getCustomer().getFirstName());
+
+            assertThat(context.getExecutedQueries())
+                    .anyMatch(sql -> sql.toLowerCase().contains("from orders"))
+                    .noneMatch(sql -> sql.equals("SELECT * FROM orders"));
+
+            QueryExecution ordersQuery =
+                    context.getQueryExecutions().values().stream()
+                            .filter(e -> e.getQuery().toLowerCase().contains("from orders"))
+                            .findFirst()
+                            .orElseThrow();
+            assertThat(ordersQuery.getMaxRowCount()).isEqualTo(orders.size());
+            assertThat(ordersQuery.getAvgExecutionTimeNanos()).isPositive();
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop capturing after context is closed")
+    void shouldStopCapturingAfterClose() {
+        try (Session session = sessionFactory.openSession()) {
+            MonitoringContext context = new HibernatePerformanceDetector().startMonitoring(session);
+            context.close();
+
+            session.createQuery("FROM RelationshipOrder", Order.class).list();
+
+            assertThat(context.getExecutedQueries()).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("Should capture plain JDBC statements through CapturingDataSource")
+    void shouldCaptureJdbcStatements() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL(jdbcUrl);
+        h2.setUser("sa");
+        DataSource dataSource = new CapturingDataSource(h2);
+
+        List<CapturedStatement> captured = new ArrayList<>();
+        StatementCaptureListener listener = captured::add;
+        StatementCapture.bind(listener);
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement ps =
+                        connection.prepareStatement(
+                                "SELECT id FROM orders WHERE status = ? AND total_amount >= ?")) {
+            ps.setString(1, OrderStatus.PENDING.name());
+            ps.setBigDecimal(2, BigDecimal.ZERO);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rs.getLong(1);
+                }
+            }
+        } finally {
+            StatementCapture.unbind(listener);
+        }
+
+        assertThat(captured).hasSize(1);
+        assertThat(captured.get(0).getRowCount()).isEqualTo(5);
+        assertThat(captured.get(0).getParameterCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should publish statements whose ResultSet is closed implicitly")
+    void shouldPublishImplicitlyClosedResultSets() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL(jdbcUrl);
+        h2.setUser("sa");
+        DataSource dataSource = new CapturingDataSource(h2);
+
+        List<CapturedStatement> captured = new ArrayList<>();
+        try (StatementCapture.Suspension binding = StatementCapture.push(captured::add);
+                Connection connection = dataSource.getConnection()) {
+            // ResultSet закрывается через Statement.close()
+            try (PreparedStatement ps = connection.prepareStatement("SELECT id FROM orders")) {
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+            }
+            // ResultSet и Statement закрываются через Connection.close()
+            PreparedStatement open = connection.prepareStatement("SELECT id FROM customers");
+            open.executeQuery().next();
+        }
+
+        assertThat(captured)
+                .extracting(CapturedStatement::getSql)
+                .containsExactly("SELECT id FROM orders", "SELECT id FROM customers");
+        assertThat(captured).allMatch(statement -> statement.getRowCount() == 1);
+    }
+
+    @Test
+    @DisplayName("Should keep outer listener while a monitoring context is nested")
+    void shouldRestoreOuterListenerAfterAnalyze() {
+        List<CapturedStatement> outer = new ArrayList<>();
+        try (Session session = sessionFactory.openSession();
+                StatementCapture.Suspension binding = StatementCapture.push(outer::add)) {
+            HibernatePerformanceDetector detector = new HibernatePerformanceDetector();
+            MonitoringContext context = detector.startMonitoring(session);
+            session.createQuery("FROM RelationshipOrder", Order.class).list();
+            detector.analyze(context);
+
+            session.createQuery("FROM RelationshipCustomer", Customer.class).list();
+
+            assertThat(context.isClosed()).isTrue();
+            long monitored = context.getCapturedStatementCount();
+            assertThat(monitored).isPositive();
+            // Внешний слушатель получил и выражения контекста, и запрос после analyze
+            assertThat(outer).hasSize((int) monitored + 1);
+        }
+    }
+
+    private void createTestData() {
+        try (Session session = sessionFactory.openSession()) {
+            org.hibernate.Transaction tx = session.beginTransaction();
+            Customer customer =
+                    Customer.builder()
+                            .firstName("John")
+                            .lastName("Doe")
+                            .email("john@example.com")
+                            .build();
+            session.persist(customer);
+            for (int i = 0; i < 5; i++) {
+                session.persist(
+                        Order.builder()
+                                .orderNumber("ORD" + i)
+                                .customer(customer)
+                                .status(OrderStatus.PENDING)
+                                .orderDate(LocalDateTime.now())
+                                .build());
+            }
+            tx.commit();
+        }
+    }
+}
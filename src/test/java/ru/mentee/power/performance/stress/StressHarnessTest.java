@@ -0,0 +1,110 @@
+package ru.mentee.power.performance.stress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.mentee.power.config.CacheEnabledHibernateConfig;
+import ru.mentee.power.config.DatabaseConfig;
+import ru.mentee.power.performance.dataset.DatasetGenerator;
+import ru.mentee.power.performance.dataset.DatasetSpec;
+
+/**
+ * Тест нагрузочного стенда на in-memory H2.
+ */
+@DisplayName("Stress Harness Tests")
+class StressHarnessTest {
+
+    private SessionFactory sessionFactory;
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        String url = "jdbc:h2:mem:testdb_stress_" + System.currentTimeMillis();
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setJdbcUrl(url);
+        dbConfig.setDriverClassName("org.h2.Driver");
+        dbConfig.setUsername("sa");
+        dbConfig.setPassword("");
+        dbConfig.setHbm2ddlAuto("create-drop");
+        // Без кэша второго уровня в отчете нет регионов
+        dbConfig.setSecondLevelCacheOnH2(true);
+        sessionFactory = new CacheEnabledHibernateConfig(dbConfig).buildSessionFactory();
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername("sa");
+        hikariConfig.setPassword("");
+        hikariConfig.setMaximumPoolSize(4);
+        dataSource = new HikariDataSource(hikariConfig);
+
+        DatasetSpec spec =
+                DatasetSpec.builder()
+                        .products(200)
+                        .customers(50)
+                        .users(0)
+                        .students(0)
+                        .courses(0)
+                        .warehouses(0)
+                        .build();
+        new DatasetGenerator(dataSource, spec).generate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+        dataSource.close();
+    }
+
+    @Test
+    @DisplayName("Should report throughput, latencies, pool wait and cache activity")
+    void shouldReportMixedWorkload() {
+        StressWorkload workload =
+                StressWorkload.builder()
+                        .virtualThreads(16)
+                        .warmup(Duration.ofMillis(300))
+                        .duration(Duration.ofSeconds(1))
+                        .build();
+
+        StressReport report = new StressHarness(sessionFactory, dataSource).run(workload);
+
+        assertThat(report.getTotalOperations()).isPositive();
+        assertThat(report.getThroughput()).isPositive();
+        assertThat(report.getOperations()).containsKeys(StressOperation.PRODUCT_READ);
+        StressReport.LatencyStats reads =
+                report.getOperations().get(StressOperation.PRODUCT_READ).getLatency();
+        assertThat(reads.getP99Millis()).isGreaterThanOrEqualTo(reads.getP50Millis());
+        assertThat(report.getPoolWait().getCount()).isPositive();
+        assertThat(report.getCacheRegions())
+                .containsKey("ru.mentee.power.entity.relationship.Product");
+        assertThat(report.getPlatformDeadlockedThreads()).isZero();
+        assertThat(report.getStalls()).isZero();
+        assertThat(report.getThreadDump()).isNull();
+        assertThat(report.describe()).contains("ops/s", "PRODUCT_READ", "pool wait");
+    }
+
+    @Test
+    @DisplayName("Should honour think time and operation weights")
+    void shouldHonourThinkTimeAndWeights() {
+        StressWorkload workload =
+                StressWorkload.builder()
+                        .virtualThreads(10)
+                        .warmup(Duration.ZERO)
+                        .duration(Duration.ofSeconds(1))
+                        .thinkTime(Duration.ofMillis(50))
+                        .weight(StressOperation.PRODUCT_READ, 1)
+                        .build();
+
+        StressReport report = new StressHarness(sessionFactory, dataSource).run(workload);
+
+        // 10 клиентов по ~20 операций в секунду
+        assertThat(report.getTotalOperations()).isBetween(20L, 400L);
+        assertThat(report.getOperations()).containsOnlyKeys(StressOperation.PRODUCT_READ);
+    }
+}